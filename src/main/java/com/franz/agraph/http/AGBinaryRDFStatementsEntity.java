@@ -0,0 +1,150 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.Rio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * A request entity that sends statements in RDF4J's binary RDF format,
+ * encoding each statement while the request body is written.
+ * <p>
+ * Values are converted by the supplied function (normally to the values
+ * AllegroGraph can store) before they are written.  When contexts are
+ * given, each statement is written once per context, in place of its
+ * own context.</p>
+ * <p>
+ * As with {@link AGJSONStatementsEntity}, an entity built from an
+ * {@link Iterable} can be written more than once; one built from an
+ * {@link Iterator} cannot.</p>
+ */
+public class AGBinaryRDFStatementsEntity extends AbstractHttpEntity {
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+    private final Iterable<? extends Statement> statements;
+    private Iterator<? extends Statement> iterator;
+    private final Function<Value, Value> converter;
+    private final Resource[] contexts;
+
+    /**
+     * Creates a repeatable entity.
+     *
+     * @param statements the statements to send
+     * @param converter  converts a value to the value sent to the server
+     * @param contexts   contexts overriding those of the statements
+     */
+    public AGBinaryRDFStatementsEntity(Iterable<? extends Statement> statements,
+                                       Function<Value, Value> converter, Resource... contexts) {
+        this(statements, null, converter, contexts);
+    }
+
+    /**
+     * Creates an entity that consumes the iterator when written.
+     *
+     * @param statements the statements to send
+     * @param converter  converts a value to the value sent to the server
+     * @param contexts   contexts overriding those of the statements
+     */
+    public AGBinaryRDFStatementsEntity(Iterator<? extends Statement> statements,
+                                       Function<Value, Value> converter, Resource... contexts) {
+        this(null, statements, converter, contexts);
+    }
+
+    private AGBinaryRDFStatementsEntity(Iterable<? extends Statement> statements,
+                                        Iterator<? extends Statement> iterator,
+                                        Function<Value, Value> converter, Resource... contexts) {
+        this.statements = statements;
+        this.iterator = iterator;
+        this.converter = converter;
+        this.contexts = contexts;
+        setContentType(RDFFormat.BINARY.getDefaultMIMEType());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return statements != null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return statements == null && iterator != null;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Iterator<? extends Statement> it;
+        if (statements != null) {
+            it = statements.iterator();
+        } else if (iterator != null) {
+            it = iterator;
+            iterator = null;
+        } else {
+            throw new IllegalStateException("Statements have already been written");
+        }
+
+        // The writer buffers and flushes its output at the end, but does
+        // not close the stream, which belongs to the connection.
+        RDFWriter writer = Rio.createWriter(RDFFormat.BINARY, out);
+        try {
+            writer.startRDF();
+            while (it.hasNext()) {
+                Statement st = it.next();
+                if (contexts.length == 0) {
+                    writer.handleStatement(convert(st, st.getContext()));
+                } else {
+                    for (Resource c : contexts) {
+                        writer.handleStatement(convert(st, c));
+                    }
+                }
+            }
+            writer.endRDF();
+        } catch (RDFHandlerException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e);
+        }
+    }
+
+    private Statement convert(Statement st, Resource context) {
+        Resource subj = (Resource) converter.apply(st.getSubject());
+        IRI pred = (IRI) converter.apply(st.getPredicate());
+        Value obj = converter.apply(st.getObject());
+        if (context == null) {
+            return VF.createStatement(subj, pred, obj);
+        }
+        return VF.createStatement(subj, pred, obj, (Resource) converter.apply(context));
+    }
+}
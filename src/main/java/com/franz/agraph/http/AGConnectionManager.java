@@ -0,0 +1,298 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded HTTP connection manager that hands out connections
+ * in the order in which they were requested.
+ * <p>
+ * Wraps a {@link PoolingHttpClientConnectionManager} configured with
+ * per-route and total connection limits.  Threads asking for a connection
+ * queue on a fair semaphore sized to the total limit, so when the pool
+ * is exhausted waiting threads are served first-come, first-served and
+ * give up with a {@link ConnectionPoolTimeoutException} once the lease
+ * timeout passes, instead of opening yet another socket.</p>
+ * <p>
+ * The limits default to the values of the system properties
+ * {@link #PROP_MAX_PER_ROUTE} and {@link #PROP_MAX_TOTAL}.
+ * Unless {@link #PROP_SHARED} is set to false, {@link AGHTTPClient}
+ * instances created for the same server URL share a single manager
+ * (see {@link #forServer(String)}), which is shut down when the last
+ * client using it is closed.</p>
+ */
+public class AGConnectionManager implements HttpClientConnectionManager {
+    private static final Logger logger = LoggerFactory.getLogger(AGConnectionManager.class);
+
+    /**
+     * Maximum number of connections open to a single route (host and port).
+     * Note that dedicated sessions are served on their own port,
+     * so each session is a separate route.
+     */
+    public static final String PROP_MAX_PER_ROUTE = "com.franz.agraph.http.maxConnectionsPerRoute";
+    private static final int DEFAULT_MAX_PER_ROUTE = 256;
+
+    /**
+     * Maximum number of connections open through one manager, across all routes.
+     */
+    public static final String PROP_MAX_TOTAL = "com.franz.agraph.http.maxConnectionsTotal";
+    private static final int DEFAULT_MAX_TOTAL = 1024;
+
+    /**
+     * Milliseconds a request waits for a free connection before failing.
+     * A value of 0 means wait indefinitely.
+     */
+    public static final String PROP_LEASE_TIMEOUT = "com.franz.agraph.http.connectionLeaseTimeout";
+    private static final int DEFAULT_LEASE_TIMEOUT = 60000;
+
+    /**
+     * Whether clients created for the same server URL share one
+     * connection manager (default true).
+     */
+    public static final String PROP_SHARED = "com.franz.agraph.http.shareConnectionManager";
+
+    private static final Map<String, AGConnectionManager> shared = new HashMap<>();
+
+    private final PoolingHttpClientConnectionManager delegate;
+    private final Semaphore leases;
+    private final Set<HttpClientConnection> leased = ConcurrentHashMap.newKeySet();
+
+    // Key in the shared map, or null for a private manager.
+    private final String serverURL;
+    // Guarded by the shared map.
+    private int refCount = 1;
+
+    /**
+     * Creates a private manager with the given limits.
+     *
+     * @param maxPerRoute maximum number of connections per route
+     * @param maxTotal    maximum number of connections in total
+     */
+    public AGConnectionManager(int maxPerRoute, int maxTotal) {
+        this(null, maxPerRoute, maxTotal);
+    }
+
+    /**
+     * Creates a private manager with limits taken from system properties.
+     */
+    public AGConnectionManager() {
+        this(null, getDefaultMaxPerRoute(), getDefaultMaxTotal());
+    }
+
+    private AGConnectionManager(String serverURL, int maxPerRoute, int maxTotal) {
+        if (maxPerRoute <= 0 || maxTotal <= 0) {
+            throw new IllegalArgumentException("Connection limits must be positive: "
+                    + maxPerRoute + ", " + maxTotal);
+        }
+        this.serverURL = serverURL;
+        this.delegate = new PoolingHttpClientConnectionManager();
+        delegate.setDefaultMaxPerRoute(maxPerRoute);
+        delegate.setMaxTotal(maxTotal);
+        this.leases = new Semaphore(maxTotal, true);
+    }
+
+    /**
+     * Returns the manager shared by all clients of the given server,
+     * creating it if necessary.
+     * <p>
+     * Each call must be balanced by a call to {@link #release()}.</p>
+     *
+     * @param serverURL the server URL
+     * @return a shared connection manager
+     */
+    public static AGConnectionManager forServer(String serverURL) {
+        String key = serverURL.replaceAll("/$", "");
+        synchronized (shared) {
+            AGConnectionManager manager = shared.get(key);
+            if (manager == null) {
+                manager = new AGConnectionManager(key, getDefaultMaxPerRoute(), getDefaultMaxTotal());
+                shared.put(key, manager);
+                logger.debug("created shared connection manager for {}", key);
+            } else {
+                manager.refCount++;
+            }
+            return manager;
+        }
+    }
+
+    /**
+     * Gives up one reference to this manager, shutting it down when
+     * there are no references left.
+     */
+    public void release() {
+        synchronized (shared) {
+            if (refCount <= 0) {
+                return;
+            }
+            refCount--;
+            if (refCount > 0) {
+                return;
+            }
+            if (serverURL != null) {
+                shared.remove(serverURL);
+            }
+        }
+        logger.debug("shutting down connection manager for {}", serverURL);
+        shutdown();
+    }
+
+    static boolean isSharingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PROP_SHARED, "true"));
+    }
+
+    /**
+     * @return the per-route limit of new managers
+     */
+    public static int getDefaultMaxPerRoute() {
+        return Integer.getInteger(PROP_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE);
+    }
+
+    /**
+     * @return the total limit of new managers
+     */
+    public static int getDefaultMaxTotal() {
+        return Integer.getInteger(PROP_MAX_TOTAL, DEFAULT_MAX_TOTAL);
+    }
+
+    static int getDefaultLeaseTimeout() {
+        return Integer.getInteger(PROP_LEASE_TIMEOUT, DEFAULT_LEASE_TIMEOUT);
+    }
+
+    /**
+     * @return the maximum number of connections per route
+     */
+    public int getMaxPerRoute() {
+        return delegate.getDefaultMaxPerRoute();
+    }
+
+    /**
+     * @return the maximum number of connections in total
+     */
+    public int getMaxTotal() {
+        return delegate.getMaxTotal();
+    }
+
+    /**
+     * @return statistics of the underlying connection pool
+     */
+    public PoolStats getTotalStats() {
+        return delegate.getTotalStats();
+    }
+
+    /**
+     * @return the number of threads waiting for a connection
+     */
+    public int getQueueLength() {
+        return leases.getQueueLength();
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ConnectionRequest request = delegate.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                final long start = System.nanoTime();
+                if (timeout > 0) {
+                    if (!leases.tryAcquire(timeout, timeUnit)) {
+                        request.cancel();
+                        throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+                    }
+                } else {
+                    leases.acquire();
+                }
+                boolean acquired = false;
+                try {
+                    long remaining = 0;
+                    if (timeout > 0) {
+                        remaining = Math.max(1, timeUnit.toNanos(timeout) - (System.nanoTime() - start));
+                    }
+                    HttpClientConnection conn = request.get(remaining, TimeUnit.NANOSECONDS);
+                    leased.add(conn);
+                    acquired = true;
+                    return conn;
+                } finally {
+                    if (!acquired) {
+                        leases.release();
+                    }
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+        try {
+            delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+        } finally {
+            if (leased.remove(conn)) {
+                leases.release();
+            }
+        }
+    }
+
+    @Override
+    public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+        delegate.connect(conn, route, connectTimeout, context);
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        delegate.upgrade(conn, route, context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        delegate.routeComplete(conn, route, context);
+    }
+
+    @Override
+    public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+        delegate.closeIdleConnections(idletime, timeUnit);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        delegate.closeExpiredConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "{" + super.toString()
+                + " " + (serverURL == null ? "private" : serverURL)
+                + " " + delegate.getTotalStats()
+                + "}";
+    }
+}
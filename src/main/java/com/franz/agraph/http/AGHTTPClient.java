@@ -22,6 +22,7 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -64,7 +65,9 @@ import static org.eclipse.rdf4j.http.protocol.Protocol.ACCEPT_PARAM_NAME;
 /**
  * Class responsible for handling HTTP connections.
  * <p>
- * Uses an unlimited pool of connections to allow safe, concurrent access.</p>
+ * Uses a bounded pool of connections to allow safe, concurrent access.
+ * Unless a connection manager is supplied, clients of the same server
+ * share one {@link AGConnectionManager}.</p>
  * <p>
  * Also contains methods for accessing AG services that operate above
  * the repository level - such as managing repositories.</p>
@@ -85,12 +88,20 @@ public class AGHTTPClient implements AutoCloseable {
     public static final String PROP_HTTP_NUM_RETRIES = "com.franz.agraph.http.numRetries";
     private static final int DEFAULT_HTTP_NUM_RETRIES = 1;
 
+    /**
+     * Whether new clients record metrics of their requests in an
+     * {@link AGHttpMetricsRecorder} (default false).
+     *
+     * @see #setMetricsListener(AGHttpMetricsListener)
+     */
+    public static final String PROP_METRICS = "com.franz.agraph.http.metrics";
+
     private final String serverURL;
     private final HttpClient httpClient;
 
     private String masqueradeAsUser;
 
-    private boolean isClosed = false;
+    private volatile boolean isClosed = false;
 
     private final HttpClientConnectionManager mManager;
     private final AGMethodRetryHandler retryHandler = new AGMethodRetryHandler();
@@ -100,19 +111,31 @@ public class AGHTTPClient implements AutoCloseable {
     private CredentialsProvider credsProvider;
     private AuthCache authCache;
 
+    private volatile AGHttpMetricsListener metricsListener;
+
     public AGHTTPClient(String serverURL, HttpClientConnectionManager manager,
                         SocketConfig socketConfig) {
         this.serverURL = serverURL.replaceAll("/$", "");
-        this.mManager = manager != null ? manager : createManager();
+        this.mManager = manager != null ? manager : createManager(this.serverURL);
+        RequestConfig.Builder requestConfig = RequestConfig.custom()
+            .setConnectionRequestTimeout(AGConnectionManager.getDefaultLeaseTimeout());
         HttpClientBuilder httpClientBuilder = HttpClients.custom()
             .setConnectionManager(mManager)
+            .setRequestExecutor(new AGRequestMeter.MeteringRequestExecutor())
             .setRetryHandler(retryHandler);
         if (socketConfig != null) {
             httpClientBuilder.setDefaultSocketConfig(socketConfig);
+            // The default socket config is ignored when a connection manager
+            // is supplied (and may be shared), so also apply it per request.
+            requestConfig.setSocketTimeout(socketConfig.getSoTimeout());
         }
+        httpClientBuilder.setDefaultRequestConfig(requestConfig.build());
         this.httpClient = httpClientBuilder.build();
         this.httpNumRetries = Integer.parseInt(
             System.getProperty(PROP_HTTP_NUM_RETRIES, "" + DEFAULT_HTTP_NUM_RETRIES));
+        if (Boolean.parseBoolean(System.getProperty(PROP_METRICS))) {
+            this.metricsListener = new AGHttpMetricsRecorder();
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("connect: {} {}", serverURL, httpClient);
         }
@@ -126,12 +149,11 @@ public class AGHTTPClient implements AutoCloseable {
         this(serverURL, null, null);
     }
 
-    private static HttpClientConnectionManager createManager() {
-        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
-        // Allow "unlimited" concurrent connections to the same host (default is 2)
-        manager.setDefaultMaxPerRoute(Integer.MAX_VALUE);
-        manager.setMaxTotal(Integer.MAX_VALUE);
-        return manager;
+    private static HttpClientConnectionManager createManager(String serverURL) {
+        if (AGConnectionManager.isSharingEnabled()) {
+            return AGConnectionManager.forServer(serverURL);
+        }
+        return new AGConnectionManager();
     }
 
     @Override
@@ -150,6 +172,29 @@ public class AGHTTPClient implements AutoCloseable {
         return httpClient;
     }
 
+    public HttpClientConnectionManager getConnectionManager() {
+        return mManager;
+    }
+
+    /**
+     * @return the listener receiving request metrics, or null
+     */
+    public AGHttpMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the listener to be called with the metrics of each request
+     * made by this client, replacing any previous one.  Requests are not
+     * measured when the listener is null (the default, unless
+     * {@link #PROP_METRICS} is set).
+     *
+     * @param listener the listener, or null
+     */
+    public void setMetricsListener(AGHttpMetricsListener listener) {
+        this.metricsListener = listener;
+    }
+
     public void post(String url, Header[] headers, NameValuePair[] params,
                      HttpEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
         HttpPost post = new HttpPost(url);
@@ -280,8 +325,13 @@ public class AGHTTPClient implements AutoCloseable {
         // Otherwise we must close the method by the end of this procedure.
         boolean release = true;
         HttpResponse httpResponse = null;
+        final AGHttpMetricsListener listener = metricsListener;
+        final AGRequestMeter meter = listener == null ? null : new AGRequestMeter(listener, httpUriRequest);
         try {
             HttpClientContext context = HttpClientContext.create();
+            if (meter != null) {
+                context.setAttribute(AGRequestMeter.CONTEXT_ATTRIBUTE, meter);
+            }
             if (credsProvider != null && authCache != null) {
                 context.setCredentialsProvider(credsProvider);
 
@@ -306,7 +356,11 @@ public class AGHTTPClient implements AutoCloseable {
                 || httpCode == HttpURLConnection.HTTP_NO_CONTENT) {
                 if (handler != null) {
                     release = handler.releaseConnection();
+                    final long handlerStart = System.nanoTime();
                     handler.handleResponse(httpResponse, httpUriRequest);
+                    if (meter != null) {
+                        meter.handled(System.nanoTime() - handlerStart);
+                    }
                 }
                 return ExecuteResult.SUCCESS;
             } else if (httpCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
@@ -326,13 +380,29 @@ public class AGHTTPClient implements AutoCloseable {
                 throw errHandler.getResult();
             }
         } catch (IOException e) {
+            if (meter != null) {
+                meter.failed(e);
+            }
             throw new AGHttpException(e);
+        } catch (RuntimeException e) {
+            if (meter != null) {
+                meter.failed(e);
+            }
+            throw e;
         } finally {
             if (release && httpResponse != null) {
                 // Note: this will read the response body if necessary
                 // to allow connection reuse.
                 EntityUtils.consumeQuietly(httpResponse.getEntity());
             }
+            if (meter != null) {
+                if (release || httpResponse == null || httpResponse.getEntity() == null) {
+                    meter.complete();
+                } else {
+                    // The handler's result reads the body.
+                    meter.completeWhenConsumed();
+                }
+            }
         }
     }
 
@@ -496,9 +566,14 @@ public class AGHTTPClient implements AutoCloseable {
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         logger.debug("close: " + serverURL + " " + mManager);
-        if (mManager instanceof PoolingHttpClientConnectionManager) {
+        if (isClosed) {
+            return;
+        }
+        if (mManager instanceof AGConnectionManager) {
+            ((AGConnectionManager) mManager).release();
+        } else if (mManager instanceof PoolingHttpClientConnectionManager) {
             mManager.shutdown();
         }
         isClosed = true;
@@ -0,0 +1,28 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+/**
+ * Receives measurements of the HTTP requests made by an {@link AGHTTPClient}.
+ * <p>
+ * Install a listener with {@link AGHTTPClient#setMetricsListener(AGHttpMetricsListener)}.
+ * It is called once per request, when the response has been handled
+ * and its body read or discarded, which for streamed results may be
+ * on another thread and long after the request was sent.
+ * Implementations must be thread-safe and fast; exceptions they throw
+ * are logged and otherwise ignored.</p>
+ *
+ * @see AGHttpMetricsRecorder
+ */
+@FunctionalInterface
+public interface AGHttpMetricsListener {
+
+    /**
+     * Called when a request is complete.
+     *
+     * @param metrics measurements of the request
+     */
+    void requestCompleted(AGHttpRequestMetrics metrics);
+}
@@ -0,0 +1,199 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link AGHttpMetricsListener} that keeps statistics in memory,
+ * per HTTP method and endpoint, for as long as the client lives.
+ * <p>
+ * Each combination of method and endpoint gets an {@link Endpoint}
+ * with request, error and byte counts and an {@link AGLatencyHistogram}
+ * for each phase of the requests.  Enable it for a server with
+ * {@link com.franz.agraph.repository.AGServer#enableHttpMetrics()},
+ * or for all clients by setting the system property
+ * {@link AGHTTPClient#PROP_METRICS} to true.</p>
+ */
+public class AGHttpMetricsRecorder implements AGHttpMetricsListener {
+
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public void requestCompleted(AGHttpRequestMetrics metrics) {
+        endpoints.computeIfAbsent(key(metrics.getMethod(), metrics.getEndpoint()),
+                key -> new Endpoint(metrics.getMethod(), metrics.getEndpoint()))
+                .record(metrics);
+    }
+
+    private static String key(String method, String endpoint) {
+        return method + " " + endpoint;
+    }
+
+    /**
+     * @return the statistics of all endpoints called so far, keyed and
+     * sorted by method and endpoint, e.g. "POST statements"
+     */
+    public Map<String, Endpoint> getEndpoints() {
+        return Collections.unmodifiableMap(new TreeMap<>(endpoints));
+    }
+
+    /**
+     * @param method   HTTP method, such as GET
+     * @param endpoint endpoint class, see {@link AGHttpRequestMetrics#getEndpoint()}
+     * @return the statistics of the endpoint, or null if it was not called
+     */
+    public Endpoint getEndpoint(String method, String endpoint) {
+        return endpoints.get(key(method, endpoint));
+    }
+
+    /**
+     * Forgets all statistics.
+     */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    /**
+     * Returns a report with one line per endpoint.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Endpoint endpoint : getEndpoints().values()) {
+            sb.append(endpoint).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Statistics of the requests made with one HTTP method to one endpoint.
+     */
+    public static final class Endpoint {
+        private final String method;
+        private final String endpoint;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final AGLatencyHistogram lease = new AGLatencyHistogram();
+        private final AGLatencyHistogram timeToFirstByte = new AGLatencyHistogram();
+        private final AGLatencyHistogram handler = new AGLatencyHistogram();
+        private final AGLatencyHistogram total = new AGLatencyHistogram();
+
+        Endpoint(String method, String endpoint) {
+            this.method = method;
+            this.endpoint = endpoint;
+        }
+
+        void record(AGHttpRequestMetrics metrics) {
+            requests.increment();
+            if (metrics.getError() != null) {
+                errors.increment();
+            }
+            statuses.computeIfAbsent(metrics.getStatus(), status -> new LongAdder()).increment();
+            bytesSent.add(metrics.getBytesSent());
+            bytesReceived.add(metrics.getBytesReceived());
+            if (metrics.getLeaseNanos() >= 0) {
+                lease.record(metrics.getLeaseNanos());
+            }
+            if (metrics.getTimeToFirstByteNanos() >= 0) {
+                timeToFirstByte.record(metrics.getTimeToFirstByteNanos());
+            }
+            if (metrics.getHandlerNanos() >= 0) {
+                handler.record(metrics.getHandlerNanos());
+            }
+            total.record(metrics.getTotalNanos());
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return the number of requests
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return the number of requests that failed with an exception,
+         * including error responses from the server
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return the number of responses per HTTP status code (0 for none)
+         */
+        public Map<Integer, Long> getStatusCounts() {
+            final Map<Integer, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        /**
+         * @return nanoseconds spent waiting for a connection
+         */
+        public AGLatencyHistogram getLease() {
+            return lease;
+        }
+
+        /**
+         * @return nanoseconds until the response headers arrived
+         */
+        public AGLatencyHistogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        /**
+         * @return nanoseconds spent in the response handler
+         */
+        public AGLatencyHistogram getHandler() {
+            return handler;
+        }
+
+        /**
+         * @return nanoseconds from start to completion of the requests
+         */
+        public AGLatencyHistogram getTotal() {
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + endpoint
+                    + ": requests=" + getRequests()
+                    + " errors=" + getErrors()
+                    + " statuses=" + getStatusCounts()
+                    + " sent=" + getBytesSent()
+                    + " received=" + getBytesReceived()
+                    + " lease={" + lease + "}"
+                    + " ttfb={" + timeToFirstByte + "}"
+                    + " handler={" + handler + "}"
+                    + " total={" + total + "}";
+        }
+    }
+}
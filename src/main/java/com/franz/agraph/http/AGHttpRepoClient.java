@@ -6,14 +6,17 @@ package com.franz.agraph.http;
 
 import com.franz.agraph.http.exception.AGCustomStoredProcException;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.exception.AGUnsupportedFileFormatException;
 import com.franz.agraph.http.handler.AGBooleanHandler;
 import com.franz.agraph.http.handler.AGJSONArrayHandler;
 import com.franz.agraph.http.handler.AGJSONHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRDFHandler;
+import com.franz.agraph.http.handler.AGRDFStreamer;
 import com.franz.agraph.http.handler.AGResponseHandler;
 import com.franz.agraph.http.handler.AGStringHandler;
 import com.franz.agraph.http.handler.AGTQRHandler;
+import com.franz.agraph.http.handler.AGTQRStreamer;
 import com.franz.agraph.http.storedproc.AGDeserializer;
 import com.franz.agraph.http.storedproc.AGSerializer;
 import com.franz.agraph.repository.AGAbstractRepository;
@@ -47,6 +50,7 @@ import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.Binding;
 import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.TupleQueryResultHandler;
@@ -79,8 +83,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 /**
  * The HTTP layer for interacting with AllegroGraph.
@@ -121,7 +123,7 @@ public class AGHttpRepoClient implements AutoCloseable {
     private static AGServerVersion supportedContextOverridingVersion = new AGServerVersion("7.0.0");
     private static AGServerVersion supportedQueryOptionsVersion = new AGServerVersion("7.1.0");
     final Logger logger = LoggerFactory.getLogger(this.getClass());
-    // Used to create the pinger task
+    // Runs the heartbeat that pings the session
     private final ScheduledExecutorService executor;
     public ConcurrentLinkedQueue<String> savedQueryDeleteQueue;
     private int lifetimeInSeconds = defaultSessionLifetimeInSeconds;
@@ -137,12 +139,16 @@ public class AGHttpRepoClient implements AutoCloseable {
     private TupleQueryResultFormat preferredTQRFormat;
     private BooleanQueryResultFormat preferredBQRFormat = BooleanQueryResultFormat.TEXT;
     private RDFFormat preferredRDFFormat = getDefaultRDFFormat();
+    // Whether the server took (TRUE) or refused (FALSE) a binary RDF upload
+    private volatile Boolean binaryRDFUploads;
     // client is inherited from the AGServer instance from which this instance was created.
     private AGHTTPClient client;
     private AGAbstractRepository repo;
     private boolean allowExternalBlankNodeIds = false;
-    // Pinger task handle
-    private ScheduledFuture<?> pinger;
+    // Whether the session is registered with the heartbeat
+    private boolean pinging;
+    // System.nanoTime() of the last request, for the heartbeat
+    private volatile long lastUsed = System.nanoTime();
     /**
      * When set, pass the contents of this field in the x-user-attributes Header of any request.
      * Assumes that AGHttpRepoClient only delivers requests to repo-based REST services in AG.
@@ -160,6 +166,11 @@ public class AGHttpRepoClient implements AutoCloseable {
     private TransactionSettings transactionSettings;
     // When true, any request made by this instance will include an `x-rollback' header.
     private boolean sendRollbackHeader = false;
+    // When true, the next request will include an `x-rollback' header.
+    private volatile boolean rollbackOnNextRequest = false;
+    // Set by requests that may change data, the transaction or session
+    // state, and by failed requests; see isDirty().
+    private volatile boolean dirty = false;
 
     // Cached to avoid querying the server each time.
     private Boolean hasWarmupBug = null;
@@ -350,13 +361,23 @@ public class AGHttpRepoClient implements AutoCloseable {
 
     /**
      * Fetch the preferred {@link TupleQueryResultFormat}.
+     * <p>
+     * Defaults to RDF4J's binary tuple format for servers that support
+     * TSV, or to SPARQL XML.  Requests for the binary format also accept
+     * TSV at a lower quality, and a TSV response is parsed instead, so
+     * servers that do not offer the binary format keep working.  Set the
+     * System property com.franz.agraph.http.defaultTQRFormat to TSV to
+     * ask for TSV only.
+     * </p>
      *
      * @return TupleQueryResultFormat  the current preferred format
      */
     public TupleQueryResultFormat getPreferredTQRFormat() {
         if (preferredTQRFormat == null) {
             if (repo.getServer().getComparableVersion().compareTo(supportedTSVTQRVersion) >= 0) {
-                preferredTQRFormat = TupleQueryResultFormat.TSV;
+                String name = System.getProperty("com.franz.agraph.http.defaultTQRFormat", "BINARY");
+                preferredTQRFormat = name.equalsIgnoreCase("TSV")
+                        ? TupleQueryResultFormat.TSV : TupleQueryResultFormat.BINARY;
             } else {
                 preferredTQRFormat = TupleQueryResultFormat.SPARQL;
             }
@@ -387,19 +408,47 @@ public class AGHttpRepoClient implements AutoCloseable {
      * return RDF statements; the format should support contexts.
      * <p>
      * Gets System property com.franz.agraph.http.defaultRDFFormat
-     * (NQUADS and TRIX are currently supported), defaults to TRIX
+     * (NQUADS, TRIX and BINARY are currently supported), defaults to TRIX
      * if the property is not present, and returns the corresponding
      * RDFFormat.
      * </p>
+     * <p>
+     * BINARY selects RDF4J's compact binary RDF format.  Requests then
+     * also accept N-Quads, which is parsed instead if the server does
+     * not offer the binary format.  Statements added in bulk are also
+     * sent as binary RDF, falling back to JSON rows if the server
+     * refuses it (see {@link #isBinaryRDFUpload(boolean)}).
+     * </p>
      *
-     * @return an RDFFormat, either NQUADS or TRIX
+     * @return an RDFFormat, either NQUADS, TRIX or BINARY
      */
     public RDFFormat getDefaultRDFFormat() {
-        RDFFormat format = System.getProperty("com.franz.agraph.http.defaultRDFFormat", "TRIX").equalsIgnoreCase("NQUADS") ? RDFFormat.NQUADS : RDFFormat.TRIX;
+        String name = System.getProperty("com.franz.agraph.http.defaultRDFFormat", "TRIX");
+        RDFFormat format;
+        if (name.equalsIgnoreCase("NQUADS")) {
+            format = RDFFormat.NQUADS;
+        } else if (name.equalsIgnoreCase("BINARY")) {
+            format = RDFFormat.BINARY;
+        } else {
+            format = RDFFormat.TRIX;
+        }
         logger.debug("Defaulting to " + format.getDefaultMIMEType() + " for requests that return RDF statements.");
         return format;
     }
 
+    /**
+     * Returns the Accept header for a request returning statements
+     * to the given handler: the handler's own MIME type if it asks for
+     * a specific one, otherwise the preferred RDF format.
+     */
+    private String getRDFAcceptMIMETypes(AGResponseHandler handler) {
+        String mimeType = handler == null ? null : handler.getRequestMIMEType();
+        if (mimeType == null || mimeType.equals("*/*")) {
+            return getPreferredRDFFormat().getDefaultMIMEType();
+        }
+        return mimeType;
+    }
+
     /**
      * Gets the RDFFormat to use in making requests that return
      * RDF statements.
@@ -407,7 +456,7 @@ public class AGHttpRepoClient implements AutoCloseable {
      * Defaults to the format returned by {@link #getDefaultRDFFormat()}
      * </p>
      *
-     * @return an RDFFormat, either NQUADS or TRIX
+     * @return an RDFFormat, either NQUADS, TRIX or BINARY
      */
     public RDFFormat getPreferredRDFFormat() {
         return preferredRDFFormat;
@@ -417,7 +466,7 @@ public class AGHttpRepoClient implements AutoCloseable {
      * Sets the RDFFormat to use in making requests that return
      * RDF statements; the format must support contexts.
      * <p>
-     * AGRDFFormat.NQUADS and RDFFormat.TRIX are currently supported.
+     * AGRDFFormat.NQUADS, RDFFormat.TRIX and RDFFormat.BINARY are currently supported.
      * Defaults to the format returned by {@link #getDefaultRDFFormat()}
      * </p>
      *
@@ -449,6 +498,14 @@ public class AGHttpRepoClient implements AutoCloseable {
      * @return headers[], the headers converted to an array
      */
     private Header[] prepareHeaders(List<Header> headers) {
+        return prepareHeaders(headers, true);
+    }
+
+    /**
+     * @param deferredRollback false to leave a rollback deferred with
+     *                         {@link #rollbackOnNextRequest()} for a later request
+     */
+    private Header[] prepareHeaders(List<Header> headers, boolean deferredRollback) {
 
         if (headers == null) {
             headers = new ArrayList<>(0);
@@ -457,8 +514,11 @@ public class AGHttpRepoClient implements AutoCloseable {
         if (userAttributes != null) {
             headers.add(new BasicHeader(AGProtocol.USER_ATTRIBUTE_HEADER, userAttributes));
         }
-        if (sendRollbackHeader) {
+        if (sendRollbackHeader || (deferredRollback && rollbackOnNextRequest)) {
             headers.add(new BasicHeader(AGProtocol.X_ROLLBACK_HEADER, "yes"));
+            if (deferredRollback) {
+                rollbackOnNextRequest = false;
+            }
         }
         addReplHeader(headers);
         return headers.toArray(new BasicHeader[headers.size()]);
@@ -521,22 +581,50 @@ public class AGHttpRepoClient implements AutoCloseable {
                        Collection<? extends NameValuePair> params,
                        AGResponseHandler handler) throws AGHttpException {
 
-        getHTTPClient().get(url, prepareHeaders(headers), prepareParams(params),
-                handler);
+        touch();
+        try {
+            getHTTPClient().get(url, prepareHeaders(headers), prepareParams(params),
+                    handler);
+        } catch (AGHttpException e) {
+            dirty = true;
+            throw e;
+        }
     }
 
     protected void post(String url, List<Header> headers,
                         Collection<? extends NameValuePair> params,
                         HttpEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
+        post(url, headers, params, requestEntity, handler, true);
+    }
 
-        getHTTPClient().post(url, prepareHeaders(headers), prepareParams(params),
-                requestEntity, handler);
+    /**
+     * @param modifies false if the request is known not to change
+     *                 anything on the server, see {@link #isDirty()}
+     */
+    private void post(String url, List<Header> headers,
+                      Collection<? extends NameValuePair> params,
+                      HttpEntity requestEntity, AGResponseHandler handler,
+                      boolean modifies) throws AGHttpException {
+
+        touch();
+        if (modifies) {
+            dirty = true;
+        }
+        try {
+            getHTTPClient().post(url, prepareHeaders(headers), prepareParams(params),
+                    requestEntity, handler);
+        } catch (AGHttpException e) {
+            dirty = true;
+            throw e;
+        }
     }
 
     protected void put(String url, List<Header> headers,
                        Collection<? extends NameValuePair> params,
                        HttpEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
 
+        touch();
+        dirty = true;
         getHTTPClient().put(url, prepareHeaders(headers), prepareParams(params),
                 requestEntity, handler);
     }
@@ -545,10 +633,45 @@ public class AGHttpRepoClient implements AutoCloseable {
                           Collection<? extends NameValuePair> params,
                           AGResponseHandler handler) throws AGHttpException {
 
+        touch();
+        dirty = true;
         getHTTPClient().delete(url, prepareHeaders(headers), prepareParams(params),
                 handler);
     }
 
+    /**
+     * Returns whether a request made since the last call to
+     * {@link #clearDirty()} may have changed something on the server:
+     * statements, the transaction or the state of the session (such as
+     * namespaces, mappings, or saved queries).  Requests other than GET
+     * and read-only queries count as changes, and so does any request that
+     * failed, since the state of the session is then unknown.
+     *
+     * @return true if the connection may have changed server state
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks the connection clean, typically after a rollback.
+     *
+     * @see #isDirty()
+     */
+    public void clearDirty() {
+        dirty = false;
+    }
+
+    /**
+     * Makes the server roll back the current transaction before it handles
+     * the next request made by this client, instead of sending a separate
+     * rollback request now.  This refreshes the view of the repository
+     * of a session that is not in autocommit mode.
+     */
+    public void rollbackOnNextRequest() {
+        rollbackOnNextRequest = true;
+    }
+
     private void useDedicatedSession(boolean autoCommit)
             throws AGHttpException {
         if (sessionRoot == null) {
@@ -577,45 +700,48 @@ public class AGHttpRepoClient implements AutoCloseable {
     }
 
     /**
-     * Starts the periodic pinger task.
+     * Registers the session with the heartbeat that keeps it alive.
      * This must be invoked at most once.
      */
     private void startPinger() {
-        assert pinger == null;
+        assert !pinging;
 
         // Exit if disabled.
         if (executor == null) {
             return;
         }
-
-        // Convert to ms, cut in half to avoid timeouts if the task
-        // is executed a bit later than expected.
-        final long delay = getSessionLifetime() * 1000 / 2;
-        // Randomize the initial delay
-        final long initialDelay = (long) (Math.random() * delay);
-        pinger = executor.scheduleWithFixedDelay(() -> {
-            try {
-                // Note - this will execute concurrently with other
-                // connection activity. This is ok, since
-                // AGHttpClient uses a connection pool to allow
-                // concurrent access.
-                ping();
-            } catch (final AGHttpException e) {
-                // Pinger errors are normal when shutting down...
-                logger.debug("Pinger exception", e);
-            }
-        }, initialDelay, delay, TimeUnit.MILLISECONDS);
+        // Note - pings execute concurrently with other
+        // connection activity. This is ok, since
+        // AGHttpClient uses a connection pool to allow
+        // concurrent access.
+        AGSessionHeartbeat.register(executor, this);
+        pinging = true;
     }
 
     /**
-     * Cancel the periodic pinger task if it exists.
+     * Stops pinging the session if it is being pinged.
      */
     private void stopPinger() {
-        if (pinger != null) {
-            pinger.cancel(false);
+        if (pinging) {
+            AGSessionHeartbeat.unregister(executor, this);
+            pinging = false;
         }
     }
 
+    /**
+     * Records that the session is in use, so the heartbeat need not ping it.
+     */
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the last request
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
     /**
      * Returns an appropriate session url to use.
      * <p>
@@ -785,8 +911,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         String uri = Protocol.getStatementsLocation(getRoot());
         List<Header> headers = new ArrayList<>(1);
 
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
-                               getPreferredRDFFormat().getDefaultMIMEType()));
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getRDFAcceptMIMETypes(handler)));
         List<NameValuePair> params =
             getStatementsParams(limit, subj, pred, obj, includeInferred, contexts);
 
@@ -800,6 +925,46 @@ public class AGHttpRepoClient implements AutoCloseable {
         getStatementsLimit(0, subj, pred, obj, includeInferred, handler, contexts);
     }
 
+    /**
+     * Retrieves the statements matching the provided subject, predicate,
+     * object and contexts as a result that is parsed while it is read.
+     * <p>
+     * The result holds an HTTP connection until it is read to the end
+     * or closed.</p>
+     *
+     * @param subj            Subject filter
+     * @param pred            Predicate filter
+     * @param obj             Object filter
+     * @param includeInferred If true, inferred triples will be included in the result
+     * @param contexts        Optional list of graphs to query
+     * @return a streaming result
+     * @throws AGHttpException if the request fails
+     */
+    public GraphQueryResult getStatementsResult(Resource subj, IRI pred, Value obj,
+                                                String includeInferred, Resource... contexts)
+            throws AGHttpException {
+        AGRDFStreamer handler = new AGRDFStreamer(getPreferredRDFFormat(),
+                getValueFactory(), getAllowExternalBlankNodeIds());
+        getStatements(subj, pred, obj, includeInferred, handler, contexts);
+        return handler.getResult();
+    }
+
+    /**
+     * Retrieves the statements with the given ids as a result that is
+     * parsed while it is read.
+     *
+     * @param ids triple ids
+     * @return a streaming result
+     * @throws AGHttpException if the request fails
+     * @see #getStatementsResult(Resource, IRI, Value, String, Resource...)
+     */
+    public GraphQueryResult getStatementsResult(String... ids) throws AGHttpException {
+        AGRDFStreamer handler = new AGRDFStreamer(getPreferredRDFFormat(),
+                getValueFactory(), getAllowExternalBlankNodeIds());
+        getStatements(handler, ids);
+        return handler.getResult();
+    }
+
     public void getStatements(RDFHandler handler, String... ids) throws AGHttpException {
         getStatements(
                 new AGRDFHandler(
@@ -814,8 +979,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         String uri = Protocol.getStatementsLocation(getRoot()) + "/id";
         List<Header> headers = new ArrayList<>(1);
 
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredRDFFormat().getDefaultMIMEType()));
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getRDFAcceptMIMETypes(handler)));
 
         List<NameValuePair> params = new ArrayList<>(5);
         for (String id : ids) {
@@ -1104,6 +1268,78 @@ public class AGHttpRepoClient implements AutoCloseable {
         uploadJSON(AGProtocol.getStatementsDeleteLocation(getRoot()), rows, contexts);
     }
 
+    /**
+     * Adds statements encoded as JSON rows by the given entity,
+     * which may be streamed (see {@link AGJSONStatementsEntity}).
+     *
+     * @param rows     request entity holding a JSON array of rows
+     * @param contexts contexts to add the statements to
+     * @throws AGHttpException if there is an error with this request
+     */
+    public void uploadJSON(HttpEntity rows, Resource... contexts)
+            throws AGHttpException {
+        upload(Protocol.getStatementsLocation(getRoot()), rows, null, false, null, null, null, contexts);
+    }
+
+    /**
+     * Deletes statements encoded as JSON rows by the given entity,
+     * which may be streamed (see {@link AGJSONStatementsEntity}).
+     *
+     * @param rows     request entity holding a JSON array of rows
+     * @param contexts contexts to delete the statements from
+     * @throws AGHttpException if there is an error with this request
+     */
+    public void deleteJSON(HttpEntity rows, Resource... contexts)
+            throws AGHttpException {
+        upload(AGProtocol.getStatementsDeleteLocation(getRoot()), rows, null, false, null, null, null, contexts);
+    }
+
+    /**
+     * Returns true if statements should be added in RDF4J's binary RDF
+     * format, through {@link #uploadBinaryRDF(HttpEntity, JSONObject)},
+     * rather than as JSON rows.
+     * <p>
+     * That is the case when the {@link #getPreferredRDFFormat() preferred
+     * RDF format} is BINARY and the server has not refused a binary
+     * upload.  An entity that cannot be written twice is only sent as
+     * binary RDF once the server has taken one, since it could not be
+     * sent again as JSON if the server refused it.</p>
+     *
+     * @param repeatable whether the statements can be sent more than once
+     * @return true if the statements should be sent as binary RDF
+     */
+    public boolean isBinaryRDFUpload(boolean repeatable) {
+        Boolean accepted = binaryRDFUploads;
+        return RDFFormat.BINARY.equals(preferredRDFFormat)
+                && (accepted == null ? repeatable : accepted);
+    }
+
+    /**
+     * Adds statements encoded in RDF4J's binary RDF format by the given
+     * entity (see {@link AGBinaryRDFStatementsEntity}).
+     * <p>
+     * If the server refuses the format, later calls to
+     * {@link #isBinaryRDFUpload(boolean)} return false and the
+     * statements should be sent again as JSON rows.</p>
+     *
+     * @param statements request entity holding the statements, with
+     *                   their contexts already applied
+     * @param attributes triple attributes for every statement, or null
+     * @throws AGUnsupportedFileFormatException if the server does not take binary RDF
+     * @throws AGHttpException                  if there is an error with this request
+     */
+    public void uploadBinaryRDF(HttpEntity statements, JSONObject attributes)
+            throws AGHttpException {
+        try {
+            upload(statements, null, false, null, null, RDFFormat.BINARY, attributes);
+        } catch (AGUnsupportedFileFormatException e) {
+            logger.debug("Server refused a binary RDF upload; using JSON rows.", e);
+            binaryRDFUploads = Boolean.FALSE;
+            throw e;
+        }
+        binaryRDFUploads = Boolean.TRUE;
+    }
+
     public void load(IRI source, String baseURI, RDFFormat dataFormat,
                      Resource... contexts) throws AGHttpException {
         upload(null, baseURI, false, null, source, dataFormat, null, contexts);
@@ -1243,7 +1479,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         List<Header> headers = new ArrayList<>(1);
 
         headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredTQRFormat().getDefaultMIMEType()));
+                AGTQRStreamer.getAcceptMIMETypes(getPreferredTQRFormat())));
 
         get(url, headers, null,
                 new AGTQRHandler(getPreferredTQRFormat(), handler, getValueFactory(), getAllowExternalBlankNodeIds()));
@@ -1279,7 +1515,8 @@ public class AGHttpRepoClient implements AutoCloseable {
     private void getRepoOptions(String url, TupleQueryResultHandler handler)
         throws TupleQueryResultHandlerException, AGHttpException {
         List<Header> headers = new ArrayList<>(1);
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getPreferredTQRFormat().getDefaultMIMEType()));
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
+                AGTQRStreamer.getAcceptMIMETypes(getPreferredTQRFormat())));
         get(url, headers, null, new AGTQRHandler(getPreferredTQRFormat(), handler, getValueFactory(), getAllowExternalBlankNodeIds()));
     }
 
@@ -1365,6 +1602,22 @@ public class AGHttpRepoClient implements AutoCloseable {
 
     public void query(AGQuery q, boolean analyzeOnly, AGResponseHandler handler) throws
             AGHttpException {
+        query(q, analyzeOnly, handler, q.getLimit(), q.getOffset());
+    }
+
+    /**
+     * Evaluates a query with the given limit and offset instead of the
+     * query's own, e.g. to read one page of its solutions.
+     *
+     * @param q           the query
+     * @param analyzeOnly if true, only analyze the query
+     * @param handler     processes the response
+     * @param limit       the maximum number of solutions, or -1 for no limit
+     * @param offset      the number of solutions to skip, or -1 for none
+     * @throws AGHttpException if there is an error with this request
+     */
+    public void query(AGQuery q, boolean analyzeOnly, AGResponseHandler handler,
+                      int limit, int offset) throws AGHttpException {
 
         String url = getRoot();
         if (q.isPrepared()) {
@@ -1378,17 +1631,23 @@ public class AGHttpRepoClient implements AutoCloseable {
             headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, handler
                     .getRequestMIMEType()));
         }
-        List<NameValuePair> queryParams = getQueryMethodParameters(q);
+        List<NameValuePair> queryParams = getQueryMethodParameters(q, limit, offset);
         if (analyzeOnly) {
             queryParams.add(new BasicNameValuePair("analyzeIndicesUsed", "true"));
         }
-        post(url, headers, queryParams, null, handler);
+        // Updates change data, and naming a query saves it in the session.
+        final boolean modifies = q instanceof AGUpdate || (sessionRoot != null && q.getName() != null);
+        post(url, headers, queryParams, null, handler, modifies);
         if (sessionRoot != null && q.getName() != null) {
             q.setPrepared(true);
         }
     }
 
     protected List<NameValuePair> getQueryMethodParameters(AGQuery q) {
+        return getQueryMethodParameters(q, q.getLimit(), q.getOffset());
+    }
+
+    protected List<NameValuePair> getQueryMethodParameters(AGQuery q, int limit, int offset) {
         QueryLanguage ql = q.getLanguage();
         Dataset dataset = q.getDataset();
         boolean includeInferred = q.getIncludeInferred();
@@ -1419,13 +1678,13 @@ public class AGHttpRepoClient implements AutoCloseable {
                 queryParams.add(new BasicNameValuePair(AGProtocol.CHECK_VARIABLES,
                         Boolean.toString(q.isCheckVariables())));
             }
-            if (q.getLimit() >= 0) {
+            if (limit >= 0) {
                 queryParams.add(new BasicNameValuePair(AGProtocol.LIMIT_PARAM_NAME,
-                        Integer.toString(q.getLimit())));
+                        Integer.toString(limit)));
             }
-            if (q.getOffset() >= 0) {
+            if (offset >= 0) {
                 queryParams.add(new BasicNameValuePair("offset",
-                        Integer.toString(q.getOffset())));
+                        Integer.toString(offset)));
             }
             if (q.isLoggingEnabled()) {
                 queryParams.add(new BasicNameValuePair("logQuery", "true"));
@@ -1809,11 +2068,24 @@ public class AGHttpRepoClient implements AutoCloseable {
         return handler.getResult();
     }
 
+    /**
+     * Keeps a dedicated session alive.  A rollback deferred with
+     * {@link #rollbackOnNextRequest()} is left for the next other request,
+     * since a ping does not look at the session's transaction.
+     *
+     * @throws AGHttpException if the session cannot be reached
+     */
     public void ping() throws AGHttpException {
         if (usingDedicatedSession) {
             String url = AGProtocol.getSessionPingLocation(getRoot());
 
-            get(url, null, null, null);
+            touch();
+            try {
+                getHTTPClient().get(url, prepareHeaders(null, false), prepareParams(null), null);
+            } catch (AGHttpException e) {
+                dirty = true;
+                throw e;
+            }
         }
     }
 
@@ -1881,8 +2153,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         String url = AGProtocol.getGeoBoxLocation(getRoot());
         List<Header> headers = new ArrayList<>(1);
 
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredRDFFormat().getDefaultMIMEType()));
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getRDFAcceptMIMETypes(handler)));
 
         List<NameValuePair> params = new ArrayList<>(7);
         params.add(new BasicNameValuePair(AGProtocol.TYPE_PARAM_NAME, type_uri));
@@ -1904,8 +2175,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         String url = AGProtocol.getGeoCircleLocation(getRoot());
         List<Header> headers = new ArrayList<>(1);
 
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredRDFFormat().getDefaultMIMEType()));
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getRDFAcceptMIMETypes(handler)));
 
         List<NameValuePair> params = new ArrayList<>(7);
         params.add(new BasicNameValuePair(AGProtocol.TYPE_PARAM_NAME, type_uri));
@@ -1925,8 +2195,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         String url = AGProtocol.getGeoHaversineLocation(getRoot());
         List<Header> headers = new ArrayList<>(1);
 
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredRDFFormat().getDefaultMIMEType()));
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getRDFAcceptMIMETypes(handler)));
 
         List<NameValuePair> params = new ArrayList<>(7);
         params.add(new BasicNameValuePair(AGProtocol.TYPE_PARAM_NAME, type_uri));
@@ -1946,8 +2215,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         String url = AGProtocol.getGeoPolygonLocation(getRoot());
         List<Header> headers = new ArrayList<>(1);
 
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredRDFFormat().getDefaultMIMEType()));
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getRDFAcceptMIMETypes(handler)));
 
         List<NameValuePair> params = new ArrayList<>(7);
         params.add(new BasicNameValuePair(AGProtocol.TYPE_PARAM_NAME, type_uri));
@@ -2236,15 +2504,16 @@ public class AGHttpRepoClient implements AutoCloseable {
         String url = Protocol.getStatementsLocation(getRoot()) + "/duplicates";
         List<Header> headers = new ArrayList<>(1);
 
-        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, getPreferredRDFFormat().getDefaultMIMEType()));
+        AGRDFHandler rdfHandler =
+                new AGRDFHandler(getPreferredRDFFormat(), handler, getValueFactory(), getAllowExternalBlankNodeIds());
+        headers.add(new BasicHeader(Protocol.ACCEPT_PARAM_NAME, rdfHandler.getRequestMIMEType()));
 
         List<NameValuePair> params = new ArrayList<>(2);
         if (comparisonMode != null) {
             params.add(new BasicNameValuePair("mode", comparisonMode));
         }
 
-        get(url, headers, params,
-                new AGRDFHandler(getPreferredRDFFormat(), handler, getValueFactory(), getAllowExternalBlankNodeIds()));
+        get(url, headers, params, rdfHandler);
     }
 
     /**
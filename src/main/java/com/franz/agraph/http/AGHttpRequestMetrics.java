@@ -0,0 +1,145 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+/**
+ * Measurements of one HTTP request, passed to an {@link AGHttpMetricsListener}.
+ * <p>
+ * The time of a request is split into the time spent waiting for a
+ * connection, the time until the response headers arrive, and the time
+ * spent by the response handler.  Times are in nanoseconds; a phase the
+ * request did not reach (for instance because no connection could be
+ * leased) is reported as -1.</p>
+ */
+public final class AGHttpRequestMetrics {
+    private final String endpoint;
+    private final String method;
+    private final int status;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long leaseNanos;
+    private final long timeToFirstByteNanos;
+    private final long handlerNanos;
+    private final long totalNanos;
+    private final Throwable error;
+
+    AGHttpRequestMetrics(String endpoint, String method, int status,
+                         long bytesSent, long bytesReceived,
+                         long leaseNanos, long timeToFirstByteNanos, long handlerNanos, long totalNanos,
+                         Throwable error) {
+        this.endpoint = endpoint;
+        this.method = method;
+        this.status = status;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.leaseNanos = leaseNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.handlerNanos = handlerNanos;
+        this.totalNanos = totalNanos;
+        this.error = error;
+    }
+
+    /**
+     * The kind of service called: the first component of the request
+     * path after the catalog, repository and session it addresses, such
+     * as "statements", "commit" or "size".  Requests to a repository or
+     * session itself, which include queries, are reported as "repository";
+     * lists of catalogs or repositories as "catalogs" or "repositories".
+     *
+     * @return the endpoint class
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the HTTP method, such as GET or POST
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the HTTP status code of the response, or 0 if there was none
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the number of bytes of the request sent, including headers
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of bytes of the response body read, as sent by the server
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Time spent obtaining a connection from the pool, including
+     * connecting if a new connection had to be opened.
+     *
+     * @return the time in nanoseconds, or -1
+     */
+    public long getLeaseNanos() {
+        return leaseNanos;
+    }
+
+    /**
+     * Time from starting to send the request until the response
+     * headers have been received, mostly spent by the server.
+     *
+     * @return the time in nanoseconds, or -1
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     * Time spent by the response handler.  Handlers that stream their
+     * result only start reading the response in that time.
+     *
+     * @return the time in nanoseconds, or -1
+     */
+    public long getHandlerNanos() {
+        return handlerNanos;
+    }
+
+    /**
+     * Time from the start of the request until it was complete,
+     * including reading the whole response.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the exception the request failed with, or null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + method + " " + endpoint
+                + " status=" + status
+                + " sent=" + bytesSent
+                + " received=" + bytesReceived
+                + " lease=" + leaseNanos
+                + " ttfb=" + timeToFirstByteNanos
+                + " handler=" + handlerNanos
+                + " total=" + totalNanos
+                + (error == null ? "" : " error=" + error)
+                + "}";
+    }
+}
@@ -0,0 +1,189 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * A request entity that sends statements as the JSON rows accepted by
+ * the statements service, encoding each statement while the request
+ * body is written.
+ * <p>
+ * Each row has the form <code>[subj, pred, obj, context, attributes]</code>,
+ * with values encoded by the supplied function (normally to N-Triples
+ * syntax), a null context for the default graph, and the attributes
+ * omitted when there are none.  When contexts are given, each statement
+ * is written once per context, in place of its own context.</p>
+ * <p>
+ * Nothing is buffered beyond the output stream's own buffer, so the
+ * memory used does not depend on the number of statements.  An entity
+ * built from an {@link Iterable} can be written more than once; one built
+ * from an {@link Iterator} cannot.</p>
+ */
+public class AGJSONStatementsEntity extends AbstractHttpEntity {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Iterable<? extends Statement> statements;
+    private Iterator<? extends Statement> iterator;
+    private final Function<Value, String> encoder;
+    private final String attributes;
+    private final Resource[] contexts;
+
+    /**
+     * Creates a repeatable entity.
+     *
+     * @param statements the statements to send
+     * @param encoder    converts a value to the string sent to the server
+     * @param attributes triple attributes for every statement, or null
+     * @param contexts   contexts overriding those of the statements
+     */
+    public AGJSONStatementsEntity(Iterable<? extends Statement> statements,
+                                  Function<Value, String> encoder,
+                                  JSONObject attributes, Resource... contexts) {
+        this(statements, null, encoder, attributes, contexts);
+    }
+
+    /**
+     * Creates an entity that consumes the iterator when written.
+     *
+     * @param statements the statements to send
+     * @param encoder    converts a value to the string sent to the server
+     * @param attributes triple attributes for every statement, or null
+     * @param contexts   contexts overriding those of the statements
+     */
+    public AGJSONStatementsEntity(Iterator<? extends Statement> statements,
+                                  Function<Value, String> encoder,
+                                  JSONObject attributes, Resource... contexts) {
+        this(null, statements, encoder, attributes, contexts);
+    }
+
+    private AGJSONStatementsEntity(Iterable<? extends Statement> statements,
+                                   Iterator<? extends Statement> iterator,
+                                   Function<Value, String> encoder,
+                                   JSONObject attributes, Resource... contexts) {
+        this.statements = statements;
+        this.iterator = iterator;
+        this.encoder = encoder;
+        this.attributes = attributes == null ? null : attributes.toString();
+        this.contexts = contexts;
+        setContentType(ContentType.create("application/json", StandardCharsets.UTF_8).toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return statements != null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return statements == null && iterator != null;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Iterator<? extends Statement> it;
+        if (statements != null) {
+            it = statements.iterator();
+        } else if (iterator != null) {
+            it = iterator;
+            iterator = null;
+        } else {
+            throw new IllegalStateException("Statements have already been written");
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write('[');
+        boolean first = true;
+        while (it.hasNext()) {
+            if (writeRows(writer, first, it.next(), encoder, attributes, contexts) > 0) {
+                first = false;
+            }
+        }
+        writer.write(']');
+        // Do not close: the stream belongs to the connection.
+        writer.flush();
+    }
+
+    /**
+     * Writes the rows for one statement, without the enclosing brackets
+     * of the array.
+     *
+     * @param writer     where to write the rows
+     * @param first      whether no row precedes these in the array
+     * @param st         the statement
+     * @param encoder    converts a value to the string sent to the server
+     * @param attributes triple attributes as JSON text, or null
+     * @param contexts   contexts overriding that of the statement
+     * @return the number of rows written
+     * @throws IOException if writing fails
+     */
+    public static int writeRows(Writer writer, boolean first, Statement st,
+                                Function<Value, String> encoder, String attributes,
+                                Resource... contexts) throws IOException {
+        if (contexts.length == 0) {
+            writeRow(writer, first, st, st.getContext(), encoder, attributes);
+            return 1;
+        }
+        for (Resource c : contexts) {
+            writeRow(writer, first, st, c, encoder, attributes);
+            first = false;
+        }
+        return contexts.length;
+    }
+
+    private static void writeRow(Writer writer, boolean first, Statement st, Resource context,
+                                 Function<Value, String> encoder, String attributes) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        writer.write('[');
+        JSONObject.quote(encoder.apply(st.getSubject()), writer);
+        writer.write(',');
+        JSONObject.quote(encoder.apply(st.getPredicate()), writer);
+        writer.write(',');
+        JSONObject.quote(encoder.apply(st.getObject()), writer);
+        writer.write(',');
+        if (context == null) {
+            writer.write("null");
+        } else {
+            JSONObject.quote(encoder.apply(context), writer);
+        }
+        if (attributes != null) {
+            writer.write(',');
+            JSONObject.quote(attributes, writer);
+        }
+        writer.write(']');
+    }
+}
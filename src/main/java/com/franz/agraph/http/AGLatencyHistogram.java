@@ -0,0 +1,163 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of non-negative values, such as latencies
+ * in nanoseconds, with a fixed relative precision.
+ * <p>
+ * Values are counted in buckets that split each power of two into
+ * 32 equal parts, so a reported percentile is within about 3% of the
+ * recorded value, over the whole range of <code>long</code>.
+ * Recording is lock-free and does not allocate.</p>
+ */
+public class AGLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS have a bucket each; above that
+    // there are SUB_BUCKETS buckets for each power of two up to 2^62.
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * @return the largest value counted in the given bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        final long mantissa = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + mantissa * width + width - 1;
+    }
+
+    /**
+     * Counts a value.  Negative values are counted as 0.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+        min.accumulate(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the smallest recorded value, or 0 if there is none
+     */
+    public long getMin() {
+        final long m = min.get();
+        return m == Long.MAX_VALUE ? 0 : m;
+    }
+
+    /**
+     * @return the largest recorded value, or 0 if there is none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, or 0 if there is none
+     */
+    public double getMean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns a value such that the given percentage of the recorded
+     * values are less than or equal to it (within the precision of the
+     * histogram).
+     *
+     * @param percentile a number between 0 and 100
+     * @return the value at the percentile, or 0 if there are no values
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long total = 0;
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Forgets all recorded values.  Values recorded concurrently
+     * may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.reset();
+        max.reset();
+    }
+
+    /**
+     * Formats nanosecond values as milliseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+                getCount(),
+                getMean() / TimeUnit.MILLISECONDS.toNanos(1),
+                toMillis(getValueAtPercentile(50)),
+                toMillis(getValueAtPercentile(99)),
+                toMillis(getMax()));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
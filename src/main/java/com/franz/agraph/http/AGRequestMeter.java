@@ -0,0 +1,244 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes the measurements of one request for an {@link AGHttpMetricsListener}.
+ * <p>
+ * {@link AGHTTPClient} creates a meter per request and stores it in the
+ * request context, where {@link MeteringRequestExecutor} finds it once a
+ * connection has been leased.  The response body is counted as it is
+ * read, and the listener is called when it has been read or closed, or
+ * when the request fails.</p>
+ */
+class AGRequestMeter {
+    private static final Logger logger = LoggerFactory.getLogger(AGRequestMeter.class);
+
+    static final String CONTEXT_ATTRIBUTE = AGRequestMeter.class.getName();
+
+    private final AGHttpMetricsListener listener;
+    private final String endpoint;
+    private final String method;
+    private final long start = System.nanoTime();
+
+    private volatile long sendStart;
+    private volatile long leaseNanos = -1;
+    private volatile long timeToFirstByteNanos = -1;
+    private volatile long handlerNanos = -1;
+    private volatile int status;
+    private volatile long bytesSent;
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private volatile Throwable error;
+
+    // Set when the body has been read or closed, and when the client
+    // no longer handles the response; complete when both are set.
+    private volatile boolean bodyDone;
+    private volatile boolean handedOver;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    AGRequestMeter(AGHttpMetricsListener listener, HttpUriRequest request) {
+        this.listener = listener;
+        this.endpoint = endpointOf(request.getURI().getRawPath());
+        this.method = request.getMethod();
+    }
+
+    /**
+     * Classifies a request path as described in {@link AGHttpRequestMetrics#getEndpoint()}.
+     */
+    static String endpointOf(String path) {
+        if (path == null) {
+            return "/";
+        }
+        final String[] segments = path.split("/");
+        String container = null;
+        int i = 0;
+        while (i < segments.length) {
+            final String segment = segments[i];
+            if (segment.isEmpty()) {
+                i++;
+            } else if (segment.equals("catalogs") || segment.equals("repositories") || segment.equals("sessions")) {
+                if (i + 1 >= segments.length) {
+                    return segment;
+                }
+                container = segment.equals("catalogs") ? "catalogs" : "repository";
+                i += 2;
+            } else {
+                return segment;
+            }
+        }
+        return container == null ? "/" : container;
+    }
+
+    void sending() {
+        final long now = System.nanoTime();
+        if (leaseNanos < 0) {
+            leaseNanos = now - start;
+        }
+        sendStart = now;
+    }
+
+    void received(HttpResponse response, long sent) {
+        timeToFirstByteNanos = System.nanoTime() - sendStart;
+        bytesSent += sent;
+        status = response.getStatusLine().getStatusCode();
+        final HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new CountingEntity(entity));
+        }
+    }
+
+    void handled(long nanos) {
+        handlerNanos = nanos;
+    }
+
+    void failed(Throwable e) {
+        if (error == null) {
+            error = e;
+        }
+    }
+
+    /**
+     * Completes now, regardless of the state of the response body.
+     */
+    void complete() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        final AGHttpRequestMetrics metrics = new AGHttpRequestMetrics(endpoint, method, status,
+                bytesSent, bytesReceived.get(),
+                leaseNanos, timeToFirstByteNanos, handlerNanos, System.nanoTime() - start,
+                error);
+        try {
+            listener.requestCompleted(metrics);
+        } catch (RuntimeException e) {
+            logger.warn("Metrics listener failed for " + metrics, e);
+        }
+    }
+
+    /**
+     * Completes once the response body has been read or closed
+     * (which may already be the case).
+     */
+    void completeWhenConsumed() {
+        handedOver = true;
+        if (bodyDone) {
+            complete();
+        }
+    }
+
+    private void bodyDone() {
+        bodyDone = true;
+        if (handedOver) {
+            complete();
+        }
+    }
+
+    /**
+     * Measures requests carrying an {@link AGRequestMeter} in their context.
+     */
+    static class MeteringRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            final AGRequestMeter meter = (AGRequestMeter) context.getAttribute(CONTEXT_ATTRIBUTE);
+            if (meter == null) {
+                return super.execute(request, conn, context);
+            }
+            final long sentBefore = conn.getMetrics().getSentBytesCount();
+            meter.sending();
+            final HttpResponse response = super.execute(request, conn, context);
+            meter.received(response, conn.getMetrics().getSentBytesCount() - sentBefore);
+            return response;
+        }
+    }
+
+    private class CountingEntity extends HttpEntityWrapper {
+        CountingEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final InputStream in = super.getContent();
+            return in == null ? null : new CountingInputStream(in);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = getContent()) {
+                if (in != null) {
+                    final byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+        }
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                bodyDone();
+            } else {
+                bytesReceived.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n < 0) {
+                bodyDone();
+            } else {
+                bytesReceived.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            bytesReceived.addAndGet(skipped);
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                bodyDone();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps dedicated sessions alive by pinging those that have been idle
+ * for half their lifetime.
+ * <p>
+ * There is one heartbeat per executor (normally the one shared by all
+ * {@link com.franz.agraph.repository.AGServer} instances, see
+ * {@link com.franz.agraph.repository.AGServer#getExecutor()}), serving all
+ * sessions opened with that executor.  It runs a single timer that fires
+ * when the next session becomes due, rather than a periodic task per
+ * session.  Every request made on a session counts as a use, so sessions
+ * in active use are never pinged.  Due sessions are pinged by at most
+ * {@link #PROP_MAX_CONCURRENT_PINGS} tasks on the executor at a time.</p>
+ */
+public class AGSessionHeartbeat {
+    private static final Logger logger = LoggerFactory.getLogger(AGSessionHeartbeat.class);
+
+    /**
+     * Maximum number of pings a heartbeat sends at the same time (default 4).
+     */
+    public static final String PROP_MAX_CONCURRENT_PINGS = "com.franz.agraph.http.maxConcurrentPings";
+    private static final int DEFAULT_MAX_CONCURRENT_PINGS = 4;
+
+    // Sessions due within this time are pinged together with those already due.
+    private static final long MAX_SLACK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Heartbeats with at least one session, by executor.
+    private static final Map<ScheduledExecutorService, AGSessionHeartbeat> heartbeats = new IdentityHashMap<>();
+
+    private final ScheduledExecutorService executor;
+    private final int maxConcurrentPings;
+    // Registered sessions, mapped to whether a ping is queued or running.
+    private final Map<AGHttpRepoClient, AtomicBoolean> sessions = new ConcurrentHashMap<>();
+    private final Queue<AGHttpRepoClient> due = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final LongAdder pings = new LongAdder();
+
+    // Guarded by this.
+    private ScheduledFuture<?> timer;
+    private long timerDeadline;
+
+    private AGSessionHeartbeat(ScheduledExecutorService executor) {
+        this.executor = executor;
+        this.maxConcurrentPings = Math.max(1, Integer.getInteger(PROP_MAX_CONCURRENT_PINGS, DEFAULT_MAX_CONCURRENT_PINGS));
+    }
+
+    /**
+     * Returns the heartbeat running on the given executor.
+     *
+     * @param executor an executor
+     * @return the heartbeat, or null if no session uses that executor
+     */
+    public static AGSessionHeartbeat forExecutor(ScheduledExecutorService executor) {
+        synchronized (heartbeats) {
+            return heartbeats.get(executor);
+        }
+    }
+
+    static void register(ScheduledExecutorService executor, AGHttpRepoClient session) {
+        final AGSessionHeartbeat heartbeat;
+        synchronized (heartbeats) {
+            heartbeat = heartbeats.computeIfAbsent(executor, AGSessionHeartbeat::new);
+            heartbeat.sessions.put(session, new AtomicBoolean());
+        }
+        heartbeat.scheduleTimer(dueTime(session) - System.nanoTime());
+    }
+
+    static void unregister(ScheduledExecutorService executor, AGHttpRepoClient session) {
+        synchronized (heartbeats) {
+            final AGSessionHeartbeat heartbeat = heartbeats.get(executor);
+            if (heartbeat == null || heartbeat.sessions.remove(session) == null) {
+                return;
+            }
+            if (heartbeat.sessions.isEmpty()) {
+                heartbeats.remove(executor);
+                heartbeat.cancelTimer();
+            }
+        }
+    }
+
+    /**
+     * @return the number of sessions kept alive by this heartbeat
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of pings sent by this heartbeat
+     */
+    public long getPingCount() {
+        return pings.sum();
+    }
+
+    private static long halfLife(AGHttpRepoClient session) {
+        return TimeUnit.SECONDS.toNanos(session.getSessionLifetime()) / 2;
+    }
+
+    private static long dueTime(AGHttpRepoClient session) {
+        return session.getLastUsed() + halfLife(session);
+    }
+
+    /**
+     * @return whether the session should be pinged now
+     */
+    private static boolean isDue(AGHttpRepoClient session, long now) {
+        return dueTime(session) - now <= Math.min(MAX_SLACK_NANOS, halfLife(session) / 4);
+    }
+
+    private synchronized void scheduleTimer(long delayNanos) {
+        final long deadline = System.nanoTime() + Math.max(0, delayNanos);
+        if (timer != null) {
+            if (timerDeadline - deadline <= 0) {
+                return;
+            }
+            timer.cancel(false);
+        }
+        try {
+            timer = executor.schedule(this::tick, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+            timerDeadline = deadline;
+        } catch (RejectedExecutionException e) {
+            logger.debug("Heartbeat executor rejected task, sessions will not be pinged", e);
+            timer = null;
+        }
+    }
+
+    private synchronized void cancelTimer() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+
+    private void tick() {
+        synchronized (this) {
+            timer = null;
+        }
+        final long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        for (Map.Entry<AGHttpRepoClient, AtomicBoolean> entry : sessions.entrySet()) {
+            final AGHttpRepoClient session = entry.getKey();
+            if (isDue(session, now)) {
+                if (entry.getValue().compareAndSet(false, true)) {
+                    due.add(session);
+                }
+                // Rescheduled when the ping is done.
+            } else {
+                next = Math.min(next, dueTime(session) - now);
+            }
+        }
+        startWorkers();
+        if (next != Long.MAX_VALUE) {
+            scheduleTimer(next);
+        }
+    }
+
+    private void startWorkers() {
+        while (!due.isEmpty()) {
+            final int n = workers.get();
+            if (n >= maxConcurrentPings) {
+                return;
+            }
+            if (workers.compareAndSet(n, n + 1)) {
+                try {
+                    executor.execute(this::pingDueSessions);
+                } catch (RejectedExecutionException e) {
+                    workers.decrementAndGet();
+                    logger.debug("Heartbeat executor rejected task, sessions will not be pinged", e);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void pingDueSessions() {
+        try {
+            AGHttpRepoClient session;
+            while ((session = due.poll()) != null) {
+                final AtomicBoolean pending = sessions.get(session);
+                if (pending == null) {
+                    // Closed meanwhile.
+                    continue;
+                }
+                try {
+                    // Skip it if it was used since it was found due.
+                    if (isDue(session, System.nanoTime())) {
+                        // Counts as a use even if the ping fails, so that
+                        // a failing session is not retried right away.
+                        session.touch();
+                        session.ping();
+                        pings.increment();
+                    }
+                } catch (RuntimeException e) {
+                    // Pinger errors are normal when shutting down...
+                    logger.debug("Pinger exception", e);
+                } finally {
+                    pending.set(false);
+                }
+                if (sessions.containsKey(session)) {
+                    scheduleTimer(dueTime(session) - System.nanoTime());
+                }
+            }
+        } finally {
+            workers.decrementAndGet();
+            // A session may have been queued after this worker last looked.
+            startWorkers();
+        }
+    }
+}
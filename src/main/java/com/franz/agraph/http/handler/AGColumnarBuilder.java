@@ -0,0 +1,717 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.repository.AGColumn;
+import com.franz.agraph.repository.AGColumnarResult;
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects solutions into the columns of an {@link AGColumnarResult}.
+ * <p>
+ * Terms read from TSV are classified from their text: integers,
+ * doubles, decimals and UTC-convertible dateTimes are parsed straight
+ * into primitive arrays and IRIs into dictionary ids, without creating
+ * a literal or a string for each cell.  A column falls back to holding
+ * values as soon as one of its terms does not fit its current type; the
+ * cells already collected are then converted.</p>
+ */
+final class AGColumnarBuilder implements AGTQRTSVStreamer.RowHandler {
+    private static final Set<IRI> INTEGER_TYPES = new HashSet<>(Arrays.asList(
+            XMLSchema.INTEGER, XMLSchema.LONG, XMLSchema.INT, XMLSchema.SHORT, XMLSchema.BYTE,
+            XMLSchema.NON_NEGATIVE_INTEGER, XMLSchema.POSITIVE_INTEGER,
+            XMLSchema.NON_POSITIVE_INTEGER, XMLSchema.NEGATIVE_INTEGER,
+            XMLSchema.UNSIGNED_LONG, XMLSchema.UNSIGNED_INT, XMLSchema.UNSIGNED_SHORT,
+            XMLSchema.UNSIGNED_BYTE));
+    private static final Set<IRI> DOUBLE_TYPES = new HashSet<>(Arrays.asList(
+            XMLSchema.DOUBLE, XMLSchema.FLOAT, XMLSchema.DECIMAL));
+
+    // Powers of ten that are exact doubles.
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final AGValueFactory vf;
+    private final AGValueCache cache;
+    private final AGTQRTSVStreamer.TermDecoder decoder;
+    private List<String> bindingNames;
+    private Column[] columns;
+    private int rows;
+
+    // Results of the parse methods
+    private long longValue;
+    private double doubleValue;
+
+    AGColumnarBuilder(AGValueFactory vf) {
+        this.vf = vf;
+        this.cache = vf.getValueCache();
+        this.decoder = new AGTQRTSVStreamer.TermDecoder(vf);
+    }
+
+    @Override
+    public void start(List<String> names) {
+        bindingNames = new ArrayList<>(names);
+        columns = new Column[names.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(names.get(i));
+        }
+    }
+
+    @Override
+    public void field(int column, CharSequence text, int start, int end) {
+        if (column < columns.length) {
+            columns[column].set(rows, text, start, end);
+        }
+    }
+
+    /**
+     * Adds a value to the current row.
+     *
+     * @param column the index of the column
+     * @param value  the value, or null if unbound
+     */
+    void value(int column, Value value) {
+        if (column < columns.length) {
+            columns[column].set(rows, value);
+        }
+    }
+
+    @Override
+    public void endRow() {
+        rows++;
+    }
+
+    AGColumnarResult build() {
+        if (columns == null) {
+            start(new ArrayList<>());
+        }
+        final List<AGColumn> built = new ArrayList<>(columns.length);
+        for (Column column : columns) {
+            built.add(column.build(rows));
+        }
+        return new AGColumnarResult(bindingNames, built, rows);
+    }
+
+    private boolean parseLong(CharSequence text, int start, int end) {
+        int i = start;
+        if (i == end) {
+            return false;
+        }
+        final char first = text.charAt(i);
+        final boolean negative = first == '-';
+        if (first == '+' || first == '-') {
+            if (++i == end) {
+                return false;
+            }
+        }
+        // Accumulate negatively, as Long.parseLong does, to reach MIN_VALUE.
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            final int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+        longValue = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * Parses a decimal or double.  Numbers with at most 18 significant
+     * digits and a small exponent are computed exactly from their digits;
+     * others go through {@link Double#parseDouble(String)}.
+     */
+    private boolean parseDouble(CharSequence text, int start, int end) {
+        int i = start;
+        if (i == end) {
+            return false;
+        }
+        final char first = text.charAt(i);
+        final boolean negative = first == '-';
+        if (first == '+' || first == '-') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fracDigits = 0;
+        boolean dot = false;
+        boolean any = false;
+        for (; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if ((mantissa != 0 || c != '0') && ++digits > 18) {
+                    return parseDoubleSlowly(text, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) {
+                    fracDigits++;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            // INF, -INF or NaN
+            return parseDoubleSlowly(text, start, end);
+        }
+        int exponent = 0;
+        if (i < end) {
+            final char c = text.charAt(i++);
+            if (c != 'e' && c != 'E') {
+                return false;
+            }
+            boolean negativeExponent = false;
+            if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            if (i == end) {
+                return false;
+            }
+            for (; i < end; i++) {
+                final int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return false;
+                }
+                if (exponent < 100000) {
+                    exponent = exponent * 10 + digit;
+                }
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        final int scale = exponent - fracDigits;
+        final double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (mantissa < (1L << 53) && scale >= -22 && scale <= 22) {
+            // Both operands are exact, so the result is correctly rounded.
+            value = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+        } else {
+            return parseDoubleSlowly(text, start, end);
+        }
+        doubleValue = negative ? -value : value;
+        return true;
+    }
+
+    private boolean parseDoubleSlowly(CharSequence text, int start, int end) {
+        final String s = text.subSequence(start, end).toString();
+        switch (s) {
+            case "INF":
+            case "+INF":
+                doubleValue = Double.POSITIVE_INFINITY;
+                return true;
+            case "-INF":
+                doubleValue = Double.NEGATIVE_INFINITY;
+                return true;
+            case "NaN":
+                doubleValue = Double.NaN;
+                return true;
+            default:
+                try {
+                    doubleValue = Double.parseDouble(s);
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+        }
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * Days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+     */
+    private static long epochDay(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        final long era = (year >= 0 ? year : year - 399) / 400;
+        final long yearOfEra = year - era * 400;
+        final long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Parses an xsd:dateTime of the form YYYY-MM-DDThh:mm:ss[.sss](Z|+hh:mm|-hh:mm)
+     * into {@link #longValue} as milliseconds since the epoch.  Values
+     * without a time zone, or with more precision than milliseconds, are
+     * rejected, as they have no exact instant in milliseconds.
+     */
+    private boolean parseDateTime(CharSequence text, int start, int end) {
+        if (end - start < 20 || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-'
+                || text.charAt(start + 10) != 'T' || text.charAt(start + 13) != ':'
+                || text.charAt(start + 16) != ':') {
+            return false;
+        }
+        final int year = digits(text, start, 4);
+        final int month = digits(text, start + 5, 2);
+        final int day = digits(text, start + 8, 2);
+        final int hour = digits(text, start + 11, 2);
+        final int minute = digits(text, start + 14, 2);
+        final int second = digits(text, start + 17, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59) {
+            return false;
+        }
+        int i = start + 19;
+        int millis = 0;
+        if (text.charAt(i) == '.') {
+            int scale = 100;
+            i++;
+            final int fractionStart = i;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                final int digit = text.charAt(i) - '0';
+                if (scale == 0 && digit != 0) {
+                    return false;
+                }
+                millis += digit * scale;
+                scale /= 10;
+                i++;
+            }
+            if (i == fractionStart) {
+                return false;
+            }
+        }
+        int offsetMinutes;
+        if (i + 1 == end && text.charAt(i) == 'Z') {
+            offsetMinutes = 0;
+        } else if (i + 6 == end && (text.charAt(i) == '+' || text.charAt(i) == '-')
+                && text.charAt(i + 3) == ':') {
+            final int offsetHours = digits(text, i + 1, 2);
+            final int offsetMins = digits(text, i + 4, 2);
+            if (offsetHours < 0 || offsetHours > 14 || offsetMins < 0 || offsetMins > 59) {
+                return false;
+            }
+            offsetMinutes = offsetHours * 60 + offsetMins;
+            if (text.charAt(i) == '-') {
+                offsetMinutes = -offsetMinutes;
+            }
+        } else {
+            return false;
+        }
+        final long seconds = epochDay(year, month, day) * 86400L
+                + hour * 3600L + minute * 60L + second - offsetMinutes * 60L;
+        longValue = seconds * 1000 + millis;
+        return true;
+    }
+
+    /**
+     * Interns the IRIs of one column, looking them up by their text.
+     */
+    private final class Dictionary {
+        private String[] keys = new String[16];
+        private IRI[] iris = new IRI[16];
+        private int[] hashes = new int[16];
+        // Slot to id + 1, 0 if empty
+        private int[] table = new int[32];
+        private int size;
+
+        /**
+         * @param iri the IRI with the text, or null to create it on a miss
+         * @return the id of the IRI in text[start, end), or -1 if it is not
+         * a valid IRI or stands for an external blank node
+         */
+        int id(CharSequence text, int start, int end, IRI iri) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            final int mask = table.length - 1;
+            int slot = (h ^ (h >>> 16)) & mask;
+            for (int entry = table[slot]; entry != 0; entry = table[slot]) {
+                final int id = entry - 1;
+                if (hashes[id] == h && matches(keys[id], text, start, end)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (iri == null) {
+                try {
+                    iri = cache.createIRI(vf, text, start, end);
+                } catch (IllegalArgumentException e) {
+                    return -1;
+                }
+            }
+            if (vf.isURIForExternalBlankNode(iri)) {
+                return -1;
+            }
+            return add(h, iri);
+        }
+
+        private boolean matches(String key, CharSequence text, int start, int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (key.charAt(i - start) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(int hash, IRI iri) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                iris = Arrays.copyOf(iris, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            final int id = size++;
+            keys[id] = iri.stringValue();
+            iris[id] = iri;
+            hashes[id] = hash;
+            if (size * 2 > table.length) {
+                table = new int[table.length * 2];
+                for (int i = 0; i < size; i++) {
+                    insert(i);
+                }
+            } else {
+                insert(id);
+            }
+            return id;
+        }
+
+        private void insert(int id) {
+            final int mask = table.length - 1;
+            int slot = (hashes[id] ^ (hashes[id] >>> 16)) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+
+        IRI[] toArray() {
+            return Arrays.copyOf(iris, size);
+        }
+    }
+
+    /**
+     * The cells of one variable, in the arrays of its current type.
+     */
+    private final class Column {
+        private final String name;
+        private final BitSet bound = new BitSet();
+        // Null until a value is bound
+        private AGColumn.Type type;
+        private IRI datatype;
+        private long[] longs;
+        private double[] doubles;
+        private int[] ids;
+        private Dictionary dictionary;
+        private Value[] values;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Sets a cell from a TSV term.
+         */
+        void set(int row, CharSequence text, int start, int end) {
+            if (start == end) {
+                return;
+            }
+            if (type != AGColumn.Type.VALUE) {
+                final char first = text.charAt(start);
+                if (first == '<' && end - start > 1 && text.charAt(end - 1) == '>') {
+                    if (setIRI(row, text, start + 1, end - 1, null)) {
+                        return;
+                    }
+                } else if (first == '"') {
+                    if (setTypedLiteral(row, text, start, end)) {
+                        return;
+                    }
+                } else if (first == '+' || first == '-' || first == '.'
+                        || (first >= '0' && first <= '9')) {
+                    if (setNumber(row, text, start, end)) {
+                        return;
+                    }
+                }
+            }
+            final Value value = decoder.decode(text, start, end);
+            if (text.charAt(start) != '"' && value instanceof Literal
+                    && XMLSchema.NEGATIVE_INTEGER.equals(((Literal) value).getDatatype())) {
+                // An unquoted integer, as in setNumber.
+                setValue(row, vf.createLiteral(((Literal) value).getLabel(), XMLSchema.INTEGER));
+                return;
+            }
+            setValue(row, value);
+        }
+
+        /**
+         * Sets a cell from a value.
+         */
+        void set(int row, Value value) {
+            if (value == null) {
+                return;
+            }
+            if (type != AGColumn.Type.VALUE) {
+                if (value instanceof IRI) {
+                    final String text = value.stringValue();
+                    if (setIRI(row, text, 0, text.length(), (IRI) value)) {
+                        return;
+                    }
+                } else if (value instanceof Literal) {
+                    final String label = ((Literal) value).getLabel();
+                    if (setTyped(row, label, 0, label.length(), ((Literal) value).getDatatype())) {
+                        return;
+                    }
+                }
+            }
+            setValue(row, value);
+        }
+
+        private boolean setIRI(int row, CharSequence text, int start, int end, IRI iri) {
+            if (type != null && type != AGColumn.Type.IRI) {
+                return false;
+            }
+            if (dictionary == null) {
+                dictionary = new Dictionary();
+            }
+            final int id = dictionary.id(text, start, end, iri);
+            if (id < 0) {
+                return false;
+            }
+            type = AGColumn.Type.IRI;
+            ids = grow(ids, row);
+            ids[row] = id;
+            bound.set(row);
+            return true;
+        }
+
+        /**
+         * Handles a quoted TSV term with a datatype and no escapes.
+         */
+        private boolean setTypedLiteral(int row, CharSequence text, int start, int end) {
+            int close = end - 1;
+            while (close > start && text.charAt(close) != '"') {
+                close--;
+            }
+            if (close == start || end - close < 5 || text.charAt(close + 1) != '^'
+                    || text.charAt(close + 2) != '^' || text.charAt(close + 3) != '<'
+                    || text.charAt(end - 1) != '>') {
+                return false;
+            }
+            for (int i = start + 1; i < close; i++) {
+                if (text.charAt(i) == '\\') {
+                    return false;
+                }
+            }
+            final IRI dt;
+            try {
+                dt = cache.createIRI(vf, text, close + 4, end - 1);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            return setTyped(row, text, start + 1, close, dt);
+        }
+
+        /**
+         * Handles an unquoted TSV number: xsd:integer, xsd:decimal or
+         * xsd:double depending on its form.
+         */
+        private boolean setNumber(int row, CharSequence text, int start, int end) {
+            boolean dot = false;
+            boolean exponent = false;
+            for (int i = start; i < end; i++) {
+                final char c = text.charAt(i);
+                dot |= c == '.';
+                exponent |= c == 'e' || c == 'E';
+            }
+            if (!dot && !exponent) {
+                return parseLong(text, start, end) && setLong(row, XMLSchema.INTEGER);
+            }
+            return parseDouble(text, start, end)
+                    && setDouble(row, exponent ? XMLSchema.DOUBLE : XMLSchema.DECIMAL);
+        }
+
+        private boolean setTyped(int row, CharSequence label, int start, int end, IRI dt) {
+            if (INTEGER_TYPES.contains(dt)) {
+                return parseLong(label, start, end) && setLong(row, dt);
+            } else if (DOUBLE_TYPES.contains(dt)) {
+                return parseDouble(label, start, end) && setDouble(row, dt);
+            } else if (XMLSchema.DATETIME.equals(dt)) {
+                return parseDateTime(label, start, end) && setDateTime(row);
+            }
+            return false;
+        }
+
+        private boolean fits(AGColumn.Type t, IRI dt) {
+            if (type == null) {
+                type = t;
+                datatype = dt;
+                return true;
+            }
+            return type == t && datatype.equals(dt);
+        }
+
+        private boolean setLong(int row, IRI dt) {
+            if (!fits(AGColumn.Type.LONG, dt)) {
+                return false;
+            }
+            longs = grow(longs, row);
+            longs[row] = longValue;
+            bound.set(row);
+            return true;
+        }
+
+        private boolean setDouble(int row, IRI dt) {
+            if (!fits(AGColumn.Type.DOUBLE, dt)) {
+                return false;
+            }
+            doubles = grow(doubles, row);
+            doubles[row] = doubleValue;
+            bound.set(row);
+            return true;
+        }
+
+        private boolean setDateTime(int row) {
+            if (!fits(AGColumn.Type.DATE_TIME, XMLSchema.DATETIME)) {
+                return false;
+            }
+            longs = grow(longs, row);
+            longs[row] = longValue;
+            bound.set(row);
+            return true;
+        }
+
+        private void setValue(int row, Value value) {
+            if (value == null) {
+                return;
+            }
+            value = AGHttpRepoClient.getApplicationValue(value, vf);
+            if (type != AGColumn.Type.VALUE) {
+                // Convert the cells collected so far.
+                final Value[] converted = new Value[Math.max(16, row + 1)];
+                if (type != null) {
+                    final AGColumn old = build(row);
+                    for (int i = bound.nextSetBit(0); i >= 0 && i < row;
+                         i = bound.nextSetBit(i + 1)) {
+                        converted[i] = old.getValue(i);
+                    }
+                }
+                type = AGColumn.Type.VALUE;
+                datatype = null;
+                longs = null;
+                doubles = null;
+                ids = null;
+                dictionary = null;
+                values = converted;
+            }
+            values = grow(values, row);
+            values[row] = value;
+            bound.set(row);
+        }
+
+        AGColumn build(int size) {
+            if (type == null) {
+                return new AGColumn.ValueColumn(name, size, bound, vf, new Value[size]);
+            }
+            switch (type) {
+                case LONG:
+                    return new AGColumn.LongColumn(name, size, bound, vf,
+                            trim(longs, size), datatype);
+                case DOUBLE:
+                    return new AGColumn.DoubleColumn(name, size, bound, vf,
+                            trim(doubles, size), datatype);
+                case DATE_TIME:
+                    return new AGColumn.DateTimeColumn(name, size, bound, vf, trim(longs, size));
+                case IRI:
+                    return new AGColumn.IRIColumn(name, size, bound, vf,
+                            trim(ids, size), dictionary.toArray());
+                default:
+                    return new AGColumn.ValueColumn(name, size, bound, vf, trim(values, size));
+            }
+        }
+    }
+
+    private static long[] grow(long[] a, int row) {
+        if (a == null) {
+            return new long[Math.max(16, row + 1)];
+        }
+        return a.length > row ? a : Arrays.copyOf(a, Math.max(row + 1, a.length * 2));
+    }
+
+    private static double[] grow(double[] a, int row) {
+        if (a == null) {
+            return new double[Math.max(16, row + 1)];
+        }
+        return a.length > row ? a : Arrays.copyOf(a, Math.max(row + 1, a.length * 2));
+    }
+
+    private static int[] grow(int[] a, int row) {
+        if (a == null) {
+            return new int[Math.max(16, row + 1)];
+        }
+        return a.length > row ? a : Arrays.copyOf(a, Math.max(row + 1, a.length * 2));
+    }
+
+    private static Value[] grow(Value[] a, int row) {
+        return a.length > row ? a : Arrays.copyOf(a, Math.max(row + 1, a.length * 2));
+    }
+
+    private static long[] trim(long[] a, int size) {
+        return a.length == size ? a : Arrays.copyOf(a, size);
+    }
+
+    private static double[] trim(double[] a, int size) {
+        return a.length == size ? a : Arrays.copyOf(a, size);
+    }
+
+    private static int[] trim(int[] a, int size) {
+        return a.length == size ? a : Arrays.copyOf(a, size);
+    }
+
+    private static Value[] trim(Value[] a, int size) {
+        return a.length == size ? a : Arrays.copyOf(a, size);
+    }
+}
@@ -0,0 +1,166 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.AbstractBindingSet;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.impl.SimpleBinding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A solution that keeps the raw text of its row and converts a term to
+ * a value only when the value is first asked for.
+ * <p>
+ * The row holds the terms back to back; term i ends at ends[i] and
+ * starts where term i - 1 ends.  An empty term is unbound, which is
+ * known without decoding it, so the size of the solution costs
+ * nothing.  Decoded values are kept, and equality and
+ * hash codes are those of any other {@link org.eclipse.rdf4j.query.BindingSet},
+ * which decodes all terms.</p>
+ * <p>
+ * It is serialized as a {@link ListBindingSet} of the decoded values.
+ * Like other binding sets it is not meant to be shared between threads
+ * while it is being read.</p>
+ */
+final class AGLazyBindingSet extends AbstractBindingSet {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Converts the term in text[start, end) to a value.
+     */
+    interface Decoder {
+        Value decode(CharSequence text, int start, int end);
+    }
+
+    private final List<String> names;
+    private final String row;
+    private final int[] ends;
+    private final Decoder decoder;
+    // Null until decoded
+    private final Value[] values;
+    private Set<String> bindingNames;
+
+    AGLazyBindingSet(List<String> names, String row, int[] ends, Decoder decoder) {
+        this.names = names;
+        this.row = row;
+        this.ends = ends;
+        this.decoder = decoder;
+        this.values = new Value[Math.min(names.size(), ends.length)];
+    }
+
+    private int start(int i) {
+        return i == 0 ? 0 : ends[i - 1];
+    }
+
+    private boolean isBound(int i) {
+        return start(i) != ends[i];
+    }
+
+    private Value getValue(int i) {
+        Value value = values[i];
+        if (value == null && isBound(i)) {
+            value = decoder.decode(row, start(i), ends[i]);
+            values[i] = value;
+        }
+        return value;
+    }
+
+    private int indexOf(String name) {
+        final int i = names.indexOf(name);
+        return i < values.length ? i : -1;
+    }
+
+    @Override
+    public Value getValue(String bindingName) {
+        final int i = indexOf(bindingName);
+        return i < 0 ? null : getValue(i);
+    }
+
+    @Override
+    public Binding getBinding(String bindingName) {
+        final Value value = getValue(bindingName);
+        return value == null ? null : new SimpleBinding(bindingName, value);
+    }
+
+    @Override
+    public boolean hasBinding(String bindingName) {
+        final int i = indexOf(bindingName);
+        return i >= 0 && isBound(i);
+    }
+
+    /**
+     * Returns the names of the row's columns, bound or not, as
+     * {@link ListBindingSet} does.
+     */
+    @Override
+    public Set<String> getBindingNames() {
+        if (bindingNames == null) {
+            bindingNames = Collections.unmodifiableSet(
+                    new LinkedHashSet<>(names.subList(0, values.length)));
+        }
+        return bindingNames;
+    }
+
+    /**
+     * Returns the number of bound columns, which are the ones
+     * {@link #iterator()} returns, as {@link ListBindingSet} does.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (isBound(i)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private Object writeReplace() {
+        final Value[] decoded = new Value[values.length];
+        for (int i = 0; i < values.length; i++) {
+            decoded[i] = getValue(i);
+        }
+        return new ListBindingSet(new ArrayList<>(names.subList(0, values.length)), decoded);
+    }
+
+    @Override
+    public Iterator<Binding> iterator() {
+        return new Iterator<Binding>() {
+            private int next = advance(0);
+
+            private int advance(int i) {
+                while (i < values.length && !isBound(i)) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < values.length;
+            }
+
+            @Override
+            public Binding next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int i = next;
+                next = advance(i + 1);
+                return new SimpleBinding(names.get(i), getValue(i));
+            }
+        };
+    }
+}
@@ -27,15 +27,21 @@ import java.nio.charset.StandardCharsets;
 
 public class AGRDFHandler extends AGResponseHandler {
 
+    /**
+     * Text format accepted alongside {@link RDFFormat#BINARY}, used if
+     * the server does not offer the binary format.
+     */
+    static final RDFFormat BINARY_FALLBACK_FORMAT = RDFFormat.NQUADS;
+
     private final RDFFormat format;
     private final RDFHandler rdfhandler;
     private final AGValueFactory vf;
 
     public AGRDFHandler(RDFFormat format, RDFHandler rdfhandler, AGValueFactory vf, boolean recoverExternalBNodes) {
-        super(format.getDefaultMIMEType());
+        super(getAcceptMIMETypes(format));
         this.format = format;
         if (recoverExternalBNodes) {
-            this.rdfhandler = recoverBNodesRDFHandler(rdfhandler);
+            this.rdfhandler = recoverBNodes(rdfhandler, vf);
         } else {
             this.rdfhandler = rdfhandler;
         }
@@ -56,20 +62,66 @@ public class AGRDFHandler extends AGResponseHandler {
         if (response == null) {
             rdfhandler.endRDF();
         } else {
-            // Note: we ignore charset specified in the response.
-            Reader reader = new InputStreamReader(response, StandardCharsets.UTF_8);
             try {
-                RDFParser parser = Rio.createParser(format, vf);
+                RDFFormat responseFormat = getResponseFormat(getResponseMIMEType(httpResponse), format);
+                // IRIs and typed literals come from the value cache.
+                RDFParser parser = Rio.createParser(responseFormat,
+                        vf.getValueCache().valueFactory(vf));
                 parser.setPreserveBNodeIDs(true);
                 parser.setRDFHandler(rdfhandler);
-                parser.parse(reader, httpUriRequest.getURI().toString());
+                parse(parser, responseFormat, response, httpUriRequest.getURI().toString());
             } catch (RDFParseException | RDFHandlerException e) {
                 throw new AGHttpException(e);
             }
         }
     }
 
-    private RDFHandler recoverBNodesRDFHandler(final RDFHandler handler) {
+    /**
+     * Returns the value of the Accept header used to request statements
+     * in the given format.  The binary format is requested together
+     * with a text format the server can fall back to.
+     *
+     * @param format the preferred format
+     * @return a list of MIME types
+     */
+    public static String getAcceptMIMETypes(RDFFormat format) {
+        if (RDFFormat.BINARY.equals(format)) {
+            return format.getDefaultMIMEType() + ", "
+                    + BINARY_FALLBACK_FORMAT.getDefaultMIMEType() + ";q=0.5";
+        }
+        return format.getDefaultMIMEType();
+    }
+
+    /**
+     * Determines the format of a response.  If the binary format was
+     * requested but the response is of another type, the server must
+     * have chosen the fallback format.
+     * <p>
+     * The Content-Type is not trusted otherwise, as some responses
+     * are labeled text/plain.</p>
+     */
+    static RDFFormat getResponseFormat(String mimeType, RDFFormat requested) {
+        if (RDFFormat.BINARY.equals(requested) && mimeType != null && !requested.hasMIMEType(mimeType)) {
+            return BINARY_FALLBACK_FORMAT;
+        }
+        return requested;
+    }
+
+    static void parse(RDFParser parser, RDFFormat format, InputStream in, String baseURI) throws IOException {
+        if (format.hasCharset()) {
+            // Note: we ignore charset specified in the response.
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            parser.parse(reader, baseURI);
+        } else {
+            parser.parse(in, baseURI);
+        }
+    }
+
+    /**
+     * Wraps handler so that external blank nodes stored as IRIs
+     * are passed to it as blank nodes again.
+     */
+    static RDFHandler recoverBNodes(final RDFHandler handler, final AGValueFactory vf) {
         return new RDFHandler() {
 
             @Override
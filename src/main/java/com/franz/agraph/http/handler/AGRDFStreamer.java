@@ -0,0 +1,282 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams statements from an RDF response as a {@link GraphQueryResult}.
+ * <p>
+ * The response is parsed on a background thread, which hands statements
+ * to the consumer through a bounded queue, so only a small window of the
+ * result is held in memory at any time.  The HTTP connection is released
+ * once the response has been read to the end.  Closing the result
+ * before that aborts the request instead of reading the remaining data;
+ * so does dropping it without closing it, which is logged as for
+ * streamed tuple results.</p>
+ * <p>
+ * Each open result has a parsing thread of its own, taken from a pool
+ * that grows as needed, so opening a result never waits for another
+ * one to be read or closed, even on the same thread.  The number of
+ * such threads is bounded by the number of open results, and so by the
+ * HTTP connections they hold.</p>
+ *
+ * @see AGRDFHandler
+ */
+public class AGRDFStreamer extends AGResponseHandler {
+
+    /**
+     * Number of parsed statements buffered ahead of the consumer.
+     */
+    public static final String PROP_QUEUE_SIZE = "com.franz.agraph.http.rdfStreamerQueueSize";
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    // Parsing threads. Each open result uses one thread until the
+    // response has been parsed or the result is closed or dropped.
+    private static ExecutorService parserExecutor;
+
+    private final RDFFormat format;
+    private final AGValueFactory vf;
+    private final boolean recoverExternalBNodes;
+
+    private HttpResponse method;
+    private HttpUriRequest request;
+    private InputStream in;
+    private RDFFormat responseFormat;
+
+    public AGRDFStreamer(RDFFormat format, AGValueFactory vf, boolean recoverExternalBNodes) {
+        super(AGRDFHandler.getAcceptMIMETypes(format));
+        this.format = format;
+        this.vf = vf;
+        this.recoverExternalBNodes = recoverExternalBNodes;
+    }
+
+    private static synchronized ExecutorService getParserExecutor() {
+        if (parserExecutor == null) {
+            parserExecutor = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("agraph-rdf-parser-" + thread.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return parserExecutor;
+    }
+
+    /**
+     * False because the result releases the connection.
+     */
+    @Override
+    public boolean releaseConnection() {
+        return false;
+    }
+
+    @Override
+    public void handleResponse(HttpResponse httpResponse, HttpUriRequest httpUriRequest) throws IOException, AGHttpException {
+        this.method = httpResponse;
+        this.request = httpUriRequest;
+        this.in = getInputStream(httpResponse);
+        this.responseFormat = AGRDFHandler.getResponseFormat(getResponseMIMEType(httpResponse), format);
+    }
+
+    /**
+     * Starts parsing the response.
+     *
+     * @return a result that must be closed unless it is read to the end
+     */
+    public GraphQueryResult getResult() {
+        final Parser parser = new Parser();
+        final Result result = new Result(parser);
+        if (in == null) {
+            // 204 response, no statements
+            parser.finish(null);
+        } else {
+            getParserExecutor().execute(parser);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the response into the queue.  It must not refer to the
+     * {@link Result}, so that a dropped result can be noticed.
+     */
+    private class Parser extends AbstractRDFHandler implements Runnable {
+        final Object end = new Object();
+        final BlockingQueue<Object> queue =
+                new ArrayBlockingQueue<>(Integer.getInteger(PROP_QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+        final Map<String, String> namespaces = Collections.synchronizedMap(new HashMap<>());
+
+        volatile boolean closed;
+        volatile Throwable error;
+
+        @Override
+        public void run() {
+            Throwable failure = null;
+            try {
+                // IRIs and typed literals come from the value cache.
+                RDFParser parser = Rio.createParser(responseFormat,
+                        vf.getValueCache().valueFactory(vf));
+                parser.setPreserveBNodeIDs(true);
+                parser.setRDFHandler(recoverExternalBNodes ? AGRDFHandler.recoverBNodes(this, vf) : this);
+                AGRDFHandler.parse(parser, responseFormat, in, request.getURI().toString());
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                if (!closed) {
+                    // Read to the end: release the connection for reuse.
+                    EntityUtils.consumeQuietly(method.getEntity());
+                }
+                finish(failure);
+            }
+        }
+
+        void finish(Throwable failure) {
+            error = failure;
+            // The consumer may be gone; do not wait if it has closed the result.
+            try {
+                while (!queue.offer(end, 100, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Stops parsing, aborting the request if it has not been read
+         * to the end.  If the parser already reached the end this is
+         * harmless: the connection has been released.
+         */
+        void cancel() {
+            closed = true;
+            request.abort();
+            queue.clear();
+        }
+
+        @Override
+        public void handleNamespace(String prefix, String uri) {
+            namespaces.put(prefix, uri);
+        }
+
+        @Override
+        public void handleStatement(Statement st) {
+            try {
+                while (!queue.offer(st, 100, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        throw new RDFHandlerException("Result closed");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException(e);
+            }
+        }
+    }
+
+    private final class Result implements GraphQueryResult {
+        private final Parser parser;
+        private final AGResponseReleaser releaser;
+
+        private boolean closed;
+        private boolean done;
+        private Statement next;
+
+        Result(Parser parser) {
+            this.parser = parser;
+            // Abort the request and stop the parser if this is dropped.
+            this.releaser = new AGResponseReleaser(this, method, parser::cancel);
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            // Namespaces precede statements in all formats we request.
+            hasNext();
+            return parser.namespaces;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (done || closed) {
+                return false;
+            }
+            final Object item;
+            try {
+                item = parser.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new QueryEvaluationException(e);
+            }
+            if (item == parser.end) {
+                done = true;
+                releaser.release();
+                if (parser.error != null) {
+                    throw new QueryEvaluationException(parser.error);
+                }
+                return false;
+            }
+            next = (Statement) item;
+            return true;
+        }
+
+        @Override
+        public Statement next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Statement st = next;
+            next = null;
+            return st;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (done) {
+                return;
+            }
+            // Abort rather than read the rest of a possibly huge response.
+            parser.cancel();
+            releaser.release();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+
+/**
+ * Releases the HTTP response a streamed result reads from.
+ * <p>
+ * The result calls {@link #release()} when it is closed or exhausted.
+ * If it becomes unreachable before that, a {@link Cleaner} closes the
+ * response, so the pooled HTTP connection is not held forever, and logs
+ * a warning.  When {@link AGRepositoryConnection#PROP_STREAM_RESULTS_LEAK_REPORT}
+ * is set the warning includes the stack trace of the code that created
+ * the result; recording it costs a stack walk per result.</p>
+ */
+final class AGResponseReleaser implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(AGResponseReleaser.class);
+
+    private static final Cleaner cleaner = Cleaner.create(runnable -> {
+        final Thread thread = new Thread(runnable, "agraph-result-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final HttpResponse response;
+    // Run first when the result is abandoned; may be null.
+    private final Runnable onAbandon;
+    // Null unless leaks are reported.
+    private final Throwable allocation;
+    private final Cleaner.Cleanable cleanable;
+    private volatile boolean released;
+    private volatile boolean aborted;
+
+    /**
+     * @param result   the result reading the response; it must not be
+     *                 referenced by the response
+     * @param response the response to release
+     */
+    AGResponseReleaser(Object result, HttpResponse response) {
+        this(result, response, null);
+    }
+
+    /**
+     * @param result    the result reading the response; it must not be
+     *                  referenced by the response or by onAbandon
+     * @param response  the response to release
+     * @param onAbandon stops whatever reads the response on behalf of the
+     *                  result, when the result is lost without being closed
+     */
+    AGResponseReleaser(Object result, HttpResponse response, Runnable onAbandon) {
+        this.response = response;
+        this.onAbandon = onAbandon;
+        this.allocation = Boolean.getBoolean(AGRepositoryConnection.PROP_STREAM_RESULTS_LEAK_REPORT)
+                ? new Throwable("Result created here") : null;
+        this.cleanable = cleaner.register(result, this);
+    }
+
+    /**
+     * Reads what is left of the response so that its connection can be
+     * reused.  Does nothing if called again.
+     */
+    void release() {
+        released = true;
+        cleanable.clean();
+    }
+
+    /**
+     * Drops the connection instead of reading what is left of the
+     * response.  Unlike {@link #release()}, this may be called while
+     * another thread reads the response, whose read then fails.
+     */
+    void abort() {
+        aborted = true;
+        released = true;
+        cleanable.clean();
+    }
+
+    boolean isReleased() {
+        return released;
+    }
+
+    @Override
+    public void run() {
+        if (aborted) {
+            // Another thread may be reading the entity, so never read it here.
+            if (response instanceof Closeable) {
+                closeResponse();
+            }
+            return;
+        }
+        if (released) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            return;
+        }
+        // The result was lost without being closed.  Reading the rest of
+        // a response nobody wants could take long, so drop the connection.
+        if (allocation != null) {
+            log.warn("A streamed query result was not closed, releasing its connection", allocation);
+        } else {
+            log.warn("A streamed query result was not closed, releasing its connection."
+                    + " Set -D" + AGRepositoryConnection.PROP_STREAM_RESULTS_LEAK_REPORT
+                    + "=true to log where it was created.");
+        }
+        if (onAbandon != null) {
+            onAbandon.run();
+        }
+        closeResponse();
+    }
+
+    private void closeResponse() {
+        try {
+            if (response instanceof Closeable) {
+                ((Closeable) response).close();
+            } else {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        } catch (IOException e) {
+            log.debug("Could not close abandoned response", e);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.UnsupportedQueryResultFormatException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams results in RDF4J's binary tuple format
+ * (application/x-binary-rdf-results-table), the counterpart of
+ * {@link org.eclipse.rdf4j.query.resultio.binary.BinaryQueryResultParser}
+ * for a {@link TupleQueryResult} pulling from the response.
+ * <p>
+ * The format needs no escaping, declares namespaces once and marks a
+ * value that equals the one in the same column of the previous row
+ * with a single byte, so wide results are smaller and cheaper to parse
+ * than as text.  Strings are decoded into a reusable buffer and IRIs and
+ * typed literals are looked up in the {@link AGValueCache} from there.</p>
+ * <p>
+ * The binary format is requested together with
+ * {@link AGTQRStreamer#BINARY_FALLBACK_FORMAT}; if the server answers in
+ * the latter, the response is read by an {@link AGTQRTSVStreamer}.</p>
+ */
+public class AGTQRBinaryStreamer extends AGTQRStreamer {
+    // Record markers and version of the format, as in
+    // org.eclipse.rdf4j.query.resultio.binary.BinaryQueryResultConstants
+    private static final byte[] MAGIC_NUMBER = {'B', 'R', 'T', 'R'};
+    private static final int FORMAT_VERSION = 4;
+    private static final int NULL_RECORD_MARKER = 0;
+    private static final int REPEAT_RECORD_MARKER = 1;
+    private static final int NAMESPACE_RECORD_MARKER = 2;
+    private static final int QNAME_RECORD_MARKER = 3;
+    private static final int URI_RECORD_MARKER = 4;
+    private static final int BNODE_RECORD_MARKER = 5;
+    private static final int PLAIN_LITERAL_RECORD_MARKER = 6;
+    private static final int LANG_LITERAL_RECORD_MARKER = 7;
+    private static final int DATATYPE_LITERAL_RECORD_MARKER = 8;
+    private static final int EMPTY_ROW_RECORD_MARKER = 9;
+    private static final int TRIPLE_RECORD_MARKER = 10;
+    private static final int ERROR_RECORD_MARKER = 126;
+    private static final int TABLE_END_RECORD_MARKER = 127;
+
+    private InputStream in;
+    // Set if the server answered in the fallback format.
+    private AGTQRStreamer fallback;
+
+    public AGTQRBinaryStreamer(AGValueFactory vf) {
+        super(getAcceptMIMETypes(TupleQueryResultFormat.BINARY));
+        this.vf = vf;
+    }
+
+    @Override
+    public String getRequestMIMEType() {
+        return getAcceptMIMETypes(TupleQueryResultFormat.BINARY);
+    }
+
+    @Override
+    public void handleResponse(HttpResponse httpResponse, HttpUriRequest httpUriRequest)
+            throws IOException, AGHttpException {
+        final TupleQueryResultFormat responseFormat =
+                getResponseFormat(getResponseMIMEType(httpResponse), TupleQueryResultFormat.BINARY);
+        if (!TupleQueryResultFormat.BINARY.equals(responseFormat)) {
+            fallback = createStreamer(responseFormat, vf);
+            fallback.setLazyDecoding(lazyDecoding);
+            fallback.handleResponse(httpResponse, httpUriRequest);
+            return;
+        }
+        this.method = httpResponse;
+        in = AGResponseHandler.getInputStream(httpResponse);
+    }
+
+    @Override
+    public TupleQueryResult getResult() {
+        if (fallback != null) {
+            return fallback.getResult();
+        }
+        return releasing(new Result());
+    }
+
+    private class Result implements TupleQueryResult {
+        private final DataInputStream data;
+        private final AGValueCache cache = vf.getValueCache();
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+
+        // Reusable buffers: the last string read, a copy of a literal's
+        // label while its datatype is read, and namespace + local name.
+        private ByteBuffer bytes = ByteBuffer.allocate(256);
+        private CharBuffer chars = CharBuffer.allocate(256);
+        private final StringBuilder label = new StringBuilder(256);
+        private final StringBuilder qname = new StringBuilder(256);
+
+        private String[] namespaces = new String[16];
+        private int formatVersion;
+        private List<String> bindingNames;
+        private Value[] previous;
+        private boolean done;
+        private BindingSet next;
+
+        Result() {
+            data = new DataInputStream(new BufferedInputStream(in, 16 * 1024));
+        }
+
+        @Override
+        public List<String> getBindingNames() {
+            parseHeader();
+            return bindingNames;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = parse();
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            if (hasNext()) {
+                BindingSet curr = next;
+                next = null;
+                return curr;
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            EntityUtils.consumeQuietly(method.getEntity());
+        }
+
+        private void parseHeader() {
+            if (bindingNames != null) {
+                return;
+            }
+            try {
+                final byte[] magic = new byte[MAGIC_NUMBER.length];
+                data.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC_NUMBER)) {
+                    throw new QueryResultParseException(
+                            "Response is not a binary RDF table result");
+                }
+                formatVersion = data.readInt();
+                if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+                    throw new QueryResultParseException(
+                            "Incompatible format version: " + formatVersion);
+                }
+                if (formatVersion == 2) {
+                    // Flags, unused
+                    data.readByte();
+                }
+                final int columns = data.readInt();
+                if (columns < 0) {
+                    throw new QueryResultParseException("Illegal column count: " + columns);
+                }
+                final List<String> names = new ArrayList<>(columns);
+                for (int i = 0; i < columns; i++) {
+                    names.add(readString());
+                }
+                bindingNames = Collections.unmodifiableList(names);
+                previous = new Value[columns];
+            } catch (IOException e) {
+                throw new UnsupportedQueryResultFormatException(e);
+            }
+        }
+
+        /**
+         * @return the next row, or null at the end of the table
+         */
+        private BindingSet parse() {
+            parseHeader();
+            try {
+                final Value[] values = new Value[bindingNames.size()];
+                int count = 0;
+                while (true) {
+                    final int marker = data.readByte();
+                    switch (marker) {
+                        case TABLE_END_RECORD_MARKER:
+                            if (count > 0) {
+                                throw new QueryResultParseException("Table ends within a row");
+                            }
+                            return null;
+                        case ERROR_RECORD_MARKER:
+                            readError();
+                            break;
+                        case NAMESPACE_RECORD_MARKER:
+                            readNamespace();
+                            continue;
+                        case EMPTY_ROW_RECORD_MARKER:
+                            return EmptyBindingSet.getInstance();
+                        case REPEAT_RECORD_MARKER:
+                            values[count] = previous[count];
+                            break;
+                        default:
+                            values[count] = readValue(marker);
+                            break;
+                    }
+                    if (++count == values.length) {
+                        System.arraycopy(values, 0, previous, 0, count);
+                        return new ListBindingSet(bindingNames, values);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UnsupportedQueryResultFormatException(e);
+            }
+        }
+
+        private Value readValue(int marker) throws IOException {
+            switch (marker) {
+                case NULL_RECORD_MARKER:
+                    return null;
+                case QNAME_RECORD_MARKER:
+                case URI_RECORD_MARKER:
+                    return AGHttpRepoClient.getApplicationValue(readIRI(marker), vf);
+                case BNODE_RECORD_MARKER:
+                    return vf.createBNode(readString());
+                case PLAIN_LITERAL_RECORD_MARKER:
+                    final CharSequence text = readText();
+                    return cache.createLiteral(vf, text, 0, text.length(), XMLSchema.STRING);
+                case LANG_LITERAL_RECORD_MARKER:
+                    final String labelString = readString();
+                    return vf.createLiteral(labelString, readString());
+                case DATATYPE_LITERAL_RECORD_MARKER:
+                    // The datatype is read into the same buffer as the label.
+                    label.setLength(0);
+                    label.append(readText());
+                    final IRI datatype = readIRI(data.readByte());
+                    return cache.createLiteral(vf, label, 0, label.length(), datatype);
+                case TRIPLE_RECORD_MARKER:
+                    final Resource subject = (Resource) readValue(data.readByte());
+                    final IRI predicate = (IRI) readValue(data.readByte());
+                    final Value object = readValue(data.readByte());
+                    return vf.createTriple(subject, predicate, object);
+                default:
+                    throw new QueryResultParseException("Unknown record type: " + marker);
+            }
+        }
+
+        private IRI readIRI(int marker) throws IOException {
+            if (marker == URI_RECORD_MARKER) {
+                final CharSequence text = readText();
+                return cache.createIRI(vf, text, 0, text.length());
+            } else if (marker == QNAME_RECORD_MARKER) {
+                final int id = data.readInt();
+                if (id < 0 || id >= namespaces.length || namespaces[id] == null) {
+                    throw new QueryResultParseException("Undeclared namespace: " + id);
+                }
+                qname.setLength(0);
+                qname.append(namespaces[id]).append(readText());
+                return cache.createIRI(vf, qname, 0, qname.length());
+            }
+            throw new QueryResultParseException("Expected an IRI, found record type: " + marker);
+        }
+
+        private void readNamespace() throws IOException {
+            final int id = data.readInt();
+            if (id < 0) {
+                throw new QueryResultParseException("Illegal namespace id: " + id);
+            }
+            if (id >= namespaces.length) {
+                namespaces = Arrays.copyOf(namespaces, Math.max(id + 1, namespaces.length * 2));
+            }
+            namespaces[id] = readString();
+        }
+
+        private void readError() throws IOException {
+            // Error type (malformed query or evaluation error), then message
+            data.readByte();
+            throw new QueryEvaluationException(readString());
+        }
+
+        private String readString() throws IOException {
+            return readText().toString();
+        }
+
+        /**
+         * Reads a string into the reusable buffer.
+         *
+         * @return the characters, valid until the next read
+         */
+        private CharSequence readText() throws IOException {
+            if (formatVersion == 1) {
+                return data.readUTF();
+            }
+            final int length = data.readInt();
+            if (length < 0) {
+                throw new QueryResultParseException("Illegal string length: " + length);
+            }
+            if (bytes.capacity() < length) {
+                bytes = ByteBuffer.allocate(Math.max(length, bytes.capacity() * 2));
+            }
+            data.readFully(bytes.array(), 0, length);
+            bytes.position(0).limit(length);
+            // UTF-8 never needs more chars than bytes.
+            if (chars.capacity() < length) {
+                chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+            }
+            chars.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(bytes, chars, true);
+            if (!result.isError()) {
+                result = decoder.flush(chars);
+            }
+            if (result.isError()) {
+                try {
+                    result.throwException();
+                } catch (CharacterCodingException e) {
+                    throw new QueryResultParseException(e);
+                }
+            }
+            chars.flip();
+            return chars;
+        }
+    }
+}
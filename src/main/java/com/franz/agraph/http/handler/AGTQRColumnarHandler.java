@@ -0,0 +1,106 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGColumnarResult;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.UnsupportedQueryResultFormatException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a TSV tuple query result into an {@link AGColumnarResult}.
+ * <p>
+ * Fields go straight from the response into the column arrays, without
+ * creating binding sets or, for numbers, dates and repeated IRIs, values.
+ * Results in other formats can be collected with
+ * {@link #fromResult(TupleQueryResult, AGValueFactory)}, which is also
+ * how a response the server sends in another format than TSV is read.
+ * A response without a Content-Type is taken to be TSV.</p>
+ */
+public class AGTQRColumnarHandler extends AGResponseHandler {
+
+    private final AGValueFactory vf;
+    private AGColumnarResult result;
+
+    public AGTQRColumnarHandler(AGValueFactory vf) {
+        super(TupleQueryResultFormat.TSV.getDefaultMIMEType());
+        this.vf = vf;
+    }
+
+    /**
+     * Collects the solutions of a result into columns, closing the result.
+     *
+     * @param tqr the result
+     * @param vf  the value factory of the repository
+     * @return the columns
+     * @throws QueryEvaluationException if there is an error reading the result
+     */
+    public static AGColumnarResult fromResult(TupleQueryResult tqr, AGValueFactory vf)
+            throws QueryEvaluationException {
+        try (TupleQueryResult r = tqr) {
+            final AGColumnarBuilder builder = new AGColumnarBuilder(vf);
+            final List<String> names = r.getBindingNames();
+            builder.start(names);
+            while (r.hasNext()) {
+                final BindingSet solution = r.next();
+                for (int i = 0; i < names.size(); i++) {
+                    builder.value(i, solution.getValue(names.get(i)));
+                }
+                builder.endRow();
+            }
+            return builder.build();
+        }
+    }
+
+    @Override
+    public void handleResponse(HttpResponse httpResponse, HttpUriRequest httpUriRequest) throws IOException, AGHttpException {
+        final String mimeType = getResponseMIMEType(httpResponse);
+        if (mimeType != null && !TupleQueryResultFormat.TSV.hasMIMEType(mimeType)) {
+            // The server answered in another format: parse it and collect the values.
+            final TupleQueryResultFormat format = TupleQueryResultFormat.matchMIMEType(mimeType,
+                    Arrays.asList(TupleQueryResultFormat.BINARY, TupleQueryResultFormat.SPARQL,
+                            TupleQueryResultFormat.JSON)).orElse(null);
+            if (format == null || !AGTQRStreamer.canStream(format)) {
+                throw new AGHttpException("unexpected response MIME type: " + mimeType);
+            }
+            final AGTQRStreamer other = AGTQRStreamer.createStreamer(format, vf);
+            other.handleResponse(httpResponse, httpUriRequest);
+            try {
+                result = fromResult(other.getResult(), vf);
+            } catch (QueryEvaluationException e) {
+                throw new AGHttpException(e);
+            }
+            return;
+        }
+        final AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.handleResponse(httpResponse, httpUriRequest);
+        final AGColumnarBuilder builder = new AGColumnarBuilder(vf);
+        try {
+            streamer.readRows(builder);
+        } catch (QueryResultParseException | UnsupportedQueryResultFormatException e) {
+            throw new AGHttpException(e);
+        }
+        result = builder.build();
+    }
+
+    /**
+     * @return the columns read by
+     * {@link #handleResponse(HttpResponse, HttpUriRequest)}
+     */
+    public AGColumnarResult getResult() {
+        return result;
+    }
+}
@@ -10,6 +10,7 @@ import com.franz.agraph.repository.AGValueFactory;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryResultHandlerException;
 import org.eclipse.rdf4j.query.TupleQueryResultHandler;
@@ -32,7 +33,7 @@ public class AGTQRHandler extends AGResponseHandler {
     private final AGValueFactory vf;
 
     public AGTQRHandler(TupleQueryResultFormat format, TupleQueryResultHandler tqrhandler, AGValueFactory vf, boolean recoverExternalBNodes) {
-        super(format.getDefaultMIMEType());
+        super(AGTQRStreamer.getAcceptMIMETypes(format));
         this.format = format;
         if (recoverExternalBNodes) {
             this.tqrhandler = recoverBNodesTQRHandler(tqrhandler);
@@ -45,12 +46,13 @@ public class AGTQRHandler extends AGResponseHandler {
     @Override
     public void handleResponse(HttpResponse httpResponse, HttpUriRequest httpUriRequest) throws IOException, AGHttpException {
         String mimeType = getResponseMIMEType(httpResponse);
-        if (!mimeType.equals(getRequestMIMEType())) {
+        TupleQueryResultFormat responseFormat = AGTQRStreamer.getResponseFormat(mimeType, format);
+        if (!mimeType.equals(responseFormat.getDefaultMIMEType())) {
             throw new AGHttpException("unexpected response MIME type: " + mimeType);
         }
         InputStream response = getInputStream(httpResponse);
         try {
-            TupleQueryResultParser parser = QueryResultIO.createTupleParser(format, vf);
+            TupleQueryResultParser parser = QueryResultIO.createTupleParser(responseFormat, vf);
             parser.setQueryResultHandler(recoverBNodesTQRHandler(tqrhandler));
             parser.parseQueryResult(response);
         } catch (QueryResultParseException | TupleQueryResultHandlerException e) {
@@ -76,15 +78,33 @@ public class AGTQRHandler extends AGResponseHandler {
             @Override
             public void handleSolution(BindingSet arg0)
                     throws TupleQueryResultHandlerException {
-                Set<String> names = arg0.getBindingNames();
-                MapBindingSet sol = new MapBindingSet(names.size());
-                for (String n : names) {
-                    Value v = AGHttpRepoClient.getApplicationValue(arg0.getValue(n), vf);
-                    if (v != null) {
-                        sol.addBinding(n, v);
+                // Most solutions have nothing to recover and are passed on as is.
+                MapBindingSet sol = null;
+                for (Binding b : arg0) {
+                    Value v = AGHttpRepoClient.getApplicationValue(b.getValue(), vf);
+                    if (sol == null && v != b.getValue()) {
+                        sol = copyBefore(arg0, b.getName());
                     }
+                    if (sol != null && v != null) {
+                        sol.addBinding(b.getName(), v);
+                    }
+                }
+                handler.handleSolution(sol == null ? arg0 : sol);
+            }
+
+            /**
+             * Copies the bindings that precede the named one.
+             */
+            private MapBindingSet copyBefore(BindingSet bs, String name) {
+                Set<String> names = bs.getBindingNames();
+                MapBindingSet copy = new MapBindingSet(names.size());
+                for (Binding b : bs) {
+                    if (b.getName().equals(name)) {
+                        break;
+                    }
+                    copy.addBinding(b);
                 }
-                handler.handleSolution(sol);
+                return copy;
             }
 
             @Override
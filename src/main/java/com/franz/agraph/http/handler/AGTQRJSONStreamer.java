@@ -9,6 +9,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueCache;
 import com.franz.agraph.repository.AGValueFactory;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -59,7 +60,7 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
 
     @Override
     public TupleQueryResult getResult() {
-        return new Result();
+        return releasing(new Result());
     }
 
     private class Result implements TupleQueryResult {
@@ -227,14 +228,15 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
                 if (type.equals("bnode")) {
                     result = vf.createBNode(value);
                 } else if (type.equals("uri")) {
-                    result = vf.createIRI(value);
+                    result = vf.getValueCache().createIRI(vf, value);
                 }
             } else if (language != null) {
                 result = vf.createLiteral(value, language);
             } else if (datatype != null) {
-                result = vf.createLiteral(value, vf.createIRI(datatype));
+                final AGValueCache cache = vf.getValueCache();
+                result = cache.createLiteral(vf, value, cache.createIRI(vf, datatype));
             } else {
-                result = vf.createLiteral(value);
+                result = vf.getValueCache().createLiteral(vf, value);
             }
 
             return result;
@@ -4,18 +4,29 @@ import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGValueFactory;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 public abstract class AGTQRStreamer extends AGResponseHandler {
+    /**
+     * Text format accepted alongside {@link TupleQueryResultFormat#BINARY},
+     * used if the server does not offer the binary format.
+     */
+    static final TupleQueryResultFormat BINARY_FALLBACK_FORMAT = TupleQueryResultFormat.TSV;
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
     protected AGValueFactory vf;
     protected HttpResponse method;
+    protected boolean lazyDecoding;
 
     public AGTQRStreamer(String mimeType) {
         super(mimeType);
@@ -41,6 +52,59 @@ public abstract class AGTQRStreamer extends AGResponseHandler {
 
     public abstract TupleQueryResult getResult();
 
+    /**
+     * Sets whether the terms of a solution are converted to values only
+     * when they are asked for, so that reading a few columns of a wide
+     * result does not pay for the others.  Only TSV results support
+     * this; other formats ignore it.
+     *
+     * @param lazyDecoding true to decode terms on access
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Wraps the result read from {@link #method} so that the response is
+     * released as soon as the result is exhausted, fails or is closed,
+     * and also if the result is dropped without being closed
+     * (see {@link AGResponseReleaser}).
+     *
+     * @param result a result reading from the response
+     * @return the wrapped result
+     */
+    protected TupleQueryResult releasing(TupleQueryResult result) {
+        return new ReleasingResult(result, method);
+    }
+
+    /**
+     * Drops the connection of a streamed result instead of reading the
+     * rest of its response, as closing it would.  Unlike closing, this
+     * may be called while another thread reads the result; that read
+     * then fails.
+     *
+     * @param result a result
+     * @return false if the result does not read from a response
+     */
+    public static boolean abort(TupleQueryResult result) {
+        if (result instanceof ReleasingResult) {
+            ((ReleasingResult) result).releaser.abort();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param format a tuple result format
+     * @return true if {@link #createStreamer} supports the format
+     */
+    public static boolean canStream(TupleQueryResultFormat format) {
+        return format.equals(TupleQueryResultFormat.TSV)
+                || format.equals(TupleQueryResultFormat.BINARY)
+                || format.equals(TupleQueryResultFormat.SPARQL)
+                || format.equals(TupleQueryResultFormat.JSON);
+    }
+
     public static AGTQRStreamer createStreamer(TupleQueryResultFormat format, AGValueFactory vf) {
         if (format.equals(TupleQueryResultFormat.TSV)) {
             return new AGTQRTSVStreamer(vf);
@@ -48,8 +112,115 @@ public abstract class AGTQRStreamer extends AGResponseHandler {
             return new AGTQRXMLStreamer(vf);
         } else if (format.equals(TupleQueryResultFormat.JSON)) {
             return new AGTQRJSONStreamer(vf);
+        } else if (format.equals(TupleQueryResultFormat.BINARY)) {
+            return new AGTQRBinaryStreamer(vf);
         } else {
             throw new IllegalArgumentException("Unable to find AGTQRStreamer for format " + format);
         }
     }
+
+    /**
+     * Returns the value of the Accept header used to request tuple
+     * results in the given format.  The binary format is requested
+     * together with a text format the server can fall back to.
+     *
+     * @param format the preferred format
+     * @return a list of MIME types
+     */
+    public static String getAcceptMIMETypes(TupleQueryResultFormat format) {
+        if (TupleQueryResultFormat.BINARY.equals(format)) {
+            return format.getDefaultMIMEType() + ", "
+                    + BINARY_FALLBACK_FORMAT.getDefaultMIMEType() + ";q=0.5";
+        }
+        return format.getDefaultMIMEType();
+    }
+
+    /**
+     * Determines the format of a response.  If the binary format was
+     * requested but the response is of another type, the server must
+     * have chosen the fallback format.
+     */
+    static TupleQueryResultFormat getResponseFormat(String mimeType,
+                                                    TupleQueryResultFormat requested) {
+        if (TupleQueryResultFormat.BINARY.equals(requested) && mimeType != null
+                && !requested.hasMIMEType(mimeType)) {
+            return BINARY_FALLBACK_FORMAT;
+        }
+        return requested;
+    }
+
+    private static final class ReleasingResult implements TupleQueryResult {
+        private final TupleQueryResult delegate;
+        private final AGResponseReleaser releaser;
+
+        ReleasingResult(TupleQueryResult delegate, HttpResponse response) {
+            this.delegate = delegate;
+            this.releaser = new AGResponseReleaser(this, response);
+        }
+
+        @Override
+        public List<String> getBindingNames() throws QueryEvaluationException {
+            try {
+                return delegate.getBindingNames();
+            } catch (RuntimeException e) {
+                closeQuietly(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (releaser.isReleased()) {
+                return false;
+            }
+            final boolean hasNext;
+            try {
+                hasNext = delegate.hasNext();
+            } catch (RuntimeException e) {
+                closeQuietly(e);
+                throw e;
+            }
+            if (!hasNext) {
+                close();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return delegate.next();
+            } catch (RuntimeException e) {
+                closeQuietly(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            delegate.remove();
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            if (!releaser.isReleased()) {
+                try {
+                    delegate.close();
+                } finally {
+                    releaser.release();
+                }
+            }
+        }
+
+        private void closeQuietly(RuntimeException cause) {
+            try {
+                close();
+            } catch (RuntimeException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueCache;
 import com.franz.agraph.repository.AGValueFactory;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -20,12 +21,13 @@ import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.UnsupportedQueryResultFormatException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -58,18 +60,70 @@ public class AGTQRTSVStreamer extends AGTQRStreamer {
 
     @Override
     public TupleQueryResult getResult() {
-        return new Result();
+        return releasing(new Result());
     }
 
+    /**
+     * Receives the raw fields of the response, for consumers that build
+     * their own representation of the rows instead of binding sets.
+     */
+    interface RowHandler {
+        void start(List<String> bindingNames);
+
+        /**
+         * A field of the current row: the term in text[start, end),
+         * empty if unbound.  The text is only valid during the call.
+         */
+        void field(int column, CharSequence text, int start, int end);
+
+        void endRow();
+    }
+
+    /**
+     * Reads the whole response, passing each field to handler.
+     */
+    void readRows(RowHandler handler) {
+        new Result().readRows(handler);
+    }
+
+    /**
+     * Streams rows from the TSV response.
+     * <p>
+     * This is a hand-written scanner: characters are read in blocks
+     * into a private buffer, each field is copied once into a reusable
+     * builder, and terms are classified by looking at their characters
+     * rather than with regular expressions.  Only the resulting values
+     * and one array per row are allocated.</p>
+     * <p>
+     * With {@link #setLazyDecoding(boolean) lazy decoding}, a row is
+     * instead copied into one string and its terms are converted by
+     * {@link AGLazyBindingSet} when they are first asked for.</p>
+     */
     private class Result implements TupleQueryResult {
+        // Field terminators returned by readField()
+        private static final int TAB = 0;
+        private static final int EOL = 1;
+        private static final int EOF = 2;
+
+        private final Reader reader;
+        private final char[] buf = new char[16 * 1024];
+        private int pos;
+        private int limit;
+        // Set after a '\r' so that a following '\n' is skipped.
+        private boolean skipLF;
+
+        // Reusable buffers: the current field, or the current row when
+        // decoding lazily
+        private final StringBuilder field = new StringBuilder(256);
+        private final StringBuilder row;
+        private final TermDecoder decoder = new TermDecoder(vf);
+
         private BindingSet next;
-        private InputStreamReader r;
-        private BufferedReader reader;
         private List<String> bindingNames;
 
         public Result() {
-            r = new InputStreamReader(in, Charset.forName("UTF-8"));
-            reader = new BufferedReader(r);
+            reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            row = lazyDecoding ? new StringBuilder(1024) : null;
         }
 
         @Override
@@ -109,189 +163,412 @@ public class AGTQRTSVStreamer extends AGTQRStreamer {
 
         private void parseBindingNames() {
             if (bindingNames == null) {
-                String nextLine = readNextLine();
-                String[] lineTokens = nextLine.split("\t", -1);
-                bindingNames = new ArrayList<>(lineTokens.length);
-                for (String name : lineTokens) {
-                    if ('?' == name.charAt(0)) {
-                        bindingNames.add(name.substring(1));
+                bindingNames = new ArrayList<>();
+                int term;
+                do {
+                    field.setLength(0);
+                    term = readField(field);
+                    if (term == EOF && field.length() == 0 && bindingNames.isEmpty()) {
+                        // Empty response: no bindings.
+                        break;
+                    }
+                    if (field.length() > 0 && field.charAt(0) == '?') {
+                        bindingNames.add(field.substring(1));
                     } else {
-                        bindingNames.add(name);
+                        bindingNames.add(field.toString());
                     }
-                }
+                } while (term == TAB);
             }
         }
 
-        private String readNextLine() {
+        private boolean fill() {
             try {
-                return reader.readLine();
+                int n;
+                do {
+                    n = reader.read(buf, 0, buf.length);
+                } while (n == 0);
+                if (n < 0) {
+                    return false;
+                }
+                pos = 0;
+                limit = n;
+                return true;
             } catch (IOException e) {
                 throw new UnsupportedQueryResultFormatException(e);
             }
         }
 
-        public BindingSet parse() throws QueryResultParseException, TupleQueryResultHandlerException {
-            parseBindingNames();
-
-            String nextLine = readNextLine();
-            if (nextLine == null) return null;
-
-            String[] lineTokens;
-            lineTokens = nextLine.split("\t", -1);
-            List<Value> values = new ArrayList<>();
-
-            for (String valueString : lineTokens) {
-                Value v = null;
-                if (valueString.startsWith("_:")) {
-                    v = vf.createBNode(valueString.substring(2));
-                } else if (valueString.startsWith("<") && valueString.endsWith(">")) {
-                    try {
-                        v = vf.createIRI(valueString.substring(1, valueString.length() - 1));
-                    } catch (IllegalArgumentException var14) {
-                        v = vf.createLiteral(valueString);
+        /**
+         * Appends characters up to the next tab or end of line to out.
+         * Lines may end with LF, CR or CR LF.
+         *
+         * @return TAB, EOL or EOF, whichever ended the field
+         */
+        private int readField(StringBuilder out) {
+            while (true) {
+                if (pos == limit && !fill()) {
+                    return EOF;
+                }
+                if (skipLF) {
+                    skipLF = false;
+                    if (buf[pos] == '\n') {
+                        pos++;
+                        continue;
                     }
-                } else if (valueString.startsWith("\"")) {
-                    v = this.parseLiteral(valueString);
-                } else if (!"".equals(valueString)) {
-                    if (valueString.matches("^[+\\-]?[\\d.].*")) {
-                        IRI datatype = null;
-                        if (XMLDatatypeUtil.isValidInteger(valueString)) {
-                            if (XMLDatatypeUtil.isValidNegativeInteger(valueString)) {
-                                datatype = XMLSchema.NEGATIVE_INTEGER;
-                            } else {
-                                datatype = XMLSchema.INTEGER;
-                            }
-                        } else if (XMLDatatypeUtil.isValidDecimal(valueString)) {
-                            datatype = XMLSchema.DECIMAL;
-                        } else if (XMLDatatypeUtil.isValidDouble(valueString)) {
-                            datatype = XMLSchema.DOUBLE;
-                        }
-
-                        if (datatype != null) {
-                            v = vf.createLiteral(valueString, datatype);
-                        } else {
-                            v = vf.createLiteral(valueString);
+                }
+                final int start = pos;
+                while (pos < limit) {
+                    final char c = buf[pos];
+                    if (c == '\t' || c == '\n' || c == '\r') {
+                        out.append(buf, start, pos - start);
+                        pos++;
+                        if (c == '\t') {
+                            return TAB;
                         }
-                    } else {
-                        v = vf.createLiteral(valueString);
+                        skipLF = c == '\r';
+                        return EOL;
                     }
+                    pos++;
                 }
-                values.add(AGHttpRepoClient.getApplicationValue(v, vf));
+                out.append(buf, start, pos - start);
             }
-
-            return new ListBindingSet(bindingNames, values.toArray(new Value[values.size()]));
         }
 
-        private Literal parseLiteral(String literal) throws IllegalArgumentException {
-            if (literal.startsWith("\"")) {
-                int endLabelIdx = this.findEndOfLabel(literal);
-                if (endLabelIdx != -1) {
-                    int startLangIdx = literal.indexOf("@", endLabelIdx);
-                    int startDtIdx = literal.indexOf("^^", endLabelIdx);
-                    if (startLangIdx != -1 && startDtIdx != -1) {
-                        throw new IllegalArgumentException("Literals can not have both a language and a datatype");
-                    }
+        public BindingSet parse() throws QueryResultParseException, TupleQueryResultHandlerException {
+            parseBindingNames();
+            if (row != null) {
+                return parseLazily();
+            }
 
-                    String label = literal.substring(1, endLabelIdx);
-                    label = decodeString(label);
-                    String datatype;
-                    if (startLangIdx != -1) {
-                        datatype = literal.substring(startLangIdx + 1);
-                        return vf.createLiteral(label, datatype);
-                    }
+            Value[] values = new Value[bindingNames.size()];
+            int count = 0;
+            int term;
+            do {
+                field.setLength(0);
+                term = readField(field);
+                if (term == EOF && count == 0 && field.length() == 0) {
+                    return null;
+                }
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count + 1);
+                }
+                values[count++] = decoder.decode(field, 0, field.length());
+            } while (term == TAB);
 
-                    if (startDtIdx != -1) {
-                        datatype = literal.substring(startDtIdx + 2);
-                        datatype = datatype.substring(1, datatype.length() - 1);
-                        IRI dtURI = vf.createIRI(datatype);
-                        return vf.createLiteral(label, dtURI);
+            if (count != values.length) {
+                values = Arrays.copyOf(values, count);
+            }
+            return new ListBindingSet(bindingNames, values);
+        }
+
+        void readRows(RowHandler handler) {
+            parseBindingNames();
+            handler.start(bindingNames);
+            while (true) {
+                int count = 0;
+                int term;
+                do {
+                    field.setLength(0);
+                    term = readField(field);
+                    if (term == EOF && count == 0 && field.length() == 0) {
+                        return;
                     }
+                    handler.field(count++, field, 0, field.length());
+                } while (term == TAB);
+                handler.endRow();
+            }
+        }
 
-                    return vf.createLiteral(label);
+        /**
+         * Reads the next row into one string, leaving its terms to be
+         * decoded when they are asked for.
+         */
+        private BindingSet parseLazily() {
+            row.setLength(0);
+            int[] ends = new int[bindingNames.size()];
+            int count = 0;
+            int term;
+            do {
+                term = readField(row);
+                if (term == EOF && count == 0 && row.length() == 0) {
+                    return null;
                 }
+                if (count == ends.length) {
+                    ends = Arrays.copyOf(ends, count + 1);
+                }
+                ends[count++] = row.length();
+            } while (term == TAB);
+
+            if (count != ends.length) {
+                ends = Arrays.copyOf(ends, count);
             }
+            return new AGLazyBindingSet(bindingNames, row.toString(), ends, decoder);
+        }
+    }
+
+    /**
+     * Converts TSV terms to values.  It keeps no state between terms, so
+     * rows decoded lazily may use it after the result has moved on.
+     */
+    static final class TermDecoder implements AGLazyBindingSet.Decoder {
+        private final AGValueFactory vf;
+        private final AGValueCache cache;
+
+        TermDecoder(AGValueFactory vf) {
+            this.vf = vf;
+            this.cache = vf.getValueCache();
+        }
 
-            throw new IllegalArgumentException("Not a legal literal: " + literal);
+        private static String string(CharSequence text, int start, int end) {
+            return text.subSequence(start, end).toString();
         }
 
-        private int findEndOfLabel(String literal) {
-            return literal.lastIndexOf("\"");
+        private static int indexOf(CharSequence text, char c, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
         }
 
-        private String decodeString(String s) {
-            int backSlashIdx = s.indexOf('\\');
-            if (backSlashIdx == -1) {
-                return s;
+        /**
+         * Converts the term in text[start, end) to a value.
+         *
+         * @return the value, or null if the term is empty (unbound)
+         */
+        @Override
+        public Value decode(CharSequence text, int start, int end) {
+            final int len = end - start;
+            if (len == 0) {
+                return null;
+            }
+            final char first = text.charAt(start);
+            if (first == '_' && len > 1 && text.charAt(start + 1) == ':') {
+                return vf.createBNode(string(text, start + 2, end));
+            } else if (first == '<' && len > 1 && text.charAt(end - 1) == '>') {
+                Value v;
+                try {
+                    v = cache.createIRI(vf, text, start + 1, end - 1);
+                } catch (IllegalArgumentException e) {
+                    return vf.createLiteral(string(text, start, end));
+                }
+                return AGHttpRepoClient.getApplicationValue(v, vf);
+            } else if (first == '"') {
+                return parseLiteral(text, start, end);
+            } else if (first == '+' || first == '-' || first == '.' || (first >= '0' && first <= '9')) {
+                return parseNumber(text, start, end);
             } else {
-                int startIdx = 0;
-                int sLength = s.length();
-
-                StringBuilder sb;
-                for (sb = new StringBuilder(sLength); backSlashIdx != -1; backSlashIdx = s.indexOf('\\', startIdx)) {
-                    sb.append(s.substring(startIdx, backSlashIdx));
-                    if (backSlashIdx + 1 >= sLength) {
-                        throw new IllegalArgumentException("Unescaped backslash in: " + s);
-                    }
+                return vf.createLiteral(string(text, start, end));
+            }
+        }
 
-                    char c = s.charAt(backSlashIdx + 1);
-                    if (c == 't') {
-                        sb.append('\t');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == 'r') {
-                        sb.append('\r');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == 'n') {
-                        sb.append('\n');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == '"') {
-                        sb.append('"');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == '>') {
-                        sb.append('>');
-                        startIdx = backSlashIdx + 2;
-                    } else if (c == '\\') {
-                        sb.append('\\');
-                        startIdx = backSlashIdx + 2;
+        /**
+         * Classifies an unquoted term that looks like a number as
+         * xsd:integer, xsd:negativeInteger, xsd:decimal or xsd:double,
+         * falling back to a plain literal.  Typed numbers come from the
+         * value cache, so repeated ones allocate nothing.
+         */
+        private Literal parseNumber(CharSequence term, int start, int end) {
+            int i = start;
+            char sign = 0;
+            char c = term.charAt(start);
+            if (c == '+' || c == '-') {
+                sign = c;
+                i++;
+            }
+            if (i == end) {
+                return vf.createLiteral(string(term, start, end));
+            }
+            c = term.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                // Not a number at all
+                return vf.createLiteral(string(term, start, end));
+            }
+            int intDigits = 0;
+            int fracDigits = 0;
+            boolean dot = false;
+            boolean nonZero = false;
+            for (; i < end; i++) {
+                c = term.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    if (dot) {
+                        fracDigits++;
                     } else {
-                        String xx;
-                        if (c == 'u') {
-                            if (backSlashIdx + 5 >= sLength) {
-                                throw new IllegalArgumentException("Incomplete Unicode escape sequence in: " + s);
-                            }
-
-                            xx = s.substring(backSlashIdx + 2, backSlashIdx + 6);
-
-                            try {
-                                c = (char) Integer.parseInt(xx, 16);
-                                sb.append(c);
-                                startIdx = backSlashIdx + 6;
-                            } catch (NumberFormatException var9) {
-                                throw new IllegalArgumentException("Illegal Unicode escape sequence '\\u" + xx + "' in: " + s);
-                            }
-                        } else {
-                            if (c != 'U') {
-                                throw new IllegalArgumentException("Unescaped backslash in: " + s);
-                            }
-
-                            if (backSlashIdx + 9 >= sLength) {
-                                throw new IllegalArgumentException("Incomplete Unicode escape sequence in: " + s);
-                            }
-
-                            xx = s.substring(backSlashIdx + 2, backSlashIdx + 10);
-
-                            try {
-                                sb.appendCodePoint(Integer.parseInt(xx, 16));
-                                startIdx = backSlashIdx + 10;
-                            } catch (NumberFormatException var8) {
-                                throw new IllegalArgumentException("Illegal Unicode escape sequence '\\U" + xx + "' in: " + s);
-                            }
-                        }
+                        intDigits++;
                     }
+                    nonZero |= c != '0';
+                } else if (c == '.' && !dot) {
+                    dot = true;
+                } else {
+                    break;
+                }
+            }
+            IRI datatype;
+            if (i == end) {
+                if (!dot) {
+                    datatype = (sign == '-' && nonZero) ? XMLSchema.NEGATIVE_INTEGER : XMLSchema.INTEGER;
+                } else if (intDigits > 0 && fracDigits > 0) {
+                    datatype = XMLSchema.DECIMAL;
+                } else {
+                    // Leave unusual forms like "1." to the full validator.
+                    datatype = classifyNumber(string(term, start, end));
+                }
+            } else if ((c == 'e' || c == 'E') && intDigits > 0 && (!dot || fracDigits > 0)) {
+                int j = i + 1;
+                if (j < end && (term.charAt(j) == '+' || term.charAt(j) == '-')) {
+                    j++;
+                }
+                int expDigits = 0;
+                while (j < end && term.charAt(j) >= '0' && term.charAt(j) <= '9') {
+                    j++;
+                    expDigits++;
+                }
+                datatype = (j == end && expDigits > 0)
+                        ? XMLSchema.DOUBLE : classifyNumber(string(term, start, end));
+            } else {
+                datatype = classifyNumber(string(term, start, end));
+            }
+
+            if (datatype != null) {
+                return cache.createLiteral(vf, term, start, end, datatype);
+            } else {
+                return vf.createLiteral(string(term, start, end));
+            }
+        }
+
+        /**
+         * Slow path for numeric-looking terms not handled by
+         * {@link #parseNumber(CharSequence, int, int)}.
+         */
+        private IRI classifyNumber(String valueString) {
+            if (XMLDatatypeUtil.isValidInteger(valueString)) {
+                if (XMLDatatypeUtil.isValidNegativeInteger(valueString)) {
+                    return XMLSchema.NEGATIVE_INTEGER;
+                } else {
+                    return XMLSchema.INTEGER;
+                }
+            } else if (XMLDatatypeUtil.isValidDecimal(valueString)) {
+                return XMLSchema.DECIMAL;
+            } else if (XMLDatatypeUtil.isValidDouble(valueString)) {
+                return XMLSchema.DOUBLE;
+            }
+            return null;
+        }
+
+        /**
+         * Parses the quoted literal in text[start, end), with an optional
+         * language tag or datatype after the closing quote.  A label
+         * without escapes is looked up in the value cache in place.
+         */
+        private Literal parseLiteral(CharSequence text, int start, int end)
+                throws IllegalArgumentException {
+            int endLabelIdx = end - 1;
+            while (endLabelIdx > start && text.charAt(endLabelIdx) != '"') {
+                endLabelIdx--;
+            }
+            if (endLabelIdx <= start) {
+                throw new IllegalArgumentException("Not a legal literal: "
+                        + string(text, start, end));
+            }
+            final int startLangIdx = indexOf(text, '@', endLabelIdx, end);
+            int startDtIdx = indexOf(text, '^', endLabelIdx, end);
+            if (startDtIdx != -1 && (startDtIdx + 1 == end || text.charAt(startDtIdx + 1) != '^')) {
+                startDtIdx = -1;
+            }
+            if (startLangIdx != -1 && startDtIdx != -1) {
+                throw new IllegalArgumentException("Literals can not have both a language and a datatype");
+            }
+
+            if (startLangIdx != -1) {
+                return vf.createLiteral(decodeString(text, start + 1, endLabelIdx),
+                        string(text, startLangIdx + 1, end));
+            }
+            final IRI datatype = startDtIdx == -1
+                    ? XMLSchema.STRING : cache.createIRI(vf, text, startDtIdx + 3, end - 1);
+            if (indexOf(text, '\\', start + 1, endLabelIdx) == -1) {
+                return cache.createLiteral(vf, text, start + 1, endLabelIdx, datatype);
+            }
+            return cache.createLiteral(vf, decodeString(text, start + 1, endLabelIdx), datatype);
+        }
+
+        /**
+         * Decodes the escapes in text[start, end).
+         */
+        private String decodeString(CharSequence text, int start, int end) {
+            int i = indexOf(text, '\\', start, end);
+            if (i == -1) {
+                return string(text, start, end);
+            }
+
+            final StringBuilder label = new StringBuilder(end - start);
+            label.append(text, start, i);
+            while (i < end) {
+                char c = text.charAt(i);
+                if (c != '\\') {
+                    label.append(c);
+                    i++;
+                    continue;
+                }
+                if (i + 1 >= end) {
+                    throw new IllegalArgumentException("Unescaped backslash in: "
+                            + string(text, start, end));
+                }
+                c = text.charAt(i + 1);
+                switch (c) {
+                    case 't':
+                        label.append('\t');
+                        i += 2;
+                        break;
+                    case 'r':
+                        label.append('\r');
+                        i += 2;
+                        break;
+                    case 'n':
+                        label.append('\n');
+                        i += 2;
+                        break;
+                    case '"':
+                    case '>':
+                    case '\\':
+                        label.append(c);
+                        i += 2;
+                        break;
+                    case 'u':
+                        if (i + 5 >= end) {
+                            throw new IllegalArgumentException("Incomplete Unicode escape sequence in: "
+                                    + string(text, start, end));
+                        }
+                        label.append((char) parseHex(text, i + 2, i + 6, start, end));
+                        i += 6;
+                        break;
+                    case 'U':
+                        if (i + 9 >= end) {
+                            throw new IllegalArgumentException("Incomplete Unicode escape sequence in: "
+                                    + string(text, start, end));
+                        }
+                        label.appendCodePoint(parseHex(text, i + 2, i + 10, start, end));
+                        i += 10;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unescaped backslash in: "
+                                + string(text, start, end));
                 }
+            }
+            return label.toString();
+        }
 
-                sb.append(s.substring(startIdx));
-                return sb.toString();
+        private static int parseHex(CharSequence text, int from, int to, int start, int end) {
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                final int digit = Character.digit(text.charAt(i), 16);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("Illegal Unicode escape sequence '\\"
+                            + string(text, from - 1, to) + "' in: " + string(text, start, end));
+                }
+                value = (value << 4) | digit;
             }
+            return value;
         }
     }
 }
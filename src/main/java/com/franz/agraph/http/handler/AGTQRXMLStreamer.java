@@ -6,10 +6,12 @@ package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueCache;
 import com.franz.agraph.repository.AGValueFactory;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.util.EntityUtils;
+import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
@@ -38,9 +40,7 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
 
     private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
 
-    private final AGValueFactory vf;
     private XMLStreamReader xml;
-    private HttpResponse method;
 
     public AGTQRXMLStreamer(AGValueFactory vf) {
         super(TupleQueryResultFormat.SPARQL.getDefaultMIMEType());
@@ -75,12 +75,13 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
 
     @Override
     public TupleQueryResult getResult() {
-        return new Result();
+        return releasing(new Result());
     }
 
     class Result implements TupleQueryResult {
 
         private List<String> bindingNames;
+        private final AGValueCache cache = vf.getValueCache();
 
         private MapBindingSet next = null;
         private boolean closed = false;
@@ -169,7 +170,8 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
                                 Value value;
                                 if (datatype != null) {
                                     try {
-                                        value = vf.createLiteral(text, vf.createIRI(datatype));
+                                        value = cache.createLiteral(vf, text,
+                                                cache.createIRI(vf, datatype));
                                     } catch (IllegalArgumentException e) {
                                         // Illegal datatype URI
                                         throw new QueryEvaluationException(e.getMessage(), e);
@@ -177,11 +179,13 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
                                 } else if (lang != null) {
                                     value = vf.createLiteral(text, lang);
                                 } else {
-                                    value = vf.createLiteral(text);
+                                    value = cache.createLiteral(vf, text);
                                 }
                                 next.addBinding(bindingName, value);
                             } else if ("uri".equals(name)) {
-                                next.addBinding(bindingName, AGHttpRepoClient.getApplicationResource(vf.createIRI(xml.getElementText()), vf));
+                                final IRI iri = cache.createIRI(vf, xml.getElementText());
+                                next.addBinding(bindingName,
+                                        AGHttpRepoClient.getApplicationResource(iri, vf));
                             } else if ("bnode".equals(name)) {
                                 next.addBinding(bindingName, vf.createBNode(xml.getElementText()));
                             } else {
@@ -38,7 +38,12 @@ public class AGNodeIterator extends NiceIterator<Node> implements Closeable {
     @Override
     public boolean hasNext() {
         try {
-            return result.hasNext();
+            if (result.hasNext()) {
+                return true;
+            }
+            // Release the connection as soon as the result is exhausted.
+            result.close();
+            return false;
         } catch (QueryEvaluationException e) {
             throw new RuntimeException(e);
         }
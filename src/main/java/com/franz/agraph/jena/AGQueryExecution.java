@@ -157,11 +157,10 @@ public class AGQueryExecution implements QueryExecution, Closeable {
 
     @Override
     public Model execConstruct(Model m) {
-        GraphQueryResult result = getConstructResult();
         if (m == null) {
             m = ModelFactory.createDefaultModel();
         }
-        try {
+        try (GraphQueryResult result = getConstructResult()) {
             m.setNsPrefixes(result.getNamespaces());
             while (result.hasNext()) {
                 m.add(model.asStatement(AGNodeFactory.asTriple(result.next())));
@@ -207,6 +206,10 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         } catch (QueryEvaluationException e) {
             throw new QueryException(e);
         }
+        // The result set is read after this returns, so close() releases it.
+        if (resultToClose != null) {
+            resultToClose.close();
+        }
         resultToClose = result;
         return new AGResultSet(result, model);
     }
@@ -35,11 +35,9 @@ public class AGReifier {
         AGRepositoryConnection conn = graph.getConnection();
         AGValueFactory vf = conn.getValueFactory();
         AGGraphQuery bq = conn.prepareGraphQuery(QueryLanguage.SPARQL, queryString);
-        GraphQueryResult result;
-        try {
-            bq.setBinding("st", vf.asValue(n));
-            bq.setDataset(graph.getDataset());
-            result = bq.evaluate();
+        bq.setBinding("st", vf.asValue(n));
+        bq.setDataset(graph.getDataset());
+        try (GraphQueryResult result = bq.evaluate()) {
             if (result.hasNext()) {
                 Triple t = AGNodeFactory.asTriple(result.next());
                 if (result.hasNext()) {
@@ -72,7 +70,6 @@ public class AGReifier {
                 AGRepositoryConnection conn = graph.getConnection();
                 AGValueFactory vf = conn.getValueFactory();
                 AGGraphQuery gq = conn.prepareGraphQuery(QueryLanguage.SPARQL, queryString);
-                GraphQueryResult result;
                 try {
                     if (m.getMatchSubject() != null) {
                         gq.setBinding("s", vf.asValue(m.getMatchSubject()));
@@ -81,8 +78,8 @@ public class AGReifier {
                         gq.setBinding("o", vf.asValue(m.getMatchObject()));
                     }
                     gq.setDataset(graph.getDataset());
-                    result = gq.evaluate();
-                    return new AGTripleIteratorGQ(graph, result);
+                    // The iterator closes the result when it is exhausted or closed.
+                    return new AGTripleIteratorGQ(graph, gq.evaluate());
                 } catch (QueryEvaluationException e) {
                     throw new RuntimeException(e);
                 }
@@ -119,7 +116,6 @@ public class AGReifier {
             String queryString = "select ?v { ?st ?p ?v . FILTER (?v != ?tv) }";
             AGRepositoryConnection conn = graph.getConnection();
             AGTupleQuery q = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
-            TupleQueryResult result;
             try {
                 q.setDataset(graph.getDataset());
                 // Check for existing n with rdf:subject other than t's subject
@@ -127,24 +123,27 @@ public class AGReifier {
                 q.setBinding("st", graph.vf.asValue(n));
                 q.setBinding("p", graph.vf.asValue(RDF.Nodes.subject));
                 q.setBinding("tv", graph.vf.asValue(t.getSubject()));
-                result = q.evaluate();
-                if (result.hasNext()) {
-                    // TODO: convey that it's because of ?v
-                    throw new CannotReifyException(n);
+                try (TupleQueryResult result = q.evaluate()) {
+                    if (result.hasNext()) {
+                        // TODO: convey that it's because of ?v
+                        throw new CannotReifyException(n);
+                    }
                 }
                 // Check for existing n with rdf:predicate other than t's predicate
                 q.setBinding("p", graph.vf.asValue(RDF.Nodes.predicate));
                 q.setBinding("tv", graph.vf.asValue(t.getPredicate()));
-                result = q.evaluate();
-                if (result.hasNext()) {
-                    throw new CannotReifyException(n);
+                try (TupleQueryResult result = q.evaluate()) {
+                    if (result.hasNext()) {
+                        throw new CannotReifyException(n);
+                    }
                 }
                 // Check for existing n with rdf:object other than t's object
                 q.setBinding("p", graph.vf.asValue(RDF.Nodes.object));
                 q.setBinding("tv", graph.vf.asValue(t.getObject()));
-                result = q.evaluate();
-                if (result.hasNext()) {
-                    throw new CannotReifyException(n);
+                try (TupleQueryResult result = q.evaluate()) {
+                    if (result.hasNext()) {
+                        throw new CannotReifyException(n);
+                    }
                 }
             } catch (QueryEvaluationException e) {
                 throw new RuntimeException(e);
@@ -198,11 +197,10 @@ public class AGReifier {
         String queryString = "select ?st where { ?st rdf:type rdf:Statement }";
         AGRepositoryConnection conn = graph.getConnection();
         AGTupleQuery q = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
-        TupleQueryResult result;
         try {
             q.setDataset(graph.getDataset());
-            result = q.evaluate();
-            return new AGNodeIterator(result);
+            // The iterator closes the result when it is exhausted or closed.
+            return new AGNodeIterator(q.evaluate());
         } catch (QueryEvaluationException e) {
             throw new RuntimeException(e);
         }
@@ -214,14 +212,13 @@ public class AGReifier {
         AGRepositoryConnection conn = graph.getConnection();
         AGValueFactory vf = conn.getValueFactory();
         AGTupleQuery q = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
-        TupleQueryResult result;
         try {
             q.setDataset(graph.getDataset());
             q.setBinding("s", vf.asValue(t.getSubject()));
             q.setBinding("p", vf.asValue(t.getPredicate()));
             q.setBinding("o", vf.asValue(t.getObject()));
-            result = q.evaluate();
-            return new AGNodeIterator(result);
+            // The iterator closes the result when it is exhausted or closed.
+            return new AGNodeIterator(q.evaluate());
         } catch (QueryEvaluationException e) {
             throw new RuntimeException(e);
         }
@@ -248,9 +245,10 @@ public class AGReifier {
             q.setBinding("s", vf.asValue(t.getSubject()));
             q.setBinding("p", vf.asValue(t.getPredicate()));
             q.setBinding("o", vf.asValue(t.getObject()));
-            TupleQueryResult result = q.evaluate();
-            while (result.hasNext()) {
-                remove(AGNodeFactory.asNode(result.next().getValue("st")), t);
+            try (TupleQueryResult result = q.evaluate()) {
+                while (result.hasNext()) {
+                    remove(AGNodeFactory.asNode(result.next().getValue("st")), t);
+                }
             }
         } catch (QueryEvaluationException e) {
             throw new RuntimeException(e);
@@ -36,7 +36,13 @@ public class AGResultSet implements ResultSet {
 
     @Override
     public void close() {
-        this.model.close();
+        try {
+            result.close();
+        } catch (QueryEvaluationException e) {
+            throw new RuntimeException(e);
+        } finally {
+            this.model.close();
+        }
     }
 
     @Override
@@ -55,6 +55,11 @@ public class AGConnConfig {
      */
     public final Integer httpSocketTimeout;
 
+    /**
+     * @see AGConnProp#validationInterval
+     */
+    public final Integer validationInterval;
+
     public AGConnConfig(Map<AGConnProp, String> props) {
         serverUrl = getStringRequired(props, AGConnProp.serverUrl);
         username = getStringRequired(props, AGConnProp.username);
@@ -66,6 +71,7 @@ public class AGConnConfig {
                                    Session.SHARED.name()).toUpperCase());
         sessionLifetime = getInt(props, AGConnProp.sessionLifetime);
         httpSocketTimeout = getInt(props, AGConnProp.httpSocketTimeout);
+        validationInterval = getInt(props, AGConnProp.validationInterval);
     }
 
     private Integer getInt(Map<AGConnProp, String> props, AGConnProp prop) {
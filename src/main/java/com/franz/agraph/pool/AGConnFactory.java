@@ -4,13 +4,9 @@
 
 package com.franz.agraph.pool;
 
-import com.franz.agraph.http.AGHTTPClient;
 import com.franz.agraph.http.AGHttpRepoClient;
-import com.franz.agraph.repository.AGCatalog;
 import com.franz.agraph.repository.AGRepository;
 import com.franz.agraph.repository.AGRepositoryConnection;
-import com.franz.agraph.repository.AGServer;
-import org.apache.http.config.SocketConfig;
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
@@ -20,12 +16,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Adapts the {@link AGRepositoryConnection} API
  * to the commons-pool factory interface,
  * leaving creation of the connection (and configuration)
  * to a subclass, defined by users of this library.
+ * <p>
+ * All connections created by one factory share a single {@link AGServer}
+ * (and so a single HTTP client and connection manager) and
+ * {@link AGRepository}, which are set up, and the repository looked up
+ * or created, when the first connection is made.  They are closed by
+ * {@link #close()} once all connections have been destroyed.</p>
  *
  * @since v4.3.3
  */
@@ -34,44 +37,62 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
 
     private final static Logger log = LoggerFactory.getLogger(AGConnFactory.class);
 
+    /**
+     * Default for {@link AGConnProp#validationInterval}, in milliseconds.
+     */
+    public static final int DEFAULT_VALIDATION_INTERVAL = 5000;
+
     private final AGConnConfig props;
+    private final long validationIntervalNanos;
+
+    // Shared by all connections.
+    private final AGSharedServer shared;
 
     public AGConnFactory(AGConnConfig props) {
         this.props = props;
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                props.validationInterval != null ? props.validationInterval : DEFAULT_VALIDATION_INTERVAL);
+        this.shared = new AGSharedServer(props.serverUrl, props.username, props.password,
+                props.httpSocketTimeout);
+    }
+
+    AGConnProp.Session getSession() {
+        return props.session;
+    }
+
+    /**
+     * Returns the repository all connections are made to, setting up
+     * the server and repository objects on the first call.
+     *
+     * @return the shared repository
+     * @throws RepositoryException if the repository cannot be found or created
+     */
+    protected AGRepository getRepository() throws RepositoryException {
+        return shared.getRepository(props.catalog, props.repository);
     }
 
     @Override
     public AGRepositoryConnection create() throws Exception {
-        SocketConfig socketConfig = null;
-        if (props.httpSocketTimeout != null) {
-            socketConfig = SocketConfig.custom().setSoTimeout(props.httpSocketTimeout).build();
-        }
-        AGHTTPClient httpClient = new AGHTTPClient(props.serverUrl, null, socketConfig);
-        final AGServer server = new AGServer(props.username, props.password, httpClient);
-        final AGCatalog catalog;
-        if (props.catalog != null) {
-            catalog = server.getCatalog(props.catalog);
-        } else {
-            catalog = server.getRootCatalog();
-        }
-
-        final AGRepository repo;
-        if (!catalog.hasRepository(props.repository)) {
-            // This avoids multiple connections sending create requests
-            // at the same time.
-            synchronized (this) {
-                repo = catalog.createRepository(props.repository, false);
+        final AGRepository repository = shared.acquire(props.catalog, props.repository);
+        try {
+            AGRepositoryConnection conn = repository.getConnection();
+            if (props.sessionLifetime != null) {
+                conn.setSessionLifetime(props.sessionLifetime);
             }
-        } else {
-            // Create directly to skip a redundant check
-            repo = new AGRepository(catalog, props.repository);
-            repo.init();
+            return conn;
+        } catch (RuntimeException e) {
+            shared.release();
+            throw e;
         }
-        AGRepositoryConnection conn = repo.getConnection();
-        if (props.sessionLifetime != null) {
-            conn.setSessionLifetime(props.sessionLifetime);
-        }
-        return conn;
+    }
+
+    /**
+     * Closes the shared server and repository objects once all connections
+     * created by this factory have been destroyed (immediately if there are
+     * none).  No connections can be created afterwards.
+     */
+    public void close() {
+        shared.close();
     }
 
     @Override
@@ -82,13 +103,26 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
     @Override
     public void activateObject(PooledObject<AGRepositoryConnection> pooled)
             throws RepositoryException {
-        final AGRepositoryConnection conn = pooled.getObject();
+        activate(pooled.getObject(), props.session);
+    }
+
+    /**
+     * Prepares a connection to be borrowed: rolls it back if it is not in
+     * autoCommit mode, and puts it in the given session mode.
+     */
+    static void activate(AGRepositoryConnection conn, AGConnProp.Session session)
+            throws RepositoryException {
         // if autoCommit is false, then rollback to refresh this connection's view of the repository.
         if (!conn.isAutoCommit()) {
-            conn.rollback();
+            if (conn.isDirty()) {
+                conn.rollback();
+            } else {
+                // Nothing to discard, so let the next request do it.
+                conn.prepareHttpRepoClient().rollbackOnNextRequest();
+            }
         }
 
-        switch (props.session) {
+        switch (session) {
             case SHARED:
                 // Typically a shared connection (url through the frontend port) but may be a dedicated
                 // session if setAutoCommit() has been called on this connection.
@@ -117,6 +151,7 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
                 }
                 break;
         }
+        conn.clearDirty();
     }
 
     // Do nothing when returning a connection to the pool.
@@ -126,23 +161,47 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
     // Setting TestWhileIdle to true (and associated PoolProps) will
     // trigger a rollback when the connection is not being used.
     //
-    // rollback() will always be called when a connection is borrowed
-    // from the pool.
+    // A connection that is not in autoCommit mode will always be
+    // rolled back when it is borrowed from the pool, with a request
+    // of its own if it is dirty, or else with its next request.
 
     /**
-     * Calls {@link AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)}.
+     * Calls {@link AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)},
+     * with a rollback, if the connection is {@link AGRepositoryConnection#isDirty() dirty}.
+     * A clean connection is valid without a request if it made one within the
+     * {@link AGConnProp#validationInterval}, and is otherwise checked by pinging
+     * its session, or with size() if it has none.
      */
     @Override
     public boolean validateObject(PooledObject<AGRepositoryConnection> pooled) {
-        final AGRepositoryConnection conn = pooled.getObject();
+        return validate(pooled.getObject(), validationIntervalNanos);
+    }
+
+    /**
+     * @see #validateObject(PooledObject)
+     */
+    static boolean validate(AGRepositoryConnection conn, long validationIntervalNanos) {
         try {
+            AGHttpRepoClient client = conn.prepareHttpRepoClient();
+            if (!conn.isDirty()) {
+                if (System.nanoTime() - client.getLastUsed() < validationIntervalNanos) {
+                    return true;
+                }
+                if (client.isDedicatedSession()) {
+                    // The session belongs to the repo, so it still exists.
+                    client.ping();
+                } else {
+                    conn.size();
+                }
+                return true;
+            }
             // ping() only checks that the network is up, so we call size(),
             // which ensures the repo exists.
-            AGHttpRepoClient client = conn.prepareHttpRepoClient();
             // Have the server perform a rollback as part of the size request.
             client.setSendRollbackHeader(true);
             conn.size();
             client.setSendRollbackHeader(false);
+            conn.clearDirty();
             return true;
         } catch (Exception e) {
             log.debug("validateObject " + conn, e);
@@ -152,7 +211,18 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
 
     @Override
     public void destroyObject(PooledObject<AGRepositoryConnection> pooled) {
-        final AGRepositoryConnection conn = pooled.getObject();
+        try {
+            destroy(pooled.getObject());
+        } finally {
+            // The server and repository objects are shared.
+            shared.release();
+        }
+    }
+
+    /**
+     * Really closes a pooled connection.
+     */
+    static void destroy(AGRepositoryConnection conn) {
         // Make 'close' really shutdown the connection.
         conn.setPool(null);
         try {
@@ -167,8 +237,5 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
                 throw e;
             }
         }
-        // Each pooled connection has dedicated server and repository objects.
-        conn.getRepository().shutDown();
-        conn.getServer().close();
     }
 }
@@ -0,0 +1,72 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import com.franz.agraph.pool.AGConnProp.Session;
+
+import java.util.Objects;
+
+/**
+ * Identifies the connections of an {@link AGKeyedConnPool} that can be
+ * used interchangeably: those to one repository, in one session mode.
+ *
+ * @see AGKeyedConnPool#borrowObject(AGConnKey)
+ */
+public final class AGConnKey {
+
+    private final String catalog;
+    private final String repository;
+    private final Session session;
+
+    /**
+     * @param catalog    catalog name, "/" or null for the root catalog
+     * @param repository repository name
+     * @param session    session mode of the connections
+     */
+    public AGConnKey(String catalog, String repository, Session session) {
+        this.catalog = catalog == null || catalog.equals("/") ? null : catalog;
+        this.repository = Objects.requireNonNull(repository, "repository");
+        this.session = Objects.requireNonNull(session, "session");
+    }
+
+    /**
+     * @return the catalog name, or null for the root catalog
+     */
+    public String getCatalog() {
+        return catalog;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AGConnKey)) {
+            return false;
+        }
+        final AGConnKey other = (AGConnKey) o;
+        return Objects.equals(catalog, other.catalog)
+                && repository.equals(other.repository)
+                && session == other.session;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(catalog, repository, session);
+    }
+
+    @Override
+    public String toString() {
+        return (catalog == null ? "" : catalog) + "/" + repository + " " + session;
+    }
+}
@@ -12,12 +12,28 @@ import org.eclipse.rdf4j.repository.RepositoryException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.servlet.ServletContextListener;
-import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Pooling for {@link AGRepositoryConnection}s.
@@ -77,6 +93,31 @@ import java.util.Map;
  *     <li>
  *         <code>initialSize</code> can be used to pre-create a set number
  *         of connections. By default the pool only opens connections if needed.
+ *         Connections are created <code>createThreads</code> at a time, and
+ *         <code>startupPolicy</code> decides whether the pool can start
+ *         when some of them cannot be created.
+ *     </li>
+ *     <li>
+ *         {@link #borrowAsync(Duration)} borrows a connection without
+ *         blocking the calling thread.  Asynchronous borrowers are served
+ *         in the order they asked, each until its own deadline.
+ *     </li>
+ *     <li>
+ *         {@link #getStats()} returns statistics of the pool, which can also
+ *         be published over JMX by setting <code>jmxName</code>.
+ *     </li>
+ *     <li>
+ *         When a borrow or an invalidation leaves fewer than <code>minIdle</code>
+ *         idle connections, new ones are created in the background, on the
+ *         same <code>createThreads</code> threads.
+ *     </li>
+ *     <li>
+ *         <code>adaptiveSizing</code>, or an {@link AGPoolConfig#setSizingConfig
+ *         sizing config}, lets an {@link AGPoolSizer} move the number of idle
+ *         connections between minIdle and maxIdle as borrow waits and
+ *         utilization rise and fall.  Connections above the number it
+ *         sets are closed by the evictor once they have been idle for its
+ *         shrink cooldown, never as they are returned.
  *     </li>
  *     <li>
  *         <code>warmup</code> can be set to <code>true</code> to force the server
@@ -89,34 +130,63 @@ import java.util.Map;
  *
  * @since v4.3.3
  */
-public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoCloseable {
+public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoCloseable, AGConnPoolMXBean {
 
     private static final Logger log = LoggerFactory.getLogger(AGConnPool.class);
 
+    private final PooledObjectFactory<AGRepositoryConnection> factory;
     private final ObjectPool<AGRepositoryConnection> delegate;
+    private final AGConnPoolMetrics metrics = new AGConnPoolMetrics();
     private final Thread shutdownHook;
+    // Null if not registered.
+    private ObjectName jmxName;
+    // Creates connections in parallel; its threads stop when idle.
+    private final ThreadPoolExecutor creator;
+    // Background creations submitted and not yet done.
+    private final AtomicInteger pendingCreates = new AtomicInteger();
+    // Asynchronous borrowers, in the order they asked.
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    // Number of times waiters were dispatched since the dispatcher last
+    // looked; it runs while this is not 0.
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+    // Null unless the pool is sized adaptively.
+    private final AGPoolSizer sizer;
 
     /**
      * @see #create(Object...)
      */
     private AGConnPool(PooledObjectFactory<AGRepositoryConnection> factory,
                        AGPoolConfig poolConfig) {
-        delegate = new GenericObjectPool<>(factory, poolConfig);
+        this.factory = factory;
+        delegate = new GenericObjectPool<>(metrics.wrap(factory), poolConfig);
+        creator = new ThreadPoolExecutor(poolConfig.createThreads, poolConfig.createThreads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                    thread.setName("agraph-pool-create");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        creator.allowCoreThreadTimeOut(true);
 
         if (poolConfig.initialSize > 0) {
-            List<AGRepositoryConnection> conns = new ArrayList<>(poolConfig.initialSize);
             try {
-                for (int i = 0; i < poolConfig.initialSize; i++) {
-                    conns.add(borrowObject());
-                }
-            } catch (RepositoryException e) {
-                throw new RuntimeException(e);
-            }
-            // return them to the pool
-            for (AGRepositoryConnection conn : conns) {
-                conn.close();
+                createIdle(poolConfig.initialSize, poolConfig.startupPolicy);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
             }
         }
+        refill();
+        if (poolConfig.getSizingConfig() != null) {
+            trimIdleByEviction(poolConfig.getSizingConfig());
+            sizer = new AGPoolSizer(new SizedPool(), poolConfig.getSizingConfig(), System::nanoTime);
+            sizer.start();
+        } else {
+            sizer = null;
+        }
+        if (poolConfig.jmxName != null) {
+            registerMBean(poolConfig.jmxName);
+        }
         if (poolConfig.shutdownHook) {
             shutdownHook = new Thread(this::close);
             Runtime.getRuntime().addShutdownHook(shutdownHook);
@@ -195,17 +265,154 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
     @Override
     public AGRepositoryConnection borrowObject() throws RepositoryException {
         final AGRepositoryConnection conn;
+        final long start = System.nanoTime();
         try {
             conn = delegate.borrowObject();
         } catch (Exception e) {
+            metrics.borrowFailed(System.nanoTime() - start);
             throw new RepositoryException(e);
         }
+        metrics.borrowed(conn, System.nanoTime() - start);
         // Make sure 'close' will return the connection to the pool
         // instead of really closing it.
         conn.setPool(this);
+        refill();
         return conn;
     }
 
+    /**
+     * Borrows a connection with the pool's maxWait as deadline.
+     *
+     * @return a future connection
+     * @see #borrowAsync(Duration)
+     */
+    public CompletableFuture<AGRepositoryConnection> borrowAsync() {
+        return borrowAsync(delegate instanceof GenericObjectPool
+                ? ((GenericObjectPool) delegate).getMaxWaitDuration() : null);
+    }
+
+    /**
+     * Borrows a connection without blocking the calling thread.
+     * <p>
+     * The future completes with a connection as soon as one is idle, or
+     * has been created, and all earlier asynchronous borrowers have been
+     * served.  It fails with a {@link TimeoutException} if that does not
+     * happen within the timeout, or with a {@link RepositoryException} if
+     * a connection cannot be created or the pool is closed.  Cancelling
+     * the future withdraws the request.  Threads blocked in
+     * {@link #borrowObject()} are not part of the queue and may take
+     * returned connections first.</p>
+     * <p>
+     * Connections are borrowed and created on the pool's creation threads
+     * (see {@link AGPoolProp#createThreads}), so dependent stages that
+     * should not run there should use the async variants of the
+     * {@link CompletableFuture} methods.  Close the connection to return
+     * it, as with {@link #borrowObject()}.</p>
+     *
+     * @param timeout how long to wait at most, null or negative to wait
+     *                until the pool is closed
+     * @return a future connection
+     */
+    public CompletableFuture<AGRepositoryConnection> borrowAsync(Duration timeout) {
+        final CompletableFuture<AGRepositoryConnection> future = new CompletableFuture<>();
+        final Waiter waiter = new Waiter(future);
+        if (timeout != null && !timeout.isNegative()) {
+            future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        future.whenComplete((conn, e) -> {
+            if (e != null) {
+                waiters.remove(waiter);
+                if (e instanceof TimeoutException) {
+                    metrics.borrowFailed(System.nanoTime() - waiter.start);
+                }
+            }
+        });
+        waiters.add(waiter);
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Serves waiting asynchronous borrowers on a creation thread,
+     * unless that is already being done.
+     */
+    private void dispatch() {
+        if (waiters.isEmpty() || dispatchRequests.getAndIncrement() > 0) {
+            return;
+        }
+        try {
+            creator.execute(this::dispatchWaiters);
+        } catch (RejectedExecutionException e) {
+            dispatchRequests.set(0);
+            failWaiters();
+        }
+    }
+
+    private void dispatchWaiters() {
+        int requests = dispatchRequests.get();
+        while (true) {
+            serveWaiters();
+            // Look again if anything happened meanwhile.
+            final int seen = requests;
+            requests = dispatchRequests.addAndGet(-seen);
+            if (requests == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands connections to waiters in order, until there are no more
+     * waiters or no connection can be had without waiting.
+     */
+    private void serveWaiters() {
+        final GenericObjectPool<AGRepositoryConnection> gop = (GenericObjectPool<AGRepositoryConnection>) delegate;
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null) {
+            if (waiter.future.isDone()) {
+                // Timed out or cancelled.
+                waiters.remove(waiter);
+                continue;
+            }
+            final AGRepositoryConnection conn;
+            try {
+                conn = gop.borrowObject(Duration.ZERO);
+            } catch (NoSuchElementException e) {
+                // Exhausted, served again when a connection comes back.
+                return;
+            } catch (Exception e) {
+                waiters.remove(waiter);
+                metrics.borrowFailed(System.nanoTime() - waiter.start);
+                waiter.future.completeExceptionally(e instanceof RepositoryException ? e : new RepositoryException(e));
+                continue;
+            }
+            waiters.remove(waiter);
+            metrics.borrowed(conn, System.nanoTime() - waiter.start);
+            conn.setPool(this);
+            if (!waiter.future.complete(conn)) {
+                // Timed out meanwhile.
+                conn.close();
+            }
+        }
+        refill();
+    }
+
+    private void failWaiters() {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.future.completeExceptionally(new RepositoryException("Connection pool is closed"));
+        }
+    }
+
+    private static final class Waiter {
+        final CompletableFuture<AGRepositoryConnection> future;
+        final long start = System.nanoTime();
+
+        Waiter(CompletableFuture<AGRepositoryConnection> future) {
+            this.future = future;
+        }
+    }
+
     /**
      * Same as {@link #borrowObject()}.
      *
@@ -232,9 +439,56 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         return delegate.getNumIdle();
     }
 
+    @Override
+    public int getNumWaiters() {
+        if (delegate instanceof GenericObjectPool) {
+            return ((GenericObjectPool) delegate).getNumWaiters();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this pool: connection
+     * counts, borrow wait times, creation, destruction and validation
+     * failure counts and rates, and mean connection lifetime, broken
+     * down by session mode.
+     *
+     * @return the statistics
+     */
+    @Override
+    public AGConnPoolStats getStats() {
+        final AGConnProp.Session session = factory instanceof AGConnFactory
+                ? ((AGConnFactory) factory).getSession() : null;
+        return metrics.snapshot(session, (GenericObjectPool<AGRepositoryConnection>) delegate);
+    }
+
+    private void registerMBean(String name) {
+        try {
+            final ObjectName objectName = new ObjectName("com.franz.agraph:type=AGConnPool,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            jmxName = objectName;
+        } catch (JMException e) {
+            log.warn("Could not register pool MBean " + name, e);
+        }
+    }
+
+    private void unregisterMBean() {
+        if (jmxName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(jmxName);
+            } catch (JMException e) {
+                log.debug("Could not unregister pool MBean " + jmxName, e);
+            }
+            jmxName = null;
+        }
+    }
+
     @Override
     public void invalidateObject(AGRepositoryConnection conn) throws Exception {
         delegate.invalidateObject(conn);
+        refill();
+        dispatch();
     }
 
     @Override
@@ -243,6 +497,7 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         // return the connection to the pool again.
         conn.setPool(null);
         delegate.returnObject(conn);
+        dispatch();
     }
 
     public void ensureIdle(int n) throws Exception {
@@ -253,8 +508,172 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
                 gop.setMaxIdle(n);
             }
         }
+        createIdle(n, AGPoolProp.StartupPolicy.FAIL_FAST);
+    }
+
+    /**
+     * Adds n idle connections, creating up to
+     * {@link AGPoolConfig#createThreads} of them at the same time,
+     * and waits until they are all created or have failed.
+     *
+     * @param n      number of connections to create
+     * @param policy {@link AGPoolProp.StartupPolicy#FAIL_FAST} to throw
+     *               on the first failure, or {@link AGPoolProp.StartupPolicy#PARTIAL}
+     *               to log failures and keep the connections that were created
+     * @throws RepositoryException if a connection cannot be created
+     *                             and the policy is to fail fast
+     */
+    private void createIdle(int n, AGPoolProp.StartupPolicy policy) throws RepositoryException {
+        final CompletionService<Void> created = new ExecutorCompletionService<>(creator);
         for (int i = 0; i < n; i++) {
-            addObject();
+            created.submit(() -> {
+                addIdle();
+                return null;
+            });
+        }
+        RepositoryException failure = null;
+        int failed = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                try {
+                    created.take().get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    if (failure == null) {
+                        failure = new RepositoryException("Could not create pooled connection", e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                    if (policy == AGPoolProp.StartupPolicy.FAIL_FAST) {
+                        // The caller gives up on the pool, no need to wait for the rest.
+                        throw failure;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while creating pooled connections", e);
+        }
+        if (failure != null) {
+            log.warn("Created " + (n - failed) + " of " + n + " connections", failure);
+        }
+    }
+
+    /**
+     * Starts creating connections in the background if there are
+     * fewer than minIdle idle connections, counting those already
+     * being created, without exceeding maxTotal.
+     */
+    private void refill() {
+        if (!(delegate instanceof GenericObjectPool)) {
+            return;
+        }
+        final GenericObjectPool<AGRepositoryConnection> gop = (GenericObjectPool<AGRepositoryConnection>) delegate;
+        while (!gop.isClosed()) {
+            final int pending = pendingCreates.get();
+            int missing = gop.getMinIdle() - gop.getNumIdle();
+            if (gop.getMaxTotal() >= 0) {
+                missing = Math.min(missing, gop.getMaxTotal() - gop.getNumActive() - gop.getNumIdle());
+            }
+            if (missing - pending <= 0) {
+                return;
+            }
+            if (pendingCreates.compareAndSet(pending, pending + 1)) {
+                try {
+                    creator.execute(this::refillOne);
+                } catch (RejectedExecutionException e) {
+                    pendingCreates.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void refillOne() {
+        try {
+            addIdle();
+        } catch (Exception e) {
+            // Tried again on the next borrow.
+            log.debug("Could not create idle connection", e);
+        } finally {
+            pendingCreates.decrementAndGet();
+        }
+    }
+
+    /**
+     * What the {@link AGPoolSizer} of this pool sees.
+     */
+    private final class SizedPool implements AGPoolSizer.Pool {
+        @Override
+        public int getNumActive() {
+            return AGConnPool.this.getNumActive();
+        }
+
+        @Override
+        public int getNumIdle() {
+            return AGConnPool.this.getNumIdle();
+        }
+
+        @Override
+        public int getNumWaiters() {
+            // Asynchronous borrowers wait too.
+            return AGConnPool.this.getNumWaiters() + waiters.size();
+        }
+
+        @Override
+        public long getBorrowCount() {
+            return metrics.getBorrowCount();
+        }
+
+        @Override
+        public long getBorrowWaitNanos() {
+            return metrics.getBorrowWaitNanos();
+        }
+
+        /**
+         * Sets minIdle to n.  Missing connections are created in the
+         * background.  Excess ones are left to the evictor (see
+         * {@link #trimIdleByEviction}): maxIdle stays at the upper bound,
+         * so returned connections are kept rather than closed, and a
+         * shrink does not make the next borrows open new sessions.
+         */
+        @Override
+        public void setTargetIdle(int n) {
+            final GenericObjectPool<AGRepositoryConnection> gop = (GenericObjectPool<AGRepositoryConnection>) delegate;
+            gop.setMinIdle(n);
+            refill();
+        }
+    }
+
+    /**
+     * Sets up the pool for an {@link AGPoolSizer}: maxIdle is the upper
+     * bound of the sizer, and idle connections beyond its target are
+     * closed by the evictor once they have been idle for the shrink
+     * cooldown.  An evictor the pool config already sets up is kept as is.
+     */
+    private void trimIdleByEviction(AGPoolSizingConfig sizing) {
+        final GenericObjectPool<AGRepositoryConnection> gop = (GenericObjectPool<AGRepositoryConnection>) delegate;
+        gop.setMaxIdle(sizing.getMaxIdle());
+        if (gop.getSoftMinEvictableIdleDuration().isNegative()
+                || gop.getSoftMinEvictableIdleDuration().isZero()) {
+            gop.setSoftMinEvictableIdle(sizing.getShrinkCooldown());
+        }
+        if (gop.getDurationBetweenEvictionRuns().isNegative()
+                || gop.getDurationBetweenEvictionRuns().isZero()) {
+            // Look at all idle connections at every interval of the sizer.
+            gop.setNumTestsPerEvictionRun(-1);
+            gop.setTimeBetweenEvictionRuns(sizing.getInterval());
+        }
+    }
+
+    private void addIdle() throws Exception {
+        try {
+            delegate.addObject();
+        } finally {
+            if (delegate instanceof GenericObjectPool && ((GenericObjectPool) delegate).isClosed()) {
+                // The pool was closed while the connection was created.
+                delegate.clear();
+            }
         }
     }
 
@@ -263,7 +682,17 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
         if (log.isDebugEnabled()) {
             log.debug("close " + this);
         }
+        if (sizer != null) {
+            sizer.stop();
+        }
         delegate.close();
+        creator.shutdownNow();
+        failWaiters();
+        unregisterMBean();
+        if (factory instanceof AGConnFactory) {
+            // Releases the shared server once borrowed connections are returned.
+            ((AGConnFactory) factory).close();
+        }
         if (shutdownHook != null) {
             // It would be safe to close a pool multiple times,
             // but if we don't delete the hook it will keep a
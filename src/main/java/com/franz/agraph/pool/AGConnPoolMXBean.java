@@ -0,0 +1,34 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+/**
+ * Management interface of an {@link AGConnPool}, registered with the
+ * platform MBean server when {@link AGPoolProp#jmxName} is set.
+ *
+ * @see AGConnPool#getStats()
+ */
+public interface AGConnPoolMXBean {
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    int getNumActive();
+
+    /**
+     * @return the number of connections idle in the pool
+     */
+    int getNumIdle();
+
+    /**
+     * @return the number of threads waiting to borrow a connection
+     */
+    int getNumWaiters();
+
+    /**
+     * @return a snapshot of the statistics of the pool
+     */
+    AGConnPoolStats getStats();
+}
@@ -0,0 +1,171 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import com.franz.agraph.http.AGLatencyHistogram;
+import com.franz.agraph.pool.AGConnProp.Session;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.apache.commons.pool2.DestroyMode;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the statistics of an {@link AGConnPool}.
+ * <p>
+ * Connection lifecycle events are seen by wrapping the pool's factory
+ * with {@link #wrap(PooledObjectFactory)}; borrows are reported by the
+ * pool.  Recording does not lock.</p>
+ */
+class AGConnPoolMetrics {
+
+    private final long start = System.nanoTime();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder borrowFailures = new LongAdder();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AGLatencyHistogram borrowWait = new AGLatencyHistogram();
+    private final Map<Session, ModeMetrics> modes = new EnumMap<>(Session.class);
+
+    AGConnPoolMetrics() {
+        for (Session session : Session.values()) {
+            modes.put(session, new ModeMetrics());
+        }
+    }
+
+    /**
+     * Returns the session mode a connection is in, without making
+     * requests or sending statements waiting in its add buffer.
+     */
+    static Session modeOf(AGRepositoryConnection conn) {
+        if (!conn.isDedicatedSession()) {
+            return Session.SHARED;
+        }
+        return conn.isSessionAutoCommit() ? Session.DEDICATED : Session.TX;
+    }
+
+    private ModeMetrics of(AGRepositoryConnection conn) {
+        return modes.get(modeOf(conn));
+    }
+
+    void borrowed(AGRepositoryConnection conn, long waitNanos) {
+        recordWait(waitNanos);
+        final ModeMetrics mode = of(conn);
+        mode.borrowed.increment();
+        mode.borrowWait.record(waitNanos);
+    }
+
+    void borrowFailed(long waitNanos) {
+        recordWait(waitNanos);
+        borrowFailures.increment();
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowWait.record(waitNanos);
+        borrows.increment();
+        borrowWaitNanos.add(waitNanos);
+    }
+
+    /**
+     * @return the number of borrows so far, including failed ones
+     */
+    long getBorrowCount() {
+        return borrows.sum();
+    }
+
+    /**
+     * @return the exact total wait of all borrows so far
+     */
+    long getBorrowWaitNanos() {
+        return borrowWaitNanos.sum();
+    }
+
+    AGConnPoolStats snapshot(Session session, GenericObjectPool<AGRepositoryConnection> pool) {
+        final Map<Session, AGConnPoolStats.SessionStats> sessions = new EnumMap<>(Session.class);
+        modes.forEach((mode, metrics) -> {
+            if (metrics.borrowed.sum() > 0 || metrics.destroyed.sum() > 0) {
+                sessions.put(mode, new AGConnPoolStats.SessionStats(metrics.borrowed.sum(),
+                        metrics.destroyed.sum(), metrics.validationFailures.sum(),
+                        metrics.lifetimeNanos.sum(), metrics.borrowWait));
+            }
+        });
+        return new AGConnPoolStats(session, pool.getNumActive(), pool.getNumIdle(), pool.getNumWaiters(),
+                pool.getMaxTotal(), System.nanoTime() - start, created.sum(), borrowFailures.sum(),
+                borrowWait, sessions);
+    }
+
+    /**
+     * @return a factory delegating to the given one and recording
+     * creation, validation and destruction of connections
+     */
+    PooledObjectFactory<AGRepositoryConnection> wrap(PooledObjectFactory<AGRepositoryConnection> factory) {
+        return new MeteredFactory(factory);
+    }
+
+    private static final class ModeMetrics {
+        final LongAdder borrowed = new LongAdder();
+        final LongAdder destroyed = new LongAdder();
+        final LongAdder validationFailures = new LongAdder();
+        final LongAdder lifetimeNanos = new LongAdder();
+        final AGLatencyHistogram borrowWait = new AGLatencyHistogram();
+    }
+
+    private final class MeteredFactory implements PooledObjectFactory<AGRepositoryConnection> {
+        private final PooledObjectFactory<AGRepositoryConnection> delegate;
+
+        MeteredFactory(PooledObjectFactory<AGRepositoryConnection> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public PooledObject<AGRepositoryConnection> makeObject() throws Exception {
+            final PooledObject<AGRepositoryConnection> pooled = delegate.makeObject();
+            created.increment();
+            return pooled;
+        }
+
+        @Override
+        public void destroyObject(PooledObject<AGRepositoryConnection> pooled) throws Exception {
+            destroyObject(pooled, DestroyMode.NORMAL);
+        }
+
+        @Override
+        public void destroyObject(PooledObject<AGRepositoryConnection> pooled, DestroyMode destroyMode)
+                throws Exception {
+            final ModeMetrics mode = of(pooled.getObject());
+            try {
+                delegate.destroyObject(pooled, destroyMode);
+            } finally {
+                mode.destroyed.increment();
+                mode.lifetimeNanos.add(Duration.between(pooled.getCreateInstant(), Instant.now()).toNanos());
+            }
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<AGRepositoryConnection> pooled) {
+            final boolean valid = delegate.validateObject(pooled);
+            if (!valid) {
+                of(pooled.getObject()).validationFailures.increment();
+            }
+            return valid;
+        }
+
+        @Override
+        public void activateObject(PooledObject<AGRepositoryConnection> pooled) throws Exception {
+            delegate.activateObject(pooled);
+        }
+
+        @Override
+        public void passivateObject(PooledObject<AGRepositoryConnection> pooled) throws Exception {
+            delegate.passivateObject(pooled);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import com.franz.agraph.http.AGLatencyHistogram;
+import com.franz.agraph.pool.AGConnProp.Session;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the statistics of an {@link AGConnPool},
+ * taken by {@link AGConnPool#getStats()}.
+ * <p>
+ * Counts are totals since the pool was created; rates are averages
+ * over the same time.  Borrows, destructions and validation failures
+ * are also broken down by the {@link Session} mode the connection was
+ * in at the time (see {@link #getSessions()}).  Times are in
+ * milliseconds.</p>
+ */
+public final class AGConnPoolStats {
+
+    private final Session session;
+    private final int numActive;
+    private final int numIdle;
+    private final int numWaiters;
+    private final int maxTotal;
+    private final long uptimeMillis;
+    private final long created;
+    private final long destroyed;
+    private final long borrowed;
+    private final long borrowFailures;
+    private final long validationFailures;
+    private final double borrowWaitMeanMillis;
+    private final double borrowWaitP50Millis;
+    private final double borrowWaitP99Millis;
+    private final double borrowWaitMaxMillis;
+    private final Map<Session, SessionStats> sessions;
+
+    AGConnPoolStats(Session session, int numActive, int numIdle, int numWaiters, int maxTotal,
+                    long uptimeNanos, long created, long borrowFailures,
+                    AGLatencyHistogram borrowWait, Map<Session, SessionStats> sessions) {
+        this.session = session;
+        this.numActive = numActive;
+        this.numIdle = numIdle;
+        this.numWaiters = numWaiters;
+        this.maxTotal = maxTotal;
+        this.uptimeMillis = TimeUnit.NANOSECONDS.toMillis(uptimeNanos);
+        this.created = created;
+        this.borrowFailures = borrowFailures;
+        this.borrowWaitMeanMillis = toMillis(borrowWait.getMean());
+        this.borrowWaitP50Millis = toMillis(borrowWait.getValueAtPercentile(50));
+        this.borrowWaitP99Millis = toMillis(borrowWait.getValueAtPercentile(99));
+        this.borrowWaitMaxMillis = toMillis(borrowWait.getMax());
+        long destroyedSum = 0;
+        long borrowedSum = 0;
+        long validationFailuresSum = 0;
+        for (SessionStats stats : sessions.values()) {
+            destroyedSum += stats.getDestroyed();
+            borrowedSum += stats.getBorrowed();
+            validationFailuresSum += stats.getValidationFailures();
+        }
+        this.destroyed = destroyedSum;
+        this.borrowed = borrowedSum;
+        this.validationFailures = validationFailuresSum;
+        this.sessions = Collections.unmodifiableMap(new EnumMap<>(sessions));
+    }
+
+    static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private double perSecond(long count) {
+        return uptimeMillis == 0 ? 0 : count * 1000.0 / uptimeMillis;
+    }
+
+    /**
+     * @return the session mode the pool is configured with,
+     * or null if the pool uses a custom connection factory
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    public int getNumActive() {
+        return numActive;
+    }
+
+    public int getNumIdle() {
+        return numIdle;
+    }
+
+    /**
+     * @return the number of threads waiting to borrow a connection
+     */
+    public int getNumWaiters() {
+        return numWaiters;
+    }
+
+    /**
+     * @return the maximum number of connections, negative for no limit
+     */
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * @return milliseconds since the pool was created
+     */
+    public long getUptimeMillis() {
+        return uptimeMillis;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getDestroyed() {
+        return destroyed;
+    }
+
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    /**
+     * @return the number of borrows that failed, because the pool was
+     * exhausted for longer than maxWait or a connection could not be created
+     */
+    public long getBorrowFailures() {
+        return borrowFailures;
+    }
+
+    public long getValidationFailures() {
+        return validationFailures;
+    }
+
+    /**
+     * @return connections created per second
+     */
+    public double getCreateRate() {
+        return perSecond(created);
+    }
+
+    /**
+     * @return connections destroyed per second
+     */
+    public double getDestroyRate() {
+        return perSecond(destroyed);
+    }
+
+    /**
+     * @return failed validations per second
+     */
+    public double getValidationFailureRate() {
+        return perSecond(validationFailures);
+    }
+
+    /**
+     * @return the mean time spent in borrowObject, including failed borrows
+     */
+    public double getBorrowWaitMeanMillis() {
+        return borrowWaitMeanMillis;
+    }
+
+    public double getBorrowWaitP50Millis() {
+        return borrowWaitP50Millis;
+    }
+
+    public double getBorrowWaitP99Millis() {
+        return borrowWaitP99Millis;
+    }
+
+    public double getBorrowWaitMaxMillis() {
+        return borrowWaitMaxMillis;
+    }
+
+    /**
+     * @return statistics per session mode, for the modes that were seen
+     */
+    public Map<Session, SessionStats> getSessions() {
+        return sessions;
+    }
+
+    @Override
+    public String toString() {
+        return "{AGConnPoolStats"
+                + " session=" + session
+                + " active=" + numActive
+                + " idle=" + numIdle
+                + " waiters=" + numWaiters
+                + " maxTotal=" + maxTotal
+                + " created=" + created
+                + " destroyed=" + destroyed
+                + " borrowed=" + borrowed
+                + " borrowFailures=" + borrowFailures
+                + " validationFailures=" + validationFailures
+                + String.format(" borrowWait={mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms}",
+                        borrowWaitMeanMillis, borrowWaitP50Millis, borrowWaitP99Millis, borrowWaitMaxMillis)
+                + " sessions=" + sessions
+                + "}";
+    }
+
+    /**
+     * Statistics of the connections that were in one session mode.
+     */
+    public static final class SessionStats {
+        private final long borrowed;
+        private final long destroyed;
+        private final long validationFailures;
+        private final double meanLifetimeMillis;
+        private final double borrowWaitMeanMillis;
+        private final double borrowWaitP99Millis;
+
+        SessionStats(long borrowed, long destroyed, long validationFailures, long lifetimeNanos,
+                     AGLatencyHistogram borrowWait) {
+            this.borrowed = borrowed;
+            this.destroyed = destroyed;
+            this.validationFailures = validationFailures;
+            this.meanLifetimeMillis = destroyed == 0 ? 0 : toMillis((double) lifetimeNanos / destroyed);
+            this.borrowWaitMeanMillis = toMillis(borrowWait.getMean());
+            this.borrowWaitP99Millis = toMillis(borrowWait.getValueAtPercentile(99));
+        }
+
+        public long getBorrowed() {
+            return borrowed;
+        }
+
+        public long getDestroyed() {
+            return destroyed;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        /**
+         * @return the mean time from creation to destruction
+         * of the destroyed connections
+         */
+        public double getMeanLifetimeMillis() {
+            return meanLifetimeMillis;
+        }
+
+        public double getBorrowWaitMeanMillis() {
+            return borrowWaitMeanMillis;
+        }
+
+        public double getBorrowWaitP99Millis() {
+            return borrowWaitP99Millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{borrowed=%d destroyed=%d validationFailures=%d"
+                            + " meanLifetime=%.0fms borrowWait={mean=%.3fms p99=%.3fms}}",
+                    borrowed, destroyed, validationFailures,
+                    meanLifetimeMillis, borrowWaitMeanMillis, borrowWaitP99Millis);
+        }
+    }
+}
@@ -65,7 +65,18 @@ public enum AGConnProp {
 
      * @since v4.4
      */
-    httpSocketTimeout;
+    httpSocketTimeout,
+
+    /**
+     * Milliseconds (default 5000) during which a pooled connection that
+     * has not changed anything on the server and has made a request is
+     * considered valid without checking it again.
+     * Set to 0 to check on every validation.
+     *
+     * @see AGConnFactory#validateObject(org.apache.commons.pool2.PooledObject)
+     * @see AGRepositoryConnection#isDirty()
+     */
+    validationInterval;
 
     /**
      * Property values for {@link AGConnProp#session}.
@@ -0,0 +1,129 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGServer;
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the connections of an {@link AGKeyedConnPool}.
+ * <p>
+ * All connections share one {@link AGServer}, and so one HTTP client and
+ * connection manager, and one {@link AGRepository} per repository, which
+ * is looked up or created when its first connection is made.  Connections
+ * are activated, validated and destroyed as by {@link AGConnFactory},
+ * in the session mode of their {@link AGConnKey}.</p>
+ */
+public class AGKeyedConnFactory extends BaseKeyedPooledObjectFactory<AGConnKey, AGRepositoryConnection> {
+
+    private final Integer sessionLifetime;
+    private final long validationIntervalNanos;
+
+    // Shared by all connections.
+    private final AGSharedServer shared;
+
+    /**
+     * Takes the server connection properties from the given map:
+     * {@link AGConnProp#serverUrl}, {@link AGConnProp#username} and
+     * {@link AGConnProp#password} are required, and
+     * {@link AGConnProp#sessionLifetime}, {@link AGConnProp#httpSocketTimeout}
+     * and {@link AGConnProp#validationInterval} are used if present.
+     * Catalog, repository and session mode come from the keys.
+     *
+     * @param props connection properties
+     */
+    public AGKeyedConnFactory(Map<AGConnProp, String> props) {
+        final String serverUrl = getRequired(props, AGConnProp.serverUrl);
+        final String username = getRequired(props, AGConnProp.username);
+        final String password = getRequired(props, AGConnProp.password);
+        sessionLifetime = getInt(props, AGConnProp.sessionLifetime);
+        final Integer httpSocketTimeout = getInt(props, AGConnProp.httpSocketTimeout);
+        shared = new AGSharedServer(serverUrl, username, password, httpSocketTimeout);
+        final Integer validationInterval = getInt(props, AGConnProp.validationInterval);
+        validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                validationInterval != null ? validationInterval : AGConnFactory.DEFAULT_VALIDATION_INTERVAL);
+    }
+
+    private static String getRequired(Map<AGConnProp, String> props, AGConnProp prop) {
+        if (props.containsKey(prop)) {
+            return props.get(prop);
+        } else {
+            throw new IllegalArgumentException("Property required for AGConn: " + prop);
+        }
+    }
+
+    private static Integer getInt(Map<AGConnProp, String> props, AGConnProp prop) {
+        return props.containsKey(prop) ? Integer.valueOf(props.get(prop)) : null;
+    }
+
+    /**
+     * Returns the repository of a key, setting up the server and
+     * repository objects on first use.
+     *
+     * @param key a key
+     * @return the shared repository
+     * @throws RepositoryException if the repository cannot be found or created
+     */
+    protected AGRepository getRepository(AGConnKey key) throws RepositoryException {
+        return shared.getRepository(key.getCatalog(), key.getRepository());
+    }
+
+    @Override
+    public AGRepositoryConnection create(AGConnKey key) throws Exception {
+        final AGRepository repository = shared.acquire(key.getCatalog(), key.getRepository());
+        try {
+            AGRepositoryConnection conn = repository.getConnection();
+            if (sessionLifetime != null) {
+                conn.setSessionLifetime(sessionLifetime);
+            }
+            return conn;
+        } catch (RuntimeException e) {
+            shared.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public PooledObject<AGRepositoryConnection> wrap(AGRepositoryConnection conn) {
+        return new DefaultPooledObject<>(conn);
+    }
+
+    @Override
+    public void activateObject(AGConnKey key, PooledObject<AGRepositoryConnection> pooled)
+            throws RepositoryException {
+        AGConnFactory.activate(pooled.getObject(), key.getSession());
+    }
+
+    @Override
+    public boolean validateObject(AGConnKey key, PooledObject<AGRepositoryConnection> pooled) {
+        return AGConnFactory.validate(pooled.getObject(), validationIntervalNanos);
+    }
+
+    @Override
+    public void destroyObject(AGConnKey key, PooledObject<AGRepositoryConnection> pooled) {
+        try {
+            AGConnFactory.destroy(pooled.getObject());
+        } finally {
+            shared.release();
+        }
+    }
+
+    /**
+     * Closes the shared server and repository objects once all connections
+     * created by this factory have been destroyed (immediately if there are
+     * none).  No connections can be created afterwards.
+     */
+    public void close() {
+        shared.close();
+    }
+}
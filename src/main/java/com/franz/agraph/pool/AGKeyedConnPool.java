@@ -0,0 +1,262 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.apache.commons.pool2.KeyedObjectPool;
+import org.apache.commons.pool2.KeyedPooledObjectFactory;
+import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pooling for {@link AGRepositoryConnection}s to many repositories,
+ * keyed by catalog, repository and session mode ({@link AGConnKey}).
+ *
+ * <pre>{@code
+ *     AGKeyedConnPool pool = AGKeyedConnPool.create(
+ *         AGConnProp.serverUrl, "http://localhost:10035",
+ *         AGConnProp.username, "test",
+ *         AGConnProp.password, "xyzzy",
+ *         AGPoolProp.maxActive, 50,
+ *         AGPoolProp.maxActivePerKey, 10);
+ *     AGConnKey key = new AGConnKey("/", "my_repo", AGConnProp.Session.DEDICATED);
+ *     try (AGRepositoryConnection conn = pool.borrowObject(key)) {
+ *         ...
+ *     }
+ * }</pre>
+ *
+ * <p>This pool delegates to a {@link GenericKeyedObjectPool}, so all
+ * repositories share one budget of connections and one evictor thread:
+ * {@link AGPoolProp#maxActive} limits the connections of all keys
+ * together and {@link AGPoolProp#maxActivePerKey} those of each key.
+ * When the global limit is reached and a key with no idle connection
+ * needs one, the oldest idle connections of any key are closed to make
+ * room, and the evictor visits the keys in turn, so idle repositories
+ * give their sessions back to busy ones.  All connections share one
+ * {@link com.franz.agraph.repository.AGServer} and so one HTTP client
+ * (see {@link AGKeyedConnFactory}).</p>
+ *
+ * <p>As with {@link AGConnPool}, closing a borrowed connection returns
+ * it to the pool, and the pool must be closed to close the sessions.</p>
+ */
+public class AGKeyedConnPool implements KeyedObjectPool<AGConnKey, AGRepositoryConnection>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AGKeyedConnPool.class);
+
+    private final KeyedPooledObjectFactory<AGConnKey, AGRepositoryConnection> factory;
+    private final GenericKeyedObjectPool<AGConnKey, AGRepositoryConnection> delegate;
+    // What borrowed connections are returned to on close, per key.
+    private final ConcurrentMap<AGConnKey, ObjectPool<AGRepositoryConnection>> returnTo = new ConcurrentHashMap<>();
+    private final Thread shutdownHook;
+
+    private AGKeyedConnPool(KeyedPooledObjectFactory<AGConnKey, AGRepositoryConnection> factory,
+                            AGKeyedPoolConfig poolConfig) {
+        this.factory = factory;
+        delegate = new GenericKeyedObjectPool<>(factory, poolConfig);
+        if (poolConfig.shutdownHook) {
+            shutdownHook = new Thread(this::close);
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            shutdownHook = null;
+        }
+    }
+
+    /**
+     * Creates a pool using a custom connection factory.
+     *
+     * @param factory    a connection factory
+     * @param poolConfig an {@link AGKeyedPoolConfig}
+     * @return the connection pool
+     */
+    public static AGKeyedConnPool create(KeyedPooledObjectFactory<AGConnKey, AGRepositoryConnection> factory,
+                                         AGKeyedPoolConfig poolConfig) {
+        return new AGKeyedConnPool(factory, poolConfig);
+    }
+
+    /**
+     * Creates a pool from configuration properties.
+     *
+     * @param connProps keys are {@link AGConnProp}, see {@link AGKeyedConnFactory#AGKeyedConnFactory(Map)}
+     * @param poolProps keys are {@link AGPoolProp}, see {@link AGKeyedPoolConfig}
+     * @return the connection pool
+     */
+    public static AGKeyedConnPool create(Map<AGConnProp, String> connProps,
+                                         Map<AGPoolProp, String> poolProps) {
+        return new AGKeyedConnPool(new AGKeyedConnFactory(connProps), new AGKeyedPoolConfig(poolProps));
+    }
+
+    /**
+     * Creates a pool from configuration properties.
+     *
+     * @param keyValuePairs alternating key/value pairs where keys are {@link AGConnProp} and {@link AGPoolProp}
+     * @return the connection pool
+     */
+    public static AGKeyedConnPool create(Object... keyValuePairs) {
+        final Map<AGConnProp, String> connProps = new HashMap<>();
+        final Map<AGPoolProp, String> poolProps = new HashMap<>();
+        for (int i = 0; i < keyValuePairs.length; i = i + 2) {
+            final Object key = keyValuePairs[i];
+            final Object val = keyValuePairs[i + 1];
+            final String value = val == null ? null : val.toString();
+            if (key instanceof AGConnProp) {
+                connProps.put((AGConnProp) key, value);
+            } else if (key instanceof AGPoolProp) {
+                poolProps.put((AGPoolProp) key, value);
+            }
+        }
+        return create(connProps, poolProps);
+    }
+
+    @Override
+    public void addObject(AGConnKey key) throws Exception {
+        delegate.addObject(key);
+    }
+
+    @Override
+    public AGRepositoryConnection borrowObject(AGConnKey key) throws RepositoryException {
+        final AGRepositoryConnection conn;
+        try {
+            conn = delegate.borrowObject(key);
+        } catch (Exception e) {
+            throw new RepositoryException(e);
+        }
+        // Make sure 'close' will return the connection to the pool
+        // instead of really closing it.
+        conn.setPool(returnTo.computeIfAbsent(key, KeyPool::new));
+        return conn;
+    }
+
+    @Override
+    public void clear() throws Exception {
+        delegate.clear();
+    }
+
+    @Override
+    public void clear(AGConnKey key) throws Exception {
+        delegate.clear(key);
+    }
+
+    @Override
+    public int getNumActive() {
+        return delegate.getNumActive();
+    }
+
+    @Override
+    public int getNumActive(AGConnKey key) {
+        return delegate.getNumActive(key);
+    }
+
+    @Override
+    public int getNumIdle() {
+        return delegate.getNumIdle();
+    }
+
+    @Override
+    public int getNumIdle(AGConnKey key) {
+        return delegate.getNumIdle(key);
+    }
+
+    @Override
+    public void invalidateObject(AGConnKey key, AGRepositoryConnection conn) throws Exception {
+        delegate.invalidateObject(key, conn);
+    }
+
+    @Override
+    public void returnObject(AGConnKey key, AGRepositoryConnection conn) throws Exception {
+        // Make sure 'close' will really close and not try to
+        // return the connection to the pool again.
+        conn.setPool(null);
+        delegate.returnObject(key, conn);
+    }
+
+    @Override
+    public void close() {
+        if (log.isDebugEnabled()) {
+            log.debug("close " + this);
+        }
+        delegate.close();
+        if (factory instanceof AGKeyedConnFactory) {
+            // Releases the shared server once borrowed connections are returned.
+            ((AGKeyedConnFactory) factory).close();
+        }
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Expected if the close is happening during a shutdown.
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{AGKeyedConnPool"
+                + " active=" + getNumActive()
+                + " idle=" + getNumIdle()
+                + " delegate=" + delegate
+                + " this=" + super.toString()
+                + "}";
+    }
+
+    /**
+     * The connections of one key, as an {@link ObjectPool} for
+     * {@link AGRepositoryConnection#setPool(ObjectPool)}.
+     */
+    private final class KeyPool implements ObjectPool<AGRepositoryConnection> {
+        private final AGConnKey key;
+
+        KeyPool(AGConnKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public void addObject() throws Exception {
+            AGKeyedConnPool.this.addObject(key);
+        }
+
+        @Override
+        public AGRepositoryConnection borrowObject() throws RepositoryException {
+            return AGKeyedConnPool.this.borrowObject(key);
+        }
+
+        @Override
+        public void clear() throws Exception {
+            AGKeyedConnPool.this.clear(key);
+        }
+
+        @Override
+        public void close() {
+            // The connections of a key live as long as the keyed pool.
+        }
+
+        @Override
+        public int getNumActive() {
+            return AGKeyedConnPool.this.getNumActive(key);
+        }
+
+        @Override
+        public int getNumIdle() {
+            return AGKeyedConnPool.this.getNumIdle(key);
+        }
+
+        @Override
+        public void invalidateObject(AGRepositoryConnection conn) throws Exception {
+            AGKeyedConnPool.this.invalidateObject(key, conn);
+        }
+
+        @Override
+        public void returnObject(AGRepositoryConnection conn) throws Exception {
+            AGKeyedConnPool.this.returnObject(key, conn);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+
+import java.util.Map;
+
+/**
+ * Configuration of an {@link AGKeyedConnPool}, from {@link AGPoolProp}s.
+ * <p>
+ * {@link AGPoolProp#maxActive} limits the connections of all keys
+ * together, and {@link AGPoolProp#maxActivePerKey} those of each key.
+ * {@link AGPoolProp#minIdle} and {@link AGPoolProp#maxIdle} apply per key.
+ * The other properties mean the same as for an {@link AGConnPool};
+ * initialSize, warmup and the properties of {@link AGPoolConfig} that are
+ * not listed in {@link GenericKeyedObjectPoolConfig} are ignored.</p>
+ */
+public class AGKeyedPoolConfig extends GenericKeyedObjectPoolConfig<AGRepositoryConnection> {
+
+    /**
+     * @see AGPoolProp#shutdownHook
+     */
+    public final boolean shutdownHook;
+
+    public AGKeyedPoolConfig(Map<AGPoolProp, String> props) {
+        shutdownHook = Boolean.parseBoolean(props.getOrDefault(AGPoolProp.shutdownHook,
+                Boolean.toString(AGPoolConfig.DEFAULT_SHUTDOWN_HOOK)));
+        if (props.containsKey(AGPoolProp.maxIdle)) {
+            setMaxIdlePerKey(Integer.parseInt(props.get(AGPoolProp.maxIdle)));
+        }
+        if (props.containsKey(AGPoolProp.minIdle)) {
+            setMinIdlePerKey(Integer.parseInt(props.get(AGPoolProp.minIdle)));
+        }
+        if (props.containsKey(AGPoolProp.maxActive)) {
+            setMaxTotal(Integer.parseInt(props.get(AGPoolProp.maxActive)));
+        }
+        if (props.containsKey(AGPoolProp.maxActivePerKey)) {
+            setMaxTotalPerKey(Integer.parseInt(props.get(AGPoolProp.maxActivePerKey)));
+        }
+        if (props.containsKey(AGPoolProp.maxWait)) {
+            setMaxWaitMillis(Long.parseLong(props.get(AGPoolProp.maxWait)));
+        }
+        if (props.containsKey(AGPoolProp.testOnBorrow)) {
+            setTestOnBorrow(Boolean.valueOf(props.get(AGPoolProp.testOnBorrow)));
+        }
+        if (props.containsKey(AGPoolProp.testOnReturn)) {
+            setTestOnReturn(Boolean.valueOf(props.get(AGPoolProp.testOnReturn)));
+        }
+        if (props.containsKey(AGPoolProp.timeBetweenEvictionRunsMillis)) {
+            setTimeBetweenEvictionRunsMillis(
+                    Long.parseLong(props.get(AGPoolProp.timeBetweenEvictionRunsMillis)));
+        }
+        if (props.containsKey(AGPoolProp.minEvictableIdleTimeMillis)) {
+            setMinEvictableIdleTimeMillis(
+                    Long.parseLong(props.get(AGPoolProp.minEvictableIdleTimeMillis)));
+        }
+        if (props.containsKey(AGPoolProp.testWhileIdle)) {
+            setTestWhileIdle(Boolean.valueOf(props.get(AGPoolProp.testWhileIdle)));
+        }
+        if (props.containsKey(AGPoolProp.softMinEvictableIdleTimeMillis)) {
+            setSoftMinEvictableIdleTimeMillis(
+                    Long.parseLong(props.get(AGPoolProp.softMinEvictableIdleTimeMillis)));
+        }
+        if (props.containsKey(AGPoolProp.numTestsPerEvictionRun)) {
+            setNumTestsPerEvictionRun(
+                    Integer.parseInt(props.get(AGPoolProp.numTestsPerEvictionRun)));
+        }
+        if (props.containsKey(AGPoolProp.lifo)) {
+            setLifo(Boolean.valueOf(props.get(AGPoolProp.lifo)));
+        }
+    }
+}
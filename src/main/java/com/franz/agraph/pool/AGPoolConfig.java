@@ -19,6 +19,8 @@ public class AGPoolConfig extends GenericObjectPoolConfig {
 
     public static final int DEFAULT_INITIAL_SIZE = 0;
     public static final boolean DEFAULT_SHUTDOWN_HOOK = false;
+    public static final int DEFAULT_CREATE_THREADS = 4;
+    public static final AGPoolProp.StartupPolicy DEFAULT_STARTUP_POLICY = AGPoolProp.StartupPolicy.FAIL_FAST;
     /**
      * @see AGPoolProp#initialSize
      * @see #DEFAULT_INITIAL_SIZE
@@ -29,8 +31,23 @@ public class AGPoolConfig extends GenericObjectPoolConfig {
      * @see #DEFAULT_SHUTDOWN_HOOK
      */
     public final boolean shutdownHook;
+    /**
+     * @see AGPoolProp#createThreads
+     * @see #DEFAULT_CREATE_THREADS
+     */
+    public final int createThreads;
+    /**
+     * @see AGPoolProp#startupPolicy
+     * @see #DEFAULT_STARTUP_POLICY
+     */
+    public final AGPoolProp.StartupPolicy startupPolicy;
+    /**
+     * @see AGPoolProp#jmxName
+     */
+    public final String jmxName;
 
     private WarmupConfig warmupConfig;
+    private AGPoolSizingConfig sizingConfig;
 
     public AGPoolConfig(Map<AGPoolProp, String> props) {
         if (props.containsKey(AGPoolProp.initialSize)) {
@@ -43,6 +60,17 @@ public class AGPoolConfig extends GenericObjectPoolConfig {
         } else {
             shutdownHook = DEFAULT_SHUTDOWN_HOOK;
         }
+        if (props.containsKey(AGPoolProp.createThreads)) {
+            createThreads = Math.max(1, Integer.parseInt(props.get(AGPoolProp.createThreads)));
+        } else {
+            createThreads = DEFAULT_CREATE_THREADS;
+        }
+        if (props.containsKey(AGPoolProp.startupPolicy)) {
+            startupPolicy = AGPoolProp.StartupPolicy.valueOf(props.get(AGPoolProp.startupPolicy).toUpperCase());
+        } else {
+            startupPolicy = DEFAULT_STARTUP_POLICY;
+        }
+        jmxName = props.get(AGPoolProp.jmxName);
         if (props.containsKey(AGPoolProp.maxIdle)) {
             setMaxIdle(Integer.parseInt(props.get(AGPoolProp.maxIdle)));
         }
@@ -101,6 +129,14 @@ public class AGPoolConfig extends GenericObjectPoolConfig {
             warmupConfig = null;
         }
 
+        if (Boolean.parseBoolean(props.getOrDefault(AGPoolProp.adaptiveSizing, "false"))) {
+            final int maxIdle = getMaxIdle() >= 0 ? getMaxIdle()
+                    : getMaxTotal() >= 0 ? getMaxTotal() : Integer.MAX_VALUE;
+            sizingConfig = AGPoolSizingConfig.create().idleBounds(Math.min(getMinIdle(), maxIdle), maxIdle);
+        } else {
+            sizingConfig = null;
+        }
+
     }
 
     public WarmupConfig getWarmupConfig() {
@@ -110,4 +146,17 @@ public class AGPoolConfig extends GenericObjectPoolConfig {
     public void setWarmupConfig(final WarmupConfig warmupConfig) {
         this.warmupConfig = warmupConfig;
     }
+
+    public AGPoolSizingConfig getSizingConfig() {
+        return sizingConfig;
+    }
+
+    /**
+     * @param sizingConfig parameters of the {@link AGPoolSizer} of the pool,
+     *                     or null for a pool of fixed minIdle
+     * @see AGPoolProp#adaptiveSizing
+     */
+    public void setSizingConfig(final AGPoolSizingConfig sizingConfig) {
+        this.sizingConfig = sizingConfig;
+    }
 }
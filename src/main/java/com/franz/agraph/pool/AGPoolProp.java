@@ -66,6 +66,15 @@ public enum AGPoolProp {
      */
     maxActive,
 
+    /**
+     * Max number of connections per key of an {@link AGKeyedConnPool},
+     * where {@link #maxActive} is the limit for all keys together.
+     * Not used by {@link AGConnPool}.
+     *
+     * @see AGKeyedPoolConfig
+     */
+    maxActivePerKey,
+
     /**
      * milliseconds to wait to borrow before throwing {@link java.util.NoSuchElementException}
      *
@@ -76,8 +85,11 @@ public enum AGPoolProp {
     /**
      * Calls {@link AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)}.
      * <p>
-     * Redundant because {@link AGConnFactory#activateObject(PooledObject)}
-     * always calls {@link AGRepositoryConnection#rollback()}.
+     * Mostly redundant because {@link AGConnFactory#activateObject(PooledObject)}
+     * always rolls back connections that are not in autoCommit mode, and
+     * validation of a connection that is not
+     * {@link AGRepositoryConnection#isDirty() dirty} is rate limited by
+     * {@link AGConnProp#validationInterval}.
      *
      * @see GenericObjectPool#setTestOnBorrow(boolean)
      * @see AGConnFactory#validateObject(PooledObject)
@@ -127,8 +139,72 @@ public enum AGPoolProp {
     warmupIncludeTriples,
 
     /** Boolean property, true means LIFO and false means FIFO retrieval of objects from pool */
-    lifo
+    lifo,
+
+    /**
+     * Maximum number of connections the pool creates at the same time
+     * (default 4), when it opens the {@link #initialSize} connections and
+     * when it refills idle connections up to {@link #minIdle} in the
+     * background.  Each new connection opens a session, so a pool of this
+     * many connections comes up in about the time of one session open.
+     *
+     * @see AGPoolConfig#createThreads
+     */
+    createThreads,
+
+    /**
+     * What the pool does when some of the {@link #initialSize} connections
+     * cannot be created, one of the {@link StartupPolicy} names
+     * (default FAIL_FAST).
+     *
+     * @see AGPoolConfig#startupPolicy
+     */
+    startupPolicy,
+
+    /**
+     * If set, the pool is registered with the platform MBean server as an
+     * {@link AGConnPoolMXBean} named
+     * <code>com.franz.agraph:type=AGConnPool,name=</code><i>value</i>,
+     * and unregistered when it is closed.
+     *
+     * @see AGPoolConfig#jmxName
+     * @see AGConnPool#getStats()
+     */
+    jmxName,
+
+    /**
+     * Boolean property, if true an {@link AGPoolSizer} moves the number of
+     * idle connections between {@link #minIdle} and {@link #maxIdle} (or
+     * {@link #maxActive} if maxIdle is negative) following the load, with
+     * the other parameters of {@link AGPoolSizingConfig} at their defaults.
+     * Unless {@link #timeBetweenEvictionRunsMillis} and
+     * {@link #softMinEvictableIdleTimeMillis} are set, the evictor runs at
+     * every sizing interval and closes connections above the sizer's
+     * number once they have been idle for its shrink cooldown.
+     *
+     * @see AGPoolConfig#setSizingConfig(AGPoolSizingConfig)
+     */
+    adaptiveSizing;
 
     // TODO whenExhaustedAction
 
+    /**
+     * Property values for {@link AGPoolProp#startupPolicy}.
+     */
+    public enum StartupPolicy {
+
+        /**
+         * Creating the pool fails, and the connections that were
+         * opened are closed, if any initial connection cannot be created.
+         */
+        FAIL_FAST,
+
+        /**
+         * The pool starts with the connections that could be created,
+         * logging a warning about the others.  Idle connections are
+         * created later as needed to reach {@link AGPoolProp#minIdle}.
+         */
+        PARTIAL
+    }
+
 }
@@ -0,0 +1,214 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Adjusts the number of idle connections a pool keeps ready to the
+ * observed demand.
+ * <p>
+ * At every interval the sizer looks at the mean time borrowers waited
+ * since the last look, the number of waiting borrowers, and the fraction
+ * of connections that are borrowed.  If any of them is above its pressure
+ * threshold for enough consecutive intervals, the number of idle
+ * connections grows; if all of them are below their calm thresholds for
+ * enough intervals, it shrinks.  The gap between the two thresholds, the
+ * interval counts, the step size and the cooldowns keep the pool from
+ * oscillating (see {@link AGPoolSizingConfig}).  The number always stays
+ * within the configured bounds.</p>
+ * <p>
+ * The sizer only sees the pool through the {@link Pool} interface and
+ * reads time from the given clock, so it can be driven by calling
+ * {@link #tick()} with a simulated clock.  {@link AGConnPool} creates
+ * one when its {@link AGPoolConfig#getSizingConfig() sizing config} is
+ * set, and runs it with {@link #start()}.</p>
+ */
+public class AGPoolSizer {
+    private static final Logger log = LoggerFactory.getLogger(AGPoolSizer.class);
+
+    // Runs the ticks of all sizers; the changes themselves are made by the pools.
+    private static ScheduledExecutorService timer;
+
+    /**
+     * What a sizer observes and controls.
+     */
+    public interface Pool {
+        int getNumActive();
+
+        int getNumIdle();
+
+        /**
+         * @return the number of threads waiting to borrow
+         */
+        int getNumWaiters();
+
+        /**
+         * @return the number of borrows so far, including failed ones
+         */
+        long getBorrowCount();
+
+        /**
+         * @return nanoseconds spent waiting by all borrows so far
+         */
+        long getBorrowWaitNanos();
+
+        /**
+         * Keeps at least the given number of idle connections, creating
+         * connections as needed.  Excess idle connections may be closed
+         * once they have been idle for a while.
+         *
+         * @param n number of idle connections
+         */
+        void setTargetIdle(int n);
+    }
+
+    private final Pool pool;
+    private final AGPoolSizingConfig config;
+    private final LongSupplier nanoClock;
+
+    // Guarded by this.
+    private int target;
+    private int pressureIntervals;
+    private int calmIntervals;
+    private boolean changed;
+    private long lastChange;
+    private long lastBorrowCount;
+    private long lastBorrowWaitNanos;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Creates a sizer and sets the pool to the lower idle bound.
+     *
+     * @param pool      the pool
+     * @param config    the sizing parameters
+     * @param nanoClock the time in nanoseconds, such as {@link System#nanoTime()}
+     */
+    public AGPoolSizer(Pool pool, AGPoolSizingConfig config, LongSupplier nanoClock) {
+        this.pool = pool;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.target = config.getMinIdle();
+        this.lastBorrowCount = pool.getBorrowCount();
+        this.lastBorrowWaitNanos = pool.getBorrowWaitNanos();
+        pool.setTargetIdle(target);
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("agraph-pool-sizer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * @return the number of idle connections the pool is asked to keep
+     */
+    public synchronized int getTarget() {
+        return target;
+    }
+
+    public AGPoolSizingConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Calls {@link #tick()} at every interval, on a timer thread shared
+     * by all sizers.
+     */
+    public synchronized void start() {
+        if (task == null) {
+            final long interval = config.getInterval().toNanos();
+            task = getTimer().scheduleAtFixedRate(this::safeTick, interval, interval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stops the calls started by {@link #start()}.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private void safeTick() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.warn("Pool sizing failed", e);
+        }
+    }
+
+    /**
+     * Looks at the pool and changes its number of idle connections if
+     * the demand calls for it.  Meant to be called once per interval.
+     */
+    public synchronized void tick() {
+        final long now = nanoClock.getAsLong();
+        final long borrowCount = pool.getBorrowCount();
+        final long borrowWaitNanos = pool.getBorrowWaitNanos();
+        final long borrows = borrowCount - lastBorrowCount;
+        final long meanWait = borrows == 0 ? 0 : (borrowWaitNanos - lastBorrowWaitNanos) / borrows;
+        lastBorrowCount = borrowCount;
+        lastBorrowWaitNanos = borrowWaitNanos;
+
+        final int active = pool.getNumActive();
+        final int total = active + pool.getNumIdle();
+        final int waiters = pool.getNumWaiters();
+        final double utilization = total == 0 ? (waiters > 0 ? 1 : 0) : (double) active / total;
+
+        final boolean pressure = waiters > 0
+                || meanWait > config.getPressureBorrowWait().toNanos()
+                || utilization > config.getPressureUtilization();
+        final boolean calm = waiters == 0
+                && meanWait < config.getCalmBorrowWait().toNanos()
+                && utilization < config.getCalmUtilization();
+        pressureIntervals = pressure ? pressureIntervals + 1 : 0;
+        calmIntervals = calm ? calmIntervals + 1 : 0;
+
+        if (pressureIntervals >= config.getGrowAfter()
+                && target < config.getMaxIdle()
+                && cooledDown(now, config.getGrowCooldown().toNanos())) {
+            change(now, Math.min(config.getMaxIdle(), target + config.getMaxStep()),
+                    meanWait, utilization, waiters);
+            pressureIntervals = 0;
+        } else if (calmIntervals >= config.getShrinkAfter()
+                && target > config.getMinIdle()
+                && cooledDown(now, config.getShrinkCooldown().toNanos())) {
+            change(now, Math.max(config.getMinIdle(), target - config.getMaxStep()),
+                    meanWait, utilization, waiters);
+            calmIntervals = 0;
+        }
+    }
+
+    private boolean cooledDown(long now, long cooldownNanos) {
+        return !changed || now - lastChange >= cooldownNanos;
+    }
+
+    private void change(long now, int newTarget, long meanWait, double utilization, int waiters) {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Idle connections %d -> %d (borrow wait %.3fms, utilization %.2f, waiters %d)",
+                    target, newTarget, meanWait / 1e6, utilization, waiters));
+        }
+        target = newTarget;
+        changed = true;
+        lastChange = now;
+        pool.setTargetIdle(newTarget);
+    }
+}
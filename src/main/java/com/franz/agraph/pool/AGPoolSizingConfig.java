@@ -0,0 +1,254 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import java.time.Duration;
+
+/**
+ * Configuration of an {@link AGPoolSizer}.
+ * <p>
+ * Config objects are immutable. New instances can be created
+ * using a fluid interface:</p>
+ *
+ * <pre>{@code
+ *   AGPoolSizingConfig.create().idleBounds(2, 20).shrinkCooldown(Duration.ofMinutes(1));
+ * }</pre>
+ *
+ * The parameters are:
+ * <dl>
+ *     <dt>idleBounds (default: 0 and 8)</dt>
+ *     <dd>Range of the number of idle connections kept ready.</dd>
+ *     <dt>interval (default: 1 second)</dt>
+ *     <dd>Time between two looks at the pool.</dd>
+ *     <dt>borrowWaitThresholds (default: 5ms and 50ms)</dt>
+ *     <dd>Mean borrow wait over an interval below which the pool counts as
+ *     calm, and above which it is under pressure.</dd>
+ *     <dt>utilizationThresholds (default: 0.5 and 0.9)</dt>
+ *     <dd>Fraction of the connections that are borrowed below which the pool
+ *     counts as calm, and above which it is under pressure.</dd>
+ *     <dt>growAfter, shrinkAfter (default: 1 and 10)</dt>
+ *     <dd>Number of consecutive intervals under pressure, or calm,
+ *     before the number of idle connections is changed.</dd>
+ *     <dt>maxStep (default: 2)</dt>
+ *     <dd>Largest change of the number of idle connections at a time.</dd>
+ *     <dt>growCooldown, shrinkCooldown (default: 1 second and 30 seconds)</dt>
+ *     <dd>Minimum time after a change before the next growth, or shrink.</dd>
+ * </dl>
+ *
+ * @see AGPoolConfig#setSizingConfig(AGPoolSizingConfig)
+ */
+public final class AGPoolSizingConfig {
+    private int minIdle = 0;
+    private int maxIdle = 8;
+    private Duration interval = Duration.ofSeconds(1);
+    private Duration calmBorrowWait = Duration.ofMillis(5);
+    private Duration pressureBorrowWait = Duration.ofMillis(50);
+    private double calmUtilization = 0.5;
+    private double pressureUtilization = 0.9;
+    private int growAfter = 1;
+    private int shrinkAfter = 10;
+    private int maxStep = 2;
+    private Duration growCooldown = Duration.ofSeconds(1);
+    private Duration shrinkCooldown = Duration.ofSeconds(30);
+
+    /**
+     * Creates a fresh config with default values.
+     *
+     * @return a new config object.
+     */
+    public static AGPoolSizingConfig create() {
+        return new AGPoolSizingConfig();
+    }
+
+    private AGPoolSizingConfig() {
+    }
+
+    private AGPoolSizingConfig copy() {
+        final AGPoolSizingConfig c = new AGPoolSizingConfig();
+        c.minIdle = minIdle;
+        c.maxIdle = maxIdle;
+        c.interval = interval;
+        c.calmBorrowWait = calmBorrowWait;
+        c.pressureBorrowWait = pressureBorrowWait;
+        c.calmUtilization = calmUtilization;
+        c.pressureUtilization = pressureUtilization;
+        c.growAfter = growAfter;
+        c.shrinkAfter = shrinkAfter;
+        c.maxStep = maxStep;
+        c.growCooldown = growCooldown;
+        c.shrinkCooldown = shrinkCooldown;
+        return c;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public Duration getCalmBorrowWait() {
+        return calmBorrowWait;
+    }
+
+    public Duration getPressureBorrowWait() {
+        return pressureBorrowWait;
+    }
+
+    public double getCalmUtilization() {
+        return calmUtilization;
+    }
+
+    public double getPressureUtilization() {
+        return pressureUtilization;
+    }
+
+    public int getGrowAfter() {
+        return growAfter;
+    }
+
+    public int getShrinkAfter() {
+        return shrinkAfter;
+    }
+
+    public int getMaxStep() {
+        return maxStep;
+    }
+
+    public Duration getGrowCooldown() {
+        return growCooldown;
+    }
+
+    public Duration getShrinkCooldown() {
+        return shrinkCooldown;
+    }
+
+    /**
+     * @param min smallest number of idle connections
+     * @param max largest number of idle connections
+     * @return a new config object
+     */
+    public AGPoolSizingConfig idleBounds(int min, int max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid idle bounds: " + min + ", " + max);
+        }
+        final AGPoolSizingConfig c = copy();
+        c.minIdle = min;
+        c.maxIdle = max;
+        return c;
+    }
+
+    /**
+     * @param interval time between two looks at the pool
+     * @return a new config object
+     */
+    public AGPoolSizingConfig interval(Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        final AGPoolSizingConfig c = copy();
+        c.interval = interval;
+        return c;
+    }
+
+    /**
+     * @param calm     mean borrow wait below which the pool is calm
+     * @param pressure mean borrow wait above which the pool is under pressure
+     * @return a new config object
+     */
+    public AGPoolSizingConfig borrowWaitThresholds(Duration calm, Duration pressure) {
+        if (calm.compareTo(pressure) > 0) {
+            throw new IllegalArgumentException("Calm threshold above pressure threshold: " + calm + ", " + pressure);
+        }
+        final AGPoolSizingConfig c = copy();
+        c.calmBorrowWait = calm;
+        c.pressureBorrowWait = pressure;
+        return c;
+    }
+
+    /**
+     * @param calm     utilization below which the pool is calm
+     * @param pressure utilization above which the pool is under pressure
+     * @return a new config object
+     */
+    public AGPoolSizingConfig utilizationThresholds(double calm, double pressure) {
+        if (calm < 0 || calm > pressure || pressure > 1) {
+            throw new IllegalArgumentException("Invalid utilization thresholds: " + calm + ", " + pressure);
+        }
+        final AGPoolSizingConfig c = copy();
+        c.calmUtilization = calm;
+        c.pressureUtilization = pressure;
+        return c;
+    }
+
+    /**
+     * @param intervals consecutive intervals under pressure before growing
+     * @return a new config object
+     */
+    public AGPoolSizingConfig growAfter(int intervals) {
+        final AGPoolSizingConfig c = copy();
+        c.growAfter = Math.max(1, intervals);
+        return c;
+    }
+
+    /**
+     * @param intervals consecutive calm intervals before shrinking
+     * @return a new config object
+     */
+    public AGPoolSizingConfig shrinkAfter(int intervals) {
+        final AGPoolSizingConfig c = copy();
+        c.shrinkAfter = Math.max(1, intervals);
+        return c;
+    }
+
+    /**
+     * @param maxStep largest change of the number of idle connections at a time
+     * @return a new config object
+     */
+    public AGPoolSizingConfig maxStep(int maxStep) {
+        final AGPoolSizingConfig c = copy();
+        c.maxStep = Math.max(1, maxStep);
+        return c;
+    }
+
+    /**
+     * @param cooldown minimum time after a change before growing
+     * @return a new config object
+     */
+    public AGPoolSizingConfig growCooldown(Duration cooldown) {
+        final AGPoolSizingConfig c = copy();
+        c.growCooldown = cooldown;
+        return c;
+    }
+
+    /**
+     * @param cooldown minimum time after a change before shrinking
+     * @return a new config object
+     */
+    public AGPoolSizingConfig shrinkCooldown(Duration cooldown) {
+        final AGPoolSizingConfig c = copy();
+        c.shrinkCooldown = cooldown;
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return "{AGPoolSizingConfig idle=[" + minIdle + ", " + maxIdle + "]"
+                + " interval=" + interval
+                + " borrowWait=[" + calmBorrowWait + ", " + pressureBorrowWait + "]"
+                + " utilization=[" + calmUtilization + ", " + pressureUtilization + "]"
+                + " growAfter=" + growAfter
+                + " shrinkAfter=" + shrinkAfter
+                + " maxStep=" + maxStep
+                + " growCooldown=" + growCooldown
+                + " shrinkCooldown=" + shrinkCooldown
+                + "}";
+    }
+}
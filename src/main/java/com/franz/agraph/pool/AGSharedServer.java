@@ -0,0 +1,150 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.pool;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.repository.AGCatalog;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGServer;
+import org.apache.http.config.SocketConfig;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link AGServer} and {@link AGRepository} objects shared by the
+ * connections of a pool's factory, with a count of the connections
+ * using them.
+ * <p>
+ * The server, and so one HTTP client and connection manager, is set up
+ * when the first connection is made, and each repository is looked up or
+ * created when its first connection is made.  They are closed by
+ * {@link #close()} once all connections have been {@link #release() released}.</p>
+ */
+final class AGSharedServer {
+
+    private final String serverUrl;
+    private final String username;
+    private final String password;
+    private final Integer httpSocketTimeout;
+
+    // Guarded by this.
+    private AGServer server;
+    // Keyed by catalog and repository name.
+    private final Map<String, AGRepository> repositories = new HashMap<>();
+    private int liveConnections;
+    private boolean closed;
+
+    AGSharedServer(String serverUrl, String username, String password, Integer httpSocketTimeout) {
+        this.serverUrl = serverUrl;
+        this.username = username;
+        this.password = password;
+        this.httpSocketTimeout = httpSocketTimeout;
+    }
+
+    /**
+     * Returns a repository, setting up the server and repository objects
+     * on first use.
+     *
+     * @param catalogName    a catalog name, or null for the root catalog
+     * @param repositoryName a repository name
+     * @return the shared repository
+     * @throws RepositoryException if the repository cannot be found or created
+     */
+    synchronized AGRepository getRepository(String catalogName, String repositoryName)
+            throws RepositoryException {
+        final String name = (catalogName == null ? "" : catalogName) + "/" + repositoryName;
+        AGRepository repo = repositories.get(name);
+        if (repo != null) {
+            return repo;
+        }
+        final boolean newServer = server == null;
+        if (newServer) {
+            SocketConfig socketConfig = null;
+            if (httpSocketTimeout != null) {
+                socketConfig = SocketConfig.custom().setSoTimeout(httpSocketTimeout).build();
+            }
+            server = new AGServer(username, password, new AGHTTPClient(serverUrl, null, socketConfig));
+        }
+        try {
+            final AGCatalog catalog;
+            if (catalogName != null) {
+                catalog = server.getCatalog(catalogName);
+            } else {
+                catalog = server.getRootCatalog();
+            }
+            if (!catalog.hasRepository(repositoryName)) {
+                repo = catalog.createRepository(repositoryName, false);
+            } else {
+                // Create directly to skip a redundant check
+                repo = new AGRepository(catalog, repositoryName);
+                repo.init();
+            }
+        } catch (RuntimeException e) {
+            if (newServer) {
+                // Try again with the next connection.
+                server.close();
+                server = null;
+            }
+            throw e;
+        }
+        repositories.put(name, repo);
+        return repo;
+    }
+
+    /**
+     * Counts a new connection to a repository, which must be
+     * {@link #release() released} when it is destroyed.
+     *
+     * @param catalogName    a catalog name, or null for the root catalog
+     * @param repositoryName a repository name
+     * @return the shared repository
+     * @throws RepositoryException if the repository cannot be found or created
+     * @throws IllegalStateException if this has been closed
+     */
+    synchronized AGRepository acquire(String catalogName, String repositoryName)
+            throws RepositoryException {
+        if (closed) {
+            throw new IllegalStateException("Connection factory is closed");
+        }
+        final AGRepository repo = getRepository(catalogName, repositoryName);
+        liveConnections++;
+        return repo;
+    }
+
+    /**
+     * Counts a connection as destroyed.
+     */
+    synchronized void release() {
+        liveConnections--;
+        if (closed && liveConnections == 0) {
+            shutDown();
+        }
+    }
+
+    /**
+     * Closes the server and repository objects once all connections
+     * have been released (immediately if there are none).  No
+     * connections can be acquired afterwards.
+     */
+    synchronized void close() {
+        closed = true;
+        if (liveConnections == 0) {
+            shutDown();
+        }
+    }
+
+    private void shutDown() {
+        for (AGRepository repo : repositories.values()) {
+            repo.shutDown();
+        }
+        repositories.clear();
+        if (server != null) {
+            server.close();
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGJSONStatementsEntity;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Collects statements added one at a time through an
+ * {@link AGRepositoryConnection} and uploads them in batches.
+ * <p>
+ * Statements are encoded as JSON rows straight into the byte buffer that
+ * becomes the request body.  A batch is sent once it holds the maximum
+ * number of statements or bytes, once it has been open for longer than
+ * the flush interval (if set), and whenever {@link #flush()} is called,
+ * which the connection does before any other request.</p>
+ * <p>
+ * There are two batches: while one is uploaded in the background, the
+ * other one is filled.  A full batch waits for the previous upload to
+ * finish before it is sent, so at most one upload is in progress and
+ * requests reach the server in order.  The buffer is only locked to
+ * swap batches, never during an upload.  When the flush interval of a
+ * batch runs out, the timer hands it to the executor; a batch whose
+ * interval runs out during an upload is sent when that upload
+ * finishes, so neither the timer nor the executor waits for one.</p>
+ * <p>
+ * An upload that fails in the background is reported by the next call
+ * to {@link #add} or {@link #flush()}, with the number of statements
+ * that were not added; until then no further batch is sent.  The batch
+ * is not sent again, since the server may have added it before the
+ * failure.</p>
+ */
+class AGAddStatementBuffer {
+
+    private static final ContentType JSON = ContentType.create("application/json", StandardCharsets.UTF_8);
+
+    // Fires flush interval timeouts, which are handed to the executor;
+    // it never touches the buffer or uploads itself.
+    private static ScheduledExecutorService timer;
+
+    private final AGHttpRepoClient client;
+    private final Function<Value, String> encoder;
+    private final Supplier<Executor> executor;
+
+    private int maxStatements;
+    private long maxBytes;
+    private long flushInterval;
+
+    private Batch filling = new Batch();
+    // Null while an upload is in progress.
+    private Batch spare = new Batch();
+    private boolean uploading;
+    // Set when the flush interval of the filling batch ran out during an
+    // upload, or could not be handed to the executor.
+    private volatile boolean overdue;
+    private RepositoryException failure;
+    // Incremented for each batch that is started, to match timeouts to batches.
+    private long generation;
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * @param client        used to upload the batches
+     * @param encoder       converts a value to the string sent to the server
+     * @param executor      supplies the executor running background uploads
+     * @param maxStatements number of statements that triggers an upload
+     * @param maxBytes      batch size in bytes that triggers an upload
+     * @param flushInterval milliseconds after which a batch is uploaded
+     *                      even if not full, or 0 for no limit
+     */
+    AGAddStatementBuffer(AGHttpRepoClient client, Function<Value, String> encoder, Supplier<Executor> executor,
+                         int maxStatements, long maxBytes, long flushInterval) {
+        this.client = client;
+        this.encoder = encoder;
+        this.executor = executor;
+        this.maxStatements = maxStatements;
+        this.maxBytes = maxBytes;
+        this.flushInterval = flushInterval;
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("agraph-add-buffer-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+
+    synchronized int getMaxStatements() {
+        return maxStatements;
+    }
+
+    /**
+     * Changes the statement limit, sending the current batch if it has
+     * reached the new limit.
+     */
+    void setMaxStatements(int maxStatements) {
+        final Batch batch;
+        synchronized (this) {
+            this.maxStatements = maxStatements;
+            if (filling.statements == 0 || filling.statements < maxStatements) {
+                return;
+            }
+            batch = send();
+        }
+        upload(batch);
+        synchronized (this) {
+            checkFailure();
+        }
+    }
+
+    synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Changes the flush interval; it applies from the next batch on.
+     */
+    synchronized void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * @return the number of statements in the batch being filled
+     */
+    synchronized int size() {
+        return filling.statements;
+    }
+
+    /**
+     * Adds a statement, starting the upload of the batch in the
+     * background if this fills it.
+     *
+     * @param st         the statement
+     * @param attributes triple attributes, or null
+     * @param contexts   contexts overriding that of the statement
+     * @throws RepositoryException if a previous upload failed
+     */
+    void add(Statement st, JSONObject attributes, Resource... contexts)
+            throws RepositoryException {
+        final Batch batch;
+        synchronized (this) {
+            checkFailure();
+            if (filling.statements == 0) {
+                generation++;
+                if (flushInterval > 0) {
+                    final long gen = generation;
+                    timeout = getTimer().schedule(() -> onTimeout(gen), flushInterval, TimeUnit.MILLISECONDS);
+                }
+            }
+            try {
+                filling.write(st, encoder, attributes == null ? null : attributes.toString(), contexts);
+            } catch (IOException e) {
+                throw new RepositoryException(e);
+            }
+            final boolean full = filling.statements >= maxStatements || filling.size() >= maxBytes;
+            // An overdue batch is sent here if the timer could not hand it on.
+            if (!full && !(overdue && !uploading)) {
+                return;
+            }
+            batch = send();
+        }
+        if (batch != null) {
+            uploadInBackground(batch);
+        }
+    }
+
+    /**
+     * Uploads the current batch, if any, and waits until no upload is
+     * in progress.
+     *
+     * @throws RepositoryException if the upload, or a previous one, failed
+     */
+    void flush() throws RepositoryException {
+        final Batch batch;
+        synchronized (this) {
+            if (filling.statements > 0) {
+                batch = send();
+            } else {
+                awaitUpload();
+                batch = null;
+            }
+            if (batch == null) {
+                checkFailure();
+                return;
+            }
+        }
+        upload(batch);
+        synchronized (this) {
+            awaitUpload();
+            checkFailure();
+        }
+    }
+
+    /**
+     * Runs on the timer thread: hands the batch to the executor, or if
+     * it is saturated has the next {@link #add} or {@link #flush()} send
+     * it.  Does not lock the buffer.
+     */
+    private void onTimeout(long gen) {
+        try {
+            executor.get().execute(() -> expire(gen));
+        } catch (RejectedExecutionException e) {
+            overdue = true;
+        }
+    }
+
+    /**
+     * Runs on the executor: uploads the batch whose flush interval ran
+     * out, or has the upload in progress start it when it finishes.
+     */
+    private void expire(long gen) {
+        final Batch batch;
+        synchronized (this) {
+            if (generation != gen || filling.statements == 0) {
+                return;
+            }
+            if (uploading) {
+                overdue = true;
+                return;
+            }
+            if (failure != null) {
+                return;
+            }
+            batch = take();
+        }
+        upload(batch);
+    }
+
+    /**
+     * Takes the current batch for upload once the previous upload has
+     * finished.  Called with the buffer locked; the caller uploads the
+     * batch after unlocking it.
+     *
+     * @return the batch, or null if a previous upload failed
+     */
+    private Batch send() {
+        awaitUpload();
+        if (failure != null) {
+            // Report the failure first; this batch goes out on the next flush.
+            return null;
+        }
+        return take();
+    }
+
+    /**
+     * Swaps in the spare batch and marks an upload as in progress.
+     * Called with the buffer locked.
+     */
+    private Batch take() {
+        overdue = false;
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+        final Batch batch = filling;
+        filling = spare;
+        spare = null;
+        uploading = true;
+        return batch;
+    }
+
+    /**
+     * Uploads a batch on the executor, or on the calling thread if the
+     * executor is saturated.  Called with the buffer unlocked.
+     */
+    private void uploadInBackground(Batch batch) {
+        try {
+            executor.get().execute(() -> upload(batch));
+        } catch (RejectedExecutionException e) {
+            upload(batch);
+        }
+    }
+
+    /**
+     * Uploads a batch, then any batch that became overdue meanwhile.
+     * Called with the buffer unlocked; it is only locked to record the
+     * outcome.
+     */
+    private void upload(Batch batch) {
+        Batch next = batch;
+        while (next != null) {
+            next = uploadOne(next);
+        }
+    }
+
+    /**
+     * @return the next batch to upload, or null
+     */
+    private Batch uploadOne(Batch batch) {
+        Exception error = null;
+        try {
+            client.uploadJSON(batch.toEntity());
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        synchronized (this) {
+            if (error != null && failure == null) {
+                failure = new RepositoryException("Could not upload " + batch.statements
+                        + " buffered statements; they were not added", error);
+            }
+            batch.clear();
+            spare = batch;
+            uploading = false;
+            Batch next = null;
+            if (overdue && failure == null && filling.statements > 0) {
+                next = take();
+            }
+            notifyAll();
+            return next;
+        }
+    }
+
+    private void awaitUpload() {
+        try {
+            while (uploading) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while waiting for buffered statements to be uploaded", e);
+        }
+    }
+
+    private void checkFailure() throws RepositoryException {
+        if (failure != null) {
+            final RepositoryException e = failure;
+            failure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * A JSON array of rows being built in memory.  The buffer is kept
+     * between batches so that a steady stream of batches does not
+     * allocate.
+     */
+    private static final class Batch extends ByteArrayOutputStream {
+        private final Utf8Writer writer = new Utf8Writer(this);
+        private int statements;
+        private int rows;
+
+        void write(Statement st, Function<Value, String> encoder, String attributes, Resource... contexts)
+                throws IOException {
+            if (rows == 0) {
+                writer.write('[');
+            }
+            rows += AGJSONStatementsEntity.writeRows(writer, rows == 0, st, encoder, attributes, contexts);
+            statements++;
+        }
+
+        /**
+         * @return the number of bytes written, including those not yet
+         * moved to the buffer
+         */
+        @Override
+        public synchronized int size() {
+            return count + writer.pos;
+        }
+
+        HttpEntity toEntity() throws IOException {
+            if (rows == 0) {
+                writer.write('[');
+            }
+            writer.write(']');
+            writer.drain();
+            return new ByteArrayEntity(buf, 0, count, JSON);
+        }
+
+        void clear() {
+            writer.pos = 0;
+            writer.high = 0;
+            reset();
+            statements = 0;
+            rows = 0;
+        }
+    }
+
+    /**
+     * Encodes characters as UTF-8 into a byte buffer through a small
+     * array that is moved to the buffer when full and once at the end
+     * of a batch, instead of an OutputStreamWriter that has to be
+     * flushed after each statement to know the size.  Unpaired
+     * surrogates are written as '?', as by the standard encoder.
+     */
+    private static final class Utf8Writer extends Writer {
+        private final ByteArrayOutputStream out;
+        private final byte[] bytes = new byte[1024];
+        private int pos;
+        // A high surrogate waiting for its low one, or 0
+        private char high;
+
+        Utf8Writer(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int c) {
+            put((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                put(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                put(str.charAt(i));
+            }
+        }
+
+        private void put(char c) {
+            if (pos > bytes.length - 4) {
+                drain();
+            }
+            if (high != 0) {
+                final char h = high;
+                high = 0;
+                if (Character.isLowSurrogate(c)) {
+                    final int cp = Character.toCodePoint(h, c);
+                    bytes[pos++] = (byte) (0xf0 | (cp >> 18));
+                    bytes[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    bytes[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    bytes[pos++] = (byte) (0x80 | (cp & 0x3f));
+                    return;
+                }
+                bytes[pos++] = '?';
+                put(c);
+                return;
+            }
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xc0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                high = c;
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[pos++] = '?';
+            } else {
+                bytes[pos++] = (byte) (0xe0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        /**
+         * Moves the encoded bytes to the buffer.  A high surrogate at the
+         * end stays behind until the next character.
+         */
+        void drain() {
+            out.write(bytes, 0, pos);
+            pos = 0;
+        }
+
+        @Override
+        public void flush() {
+            drain();
+        }
+
+        @Override
+        public void close() {
+            drain();
+        }
+    }
+}
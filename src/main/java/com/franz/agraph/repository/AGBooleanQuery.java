@@ -4,6 +4,7 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGBQRHandler;
 import com.franz.agraph.http.handler.AGDownloadHandler;
@@ -38,8 +39,17 @@ public class AGBooleanQuery extends AGQuery implements BooleanQuery {
      * Evaluates the query and returns a boolean result.
      */
     public boolean evaluate() throws QueryEvaluationException {
+        return evaluate(httpCon.prepareHttpRepoClient());
+    }
+
+    /**
+     * Evaluates the query as {@link #evaluate()} does, through the given
+     * client and without otherwise using the connection, so that it can
+     * be called from another thread.
+     */
+    boolean evaluate(AGHttpRepoClient client) throws QueryEvaluationException {
         AGBQRHandler handler = new AGBQRHandler();
-        evaluate(handler);
+        evaluate(client, handler, limit, offset);
         return handler.getResult();
     }
 
@@ -0,0 +1,285 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.BitSet;
+
+/**
+ * One column of an {@link AGColumnarResult}: the values bound to one
+ * variable, row by row, in an array of the narrowest type that holds
+ * all of them.
+ * <p>
+ * A column of numbers of one datatype is a {@link LongColumn} or a
+ * {@link DoubleColumn}, a column of xsd:dateTime values is a
+ * {@link DateTimeColumn} and a column of IRIs is an {@link IRIColumn}
+ * of ids into a dictionary.  Any other mix of values gives a
+ * {@link ValueColumn}.  Unbound cells are 0 (or null) in the arrays and
+ * not {@link #isBound(int) bound}.</p>
+ * <p>
+ * The arrays returned by the typed columns are not copied and must not
+ * be modified.</p>
+ */
+public abstract class AGColumn {
+
+    /**
+     * The kind of array a column keeps its values in.
+     */
+    public enum Type {
+        LONG, DOUBLE, DATE_TIME, IRI, VALUE
+    }
+
+    private final String name;
+    private final int size;
+    private final BitSet bound;
+    protected final ValueFactory vf;
+
+    protected AGColumn(String name, int size, BitSet bound, ValueFactory vf) {
+        this.name = name;
+        this.size = size;
+        this.bound = bound;
+        this.vf = vf;
+    }
+
+    /**
+     * @return the name of the variable
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row a row index
+     * @return true if the variable is bound in the row
+     */
+    public boolean isBound(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return bound.get(row);
+    }
+
+    /**
+     * @return the kind of array the values are kept in
+     */
+    public abstract Type getType();
+
+    /**
+     * Returns the value in a row as an RDF value.  This creates the value
+     * for primitive columns, so it is meant for occasional access.
+     *
+     * @param row a row index
+     * @return the value, or null if unbound
+     */
+    public abstract Value getValue(int row);
+
+    @Override
+    public String toString() {
+        return name + ": " + getType() + "[" + size + "]";
+    }
+
+    /**
+     * Integers of one datatype, e.g. xsd:integer or xsd:long.
+     */
+    public static final class LongColumn extends AGColumn {
+        private final long[] values;
+        private final IRI datatype;
+
+        public LongColumn(String name, int size, BitSet bound, ValueFactory vf,
+                          long[] values, IRI datatype) {
+            super(name, size, bound, vf);
+            this.values = values;
+            this.datatype = datatype;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.LONG;
+        }
+
+        public long[] getLongs() {
+            return values;
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        public IRI getDatatype() {
+            return datatype;
+        }
+
+        @Override
+        public Value getValue(int row) {
+            return isBound(row) ? vf.createLiteral(Long.toString(values[row]), datatype) : null;
+        }
+    }
+
+    /**
+     * Numbers of one of the datatypes xsd:double, xsd:float or
+     * xsd:decimal.  Decimals are converted to the nearest double.
+     */
+    public static final class DoubleColumn extends AGColumn {
+        private final double[] values;
+        private final IRI datatype;
+
+        public DoubleColumn(String name, int size, BitSet bound, ValueFactory vf,
+                            double[] values, IRI datatype) {
+            super(name, size, bound, vf);
+            this.values = values;
+            this.datatype = datatype;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DOUBLE;
+        }
+
+        public double[] getDoubles() {
+            return values;
+        }
+
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        public IRI getDatatype() {
+            return datatype;
+        }
+
+        @Override
+        public Value getValue(int row) {
+            if (!isBound(row)) {
+                return null;
+            }
+            final double d = values[row];
+            final String label;
+            if (XMLSchema.DECIMAL.equals(datatype) && Double.isFinite(d)) {
+                label = BigDecimal.valueOf(d).toPlainString();
+            } else if (XMLSchema.FLOAT.equals(datatype)) {
+                label = Float.toString((float) d);
+            } else {
+                label = Double.toString(d);
+            }
+            return vf.createLiteral(label, datatype);
+        }
+    }
+
+    /**
+     * xsd:dateTime values as milliseconds since 1970-01-01T00:00:00Z.
+     * As values they are given in UTC.
+     */
+    public static final class DateTimeColumn extends AGColumn {
+        private final long[] values;
+
+        public DateTimeColumn(String name, int size, BitSet bound, ValueFactory vf, long[] values) {
+            super(name, size, bound, vf);
+            this.values = values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DATE_TIME;
+        }
+
+        public long[] getEpochMillis() {
+            return values;
+        }
+
+        public long getEpochMilli(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Value getValue(int row) {
+            if (!isBound(row)) {
+                return null;
+            }
+            return vf.createLiteral(Instant.ofEpochMilli(values[row]).toString(), XMLSchema.DATETIME);
+        }
+    }
+
+    /**
+     * IRIs as ids into a dictionary of the distinct IRIs in the column.
+     */
+    public static final class IRIColumn extends AGColumn {
+        private final int[] ids;
+        private final IRI[] dictionary;
+
+        public IRIColumn(String name, int size, BitSet bound, ValueFactory vf,
+                         int[] ids, IRI[] dictionary) {
+            super(name, size, bound, vf);
+            this.ids = ids;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.IRI;
+        }
+
+        /**
+         * @return the dictionary index of the IRI in each row
+         */
+        public int[] getIds() {
+            return ids;
+        }
+
+        /**
+         * @return the distinct IRIs, in order of first appearance
+         */
+        public IRI[] getDictionary() {
+            return dictionary;
+        }
+
+        public IRI getIRI(int row) {
+            return isBound(row) ? dictionary[ids[row]] : null;
+        }
+
+        @Override
+        public Value getValue(int row) {
+            return getIRI(row);
+        }
+    }
+
+    /**
+     * Values of mixed or other types.
+     */
+    public static final class ValueColumn extends AGColumn {
+        private final Value[] values;
+
+        public ValueColumn(String name, int size, BitSet bound, ValueFactory vf, Value[] values) {
+            super(name, size, bound, vf);
+            this.values = values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.VALUE;
+        }
+
+        public Value[] getValues() {
+            return values;
+        }
+
+        @Override
+        public Value getValue(int row) {
+            return isBound(row) ? values[row] : null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A tuple query result held column by column, as returned by
+ * {@link AGTupleQuery#evaluateColumnar()}.
+ * <p>
+ * Each variable gets an {@link AGColumn} with one cell per solution.
+ * Numbers and dates are kept in primitive arrays and IRIs as ids into
+ * a dictionary, so large numeric results take a fraction of the memory
+ * and allocation of one {@link org.eclipse.rdf4j.model.Literal} per
+ * cell.</p>
+ * <p>Usage:</p>
+ * <pre>{@code
+ * AGColumnarResult result = conn.prepareTupleQuery(QueryLanguage.SPARQL,
+ *         "SELECT ?s ?n { ?s ex:count ?n }").evaluateColumnar();
+ * AGColumn n = result.getColumn("n");
+ * if (n.getType() == AGColumn.Type.LONG) {
+ *     long[] counts = ((AGColumn.LongColumn) n).getLongs();
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class AGColumnarResult {
+    private final List<String> bindingNames;
+    private final List<AGColumn> columns;
+    private final int rowCount;
+
+    /**
+     * @param bindingNames the variables, in the order of the columns
+     * @param columns      one column per variable, all of the same size
+     * @param rowCount     the number of solutions
+     */
+    public AGColumnarResult(List<String> bindingNames, List<AGColumn> columns, int rowCount) {
+        if (bindingNames.size() != columns.size()) {
+            throw new IllegalArgumentException(bindingNames.size() + " names for "
+                    + columns.size() + " columns");
+        }
+        this.bindingNames = Collections.unmodifiableList(bindingNames);
+        this.columns = Collections.unmodifiableList(columns);
+        this.rowCount = rowCount;
+    }
+
+    public List<String> getBindingNames() {
+        return bindingNames;
+    }
+
+    /**
+     * @return the number of solutions
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<AGColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param name a variable name
+     * @return the variable's column, or null if the result has no such variable
+     */
+    public AGColumn getColumn(String name) {
+        final int i = bindingNames.indexOf(name);
+        return i < 0 ? null : columns.get(i);
+    }
+
+    @Override
+    public String toString() {
+        return "AGColumnarResult" + columns;
+    }
+}
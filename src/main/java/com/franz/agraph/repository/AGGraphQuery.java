@@ -4,23 +4,25 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRDFHandler;
+import com.franz.agraph.http.handler.AGRDFStreamer;
 import com.franz.agraph.http.handler.AGRawStreamer;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.query.GraphQuery;
 import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
-import org.eclipse.rdf4j.query.impl.IteratingGraphQueryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFHandler;
 import org.eclipse.rdf4j.rio.RDFHandlerException;
-import org.eclipse.rdf4j.rio.helpers.StatementCollector;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.stream.Stream;
 
 /**
  * Implements the Sesame GraphQuery interface for AllegroGraph.
@@ -42,18 +44,43 @@ public class AGGraphQuery extends AGQuery implements GraphQuery {
 
     /**
      * Evaluates the query and returns a GraphQueryResult.
+     * <p>
+     * Statements are parsed from the response as they are consumed.
+     * The result holds an HTTP connection until it has been read to the
+     * end or closed, so it should be used in a try-with-resources block.
      */
     public GraphQueryResult evaluate() throws QueryEvaluationException {
-        try {
-            // TODO: make this efficient for large result sets
-            StatementCollector collector = new StatementCollector();
-            evaluate(collector);
-            return new IteratingGraphQueryResult(collector.getNamespaces(),
-                    collector.getStatements());
-        } catch (RDFHandlerException e) {
-            // Found a bug in StatementCollector?
-            throw new RuntimeException(e);
-        }
+        return evaluate(httpCon.prepareHttpRepoClient());
+    }
+
+    /**
+     * Evaluates the query as {@link #evaluate()} does, through the given
+     * client and without otherwise using the connection, so that it can
+     * be called from another thread.
+     */
+    GraphQueryResult evaluate(AGHttpRepoClient client) throws QueryEvaluationException {
+        final AGRDFStreamer handler = new AGRDFStreamer(client.getPreferredRDFFormat(),
+                httpCon.getValueFactory(), client.getAllowExternalBlankNodeIds());
+        evaluate(client, handler, limit, offset);
+        return handler.getResult();
+    }
+
+    /**
+     * Evaluates the query and returns the statements as a stream.
+     * <p>
+     * Statements are parsed in the background as the stream is consumed
+     * (see {@link #evaluate()}).  Its spliterator splits off growing
+     * batches for {@link Stream#parallel() parallel} processing and
+     * reports the query's {@link #getLimit() limit}, if any, as estimated
+     * size.  Closing the stream releases the HTTP response, so streams
+     * that are not consumed to the end should be used in a
+     * try-with-resources block.</p>
+     *
+     * @return the statements
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    public Stream<Statement> evaluateStream() throws QueryEvaluationException {
+        return AGResultSpliterator.stream(evaluate(), limit);
     }
 
     /**
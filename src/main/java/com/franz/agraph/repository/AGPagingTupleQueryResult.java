@@ -0,0 +1,319 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a tuple query result page by page.
+ * <p>
+ * Each page is a separate request for the next LIMIT solutions from an
+ * OFFSET, so reading a very large result does not hold one HTTP
+ * connection and one server worker for as long as it takes, and a
+ * failure only loses the page being read.  The next page is fetched on
+ * a background thread while the current one is consumed, so at most two
+ * pages are held in memory.  A page whose request or response fails
+ * with an I/O error other than a read timeout, such as a dropped
+ * connection, is fetched again
+ * after a growing delay, up to a number of retries.  Since a page is
+ * read completely before it is handed out, no solution is returned
+ * twice.</p>
+ * <p>
+ * Pages only line up if the query returns its solutions in the same
+ * order each time, so the query should have an ORDER BY on keys that
+ * identify each solution.  Otherwise solutions may be repeated or
+ * missed at page boundaries, and data changed while the result is read
+ * shifts the later pages.</p>
+ * <p>
+ * Pages are requested from a background thread, so the connection must
+ * not be used for other requests while the result is open.</p>
+ * <p>Usage:</p>
+ * <pre>{@code
+ * AGTupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL,
+ *         "SELECT ?s ?o { ?s ex:p ?o } ORDER BY ?s ?o");
+ * query.setPageSize(100000);
+ * try (TupleQueryResult results = query.evaluate()) {
+ *     ...
+ * }
+ * }</pre>
+ *
+ * @see AGTupleQuery#setPageSize(int)
+ */
+public class AGPagingTupleQueryResult implements TupleQueryResult {
+    private static final Logger log = LoggerFactory.getLogger(AGPagingTupleQueryResult.class);
+
+    /**
+     * The number of times a page that failed with an I/O error is
+     * fetched again (default 3).
+     */
+    public static final String PROP_PAGE_RETRIES = "com.franz.agraph.repository.pageRetries";
+    private static final int DEFAULT_PAGE_RETRIES = 3;
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * Evaluates one page of a query.
+     */
+    @FunctionalInterface
+    public interface PageSource {
+        /**
+         * @param offset the number of solutions to skip
+         * @param limit  the maximum number of solutions
+         * @return the solutions of the page
+         * @throws QueryEvaluationException if the page cannot be evaluated
+         */
+        TupleQueryResult fetch(int offset, int limit) throws QueryEvaluationException;
+    }
+
+    private final PageSource source;
+    private final int pageSize;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+    private final List<String> bindingNames;
+    // The window of the next page to fetch; remaining is -1 if unlimited.
+    private int nextOffset;
+    private int remaining;
+    private List<BindingSet> page;
+    private int pos;
+    // The next page, or null if the current one is the last
+    private Future<Page> pending;
+    private volatile boolean closed;
+
+    /**
+     * Reads the first page, and starts fetching the second one in the
+     * background.
+     *
+     * @param source   evaluates the pages
+     * @param offset   the number of solutions to skip, or -1 for none
+     * @param limit    the maximum number of solutions, or -1 for no limit
+     * @param pageSize the maximum number of solutions of a page
+     * @throws QueryEvaluationException if the first page cannot be read
+     */
+    public AGPagingTupleQueryResult(PageSource source, int offset, int limit, int pageSize)
+            throws QueryEvaluationException {
+        this(source, offset, limit, pageSize,
+                Integer.getInteger(PROP_PAGE_RETRIES, DEFAULT_PAGE_RETRIES),
+                DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Reads the first page, and starts fetching the second one in the
+     * background.
+     *
+     * @param source           evaluates the pages
+     * @param offset           the number of solutions to skip, or -1 for none
+     * @param limit            the maximum number of solutions, or -1 for no limit
+     * @param pageSize         the maximum number of solutions of a page
+     * @param maxRetries       the number of times a failed page is fetched again
+     * @param retryDelayMillis the delay before the first retry of a page,
+     *                         doubled for each further one
+     * @throws QueryEvaluationException if the first page cannot be read
+     */
+    public AGPagingTupleQueryResult(PageSource source, int offset, int limit, int pageSize,
+                                    int maxRetries, long retryDelayMillis)
+            throws QueryEvaluationException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryDelayMillis = Math.max(0, retryDelayMillis);
+        this.nextOffset = Math.max(0, offset);
+        this.remaining = limit < 0 ? -1 : limit;
+        final Request first = nextRequest();
+        final Page firstPage = first == null ? fetch(nextOffset, 0) : first.call();
+        bindingNames = firstPage.bindingNames;
+        accept(firstPage);
+    }
+
+    @Override
+    public List<String> getBindingNames() {
+        return bindingNames;
+    }
+
+    @Override
+    public boolean hasNext() throws QueryEvaluationException {
+        if (closed) {
+            return false;
+        }
+        while (pos == page.size()) {
+            if (pending == null) {
+                return false;
+            }
+            accept(take());
+        }
+        return true;
+    }
+
+    @Override
+    public BindingSet next() throws QueryEvaluationException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final BindingSet bs = page.get(pos);
+        // Let the solution go once it is handed out.
+        page.set(pos++, null);
+        return bs;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops fetching pages.  A page being fetched in the background is
+     * dropped when it arrives.
+     */
+    @Override
+    public void close() throws QueryEvaluationException {
+        closed = true;
+        page = Collections.emptyList();
+        pos = 0;
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+
+    /**
+     * Makes a page current, and starts fetching the next one unless this
+     * one came back short.
+     */
+    private void accept(Page p) {
+        page = p.solutions;
+        pos = 0;
+        if (p.solutions.size() >= p.limit) {
+            final Request request = nextRequest();
+            if (request != null) {
+                pending = AGPrefetchingTupleQueryResult.getPrefetchExecutor().submit(request);
+            }
+        }
+    }
+
+    private Page take() throws QueryEvaluationException {
+        final Future<Page> f = pending;
+        pending = null;
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new QueryEvaluationException(e);
+        } catch (ExecutionException e) {
+            close();
+            if (e.getCause() instanceof QueryEvaluationException) {
+                throw (QueryEvaluationException) e.getCause();
+            }
+            throw new QueryEvaluationException(e.getCause());
+        }
+    }
+
+    /**
+     * Claims the window of the next page.
+     *
+     * @return the request, or null if the limit has been reached
+     */
+    private Request nextRequest() {
+        if (remaining == 0) {
+            return null;
+        }
+        final int limit = remaining < 0 ? pageSize : Math.min(pageSize, remaining);
+        final Request request = new Request(nextOffset, limit);
+        nextOffset += limit;
+        if (remaining > 0) {
+            remaining -= limit;
+        }
+        return request;
+    }
+
+    /**
+     * Reads a page, fetching it again if it fails with an I/O error.
+     */
+    private Page fetch(int offset, int limit) throws QueryEvaluationException {
+        for (int attempt = 0; ; attempt++) {
+            try (TupleQueryResult result = source.fetch(offset, limit)) {
+                final List<String> names = result.getBindingNames();
+                final List<BindingSet> solutions = new ArrayList<>(Math.min(limit, 1024));
+                while (result.hasNext()) {
+                    solutions.add(result.next());
+                }
+                return new Page(names, solutions, limit);
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries || closed || !isTransient(e)) {
+                    throw e;
+                }
+                final long delay = retryDelayMillis << Math.min(attempt, 10);
+                log.warn("Reading {} solutions from offset {} failed, retrying in {} ms: {}",
+                        limit, offset, delay, e.toString());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the error was caused by I/O, such as a dropped
+     * connection, rather than by the query or the server.  A read
+     * timeout is not, since the page would most likely time out again.
+     */
+    private static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException) {
+                return false;
+            }
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class Request implements Callable<Page> {
+        final int offset;
+        final int limit;
+
+        Request(int offset, int limit) {
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public Page call() throws QueryEvaluationException {
+            return fetch(offset, limit);
+        }
+    }
+
+    private static final class Page {
+        final List<String> bindingNames;
+        final List<BindingSet> solutions;
+        // The number of solutions asked for
+        final int limit;
+
+        Page(List<String> bindingNames, List<BindingSet> solutions, int limit) {
+            this.bindingNames = bindingNames;
+            this.solutions = solutions;
+            this.limit = limit;
+        }
+    }
+}
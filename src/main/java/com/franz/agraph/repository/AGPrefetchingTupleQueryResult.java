@@ -0,0 +1,226 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import com.franz.agraph.http.handler.AGTQRStreamer;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a tuple query result ahead of its consumer.
+ * <p>
+ * A background thread pulls solutions from the wrapped result, which
+ * for a streamed result means reading and parsing the HTTP response, and
+ * puts them in a bounded buffer.  When the buffer is full the thread
+ * waits for the consumer, so at most that many solutions are held in
+ * memory.  An error of the wrapped result is thrown by the consumer's
+ * next {@link #hasNext()} once the solutions before it have been taken.
+ * Only the background thread uses the wrapped result, and closes it when
+ * it is exhausted or fails, or after this result is closed.  Closing a
+ * streamed result early aborts its request, which also ends a read the
+ * background thread is blocked in, rather than reading the rest of the
+ * response; a result that is dropped without being closed is treated
+ * the same way.</p>
+ * <p>Usage:</p>
+ * <pre>{@code
+ * AGTupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ...");
+ * query.setPrefetch(1000);
+ * try (TupleQueryResult results = query.evaluate()) {
+ *     ...
+ * }
+ * }</pre>
+ *
+ * @see AGTupleQuery#setPrefetch(int)
+ */
+public class AGPrefetchingTupleQueryResult implements TupleQueryResult {
+    private static final Logger log = LoggerFactory.getLogger(AGPrefetchingTupleQueryResult.class);
+
+    private static final Cleaner cleaner = Cleaner.create(runnable -> {
+        final Thread thread = new Thread(runnable, "agraph-prefetch-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Prefetching threads. Each open result uses one thread until the
+    // wrapped result is exhausted or this result is closed.
+    private static ExecutorService prefetchExecutor;
+
+    private final List<String> bindingNames;
+    private final Prefetcher prefetcher;
+    private final Cleaner.Cleanable cleanable;
+    private boolean done;
+    private BindingSet next;
+
+    /**
+     * Starts reading the result in the background.
+     *
+     * @param result     the result to read ahead
+     * @param bufferSize maximum number of solutions read ahead
+     * @throws QueryEvaluationException if the binding names cannot be read
+     */
+    public AGPrefetchingTupleQueryResult(TupleQueryResult result, int bufferSize) throws QueryEvaluationException {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        // Read before the background thread starts using the result.
+        bindingNames = result.getBindingNames();
+        prefetcher = new Prefetcher(result, bufferSize);
+        // The action must not refer to this result, or it would never run.
+        cleanable = cleaner.register(this, prefetcher::cancel);
+        getPrefetchExecutor().execute(prefetcher);
+    }
+
+    static synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("agraph-tqr-prefetch-" + thread.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return prefetchExecutor;
+    }
+
+    @Override
+    public List<String> getBindingNames() {
+        return bindingNames;
+    }
+
+    @Override
+    public boolean hasNext() throws QueryEvaluationException {
+        if (next != null) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        final Object item;
+        try {
+            item = prefetcher.queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new QueryEvaluationException(e);
+        }
+        if (item == Prefetcher.END) {
+            done = true;
+            cleanable.clean();
+            if (prefetcher.error != null) {
+                throw new QueryEvaluationException(prefetcher.error);
+            }
+            return false;
+        }
+        next = (BindingSet) item;
+        return true;
+    }
+
+    @Override
+    public BindingSet next() throws QueryEvaluationException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final BindingSet bs = next;
+        next = null;
+        return bs;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops reading ahead.  If the wrapped result is streamed and not
+     * yet read to the end, its request is aborted; otherwise it is
+     * closed by the background thread once that notices, which may take
+     * until the current solution has been read.
+     */
+    @Override
+    public void close() throws QueryEvaluationException {
+        done = true;
+        next = null;
+        cleanable.clean();
+    }
+
+    private static final class Prefetcher implements Runnable {
+        static final Object END = new Object();
+
+        final TupleQueryResult result;
+        final BlockingQueue<Object> queue;
+        volatile boolean cancelled;
+        volatile boolean finished;
+        volatile Throwable error;
+
+        Prefetcher(TupleQueryResult result, int bufferSize) {
+            this.result = result;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!cancelled && result.hasNext()) {
+                    if (!put(result.next())) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                error = e;
+            } catch (Throwable e) {
+                if (!cancelled) {
+                    error = e;
+                }
+            } finally {
+                try {
+                    result.close();
+                } catch (RuntimeException e) {
+                    log.debug("Could not close prefetched result", e);
+                }
+                finished = true;
+                try {
+                    put(END);
+                } catch (InterruptedException e) {
+                    // Nobody to tell.
+                }
+            }
+        }
+
+        /**
+         * Waits for room in the buffer.
+         *
+         * @return false if the consumer is gone
+         */
+        private boolean put(Object item) throws InterruptedException {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void cancel() {
+            cancelled = true;
+            queue.clear();
+            if (!finished) {
+                // Does not use the result, which belongs to the background thread.
+                AGTQRStreamer.abort(result);
+            }
+        }
+    }
+}
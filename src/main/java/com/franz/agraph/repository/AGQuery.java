@@ -4,6 +4,7 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.exception.AGQueryTimeoutException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
@@ -295,8 +296,44 @@ public abstract class AGQuery extends AbstractQuery {
      */
     protected void evaluate(boolean analyzeOnly, AGResponseHandler handler)
             throws QueryEvaluationException {
+        evaluate(analyzeOnly, handler, limit, offset);
+    }
+
+    /**
+     * Evaluates the query with the given limit and offset instead of
+     * this query's own, and processes the result in handler.
+     *
+     * @param analyzeOnly flags for analyzing or executing
+     * @param handler     processes or stores the result
+     * @param limit       the maximum number of solutions, or -1 for no limit
+     * @param offset      the number of solutions to skip, or -1 for none
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    protected void evaluate(boolean analyzeOnly, AGResponseHandler handler, int limit, int offset)
+            throws QueryEvaluationException {
+        evaluate(httpCon.prepareHttpRepoClient(), analyzeOnly, handler, limit, offset);
+    }
+
+    /**
+     * Evaluates the query through the given client, with the given limit
+     * and offset, and processes the result in handler.
+     *
+     * @param client  the connection's client
+     * @param handler processes or stores the result
+     * @param limit   the maximum number of solutions, or -1 for no limit
+     * @param offset  the number of solutions to skip, or -1 for none
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    protected void evaluate(AGHttpRepoClient client, AGResponseHandler handler, int limit, int offset)
+            throws QueryEvaluationException {
+        evaluate(client, false, handler, limit, offset);
+    }
+
+    private void evaluate(AGHttpRepoClient client, boolean analyzeOnly, AGResponseHandler handler,
+                          int limit, int offset)
+            throws QueryEvaluationException {
         try {
-            httpCon.prepareHttpRepoClient().query(this, analyzeOnly, handler);
+            client.query(this, analyzeOnly, handler, limit, offset);
         } catch (AGQueryTimeoutException e) {
             throw new QueryInterruptedException(e);
         } catch (AGHttpException e) {
@@ -4,11 +4,14 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGBinaryRDFStatementsEntity;
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.AGHttpRepoClient.CommitPhase;
+import com.franz.agraph.http.AGJSONStatementsEntity;
 import com.franz.agraph.http.exception.AGCustomStoredProcException;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.exception.AGMalformedDataException;
+import com.franz.agraph.http.exception.AGUnsupportedFileFormatException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRDFHandler;
@@ -18,6 +21,7 @@ import com.franz.agraph.pool.AGConnPool;
 import com.franz.agraph.repository.repl.TransactionSettings;
 import com.franz.util.Ctx;
 import org.apache.commons.codec.DecoderException;
+import org.apache.commons.pool2.ObjectPool;
 import org.eclipse.rdf4j.common.io.GZipUtil;
 import org.eclipse.rdf4j.common.io.ZipUtil;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
@@ -31,6 +35,7 @@ import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.impl.SimpleNamespace;
 import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQueryResult;
@@ -67,7 +72,9 @@ import java.util.Map;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -182,24 +189,58 @@ public class AGRepositoryConnection
         extends AbstractRepositoryConnection
         implements RepositoryConnection, AutoCloseable {
 
+    /**
+     * Whether tuple query results are streamed (default true).
+     *
+     * @see #setStreamResults(boolean)
+     */
     public static final String PROP_STREAM_RESULTS = "com.franz.agraph.repository.AGRepositoryConnection.streamResults";
+    /**
+     * If true, the warning logged when a streamed result is garbage
+     * collected without being closed includes the stack trace of the code
+     * that created it (default false).
+     */
+    public static final String PROP_STREAM_RESULTS_LEAK_REPORT = "com.franz.agraph.repository.AGRepositoryConnection.streamResultsLeakReport";
+    /**
+     * Whether {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}
+     * streams its results (default false).
+     *
+     * @see #setStreamStatements(boolean)
+     */
+    public static final String PROP_STREAM_STATEMENTS = "com.franz.agraph.repository.AGRepositoryConnection.streamStatements";
 
     public static final String PROP_USE_ADD_STATEMENT_BUFFER = "com.franz.agraph.repository.AGRepositoryConnection.useAddStatementBuffer";
     public static final String PROP_ADD_STATEMENT_BUFFER_MAX_SIZE = "com.franz.agraph.repository.AGRepositoryConnection.addStatementBufferMaxSize";
     public static final int DEFAULT_ADD_STATEMENT_BUFFER_SIZE = 10000;
+    /**
+     * Size in bytes of the encoded statements at which the addStatementBuffer is sent.
+     */
+    public static final String PROP_ADD_STATEMENT_BUFFER_MAX_BYTES = "com.franz.agraph.repository.AGRepositoryConnection.addStatementBufferMaxBytes";
+    public static final long DEFAULT_ADD_STATEMENT_BUFFER_MAX_BYTES = 8 * 1024 * 1024;
+    /**
+     * Milliseconds after which buffered statements are sent even if the
+     * addStatementBuffer is not full.  The default of 0 means no limit.
+     */
+    public static final String PROP_ADD_STATEMENT_BUFFER_FLUSH_INTERVAL = "com.franz.agraph.repository.AGRepositoryConnection.addStatementBufferFlushInterval";
+    /**
+     * Whether the addStatementBuffer is also used in autocommit mode (default false).
+     */
+    public static final String PROP_ADD_STATEMENT_BUFFER_IN_AUTOCOMMIT = "com.franz.agraph.repository.AGRepositoryConnection.addStatementBufferInAutoCommit";
 
     private final AGAbstractRepository repository;
     private final AGHttpRepoClient repoclient;
     private final AGValueFactory vf;
-    private final List<JSONArray> addStatementBuffer; // never null
+    private final AGAddStatementBuffer addStatementBuffer; // never null
     private boolean streamResults;
+    private boolean streamStatements;
     // If not null close will return the connection to this pool instead of closing.
-    private AGConnPool pool;
+    private ObjectPool<AGRepositoryConnection> pool;
     /**
-     * Whether buffering of "Add" statements is enabled. (Not activated in autocommit mode).
+     * Whether buffering of "Add" statements is enabled. (Not activated in autocommit mode
+     * unless addStatementBufferInAutoCommit is set).
      */
     private boolean addStatementBufferEnabled;
-    private int addStatementBufferMaxSize;
+    private boolean addStatementBufferInAutoCommit;
 
     private AGTransactionState transactionState = AGTransactionState.AUTOCOMMIT_DEFAULT;
 
@@ -222,12 +263,17 @@ public class AGRepositoryConnection
         this.repository = repository;
         this.repoclient = client;
         // use system property so this can be tested from build.xml
-        setStreamResults(Boolean.parseBoolean(System.getProperty(PROP_STREAM_RESULTS)));
+        setStreamResults(Boolean.parseBoolean(System.getProperty(PROP_STREAM_RESULTS, "true")));
+        setStreamStatements(Boolean.getBoolean(PROP_STREAM_STATEMENTS));
         vf = new AGValueFactory(realRepo, this);
 
         addStatementBufferEnabled = Boolean.parseBoolean(System.getProperty(PROP_USE_ADD_STATEMENT_BUFFER));
-        addStatementBufferMaxSize = Integer.parseInt(System.getProperty(PROP_ADD_STATEMENT_BUFFER_MAX_SIZE, "" + DEFAULT_ADD_STATEMENT_BUFFER_SIZE));
-        addStatementBuffer = new ArrayList<>();
+        addStatementBufferInAutoCommit = Boolean.parseBoolean(System.getProperty(PROP_ADD_STATEMENT_BUFFER_IN_AUTOCOMMIT));
+        addStatementBuffer = new AGAddStatementBuffer(client, this::encodeValueForStorageJSON,
+                () -> getServer().getAsyncExecutor(),
+                Integer.parseInt(System.getProperty(PROP_ADD_STATEMENT_BUFFER_MAX_SIZE, "" + DEFAULT_ADD_STATEMENT_BUFFER_SIZE)),
+                Long.getLong(PROP_ADD_STATEMENT_BUFFER_MAX_BYTES, DEFAULT_ADD_STATEMENT_BUFFER_MAX_BYTES),
+                Long.getLong(PROP_ADD_STATEMENT_BUFFER_FLUSH_INTERVAL, 0));
     }
 
     @Override
@@ -289,7 +335,8 @@ public class AGRepositoryConnection
     /**
      * Enable or disable the use of the addStatementBuffer. This can be called within an active transaction and will affect
      * (speed up) the rest of the transaction. When called in autocommit mode, it has no immediate effect, but in a subsequent
-     * transaction the buffer functionality will be used.
+     * transaction the buffer functionality will be used (or right away, if
+     * {@link #setAddStatementBufferInAutoCommit(boolean) setAddStatementBufferInAutoCommit} is set).
      * <p>
      * The buffer can also be enabled by setting property {@link #PROP_USE_ADD_STATEMENT_BUFFER}.
      *
@@ -307,21 +354,37 @@ public class AGRepositoryConnection
      * @return whether the addStatementBuffer is actually used right now for the connection.
      */
     public boolean isUseAddStatementBuffer() {
-        return addStatementBufferEnabled && !getHttpRepoClientInternal().isAutoCommit();
+        return addStatementBufferEnabled
+                && (addStatementBufferInAutoCommit || !getHttpRepoClientInternal().isAutoCommit());
+    }
+
+    /**
+     * @return whether the addStatementBuffer is also used in autocommit mode
+     */
+    public boolean isAddStatementBufferInAutoCommit() {
+        return addStatementBufferInAutoCommit;
     }
 
     /**
-     * Arrange for the JSON to be buffered and then later sent in a batch.
+     * Use the addStatementBuffer (if enabled) in autocommit mode as well.
+     * Each batch sent is then committed on its own, so buffered statements
+     * become visible to other connections only when the buffer is sent:
+     * when it is full, when the flush interval has passed, or when this
+     * connection makes any other request (including {@link #close()}).
+     * <p>
+     * This can also be set by using property {@link #PROP_ADD_STATEMENT_BUFFER_IN_AUTOCOMMIT}.
+     *
+     * @param inAutoCommit whether to buffer in autocommit mode
      */
-    private void bufferAddStatement(JSONArray rows) {
-        addStatementBuffer.add(rows);
-        if (addStatementBuffer.size() >= addStatementBufferMaxSize) {
+    public void setAddStatementBufferInAutoCommit(boolean inAutoCommit) {
+        addStatementBufferInAutoCommit = inAutoCommit;
+        if (!inAutoCommit) {
             forwardBufferedAddStatements();
         }
     }
 
     public int getAddStatementBufferMaxSize() {
-        return addStatementBufferMaxSize;
+        return addStatementBuffer.getMaxStatements();
     }
 
     /**
@@ -335,34 +398,66 @@ public class AGRepositoryConnection
         if (size < 0) {
             throw new IllegalArgumentException("Buffer maxSize must be positive integer");
         }
-        addStatementBufferMaxSize = size;
-        if (addStatementBuffer.size() >= addStatementBufferMaxSize) {
-            forwardBufferedAddStatements(); // simply send them all
+        addStatementBuffer.setMaxStatements(size); // sends the statements if there are too many
+    }
+
+    /**
+     * @return the size in bytes of the encoded statements at which the addStatementBuffer is sent
+     */
+    public long getAddStatementBufferMaxBytes() {
+        return addStatementBuffer.getMaxBytes();
+    }
+
+    /**
+     * Set the size in bytes of the encoded statements at which the addStatementBuffer
+     * is sent, whatever the number of statements.
+     * <p>
+     * This size can also be set by using property {@link #PROP_ADD_STATEMENT_BUFFER_MAX_BYTES}.
+     *
+     * @param bytes new maximum buffer size in bytes
+     */
+    public void setAddStatementBufferMaxBytes(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Buffer maxBytes must be positive");
         }
+        addStatementBuffer.setMaxBytes(bytes);
+    }
+
+    /**
+     * @return milliseconds after which buffered statements are sent, or 0 for no limit
+     */
+    public long getAddStatementBufferFlushInterval() {
+        return addStatementBuffer.getFlushInterval();
     }
 
     /**
-     * Forward the buffered statements to the repo, by sending the JSON over the HTTP connection.
+     * Set the time after which buffered statements are sent even if the
+     * addStatementBuffer is not full.  The sending happens in the background.
+     * <p>
+     * This can also be set by using property {@link #PROP_ADD_STATEMENT_BUFFER_FLUSH_INTERVAL}.
+     *
+     * @param millis milliseconds, or 0 to only send a full buffer
+     */
+    public void setAddStatementBufferFlushInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Buffer flush interval must not be negative");
+        }
+        addStatementBuffer.setFlushInterval(millis);
+    }
+
+    /**
+     * Forward the buffered statements to the repo, by sending the JSON over the HTTP connection,
+     * and wait for any upload started in the background to finish.
      * Afterwards the buffer will be empty (even if the upload failed: those statements are lost).
      */
     private void forwardBufferedAddStatements() throws RepositoryException {
-        if (!addStatementBuffer.isEmpty()) {
-            // System.out.println("Now uploading " + addStatementBuffer.size()+ " pending \"Add Statement\"");
-            JSONArray totalArray = new JSONArray();
-            for (JSONArray addStmtJson : addStatementBuffer) {
-                append(totalArray, addStmtJson);
-            }
-            try {
-                getHttpRepoClientInternal().uploadJSON(totalArray);
-            } catch (AGHttpException e) {
-                throw new RepositoryException(e);
-            } finally {
-                addStatementBuffer.clear();
-            }
-        }
+        addStatementBuffer.flush();
     }
 
     /**
+     * A full buffer is sent in the background while new statements are
+     * added, so statements being sent are no longer counted.
+     *
      * @return the number of buffered statements to be added
      */
     public int getNumBufferedAddStatements() {
@@ -378,13 +473,12 @@ public class AGRepositoryConnection
     protected void addWithoutCommit(Resource subject, IRI predicate,
                                     Value object, Resource... contexts) throws RepositoryException {
         Statement st = vf.createStatement(subject, predicate, object);
-        JSONArray rows = encodeJSON(st, null, contexts);
 
         if (isUseAddStatementBuffer()) {
-            bufferAddStatement(rows);
+            addStatementBuffer.add(st, null, contexts);
         } else {
             try {
-                prepareHttpRepoClient().uploadJSON(rows);
+                prepareHttpRepoClient().uploadJSON(encodeJSON(st, null, contexts));
             } catch (AGHttpException e) {
                 throw new RepositoryException(e);
             }
@@ -394,13 +488,12 @@ public class AGRepositoryConnection
     protected void addWithoutCommit(Resource subject, IRI predicate,
                                     Value object, JSONObject attributes, Resource... contexts) throws RepositoryException {
         Statement st = vf.createStatement(subject, predicate, object);
-        JSONArray rows = encodeJSON(st, attributes, contexts);
 
         if (isUseAddStatementBuffer()) {
-            bufferAddStatement(rows);
+            addStatementBuffer.add(st, attributes, contexts);
         } else {
             try {
-                prepareHttpRepoClient().uploadJSON(rows);
+                prepareHttpRepoClient().uploadJSON(encodeJSON(st, attributes, contexts));
             } catch (AGHttpException e) {
                 throw new RepositoryException(e);
             }
@@ -416,74 +509,63 @@ public class AGRepositoryConnection
 
     public void add(Iterable<? extends Statement> statements,
                     Resource... contexts) throws RepositoryException {
-        Util.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            JSONArray rows_st = encodeJSON(st, null, contexts);
-            append(rows, rows_st);
-        }
-        try {
-            prepareHttpRepoClient().uploadJSON(rows, contexts);
-        } catch (AGHttpException e) {
-            throw new RepositoryException(e);
-        }
+        add(statements, null, contexts);
     }
 
     public void add(Iterable<? extends Statement> statements,
                     JSONObject attributes,
                     Resource... contexts) throws RepositoryException {
         Util.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            JSONArray rows_st = encodeJSON(st, attributes, contexts);
-            append(rows, rows_st);
-        }
         try {
-            prepareHttpRepoClient().uploadJSON(rows, contexts);
+            addStatements(prepareHttpRepoClient(), statements, attributes, contexts);
         } catch (AGHttpException e) {
             throw new RepositoryException(e);
         }
     }
 
-    private void append(JSONArray rows, JSONArray rowsSt) {
-        for (int i = 0; i < rowsSt.length(); i++) {
-            try {
-                rows.put(rowsSt.get(i));
-            } catch (JSONException e) {
-                throw new RuntimeException(e);
-            }
-        }
-    }
-
     public void add(CloseableIteration<? extends Statement> statementIter, Resource... contexts)
             throws RepositoryException {
-        Util.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-
-        while (statementIter.hasNext()) {
-            append(rows, encodeJSON(statementIter.next(), null, contexts));
-        }
-        try {
-            prepareHttpRepoClient().uploadJSON(rows);
-        } catch (AGHttpException e) {
-            throw new RepositoryException(e);
-        }
+        add(statementIter, null, contexts);
     }
 
     public void add(CloseableIteration<? extends Statement> statementIter, JSONObject attributes, Resource... contexts)
             throws RepositoryException {
         Util.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statementIter.hasNext()) {
-            append(rows, encodeJSON(statementIter.next(), attributes, contexts));
-        }
+        AGHttpRepoClient client = prepareHttpRepoClient();
         try {
-            prepareHttpRepoClient().uploadJSON(rows);
+            if (client.isBinaryRDFUpload(false)) {
+                client.uploadBinaryRDF(new AGBinaryRDFStatementsEntity(
+                        statementIter, this::getStorableValue, contexts), attributes);
+            } else {
+                client.uploadJSON(new AGJSONStatementsEntity(
+                        statementIter, this::encodeValueForStorageJSON, attributes, contexts));
+            }
         } catch (AGHttpException e) {
             throw new RepositoryException(e);
         }
     }
 
+    /**
+     * Adds the statements in a single request, encoding them while the
+     * request is sent.  They are sent as binary RDF if the client
+     * {@link AGHttpRepoClient#isBinaryRDFUpload(boolean) prefers it},
+     * and as JSON rows otherwise or if the server refuses binary RDF.
+     */
+    private void addStatements(AGHttpRepoClient client, Iterable<? extends Statement> statements,
+                               JSONObject attributes, Resource... contexts) throws AGHttpException {
+        if (client.isBinaryRDFUpload(true)) {
+            try {
+                client.uploadBinaryRDF(new AGBinaryRDFStatementsEntity(
+                        statements, this::getStorableValue, contexts), attributes);
+                return;
+            } catch (AGUnsupportedFileFormatException e) {
+                // Fall back to JSON rows below.
+            }
+        }
+        client.uploadJSON(new AGJSONStatementsEntity(
+                statements, this::encodeValueForStorageJSON, attributes, contexts), contexts);
+    }
+
     private JSONArray encodeJSON(Statement st, JSONObject attributes, Resource... contexts) {
         JSONArray rows = new JSONArray();
         String attrs = null;
@@ -527,9 +609,12 @@ public class AGRepositoryConnection
         return rows;
     }
 
+    private Value getStorableValue(Value v) {
+        return AGHttpRepoClient.getStorableValue(v, vf, getHttpRepoClientInternal().getAllowExternalBlankNodeIds());
+    }
+
     private String encodeValueForStorageJSON(Value v) {
-        Value storableValue = AGHttpRepoClient.getStorableValue(v, vf, getHttpRepoClientInternal().getAllowExternalBlankNodeIds());
-        return Util.NTriples.toNTriplesString(storableValue);
+        return Util.NTriples.toNTriplesString(getStorableValue(v));
     }
 
     /**
@@ -984,21 +1069,15 @@ public class AGRepositoryConnection
     public void remove(Iterable<? extends Statement> statements,
                        Resource... contexts) throws RepositoryException {
         Util.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            append(rows, encodeJSON(st, null, contexts));
-        }
-        prepareHttpRepoClient().deleteJSON(rows);
+        prepareHttpRepoClient().deleteJSON(new AGJSONStatementsEntity(
+                statements, this::encodeValueForStorageJSON, null, contexts));
     }
 
     public void remove(CloseableIteration<? extends Statement> statements, Resource... contexts)
             throws RepositoryException {
         Util.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statements.hasNext()) {
-            append(rows, encodeJSON(statements.next(), null, contexts));
-        }
-        prepareHttpRepoClient().deleteJSON(rows);
+        prepareHttpRepoClient().deleteJSON(new AGJSONStatementsEntity(
+                statements, this::encodeValueForStorageJSON, null, contexts));
     }
 
     /**
@@ -1011,6 +1090,26 @@ public class AGRepositoryConnection
         return prepareHttpRepoClient().isAutoCommit();
     }
 
+    /**
+     * Returns whether this connection uses a dedicated session.  Unlike
+     * most methods, this does not send buffered statements.
+     *
+     * @return true if requests go to a dedicated session
+     */
+    public boolean isDedicatedSession() {
+        return getHttpRepoClientInternal().isDedicatedSession();
+    }
+
+    /**
+     * Returns whether the session commits after each request, without
+     * sending buffered statements as {@link #isAutoCommit()} does.
+     *
+     * @return true unless a transaction has been started with autocommit off
+     */
+    public boolean isSessionAutoCommit() {
+        return getHttpRepoClientInternal().isAutoCommit();
+    }
+
     private void setClientAutoCommit(boolean autoCommit) throws RepositoryException {
         prepareHttpRepoClient().setAutoCommit(autoCommit);
     }
@@ -1110,6 +1209,31 @@ public class AGRepositoryConnection
         transactionState = AGTransactionState.ROLLBACK_SUCCESSFUL;
     }
 
+    /**
+     * Returns whether this connection may have changed something on the
+     * server since the last call to {@link #clearDirty()}: statements,
+     * the transaction or the state of its session.  Statements waiting
+     * in the add buffer, and failed requests, also make it dirty.
+     * <p>
+     * A connection pool uses this to skip the rollback and validation
+     * requests for connections that were only used to read.</p>
+     *
+     * @return true if the connection may have changed server state
+     * @see AGHttpRepoClient#isDirty()
+     */
+    public boolean isDirty() {
+        return addStatementBuffer.size() > 0 || repoclient.isDirty();
+    }
+
+    /**
+     * Marks this connection clean.
+     *
+     * @see #isDirty()
+     */
+    public void clearDirty() {
+        repoclient.clearDirty();
+    }
+
     /**
      * Aborts a previously prepared commit.
      *
@@ -1130,7 +1254,7 @@ public class AGRepositoryConnection
 
     /**
      * If true, automatically use {@link AGStreamTupleQuery}.
-     * Default is false.
+     * Default is true, unless {@link #PROP_STREAM_RESULTS} is set to false.
      *
      * @return boolean the value of the <code>streamResults</code> parameter
      * @see #setStreamResults(boolean)
@@ -1142,6 +1266,8 @@ public class AGRepositoryConnection
     /**
      * Set to true to automatically use {@link AGStreamTupleQuery}
      * for {@link #prepareTupleQuery(QueryLanguage, String, String)}.
+     * Streamed results hold an HTTP connection until they are exhausted
+     * or closed; set to false to read whole results into memory instead.
      *
      * @param streamResults new setting for the streamResults parameter
      * @see #isStreamResults()
@@ -1150,6 +1276,32 @@ public class AGRepositoryConnection
         this.streamResults = streamResults;
     }
 
+    /**
+     * If true, {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}
+     * and {@link #getStatements(String...)} parse statements as they are
+     * consumed instead of reading the whole response first.
+     * Default is false, unless {@link #PROP_STREAM_STATEMENTS} is set to true.
+     *
+     * @return boolean the value of the <code>streamStatements</code> parameter
+     * @see #setStreamStatements(boolean)
+     */
+    public boolean isStreamStatements() {
+        return streamStatements;
+    }
+
+    /**
+     * Set to true to stream the results of getStatements, so that large
+     * scans run in bounded memory.  A streamed result holds an HTTP
+     * connection until it is exhausted or closed; in a dedicated session,
+     * make no other requests on this connection while one is open.
+     *
+     * @param streamStatements new setting for the streamStatements parameter
+     * @see #isStreamStatements()
+     */
+    public void setStreamStatements(boolean streamStatements) {
+        this.streamStatements = streamStatements;
+    }
+
     @Override
     public void clearNamespaces() throws RepositoryException {
         prepareHttpRepoClient().clearNamespaces();
@@ -1165,6 +1317,8 @@ public class AGRepositoryConnection
     public void close() throws RepositoryException {
         if (pool != null) {
             try {
+                // Statements buffered in autocommit mode belong to this borrower.
+                forwardBufferedAddStatements();
                 pool.returnObject(this);
             } catch (final Exception e) {
                 throw new RepositoryException(e);
@@ -1293,13 +1447,36 @@ public class AGRepositoryConnection
         }
     }
 
+    /**
+     * Gets all statements with a specific subject, predicate and/or object.
+     * <p>
+     * If the connection {@link #isStreamStatements() streams statements},
+     * they are parsed from the server's response as they are consumed,
+     * and the result must be closed unless it is read to the end.
+     * In a dedicated session, finish with such a result before making
+     * other requests on the connection.</p>
+     *
+     * @see RepositoryConnection#getStatements(Resource, IRI, Value, boolean, Resource...)
+     */
     public RepositoryResult<Statement> getStatements(Resource subj, IRI pred,
                                                      Value obj, boolean includeInferred, Resource... contexts)
             throws RepositoryException {
+        return getStatements(prepareHttpRepoClient(), streamStatements,
+                subj, pred, obj, includeInferred, contexts);
+    }
+
+    private RepositoryResult<Statement> getStatements(AGHttpRepoClient client, boolean stream,
+                                                      Resource subj, IRI pred, Value obj,
+                                                      boolean includeInferred, Resource... contexts)
+            throws RepositoryException {
+        if (stream) {
+            return new RepositoryResult<>(client.getStatementsResult(
+                    subj, pred, obj, Boolean.toString(includeInferred), contexts));
+        }
         try {
             StatementCollector collector = new StatementCollector();
-            exportStatements(subj, pred, obj, includeInferred, collector,
-                    contexts);
+            client.getStatements(subj, pred, obj, Boolean.toString(includeInferred),
+                    collector, contexts);
             return createRepositoryResult(collector.getStatements());
         } catch (RDFHandlerException e) {
             // found a bug in StatementCollector?
@@ -1556,6 +1733,9 @@ public class AGRepositoryConnection
      */
     public RepositoryResult<Statement> getStatements(String... ids)
             throws RepositoryException {
+        if (streamStatements) {
+            return new RepositoryResult<>(prepareHttpRepoClient().getStatementsResult(ids));
+        }
         try {
             StatementCollector collector = new StatementCollector();
             exportStatements(collector, ids);
@@ -1841,6 +2021,122 @@ public class AGRepositoryConnection
         return prepareHttpRepoClient().size(contexts);
     }
 
+    /*****************************************************************
+     * Asynchronous variants.
+     *
+     * These take the request off the calling thread and return a future
+     * that completes with the result, or exceptionally with the
+     * exception the synchronous method would have thrown.  Buffered
+     * added statements are sent, and the connection's session and
+     * settings are looked up, on the calling thread; the request is then
+     * made on the server's async executor (see
+     * {@link AGServer#getAsyncExecutor()}) without using the connection.
+     *
+     * The connection must not be used, not even for another
+     * asynchronous call, until the returned future has completed:
+     * requests of a dedicated session are not ordered across threads.
+     * For concurrent requests, use one connection per request, e.g. from
+     * an AGConnPool.
+     *
+     * Each request blocks an executor thread until its response has been
+     * read.  This is not non-blocking I/O: the HTTP client is blocking,
+     * so the number of requests in flight is bounded by the executor's
+     * threads and by the HTTP connection limits.
+     */
+
+    private <T> CompletableFuture<T> supplyAsync(Function<AGHttpRepoClient, T> task) {
+        final AGHttpRepoClient client;
+        try {
+            client = prepareHttpRepoClient();
+        } catch (RepositoryException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.supplyAsync(() -> task.apply(client), getServer().getAsyncExecutor());
+    }
+
+    /**
+     * Asynchronous version of {@link #size(Resource...)}.
+     *
+     * @param contexts the context(s) to get the data from
+     * @return a future number of explicit statements
+     */
+    public CompletableFuture<Long> sizeAsync(Resource... contexts) {
+        return supplyAsync(client -> client.size(contexts));
+    }
+
+    /**
+     * Asynchronous version of
+     * {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}.
+     *
+     * @param subj            a Resource specifying the subject, or null for a wildcard
+     * @param pred            a URI specifying the predicate, or null for a wildcard
+     * @param obj             a Value specifying the object, or null for a wildcard
+     * @param includeInferred if false, no inferred statements are returned
+     * @param contexts        the context(s) to get the data from
+     * @return a future result over the matching statements
+     */
+    public CompletableFuture<RepositoryResult<Statement>> getStatementsAsync(Resource subj, IRI pred, Value obj,
+                                                                             boolean includeInferred,
+                                                                             Resource... contexts) {
+        final boolean stream = streamStatements;
+        return supplyAsync(client -> getStatements(client, stream, subj, pred, obj, includeInferred, contexts));
+    }
+
+    /**
+     * Asynchronous version of {@link #add(Iterable, Resource...)}.
+     * <p>
+     * Statements are added in a single request; the iterable must
+     * not be modified until the returned future completes.</p>
+     *
+     * @param statements the statements to add
+     * @param contexts   the context(s) to add the statements to
+     * @return a future that completes when the statements have been added
+     */
+    public CompletableFuture<Void> addAsync(Iterable<? extends Statement> statements, Resource... contexts) {
+        Util.verifyContextNotNull(contexts);
+        return supplyAsync(client -> {
+            try {
+                addStatements(client, statements, null, contexts);
+            } catch (AGHttpException e) {
+                throw new RepositoryException(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Evaluates a tuple query asynchronously.
+     *
+     * @param query a query prepared on this connection
+     * @return a future query result
+     * @see AGTupleQuery#evaluate()
+     */
+    public CompletableFuture<TupleQueryResult> queryAsync(AGTupleQuery query) {
+        return supplyAsync(query::evaluate);
+    }
+
+    /**
+     * Evaluates a graph query asynchronously.
+     *
+     * @param query a query prepared on this connection
+     * @return a future query result
+     * @see AGGraphQuery#evaluate()
+     */
+    public CompletableFuture<GraphQueryResult> queryAsync(AGGraphQuery query) {
+        return supplyAsync(query::evaluate);
+    }
+
+    /**
+     * Evaluates a boolean query asynchronously.
+     *
+     * @param query a query prepared on this connection
+     * @return a future query result
+     * @see AGBooleanQuery#evaluate()
+     */
+    public CompletableFuture<Boolean> queryAsync(AGBooleanQuery query) {
+        return supplyAsync(query::evaluate);
+    }
+
     /************************************
      * AllegroGraph Extensions hereafter
      */
@@ -3218,6 +3514,19 @@ public class AGRepositoryConnection
         this.pool = pool;
     }
 
+    /**
+     * Sets the pool this object will be returned to on close,
+     * for pools other than {@link AGConnPool}, such as a key of an
+     * {@link com.franz.agraph.pool.AGKeyedConnPool}.
+     * <p>
+     * Set to {@code null} to make close really shutdown the connection.
+     *
+     * @param pool Connection pool.
+     */
+    public void setPool(final ObjectPool<AGRepositoryConnection> pool) {
+        this.pool = pool;
+    }
+
     /**
      * Builder class for defining a new attribute definition. After instantiation,
      * use the setter methods to build up the attribute definition. The {@code add}
@@ -0,0 +1,107 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.query.QueryResult;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Spliterator} over a query result, for
+ * {@link AGTupleQuery#evaluateStream()} and {@link AGGraphQuery#evaluateStream()}.
+ * <p>
+ * A result can only be read in order, so {@link #trySplit()} reads the
+ * next batch of elements into an array and hands that off.  Batches grow
+ * by {@link #BATCH_UNIT} at each split, so a parallel stream keeps its
+ * workers busy with earlier batches while this one parses the next.
+ * The size is only known when the query has a limit; it is then used as
+ * the estimate, otherwise the size is reported as unknown.</p>
+ *
+ * @param <T> BindingSet or Statement
+ */
+final class AGResultSpliterator<T> implements Spliterator<T> {
+    static final int BATCH_UNIT = 1 << 10;
+    static final int MAX_BATCH = 1 << 25;
+
+    private static final int CHARACTERISTICS = ORDERED | NONNULL;
+
+    private final QueryResult<T> result;
+    // Long.MAX_VALUE if unknown.
+    private long estimate;
+    private int batch;
+
+    private AGResultSpliterator(QueryResult<T> result, long estimate) {
+        this.result = result;
+        this.estimate = estimate;
+    }
+
+    /**
+     * @param result the result to stream
+     * @param limit  the query's limit, or a negative number for none
+     * @return a sequential stream that closes the result when it is closed
+     */
+    static <T> Stream<T> stream(QueryResult<T> result, long limit) {
+        final AGResultSpliterator<T> spliterator =
+                new AGResultSpliterator<>(result, limit < 0 ? Long.MAX_VALUE : limit);
+        return StreamSupport.stream(spliterator, false).onClose(result::close);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (!result.hasNext()) {
+            return false;
+        }
+        action.accept(result.next());
+        consumed(1);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        while (result.hasNext()) {
+            action.accept(result.next());
+        }
+        estimate = 0;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (!result.hasNext()) {
+            return null;
+        }
+        int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+        if (estimate < n) {
+            n = (int) Math.max(1, estimate);
+        }
+        final Object[] elements = new Object[n];
+        int count = 0;
+        do {
+            elements[count++] = result.next();
+        } while (count < n && result.hasNext());
+        batch = count;
+        consumed(count);
+        return Spliterators.spliterator(elements, 0, count, CHARACTERISTICS);
+    }
+
+    private void consumed(int n) {
+        if (estimate != Long.MAX_VALUE) {
+            estimate = Math.max(0, estimate - n);
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
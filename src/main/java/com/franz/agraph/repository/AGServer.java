@@ -4,8 +4,12 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGConnectionManager;
 import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpMetricsListener;
+import com.franz.agraph.http.AGHttpMetricsRecorder;
 import com.franz.agraph.http.AGProtocol;
+import com.franz.agraph.http.AGSessionHeartbeat;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGJSONArrayHandler;
 import com.franz.agraph.http.handler.AGRawStreamer;
@@ -31,9 +35,14 @@ import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The starting point for interacting with an
@@ -64,16 +73,34 @@ public class AGServer implements Closeable {
     public static final int DEFAULT_HTTPS_PORT = 10036;
     // Size of the thread pool for the global executor service
     private static final int THREAD_POOL_SIZE = 4;
-    // A default, global executor service used to create pinger threads.
+    // A default, global executor service running the session heartbeat.
     // Created lazily in getSharedExecutorService().
     private static ScheduledThreadPoolExecutor sharedExecutor;
 
+    /**
+     * Number of threads in the global executor that runs the
+     * asynchronous (CompletableFuture-returning) connection methods.
+     * Each call in flight blocks one of these threads for the duration
+     * of its request, so this bounds the number of such requests at
+     * once; further requests wait in the executor's queue.  The default
+     * is the number of connections a connection manager allows to one
+     * route, and at most in total, since more threads would only wait
+     * for a connection.
+     *
+     * @see AGConnectionManager#PROP_MAX_PER_ROUTE
+     * @see AGConnectionManager#PROP_MAX_TOTAL
+     */
+    public static final String PROP_ASYNC_THREADS = "com.franz.agraph.http.asyncThreads";
+    // Created lazily in getSharedAsyncExecutor().
+    private static ExecutorService sharedAsyncExecutor;
+
     private final String serverURL;
     private final String user;
     private final String password;
     private final AGHTTPClient httpClient;
     private final AGCatalog rootCatalog;
     private ScheduledExecutorService executor = getSharedExecutor();
+    private Executor asyncExecutor;
     private AGServerVersion cachedServerVersion;
 
     /**
@@ -208,6 +235,26 @@ public class AGServer implements Closeable {
         return sharedExecutor;
     }
 
+    private static synchronized ExecutorService getSharedAsyncExecutor() {
+        if (sharedAsyncExecutor == null) {
+            final int threads = Math.max(1, Integer.getInteger(PROP_ASYNC_THREADS,
+                    Math.min(AGConnectionManager.getDefaultMaxPerRoute(),
+                            AGConnectionManager.getDefaultMaxTotal())));
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                        thread.setName("agraph-async-" + thread.getName());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            // Do not keep idle threads around forever.
+            pool.allowCoreThreadTimeOut(true);
+            sharedAsyncExecutor = pool;
+        }
+        return sharedAsyncExecutor;
+    }
+
     /**
      * Creates or opens a repository in the specified catalog.
      *
@@ -269,6 +316,36 @@ public class AGServer implements Closeable {
         return httpClient;
     }
 
+    /**
+     * Returns the statistics of the HTTP requests made through this
+     * server's client, if they are being recorded.
+     *
+     * @return the recorder, or null if {@link #enableHttpMetrics()} has not
+     * been called and {@link AGHTTPClient#PROP_METRICS} is not set
+     * @see AGHTTPClient#setMetricsListener(AGHttpMetricsListener)
+     */
+    public AGHttpMetricsRecorder getHttpMetrics() {
+        AGHttpMetricsListener listener = httpClient.getMetricsListener();
+        return listener instanceof AGHttpMetricsRecorder ? (AGHttpMetricsRecorder) listener : null;
+    }
+
+    /**
+     * Starts recording statistics of the HTTP requests made through this
+     * server's client, which includes those of all repositories and
+     * connections obtained from this server.  Replaces any other metrics
+     * listener of the client.
+     *
+     * @return the recorder, which is kept if metrics are already being recorded
+     */
+    public synchronized AGHttpMetricsRecorder enableHttpMetrics() {
+        AGHttpMetricsRecorder recorder = getHttpMetrics();
+        if (recorder == null) {
+            recorder = new AGHttpMetricsRecorder();
+            httpClient.setMetricsListener(recorder);
+        }
+        return recorder;
+    }
+
     /**
      * @return the server version
      * @throws AGHttpException if there is an error with this request
@@ -1026,6 +1103,9 @@ public class AGServer implements Closeable {
     /**
      * Gets the default executor object that will be used by connections
      * to schedule maintenance operations.
+     * <p>
+     * Dedicated sessions of all connections using the same executor are
+     * kept alive by a single {@link AGSessionHeartbeat}.</p>
      *
      * @return An executor instance
      */
@@ -1043,6 +1123,35 @@ public class AGServer implements Closeable {
         this.executor = executor;
     }
 
+    /**
+     * Gets the executor used to run the asynchronous methods of
+     * connections, such as {@link AGRepositoryConnection#sizeAsync}.
+     * <p>
+     * The methods make ordinary blocking requests on the executor's
+     * threads, so each call in flight takes a thread until its response
+     * has been read.  Unless changed with {@link #setAsyncExecutor(Executor)}
+     * this is a global pool of daemon threads whose size is given by the
+     * {@value #PROP_ASYNC_THREADS} system property, or by the connection
+     * limits if that is not set.</p>
+     *
+     * @return An executor instance
+     */
+    public synchronized Executor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = getSharedAsyncExecutor();
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Changes the executor used to run the asynchronous methods of connections.
+     *
+     * @param asyncExecutor An executor instance
+     */
+    public synchronized void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
     /**
      * Creates or opens a repository in the specified catalog.
      *
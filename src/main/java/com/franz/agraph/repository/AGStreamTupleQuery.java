@@ -4,7 +4,7 @@
 
 package com.franz.agraph.repository;
 
-import com.franz.agraph.http.handler.AGTQRStreamer;
+import com.franz.agraph.http.AGHttpRepoClient;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
@@ -14,10 +14,11 @@ import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
 import javax.xml.stream.XMLStreamReader;
 
 /**
- * Wraps an AGTupleQuery to provide streaming results.
- * The default, TupleQueryResultParser and TupleQueryResultBuilder use
- * SAX to parse and an ArrayList to collect results,
- * so {@link AGTupleQuery#evaluate()} does not return until the
+ * Wraps an AGTupleQuery to provide streaming results, whatever the
+ * connection's {@link AGRepositoryConnection#isStreamResults() streamResults}
+ * setting.  Without streaming, TupleQueryResultParser and
+ * TupleQueryResultBuilder use SAX to parse and an ArrayList to collect
+ * results, so {@link AGTupleQuery#evaluate()} does not return until the
  * entire stream is parsed.
  * <p>AGStreamTupleQuery uses {@link XMLStreamReader}, so the result is
  * pulled from the http response stream as methods such as
@@ -44,6 +45,9 @@ public class AGStreamTupleQuery extends AGTupleQuery implements TupleQuery {
      */
     public AGStreamTupleQuery(AGTupleQuery query) {
         super(query.httpCon, query.queryLanguage, query.queryString, query.baseURI);
+        setPrefetch(query.getPrefetch());
+        setLazyDecoding(query.isLazyDecoding());
+        setPageSize(query.getPageSize());
     }
 
     /**
@@ -52,16 +56,19 @@ public class AGStreamTupleQuery extends AGTupleQuery implements TupleQuery {
      * {@link TupleQueryResult}.{@link TupleQueryResult#hasNext() hasNext()}.
      * (Note that {@link TupleQueryResult}.{@link TupleQueryResult#next() next()}
      * does not actually do the work if hasNext() is called first.)
+     * The response is released when the result is exhausted or closed.
      */
     @Override
     public TupleQueryResult evaluate() throws QueryEvaluationException {
-        AGTQRStreamer handler = AGTQRStreamer.createStreamer(httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), httpCon.getRepository().getValueFactory());
-        try {
-            httpCon.prepareHttpRepoClient().query(this, false, handler);
-        } catch (Exception e) {
-            throw new QueryEvaluationException(e);
+        return evaluate(httpCon.prepareHttpRepoClient());
+    }
+
+    @Override
+    TupleQueryResult evaluate(AGHttpRepoClient client) throws QueryEvaluationException {
+        if (getPageSize() > 0) {
+            return evaluatePaged(client);
         }
-        return handler.getResult();
+        return evaluateStreaming(client);
     }
 
     /**
@@ -4,11 +4,15 @@
 
 package com.franz.agraph.repository;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
 import com.franz.agraph.http.handler.AGRawStreamer;
+import com.franz.agraph.http.handler.AGTQRColumnarHandler;
 import com.franz.agraph.http.handler.AGTQRHandler;
+import com.franz.agraph.http.handler.AGTQRStreamer;
+import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
@@ -20,22 +24,61 @@ import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.stream.Stream;
 
 /**
  * Implements the Sesame TupleQuery interface for AllegroGraph.
  */
 public class AGTupleQuery extends AGQuery implements TupleQuery {
 
+    private int prefetch;
+    private int pageSize;
+    private boolean lazyDecoding;
+
     public AGTupleQuery(AGRepositoryConnection con, QueryLanguage ql,
                         String queryString, String baseURI) {
         super(con, ql, queryString, baseURI);
     }
 
+    /**
+     * Evaluates the query.
+     * <p>
+     * If the connection {@link AGRepositoryConnection#isStreamResults() streams results},
+     * which is the default, the result is parsed from the HTTP response as it
+     * is iterated, so memory use does not grow with the number of results.
+     * The response, and the HTTP connection it holds, is released when the
+     * result is exhausted or closed, so results that are not read to the end
+     * should be closed, e.g. with try-with-resources.  Otherwise, or if the
+     * preferred result format cannot be streamed, the whole result is read
+     * into memory before this returns.</p>
+     * <p>
+     * With a {@link #setPageSize(int) page size}, the result is instead
+     * read page by page by {@link AGPagingTupleQueryResult}.</p>
+     *
+     * @return the result
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
     public TupleQueryResult evaluate() throws QueryEvaluationException {
+        return evaluate(httpCon.prepareHttpRepoClient());
+    }
+
+    /**
+     * Evaluates the query as {@link #evaluate()} does, through the given
+     * client and without otherwise using the connection, so that it can
+     * be called from another thread.
+     */
+    TupleQueryResult evaluate(AGHttpRepoClient client) throws QueryEvaluationException {
+        if (pageSize > 0) {
+            return evaluatePaged(client);
+        }
+        final TupleQueryResultFormat format = client.getPreferredTQRFormat();
+        if (httpCon.isStreamResults() && AGTQRStreamer.canStream(format)) {
+            return evaluateStreaming(client);
+        }
         try {
-            // TODO: make this efficient for large result sets
             TupleQueryResultBuilder builder = new TupleQueryResultBuilder();
-            evaluate(builder);
+            evaluate(client, new AGTQRHandler(format, builder, httpCon.getValueFactory(),
+                    client.getAllowExternalBlankNodeIds()), limit, offset);
             return builder.getQueryResult();
         } catch (TupleQueryResultHandlerException e) {
             // Found a bug in TupleQueryResultBuilder?
@@ -43,6 +86,215 @@ public class AGTupleQuery extends AGQuery implements TupleQuery {
         }
     }
 
+    /**
+     * Returns a result that reads from the HTTP response as results are
+     * requested.
+     *
+     * @return the result
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    protected TupleQueryResult evaluateStreaming() throws QueryEvaluationException {
+        return evaluateStreaming(httpCon.prepareHttpRepoClient());
+    }
+
+    TupleQueryResult evaluateStreaming(AGHttpRepoClient client) throws QueryEvaluationException {
+        AGTQRStreamer handler = AGTQRStreamer.createStreamer(client.getPreferredTQRFormat(), httpCon.getRepository().getValueFactory());
+        handler.setLazyDecoding(lazyDecoding);
+        try {
+            client.query(this, false, handler);
+        } catch (Exception e) {
+            throw new QueryEvaluationException(e);
+        }
+        final TupleQueryResult result = handler.getResult();
+        return prefetch > 0 ? new AGPrefetchingTupleQueryResult(result, prefetch) : result;
+    }
+
+    /**
+     * Returns a result that reads the solutions in pages of
+     * {@link #getPageSize()}, within this query's limit and offset.
+     *
+     * @return the result
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    protected TupleQueryResult evaluatePaged() throws QueryEvaluationException {
+        // Pages after the first are fetched on another thread, which must
+        // not flush the connection's add buffer or look at its state.
+        return evaluatePaged(httpCon.prepareHttpRepoClient());
+    }
+
+    TupleQueryResult evaluatePaged(AGHttpRepoClient client) throws QueryEvaluationException {
+        if (getName() != null) {
+            // A saved query is evaluated with the limit it was saved with.
+            throw new IllegalStateException("Cannot read saved query " + getName() + " in pages");
+        }
+        final TupleQueryResultFormat format = client.getPreferredTQRFormat();
+        return new AGPagingTupleQueryResult(
+                (pageOffset, pageLimit) -> evaluatePage(client, format, pageOffset, pageLimit),
+                offset, limit, pageSize);
+    }
+
+    /**
+     * Evaluates one page of the query, ignoring its limit and offset.
+     *
+     * @param pageOffset the number of solutions to skip
+     * @param pageLimit  the maximum number of solutions
+     * @return the solutions of the page
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    protected TupleQueryResult evaluatePage(int pageOffset, int pageLimit)
+            throws QueryEvaluationException {
+        final AGHttpRepoClient client = httpCon.prepareHttpRepoClient();
+        return evaluatePage(client, client.getPreferredTQRFormat(), pageOffset, pageLimit);
+    }
+
+    /**
+     * Evaluates one page of the query through the given client, without
+     * otherwise using the connection, so that it can be called from
+     * another thread.
+     */
+    private TupleQueryResult evaluatePage(AGHttpRepoClient client, TupleQueryResultFormat format,
+                                          int pageOffset, int pageLimit)
+            throws QueryEvaluationException {
+        final AGValueFactory vf = httpCon.getValueFactory();
+        if (AGTQRStreamer.canStream(format)) {
+            final AGTQRStreamer handler = AGTQRStreamer.createStreamer(format, vf);
+            handler.setLazyDecoding(lazyDecoding);
+            evaluate(client, handler, pageLimit, pageOffset);
+            return handler.getResult();
+        }
+        try {
+            final TupleQueryResultBuilder builder = new TupleQueryResultBuilder();
+            evaluate(client, new AGTQRHandler(format, builder, vf,
+                    client.getAllowExternalBlankNodeIds()), pageLimit, pageOffset);
+            return builder.getQueryResult();
+        } catch (TupleQueryResultHandlerException e) {
+            // Found a bug in TupleQueryResultBuilder?
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the number of solutions requested at a time.
+     *
+     * @return the page size, 0 if the result is read in one request
+     * @see #setPageSize(int)
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Sets the number of solutions that {@link #evaluate()} requests at
+     * a time.  With a positive page size, a result is read as a series
+     * of requests for consecutive pages of the solutions, each for the
+     * next page size solutions from an offset, while the next page is
+     * fetched in the background.  A page that fails with an I/O error is
+     * fetched again, so a dropped connection does not restart the whole
+     * result (see {@link AGPagingTupleQueryResult}).
+     * <p>
+     * The query should order its solutions completely, with an ORDER BY
+     * on keys that identify each one, or pages may overlap.  The query's
+     * own {@link #setLimit(int) limit} and {@link #setOffset(int) offset}
+     * still bound the solutions that are read.  Saved queries cannot be
+     * paged.  The default of 0 reads the result in one request.</p>
+     * <p>
+     * Since pages are requested from a background thread, the connection
+     * must not be used for anything else while a paged result is open.</p>
+     *
+     * @param pageSize the maximum number of solutions per request, or 0
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(0, pageSize);
+    }
+
+    /**
+     * Gets the number of solutions read ahead of the consumer.
+     *
+     * @return the number of solutions, 0 if results are not read ahead
+     * @see #setPrefetch(int)
+     */
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Sets the number of solutions of streamed results that are read
+     * ahead on a background thread, so that reading and parsing the
+     * response overlaps with the processing of earlier solutions
+     * (see {@link AGPrefetchingTupleQueryResult}).  The default of 0
+     * reads solutions on the consumer's thread as they are requested.
+     *
+     * @param prefetch the maximum number of solutions read ahead, or 0
+     */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = Math.max(0, prefetch);
+    }
+
+    /**
+     * @return true if terms of streamed solutions are decoded on access
+     * @see #setLazyDecoding(boolean)
+     */
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * Sets whether streamed solutions keep the raw text of their row and
+     * convert a term to a value only when
+     * {@link BindingSet#getValue(String)} or similar asks for it.  This
+     * saves work when only some columns of a wide result are read, but
+     * holding on to solutions then also holds on to their text.  It
+     * applies to TSV results; solutions in other formats are decoded as
+     * they are read.  The default is false.
+     *
+     * @param lazyDecoding true to decode terms on access
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Evaluates the query and returns the results as a stream.
+     * <p>
+     * The stream reads the result as it goes (see {@link #evaluate()}).
+     * Its spliterator splits off growing batches, so a
+     * {@link Stream#parallel() parallel} stream processes earlier batches
+     * while the next one is parsed, and reports the query's
+     * {@link #getLimit() limit}, if any, as estimated size.  Closing the
+     * stream releases the HTTP response, so streams that are not consumed
+     * to the end should be used in a try-with-resources block.</p>
+     *
+     * @return the results
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    public Stream<BindingSet> evaluateStream() throws QueryEvaluationException {
+        return AGResultSpliterator.stream(evaluate(), limit);
+    }
+
+    /**
+     * Evaluates the query and returns the whole result column by column.
+     * <p>
+     * Each variable's values are collected into one array: integers of
+     * one datatype into a long[], doubles, floats or decimals into a
+     * double[], xsd:dateTime values into epoch milliseconds and IRIs
+     * into ids of a per-column dictionary (see {@link AGColumn}).  The
+     * result is requested as TSV, whatever the preferred result format,
+     * and cells are filled straight from the response without creating a
+     * value per cell.  Unquoted integers in
+     * TSV, which are xsd:negativeInteger when negative, all count as
+     * xsd:integer so that one column holds them.  The result is read
+     * into memory before this returns, so this is meant for analytic
+     * queries whose results fit in memory.</p>
+     *
+     * @return the columns of the result
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    public AGColumnarResult evaluateColumnar() throws QueryEvaluationException {
+        final AGTQRColumnarHandler handler = new AGTQRColumnarHandler(httpCon.getValueFactory());
+        evaluate(handler);
+        return handler.getResult();
+    }
+
     public void evaluate(TupleQueryResultHandler handler)
             throws QueryEvaluationException, TupleQueryResultHandlerException {
         evaluate(new AGTQRHandler(httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), handler, httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getAllowExternalBlankNodeIds()));
@@ -0,0 +1,253 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+
+/**
+ * Interns the IRIs and typed literals created while parsing responses.
+ * <p>
+ * Query results tend to repeat a small set of predicates, classes and
+ * datatypes, and often values such as small numbers, many times.  The
+ * response parsers look terms up here by their text before creating
+ * them, so repeated terms share one object and, when the text is still
+ * in the parser's buffer, do not even allocate a string.</p>
+ * <p>
+ * The cache is a fixed-size table with one slot per hash bucket; a new
+ * term replaces whatever was in its slot.  This bounds its memory and
+ * needs no locks: slots hold immutable entries, so a reader sees either
+ * the old or the new entry, and a lost update only costs a miss.  Terms
+ * longer than {@link #MAX_LENGTH} characters are not cached.  Language
+ * tagged literals and blank nodes are never cached.</p>
+ *
+ * @see AGValueFactory#getValueCache()
+ */
+public final class AGValueCache {
+
+    /**
+     * Number of slots of the cache shared by all value factories
+     * (default {@link #DEFAULT_SIZE}); 0 disables it.
+     */
+    public static final String PROP_SIZE = "com.franz.agraph.repository.AGValueCache.size";
+    public static final int DEFAULT_SIZE = 4096;
+    /**
+     * Longest IRI or literal label that is cached.
+     */
+    public static final int MAX_LENGTH = 128;
+
+    private static final AGValueCache SHARED =
+            new AGValueCache(Integer.getInteger(PROP_SIZE, DEFAULT_SIZE));
+
+    // Null if disabled.
+    private final IRIEntry[] iris;
+    private final LiteralEntry[] literals;
+    private final int mask;
+
+    /**
+     * @param size number of slots for IRIs, and again for literals,
+     *             rounded up to a power of two; 0 disables the cache
+     */
+    public AGValueCache(int size) {
+        if (size <= 0) {
+            iris = null;
+            literals = null;
+            mask = 0;
+        } else {
+            final int n = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+            iris = new IRIEntry[n];
+            literals = new LiteralEntry[n];
+            mask = n - 1;
+        }
+    }
+
+    /**
+     * @return the cache used by value factories unless set otherwise
+     * @see #PROP_SIZE
+     */
+    public static AGValueCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the IRI with the text in text[start, end), creating it
+     * with the value factory if it is not cached.
+     *
+     * @param vf    creates IRIs
+     * @param text  holds the IRI text
+     * @param start index of the first character of the IRI
+     * @param end   index after the last character of the IRI
+     * @return the IRI
+     */
+    public IRI createIRI(ValueFactory vf, CharSequence text, int start, int end) {
+        if (iris == null || end - start > MAX_LENGTH) {
+            return vf.createIRI(text.subSequence(start, end).toString());
+        }
+        final int hash = hash(text, start, end);
+        final int slot = spread(hash) & mask;
+        final IRIEntry entry = iris[slot];
+        if (entry != null && entry.hash == hash && matches(entry.text, text, start, end)) {
+            return entry.iri;
+        }
+        final IRI iri = vf.createIRI(text.subSequence(start, end).toString());
+        iris[slot] = new IRIEntry(hash, iri.stringValue(), iri);
+        return iri;
+    }
+
+    public IRI createIRI(ValueFactory vf, String iri) {
+        return createIRI(vf, iri, 0, iri.length());
+    }
+
+    /**
+     * Returns the literal with the label in label[start, end) and the
+     * datatype, creating it with the value factory if it is not cached.
+     *
+     * @param vf       creates literals
+     * @param label    holds the label
+     * @param start    index of the first character of the label
+     * @param end      index after the last character of the label
+     * @param datatype the datatype
+     * @return the literal
+     */
+    public Literal createLiteral(ValueFactory vf, CharSequence label, int start, int end,
+                                 IRI datatype) {
+        if (literals == null || end - start > MAX_LENGTH) {
+            return vf.createLiteral(label.subSequence(start, end).toString(), datatype);
+        }
+        final int hash = hash(label, start, end) * 31 + datatype.hashCode();
+        final int slot = spread(hash) & mask;
+        final LiteralEntry entry = literals[slot];
+        if (entry != null && entry.hash == hash && matches(entry.label, label, start, end)
+                && entry.datatype.equals(datatype)) {
+            return entry.literal;
+        }
+        final Literal literal = XMLSchema.STRING.equals(datatype)
+                ? vf.createLiteral(label.subSequence(start, end).toString())
+                : vf.createLiteral(label.subSequence(start, end).toString(), datatype);
+        literals[slot] = new LiteralEntry(hash, literal.getLabel(), datatype, literal);
+        return literal;
+    }
+
+    public Literal createLiteral(ValueFactory vf, String label, IRI datatype) {
+        return createLiteral(vf, label, 0, label.length(), datatype);
+    }
+
+    /**
+     * @param vf    creates literals
+     * @param label the label
+     * @return the plain (xsd:string) literal with the label
+     */
+    public Literal createLiteral(ValueFactory vf, String label) {
+        return createLiteral(vf, label, 0, label.length(), XMLSchema.STRING);
+    }
+
+    /**
+     * Returns a value factory for RDF parsers that creates IRIs and
+     * typed literals through this cache and everything else through the
+     * given factory.
+     *
+     * @param vf the factory to delegate to
+     * @return a value factory
+     */
+    public ValueFactory valueFactory(AGValueFactory vf) {
+        return iris == null ? vf : new CachingValueFactory(this, vf);
+    }
+
+    /**
+     * Same as {@link String#hashCode()} of the characters.
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        if (start == 0 && text instanceof String && end == text.length()) {
+            return text.hashCode();
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String cached, CharSequence text, int start, int end) {
+        final int len = end - start;
+        if (cached.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (cached.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class IRIEntry {
+        final int hash;
+        final String text;
+        final IRI iri;
+
+        IRIEntry(int hash, String text, IRI iri) {
+            this.hash = hash;
+            this.text = text;
+            this.iri = iri;
+        }
+    }
+
+    private static final class LiteralEntry {
+        final int hash;
+        final String label;
+        final IRI datatype;
+        final Literal literal;
+
+        LiteralEntry(int hash, String label, IRI datatype, Literal literal) {
+            this.hash = hash;
+            this.label = label;
+            this.datatype = datatype;
+            this.literal = literal;
+        }
+    }
+
+    private static final class CachingValueFactory extends SimpleValueFactory {
+        private final AGValueCache cache;
+        private final AGValueFactory vf;
+
+        CachingValueFactory(AGValueCache cache, AGValueFactory vf) {
+            this.cache = cache;
+            this.vf = vf;
+        }
+
+        @Override
+        public IRI createIRI(String iri) {
+            return cache.createIRI(vf, iri);
+        }
+
+        @Override
+        public Literal createLiteral(String label) {
+            return cache.createLiteral(vf, label);
+        }
+
+        @Override
+        public Literal createLiteral(String label, IRI datatype) {
+            return cache.createLiteral(vf, label, datatype);
+        }
+
+        @Override
+        public BNode createBNode() {
+            return vf.createBNode();
+        }
+
+        @Override
+        public BNode createBNode(String nodeID) {
+            return vf.createBNode(nodeID);
+        }
+    }
+}
@@ -39,6 +39,7 @@ public class AGValueFactory extends SimpleValueFactory {
     private int blankNodesPerRequest = Integer.parseInt(System.getProperty("com.franz.agraph.repository.blankNodesPerRequest", "100"));
     private String[] blankNodeIds;
     private int index = -1;
+    private AGValueCache valueCache = AGValueCache.getShared();
 
     public AGValueFactory(AGRepository repository) {
         super();
@@ -60,6 +61,27 @@ public class AGValueFactory extends SimpleValueFactory {
         return getRepository().getHTTPClient();
     }
 
+    /**
+     * Gets the cache through which response parsers create IRIs and
+     * typed literals.
+     *
+     * @return the value cache, {@link AGValueCache#getShared()} by default
+     */
+    public AGValueCache getValueCache() {
+        return valueCache;
+    }
+
+    /**
+     * Sets the cache through which response parsers create IRIs and
+     * typed literals, for instance to give a connection a larger cache of
+     * its own, or a disabled one (size 0).
+     *
+     * @param valueCache the value cache
+     */
+    public void setValueCache(AGValueCache valueCache) {
+        this.valueCache = valueCache;
+    }
+
     private void requestBlankNodeIds() {
         try {
             if (conn == null) {
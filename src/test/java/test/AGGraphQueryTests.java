@@ -6,10 +6,19 @@ package test;
 
 import com.franz.agraph.repository.AGGraphQuery;
 import junit.framework.Assert;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
 public class AGGraphQueryTests extends AGAbstractTest {
 
     @Test
@@ -39,4 +48,75 @@ public class AGGraphQueryTests extends AGAbstractTest {
         Assert.assertEquals("expected size 7", 7, q.count());
     }
 
+    @Test
+    public void graphQuery_streaming() throws Exception {
+        IRI p = vf.createIRI("http://example.org/p");
+        List<Statement> stmts = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            stmts.add(vf.createStatement(vf.createIRI("http://example.org/s" + i), p, vf.createLiteral(i)));
+        }
+        conn.add(stmts);
+        AGGraphQuery q = conn.prepareGraphQuery(QueryLanguage.SPARQL, "construct {?s ?p ?o} where {?s ?p ?o}");
+
+        // Read everything.
+        int count = 0;
+        try (GraphQueryResult result = q.evaluate()) {
+            while (result.hasNext()) {
+                result.next();
+                count++;
+            }
+        }
+        Assert.assertEquals(5000, count);
+
+        // Close early, then keep using the connection.
+        for (int i = 0; i < 20; i++) {
+            try (GraphQueryResult result = q.evaluate()) {
+                Assert.assertTrue(result.hasNext());
+                result.next();
+            }
+        }
+        Assert.assertEquals(5000, conn.size());
+    }
+
+    @Test
+    public void graphQuery_binaryRDF() throws Exception {
+        Util.add(conn, "/test/example.nq", null, RDFFormat.NQUADS);
+        conn.prepareHttpRepoClient().setPreferredRDFFormat(RDFFormat.BINARY);
+        try {
+            AGGraphQuery q = conn.prepareGraphQuery(QueryLanguage.SPARQL, "construct {?s ?p ?o} where {?s ?p ?o}");
+            try (GraphQueryResult result = q.evaluate()) {
+                Assert.assertEquals(10, QueryResults.asModel(result).size());
+            }
+            try (RepositoryResult<Statement> result = conn.getStatements(null, null, null, false)) {
+                Assert.assertEquals(10, QueryResults.asModel(result).size());
+            }
+        } finally {
+            conn.prepareHttpRepoClient().setPreferredRDFFormat(conn.prepareHttpRepoClient().getDefaultRDFFormat());
+        }
+    }
+
+    @Test
+    public void graphQuery_stream() throws Exception {
+        IRI p = vf.createIRI("http://example.org/p");
+        List<Statement> stmts = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            stmts.add(vf.createStatement(vf.createIRI("http://example.org/s" + i), p, vf.createLiteral(i)));
+        }
+        conn.add(stmts);
+        AGGraphQuery q = conn.prepareGraphQuery(QueryLanguage.SPARQL, "construct {?s ?p ?o} where {?s ?p ?o}");
+        try (Stream<Statement> stream = q.evaluateStream()) {
+            Assert.assertEquals(5000, stream.parallel().map(Statement::getSubject).distinct().count());
+        }
+        q.setLimit(100);
+        try (Stream<Statement> stream = q.evaluateStream()) {
+            Assert.assertEquals(100, stream.spliterator().estimateSize());
+        }
+        // Closing early releases the response.
+        for (int i = 0; i < 20; i++) {
+            try (Stream<Statement> stream = q.evaluateStream()) {
+                Assert.assertTrue(stream.findFirst().isPresent());
+            }
+        }
+        Assert.assertEquals(5000, conn.size());
+    }
 }
@@ -1,6 +1,9 @@
 package test;
 
+import com.franz.agraph.http.AGConnectionManager;
 import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpMetricsRecorder;
+import com.franz.agraph.http.AGHttpRequestMetrics;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGResponseHandler;
 import org.apache.http.HttpClientConnection;
@@ -17,6 +20,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -52,6 +57,73 @@ public class AGHTTPClientTests {
         Assert.assertEquals(connectionsBefore, manager.getConnectionCount());
     }
 
+    @Test
+    public void testMetricsListener() {
+        List<AGHttpRequestMetrics> requests = new CopyOnWriteArrayList<>();
+        client.setMetricsListener(requests::add);
+
+        String version = client.getString(serverUrl + "/version");
+        Assert.assertEquals(1, requests.size());
+        AGHttpRequestMetrics m = requests.get(0);
+        Assert.assertEquals("version", m.getEndpoint());
+        Assert.assertEquals("GET", m.getMethod());
+        Assert.assertEquals(200, m.getStatus());
+        Assert.assertNull(m.getError());
+        Assert.assertTrue(m.getBytesSent() > 0);
+        Assert.assertTrue(m.getBytesReceived() >= version.length());
+        Assert.assertTrue(m.getLeaseNanos() >= 0);
+        Assert.assertTrue(m.getTimeToFirstByteNanos() >= 0);
+        Assert.assertTrue(m.getHandlerNanos() >= 0);
+        Assert.assertTrue(m.getTotalNanos() >= m.getTimeToFirstByteNanos());
+
+        try {
+            client.get(serverUrl + "/PleaseRespondWith404", null, null, null);
+            Assert.fail("expected 404");
+        } catch (AGHttpException e) {
+            // expected
+        }
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals(404, requests.get(1).getStatus());
+        Assert.assertNotNull(requests.get(1).getError());
+    }
+
+    @Test
+    public void testMetricsRecorder() {
+        AGHttpMetricsRecorder recorder = new AGHttpMetricsRecorder();
+        client.setMetricsListener(recorder);
+        for (int i = 0; i < 10; i++) {
+            client.getString(serverUrl + "/version");
+        }
+        AGHttpMetricsRecorder.Endpoint version = recorder.getEndpoint("GET", "version");
+        Assert.assertNotNull(recorder.toString(), version);
+        Assert.assertEquals(10, version.getRequests());
+        Assert.assertEquals(10, version.getTotal().getCount());
+        Assert.assertEquals(Long.valueOf(10), version.getStatusCounts().get(200));
+        Assert.assertTrue(version.getTotal().getValueAtPercentile(50) > 0);
+    }
+
+    @Test
+    public void testSharedConnectionManager() {
+        AGHTTPClient c1 = new AGHTTPClient(serverUrl);
+        AGHTTPClient c2 = new AGHTTPClient(serverUrl + "/");
+        try {
+            Assert.assertTrue(c1.getConnectionManager() instanceof AGConnectionManager);
+            Assert.assertSame(c1.getConnectionManager(), c2.getConnectionManager());
+            c1.close();
+            // Still usable by the second client.
+            c2.getString(serverUrl + "/version");
+        } finally {
+            c1.close();
+            c2.close();
+        }
+        AGHTTPClient c3 = new AGHTTPClient(serverUrl);
+        try {
+            Assert.assertNotSame(c2.getConnectionManager(), c3.getConnectionManager());
+        } finally {
+            c3.close();
+        }
+    }
+
     private static final class NullStreamer extends AGResponseHandler {
 
         public NullStreamer() {
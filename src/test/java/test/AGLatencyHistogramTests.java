@@ -0,0 +1,68 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.AGLatencyHistogram;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The histogram used to record HTTP request metrics.
+ */
+public class AGLatencyHistogramTests {
+
+    @Test
+    public void empty() {
+        AGLatencyHistogram h = new AGLatencyHistogram();
+        Assert.assertEquals(0, h.getCount());
+        Assert.assertEquals(0, h.getMin());
+        Assert.assertEquals(0, h.getMax());
+        Assert.assertEquals(0, h.getValueAtPercentile(99), 0);
+        Assert.assertEquals(0, h.getMean(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        AGLatencyHistogram h = new AGLatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            h.record(i);
+        }
+        Assert.assertEquals(50, h.getCount());
+        Assert.assertEquals(1, h.getMin());
+        Assert.assertEquals(50, h.getMax());
+        Assert.assertEquals(25.5, h.getMean(), 1e-9);
+        Assert.assertEquals(25, h.getValueAtPercentile(50));
+        Assert.assertEquals(50, h.getValueAtPercentile(100));
+        Assert.assertEquals(1, h.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        AGLatencyHistogram h = new AGLatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            h.record(i * 1000);
+        }
+        for (double p : new double[] {10, 50, 90, 99, 99.9}) {
+            double expected = p * 1000 * 1000;
+            long actual = h.getValueAtPercentile(p);
+            Assert.assertTrue(p + ": " + actual, actual >= expected);
+            Assert.assertTrue(p + ": " + actual, actual <= expected * 1.04);
+        }
+        Assert.assertEquals(100000L * 1000, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void extremeValues() {
+        AGLatencyHistogram h = new AGLatencyHistogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        Assert.assertEquals(0, h.getMin());
+        Assert.assertEquals(Long.MAX_VALUE, h.getMax());
+        Assert.assertEquals(Long.MAX_VALUE, h.getValueAtPercentile(100));
+        h.reset();
+        Assert.assertEquals(0, h.getCount());
+        Assert.assertEquals(0, h.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,217 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.repository.AGPagingTupleQueryResult;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reading tuple results in pages, without a server.
+ */
+public class AGPagingTupleQueryResultTests {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    /**
+     * The numbers from 0 to size - 1, served in pages.  The first
+     * attempt at each page listed in failAt breaks after a few solutions.
+     */
+    private class Numbers implements AGPagingTupleQueryResult.PageSource {
+        final int size;
+        final List<Integer> failAt;
+        final RuntimeException error;
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        Numbers(int size) {
+            this(size, Collections.emptyList(), null);
+        }
+
+        Numbers(int size, List<Integer> failAt, RuntimeException error) {
+            this.size = size;
+            this.failAt = new ArrayList<>(failAt);
+            this.error = error;
+        }
+
+        @Override
+        public TupleQueryResult fetch(int offset, int limit) {
+            requests.add(offset + "+" + limit);
+            final boolean fail;
+            synchronized (failAt) {
+                fail = failAt.remove((Integer) offset);
+            }
+            return new Page(offset, Math.min(size, offset + limit), fail ? error : null);
+        }
+
+        private class Page implements TupleQueryResult {
+            final int end;
+            final RuntimeException error;
+            int next;
+
+            Page(int start, int end, RuntimeException error) {
+                this.next = start;
+                this.end = end;
+                this.error = error;
+            }
+
+            @Override
+            public List<String> getBindingNames() {
+                return Collections.singletonList("n");
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (error != null && next == end - 1) {
+                    throw error;
+                }
+                return next < end;
+            }
+
+            @Override
+            public BindingSet next() {
+                return new ListBindingSet(getBindingNames(), vf.createLiteral(next++));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+            }
+        }
+    }
+
+    private static List<Integer> read(TupleQueryResult result) {
+        List<Integer> numbers = new ArrayList<>();
+        try (TupleQueryResult r = result) {
+            while (r.hasNext()) {
+                numbers.add(((Literal) r.next().getValue("n")).intValue());
+            }
+        }
+        return numbers;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+
+    private static QueryEvaluationException connectionReset() {
+        return new QueryEvaluationException(new SocketException("Connection reset"));
+    }
+
+    @Test
+    public void readsAllPages() throws Exception {
+        Numbers source = new Numbers(25);
+        TupleQueryResult result = new AGPagingTupleQueryResult(source, -1, -1, 10, 0, 0);
+        Assert.assertEquals(Collections.singletonList("n"), result.getBindingNames());
+        Assert.assertEquals(range(0, 25), read(result));
+        Assert.assertEquals(Arrays.asList("0+10", "10+10", "20+10"), source.requests);
+    }
+
+    @Test
+    public void lastPageFull() throws Exception {
+        Numbers source = new Numbers(20);
+        Assert.assertEquals(range(0, 20), read(new AGPagingTupleQueryResult(source, -1, -1, 10, 0, 0)));
+        Assert.assertEquals(Arrays.asList("0+10", "10+10", "20+10"), source.requests);
+    }
+
+    @Test
+    public void withinLimitAndOffset() throws Exception {
+        Numbers source = new Numbers(100);
+        Assert.assertEquals(range(5, 17), read(new AGPagingTupleQueryResult(source, 5, 12, 5, 0, 0)));
+        Assert.assertEquals(Arrays.asList("5+5", "10+5", "15+2"), source.requests);
+    }
+
+    @Test
+    public void zeroLimit() throws Exception {
+        Numbers source = new Numbers(100);
+        TupleQueryResult result = new AGPagingTupleQueryResult(source, -1, 0, 5, 0, 0);
+        Assert.assertEquals(Collections.singletonList("n"), result.getBindingNames());
+        Assert.assertEquals(Collections.emptyList(), read(result));
+    }
+
+    @Test
+    public void retriesBrokenPages() throws Exception {
+        // The first page breaks in the constructor, the third in the background.
+        Numbers source = new Numbers(35, Arrays.asList(0, 20), connectionReset());
+        Assert.assertEquals(range(0, 35), read(new AGPagingTupleQueryResult(source, -1, -1, 10, 3, 0)));
+        Assert.assertEquals(Arrays.asList("0+10", "0+10", "10+10", "20+10", "20+10", "30+10"), source.requests);
+    }
+
+    @Test
+    public void givesUpAfterRetries() throws Exception {
+        Numbers source = new Numbers(30, Arrays.asList(10, 10, 10), connectionReset());
+        TupleQueryResult result = new AGPagingTupleQueryResult(source, -1, -1, 10, 2, 0);
+        List<Integer> numbers = new ArrayList<>();
+        try {
+            while (result.hasNext()) {
+                numbers.add(((Literal) result.next().getValue("n")).intValue());
+            }
+            Assert.fail("expected the third failure to be thrown");
+        } catch (QueryEvaluationException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(range(0, 10), numbers);
+        Assert.assertFalse(result.hasNext());
+    }
+
+    @Test
+    public void queryErrorsAreNotRetried() throws Exception {
+        Numbers source = new Numbers(30, Collections.singletonList(10), new QueryEvaluationException("bad query"));
+        TupleQueryResult result = new AGPagingTupleQueryResult(source, -1, -1, 10, 3, 0);
+        try {
+            read(result);
+            Assert.fail("expected the error to be thrown");
+        } catch (QueryEvaluationException e) {
+            Assert.assertEquals("bad query", e.getMessage());
+        }
+        Assert.assertEquals(Arrays.asList("0+10", "10+10"), source.requests);
+    }
+
+    @Test
+    public void readTimeoutsAreNotRetried() throws Exception {
+        Numbers source = new Numbers(30, Collections.singletonList(10),
+                new QueryEvaluationException(new SocketTimeoutException("Read timed out")));
+        TupleQueryResult result = new AGPagingTupleQueryResult(source, -1, -1, 10, 3, 0);
+        try {
+            read(result);
+            Assert.fail("expected the timeout to be thrown");
+        } catch (QueryEvaluationException e) {
+            Assert.assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        Assert.assertEquals(Arrays.asList("0+10", "10+10"), source.requests);
+    }
+
+    @Test
+    public void closeStopsPaging() throws Exception {
+        Numbers source = new Numbers(1000);
+        TupleQueryResult result = new AGPagingTupleQueryResult(source, -1, -1, 10, 0, 0);
+        Assert.assertEquals(0, ((Literal) result.next().getValue("n")).intValue());
+        result.close();
+        Assert.assertFalse(result.hasNext());
+        // At most the page after the first was fetched.
+        Assert.assertTrue(source.requests.toString(), source.requests.size() <= 2);
+    }
+}
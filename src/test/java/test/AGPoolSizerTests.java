@@ -0,0 +1,225 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.pool.AGPoolSizer;
+import com.franz.agraph.pool.AGPoolSizingConfig;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The adaptive pool sizer, driven by a simulated clock and a fake pool
+ * whose connections are created and closed instantly.
+ */
+public class AGPoolSizerTests {
+
+    private static final AGPoolSizingConfig CONFIG = AGPoolSizingConfig.create()
+            .idleBounds(1, 6)
+            .borrowWaitThresholds(Duration.ofMillis(5), Duration.ofMillis(50))
+            .utilizationThresholds(0.5, 0.9)
+            .growAfter(2)
+            .shrinkAfter(3)
+            .maxStep(2)
+            .growCooldown(Duration.ofSeconds(1))
+            .shrinkCooldown(Duration.ofSeconds(10));
+
+    private static final class FakePool implements AGPoolSizer.Pool {
+        int active;
+        int idle;
+        int waiters;
+        long borrows;
+        long waitNanos;
+        int changes;
+
+        void borrow(long waitMillis) {
+            borrows++;
+            waitNanos += TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        }
+
+        @Override
+        public int getNumActive() {
+            return active;
+        }
+
+        @Override
+        public int getNumIdle() {
+            return idle;
+        }
+
+        @Override
+        public int getNumWaiters() {
+            return waiters;
+        }
+
+        @Override
+        public long getBorrowCount() {
+            return borrows;
+        }
+
+        @Override
+        public long getBorrowWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public void setTargetIdle(int n) {
+            idle = n;
+            changes++;
+        }
+    }
+
+    private long now;
+
+    private AGPoolSizer sizer(FakePool pool) {
+        return new AGPoolSizer(pool, CONFIG, () -> now);
+    }
+
+    private void tick(AGPoolSizer sizer) {
+        now += TimeUnit.SECONDS.toNanos(1);
+        sizer.tick();
+    }
+
+    @Test
+    public void startsAtLowerBound() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        Assert.assertEquals(1, sizer.getTarget());
+        Assert.assertEquals(1, pool.idle);
+    }
+
+    @Test
+    public void growsUnderPressureWithinBounds() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        pool.waiters = 3;
+        tick(sizer);
+        // One interval under pressure is not enough.
+        Assert.assertEquals(1, sizer.getTarget());
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+        Assert.assertEquals(3, pool.idle);
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(5, sizer.getTarget());
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(6, sizer.getTarget());
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(6, sizer.getTarget());
+    }
+
+    @Test
+    public void growsOnBorrowWait() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        pool.active = 1;
+        pool.borrow(100);
+        pool.borrow(100);
+        tick(sizer);
+        pool.borrow(60);
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+        // Only waits since the last tick count.
+        pool.borrow(1);
+        pool.borrow(1);
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+    }
+
+    @Test
+    public void growsOnUtilization() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        pool.active = 19;
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+    }
+
+    @Test
+    public void shrinksAfterCalmIntervals() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        pool.waiters = 1;
+        tick(sizer);
+        tick(sizer);
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(5, sizer.getTarget());
+        pool.waiters = 0;
+        now += TimeUnit.SECONDS.toNanos(10);
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(5, sizer.getTarget());
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+        Assert.assertEquals(3, pool.idle);
+    }
+
+    @Test
+    public void pressureResetsCalmIntervals() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        pool.waiters = 1;
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+        pool.waiters = 0;
+        now += TimeUnit.SECONDS.toNanos(10);
+        tick(sizer);
+        tick(sizer);
+        pool.waiters = 1;
+        tick(sizer);
+        pool.waiters = 0;
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+        tick(sizer);
+        Assert.assertEquals(1, sizer.getTarget());
+    }
+
+    @Test
+    public void holdsBetweenThresholds() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        pool.waiters = 1;
+        tick(sizer);
+        tick(sizer);
+        pool.waiters = 0;
+        // Utilization 0.7: neither calm nor under pressure.
+        pool.active = 7;
+        pool.idle = 3;
+        now += TimeUnit.SECONDS.toNanos(10);
+        final int changes = pool.changes;
+        for (int i = 0; i < 20; i++) {
+            tick(sizer);
+        }
+        Assert.assertEquals(3, sizer.getTarget());
+        Assert.assertEquals(changes, pool.changes);
+    }
+
+    @Test
+    public void shrinkWaitsForCooldown() {
+        FakePool pool = new FakePool();
+        AGPoolSizer sizer = sizer(pool);
+        pool.waiters = 1;
+        tick(sizer);
+        tick(sizer);
+        Assert.assertEquals(3, sizer.getTarget());
+        pool.waiters = 0;
+        for (int i = 0; i < 9; i++) {
+            tick(sizer);
+        }
+        // Calm for long enough, but only 9 seconds since growing.
+        Assert.assertEquals(3, sizer.getTarget());
+        tick(sizer);
+        Assert.assertEquals(1, sizer.getTarget());
+    }
+}
@@ -0,0 +1,218 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGPrefetchingTupleQueryResult;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.Assert;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reading tuple results ahead on a background thread, without a server.
+ */
+public class AGPrefetchingTupleQueryResultTests {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    /**
+     * Counts up to a limit, then fails if asked to.
+     */
+    private class Counter implements TupleQueryResult {
+        final int limit;
+        final boolean fail;
+        final AtomicInteger produced = new AtomicInteger();
+        volatile boolean closed;
+
+        Counter(int limit, boolean fail) {
+            this.limit = limit;
+            this.fail = fail;
+        }
+
+        @Override
+        public List<String> getBindingNames() {
+            return Collections.singletonList("n");
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (produced.get() < limit) {
+                return true;
+            }
+            if (fail) {
+                throw new QueryEvaluationException("broken response");
+            }
+            return false;
+        }
+
+        @Override
+        public BindingSet next() {
+            return new ListBindingSet(getBindingNames(), vf.createLiteral(produced.getAndIncrement()));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static void await(Counter counter, int produced) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (counter.produced.get() < produced && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void readsEverythingInOrder() throws Exception {
+        String tsv = "?s\t?o\n<http://ex.org/a>\t1\n<http://ex.org/b>\t2\n<http://ex.org/c>\t3\n";
+        try (TupleQueryResult result = new AGPrefetchingTupleQueryResult(TSVStreamerTests.parse(vf, tsv), 2)) {
+            Assert.assertEquals(2, result.getBindingNames().size());
+            Assert.assertEquals("http://ex.org/a", result.next().getValue("s").stringValue());
+            Assert.assertEquals("http://ex.org/b", result.next().getValue("s").stringValue());
+            Assert.assertEquals("http://ex.org/c", result.next().getValue("s").stringValue());
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void bufferIsBounded() throws Exception {
+        Counter counter = new Counter(1000, false);
+        try (TupleQueryResult result = new AGPrefetchingTupleQueryResult(counter, 10)) {
+            await(counter, 11);
+            Thread.sleep(100);
+            // The buffer plus the solution waiting to be put.
+            Assert.assertTrue(counter.produced.get() <= 11);
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertEquals(i, Integer.parseInt(result.next().getValue("n").stringValue()));
+            }
+            Assert.assertFalse(result.hasNext());
+        }
+        Assert.assertTrue(counter.closed);
+    }
+
+    @Test
+    public void errorsReachTheConsumer() throws Exception {
+        Counter counter = new Counter(5, true);
+        try (TupleQueryResult result = new AGPrefetchingTupleQueryResult(counter, 100)) {
+            for (int i = 0; i < 5; i++) {
+                result.next();
+            }
+            try {
+                result.hasNext();
+                Assert.fail("error not propagated");
+            } catch (QueryEvaluationException e) {
+                Assert.assertEquals("broken response", e.getCause().getMessage());
+            }
+        }
+        Assert.assertTrue(counter.closed);
+    }
+
+    @Test
+    public void closeStopsReading() throws Exception {
+        Counter counter = new Counter(Integer.MAX_VALUE, false);
+        TupleQueryResult result = new AGPrefetchingTupleQueryResult(counter, 10);
+        result.next();
+        result.close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!counter.closed && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(counter.closed);
+        Assert.assertFalse(result.hasNext());
+    }
+
+    /**
+     * Sends the given bytes, then stalls as a long scan would, until the
+     * response is closed.
+     */
+    private static final class StalledStream extends InputStream {
+        final byte[] head;
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        int pos;
+
+        StalledStream(String head) {
+            this.head = head.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos < head.length) {
+                final int n = Math.min(len, head.length - pos);
+                System.arraycopy(head, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+            stalled.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Connection closed");
+        }
+    }
+
+    private static final class StalledResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        final StalledStream stream;
+
+        StalledResponse(StalledStream stream) {
+            super(HttpVersion.HTTP_1_1, 200, "OK");
+            this.stream = stream;
+            setEntity(new InputStreamEntity(stream, ContentType.create("text/tab-separated-values", "UTF-8")));
+        }
+
+        @Override
+        public void close() {
+            stream.closed.countDown();
+        }
+    }
+
+    @Test
+    public void closeAbortsAStalledResponse() throws Exception {
+        StalledStream stream = new StalledStream("?s\n<http://ex.org/a>\n");
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.handleResponse(new StalledResponse(stream), null);
+        TupleQueryResult result = new AGPrefetchingTupleQueryResult(streamer.getResult(), 10);
+        Assert.assertEquals("http://ex.org/a", result.next().getValue("s").stringValue());
+        Assert.assertTrue(stream.stalled.await(10, TimeUnit.SECONDS));
+        // Draining the response instead would wait for the stalled read.
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), result::close);
+        Assert.assertEquals(0, stream.closed.getCount());
+        Assert.assertFalse(result.hasNext());
+    }
+}
@@ -17,6 +17,7 @@ import com.franz.agraph.repository.AGServerVersion;
 import com.franz.agraph.repository.AGXid;
 import com.franz.agraph.http.AGProtocol;
 
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.IRI;
@@ -29,6 +30,7 @@ import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFParseException;
 import org.json.JSONObject;
@@ -45,9 +47,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -1069,6 +1074,67 @@ public class AGRepositoryConnectionTests extends RepositoryConnectionTests {
         }
     }
 
+    @Test
+    public void testBufferedAddStatementsInAutoCommit()
+            throws Exception {
+        try (AGRepositoryConnection c = (AGRepositoryConnection) testRepository.getConnection()) {
+            c.setAddStatementBufferEnabled(true);
+            c.setAddStatementBufferMaxSize(5);
+            assertEquals(false, c.isUseAddStatementBuffer());
+            c.setAddStatementBufferInAutoCommit(true);
+            assertEquals(true, c.isUseAddStatementBuffer());
+
+            for (int i = 0; i < 4; i++) {
+                c.add(bob, mbox, vf.createLiteral("bob" + i + "@example.org"));
+            }
+            assertEquals(4, c.getNumBufferedAddStatements());
+            assertEquals("Buffered statements are not sent yet", 0, getTotalStatementCount(testCon));
+
+            c.add(bob, mbox, vf.createLiteral("bob4@example.org"));
+            assertEquals("A full buffer is sent", 0, c.getNumBufferedAddStatements());
+            c.add(alice, mbox, mboxAlice);
+            assertEquals("Adding continues while the full buffer is sent", 1, c.getNumBufferedAddStatements());
+
+            assertEquals("Any other request sends the buffer first", 6, getTotalStatementCount(c));
+            assertEquals("Each batch is committed", 6, getTotalStatementCount(testCon));
+        }
+    }
+
+    @Test
+    public void testBufferedAddStatementsMaxBytes()
+            throws Exception {
+        try (AGRepositoryConnection c = (AGRepositoryConnection) testRepository.getConnection()) {
+            c.setAddStatementBufferEnabled(true);
+            c.setAddStatementBufferMaxSize(1000);
+            c.setAddStatementBufferMaxBytes(1000);
+            c.begin();
+            for (int i = 0; i < 100; i++) {
+                c.add(bob, mbox, vf.createLiteral("bob" + i + "@example.org"));
+                assertTrue("Byte limit should keep the buffer small", c.getNumBufferedAddStatements() < 20);
+            }
+            c.commit();
+            assertEquals(100, getTotalStatementCount(testCon));
+        }
+    }
+
+    @Test
+    public void testBufferedAddStatementsFlushInterval()
+            throws Exception {
+        try (AGRepositoryConnection c = (AGRepositoryConnection) testRepository.getConnection()) {
+            c.setAddStatementBufferEnabled(true);
+            c.setAddStatementBufferInAutoCommit(true);
+            c.setAddStatementBufferFlushInterval(100);
+            c.add(bob, mbox, mboxBob);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (getTotalStatementCount(testCon) == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals("Buffer should be sent after the flush interval", 1, getTotalStatementCount(testCon));
+            assertEquals(0, c.getNumBufferedAddStatements());
+        }
+    }
+
     @Test
     public void testBufferedAddStatementsAndPool()
             throws Exception {
@@ -1285,4 +1351,78 @@ public class AGRepositoryConnectionTests extends RepositoryConnectionTests {
         assertEquals(catalog.getCatalogType(), catalog.ROOT_CATALOG);
         assertEquals(catalog, server.getRootCatalog());
     }
+
+    @Test
+    public void testAsyncMethods() throws Exception {
+        AGRepositoryConnection agTestCon = (AGRepositoryConnection) testCon;
+        agTestCon.addAsync(Arrays.asList(vf.createStatement(bob, name, nameBob),
+                                         vf.createStatement(alice, name, nameAlice)))
+            .get(60, TimeUnit.SECONDS);
+        assertEquals(2L, (long) agTestCon.sizeAsync().get(60, TimeUnit.SECONDS));
+
+        try (RepositoryResult<Statement> result =
+                 agTestCon.getStatementsAsync(null, name, nameBob, false).get(60, TimeUnit.SECONDS)) {
+            assertTrue(result.hasNext());
+            assertEquals(nameBob, result.next().getObject());
+            assertFalse(result.hasNext());
+        }
+
+        String queryString = "select ?s { ?s ?p ?o }";
+        try (TupleQueryResult result = agTestCon.queryAsync(
+                 agTestCon.prepareTupleQuery(QueryLanguage.SPARQL, queryString)).get(60, TimeUnit.SECONDS)) {
+            int count = 0;
+            while (result.hasNext()) {
+                result.next();
+                count++;
+            }
+            assertEquals(2, count);
+        }
+    }
+
+    @Test
+    public void testGetStatementsStreaming() throws Exception {
+        AGRepositoryConnection agTestCon = (AGRepositoryConnection) testCon;
+        agTestCon.setStreamStatements(true);
+        List<Statement> stmts = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            stmts.add(vf.createStatement(vf.createIRI("http://example.org/s" + i), name, vf.createLiteral(i)));
+        }
+        agTestCon.add(stmts);
+
+        try (RepositoryResult<Statement> result = agTestCon.getStatements(null, name, null, false)) {
+            int count = 0;
+            while (result.hasNext()) {
+                result.next();
+                count++;
+            }
+            assertEquals(5000, count);
+        }
+
+        // Abandoning results early must not leak connections.
+        for (int i = 0; i < 50; i++) {
+            try (RepositoryResult<Statement> result = agTestCon.getStatements(null, name, null, false)) {
+                assertTrue(result.hasNext());
+                result.next();
+            }
+        }
+        assertEquals(5000, agTestCon.size());
+    }
+
+    @Test
+    public void testAddRemoveStatementsStreaming() throws Exception {
+        List<Statement> stmts = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            stmts.add(vf.createStatement(vf.createIRI("http://example.org/s" + i), name,
+                    vf.createLiteral("name \"" + i + "\"\n\u00e9")));
+        }
+        testCon.add(stmts, context1, context2);
+        assertEquals(20000, testCon.size(context1));
+        assertEquals(20000, testCon.size(context2));
+        assertTrue(testCon.hasStatement(stmts.get(42).getSubject(), name, stmts.get(42).getObject(), false, context2));
+
+        testCon.remove(stmts.subList(0, 10000), context1);
+        assertEquals(10000, testCon.size(context1));
+        ((AGRepositoryConnection) testCon).remove(new CloseableIteratorIteration<>(stmts.iterator()), context2);
+        assertEquals(0, testCon.size(context2));
+    }
 }
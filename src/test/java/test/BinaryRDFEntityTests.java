@@ -0,0 +1,78 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.AGBinaryRDFStatementsEntity;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.Assert;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Statements sent as binary RDF, without a server.
+ */
+public class BinaryRDFEntityTests {
+
+    private final ValueFactory vf = SimpleValueFactory.getInstance();
+    private final IRI s = vf.createIRI("http://example.org/s");
+    private final IRI p = vf.createIRI("http://example.org/p");
+    private final IRI g1 = vf.createIRI("http://example.org/g1");
+    private final IRI g2 = vf.createIRI("http://example.org/g2");
+    private final List<Statement> statements = Arrays.asList(
+            vf.createStatement(s, p, vf.createLiteral("one")),
+            vf.createStatement(s, p, vf.createLiteral(2), g1));
+
+    private static Model read(AGBinaryRDFStatementsEntity entity) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        try (InputStream in = new ByteArrayInputStream(out.toByteArray())) {
+            return Rio.parse(in, "", RDFFormat.BINARY);
+        }
+    }
+
+    @Test
+    public void keepsContexts() throws Exception {
+        AGBinaryRDFStatementsEntity entity =
+                new AGBinaryRDFStatementsEntity(statements, Function.identity());
+        Assert.assertEquals(RDFFormat.BINARY.getDefaultMIMEType(), entity.getContentType().getValue());
+        Assert.assertTrue(entity.isRepeatable());
+        Model model = read(entity);
+        Assert.assertEquals(2, model.size());
+        Assert.assertTrue(model.contains(s, p, vf.createLiteral("one"), (IRI) null));
+        Assert.assertTrue(model.contains(s, p, vf.createLiteral(2), g1));
+        // Repeatable entities can be written again.
+        Assert.assertEquals(model, read(entity));
+    }
+
+    @Test
+    public void overridesContexts() throws Exception {
+        Model model = read(new AGBinaryRDFStatementsEntity(statements, Function.identity(), g1, g2));
+        Assert.assertEquals(4, model.size());
+        Assert.assertEquals(2, model.filter(null, null, null, g1).size());
+        Assert.assertEquals(2, model.filter(null, null, null, g2).size());
+    }
+
+    @Test
+    public void iteratorIsWrittenOnce() throws Exception {
+        AGBinaryRDFStatementsEntity entity =
+                new AGBinaryRDFStatementsEntity(statements.iterator(), Function.identity());
+        Assert.assertFalse(entity.isRepeatable());
+        Assert.assertEquals(2, read(entity).size());
+        Assertions.assertThrows(IllegalStateException.class, () -> read(entity));
+    }
+}
@@ -0,0 +1,220 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.handler.AGTQRBinaryStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriter;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import static org.eclipse.rdf4j.query.resultio.binary.BinaryQueryResultConstants.PLAIN_LITERAL_RECORD_MARKER;
+import static org.eclipse.rdf4j.query.resultio.binary.BinaryQueryResultConstants.TABLE_END_RECORD_MARKER;
+import static org.eclipse.rdf4j.query.resultio.binary.BinaryQueryResultConstants.URI_RECORD_MARKER;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parsing of binary tuple query results, without a server.
+ */
+public class BinaryStreamerTests {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    private static TupleQueryResult parse(AGValueFactory vf, byte[] body, String contentType)
+            throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        if (contentType != null) {
+            response.setHeader("Content-Type", contentType);
+        }
+        response.setEntity(new ByteArrayEntity(body));
+        AGTQRBinaryStreamer streamer = new AGTQRBinaryStreamer(vf);
+        streamer.handleResponse(response, null);
+        return streamer.getResult();
+    }
+
+    private static byte[] write(List<String> names, List<BindingSet> rows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TupleQueryResultWriter writer = QueryResultIO.createTupleWriter(TupleQueryResultFormat.BINARY, out);
+        writer.startQueryResult(names);
+        for (BindingSet row : rows) {
+            writer.handleSolution(row);
+        }
+        writer.endQueryResult();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void terms() throws Exception {
+        List<String> names = Arrays.asList("s", "p", "o", "n");
+        IRI s = vf.createIRI("http://example.org/s");
+        IRI p = vf.createIRI("http://example.org/ns#p");
+        List<BindingSet> rows = new ArrayList<>();
+        rows.add(new ListBindingSet(names, s, p, vf.createLiteral("plain"), vf.createLiteral("7", XMLSchema.INTEGER)));
+        // Repeated values, an unbound column, a language tag and a blank node
+        rows.add(new ListBindingSet(names, s, p, vf.createLiteral("chat", "fr"), null));
+        rows.add(new ListBindingSet(names, vf.createBNode("b1"), p, vf.createLiteral("\"tab\"\there\n"),
+                vf.createLiteral("1.5", XMLSchema.DECIMAL)));
+        try (TupleQueryResult result = parse(vf, write(names, rows), null)) {
+            Assert.assertEquals(names, result.getBindingNames());
+            for (BindingSet expected : rows) {
+                Assert.assertTrue(result.hasNext());
+                BindingSet row = result.next();
+                for (String name : names) {
+                    Assert.assertEquals(name, expected.getValue(name), row.getValue(name));
+                }
+            }
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void manyRows() throws Exception {
+        List<String> names = Arrays.asList("x", "n");
+        List<BindingSet> rows = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(new ListBindingSet(names, vf.createIRI("http://example.org/x" + (i % 7)),
+                    vf.createLiteral(String.valueOf(i), XMLSchema.INTEGER)));
+        }
+        try (TupleQueryResult result = parse(vf, write(names, rows), null)) {
+            int i = 0;
+            while (result.hasNext()) {
+                BindingSet row = result.next();
+                Assert.assertEquals("http://example.org/x" + (i % 7), row.getValue("x").stringValue());
+                Assert.assertEquals(String.valueOf(i), row.getValue("n").stringValue());
+                i++;
+            }
+            Assert.assertEquals(10000, i);
+        }
+    }
+
+    @Test
+    public void fallsBackToTSV() throws Exception {
+        byte[] tsv = "?s\t?n\n<http://example.org/s>\t7\n".getBytes(StandardCharsets.UTF_8);
+        try (TupleQueryResult result = parse(vf, tsv, "text/tab-separated-values")) {
+            BindingSet row = result.next();
+            Assert.assertEquals(vf.createIRI("http://example.org/s"), row.getValue("s"));
+            Assert.assertEquals(vf.createLiteral("7", XMLSchema.INTEGER), row.getValue("n"));
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void notBinary() throws Exception {
+        byte[] body = "?s\n<http://example.org/s>\n".getBytes(StandardCharsets.UTF_8);
+        try (TupleQueryResult result = parse(vf, body, null)) {
+            result.hasNext();
+            Assert.fail("expected a parse error");
+        } catch (QueryResultParseException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("binary"));
+        }
+    }
+
+    @Test
+    public void emptyResult() throws Exception {
+        try (TupleQueryResult result = parse(vf, write(Arrays.asList("a"), new ArrayList<>()), null)) {
+            Assert.assertEquals(Arrays.asList("a"), result.getBindingNames());
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    private static String longString(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; sb.length() < length; i++) {
+            // Mixes one, two, three and four byte UTF-8 sequences
+            sb.append((char) ('a' + i % 26)).append('\u00e9').append('\u4e2d').append("\ud83d\ude00");
+        }
+        return sb.toString();
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a version 2 table (with a flags byte after the version) of
+     * one row with an IRI and a plain literal.
+     */
+    private static byte[] writeVersion2(String iri, String label) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write("BRTR".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(2);
+        out.writeByte(0);
+        out.writeInt(2);
+        writeText(out, "s");
+        writeText(out, "o");
+        out.writeByte(URI_RECORD_MARKER);
+        writeText(out, iri);
+        out.writeByte(PLAIN_LITERAL_RECORD_MARKER);
+        writeText(out, label);
+        out.writeByte(TABLE_END_RECORD_MARKER);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void nonAsciiVersion2() throws Exception {
+        String iri = "http://example.org/caf\u00e9/\u4e2d";
+        String label = "na\u00efve \u65e5\u672c\u8a9e \ud83d\ude00";
+        try (TupleQueryResult result = parse(vf, writeVersion2(iri, label), null)) {
+            Assert.assertEquals(Arrays.asList("s", "o"), result.getBindingNames());
+            BindingSet row = result.next();
+            Assert.assertEquals(vf.createIRI(iri), row.getValue("s"));
+            Assert.assertEquals(vf.createLiteral(label), row.getValue("o"));
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void longStringsVersion2() throws Exception {
+        // Longer than the 64K limit of the version 1 encoding, and than
+        // the initial decoding buffers
+        String label = longString(70000);
+        String iri = "http://example.org/" + longString(300);
+        try (TupleQueryResult result = parse(vf, writeVersion2(iri, label), null)) {
+            BindingSet row = result.next();
+            Assert.assertEquals(iri, row.getValue("s").stringValue());
+            Assert.assertEquals(label, row.getValue("o").stringValue());
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void longNonAsciiStrings() throws Exception {
+        List<String> names = Arrays.asList("o");
+        List<BindingSet> rows = new ArrayList<>();
+        // A short string after a long one reuses the grown buffers
+        rows.add(new ListBindingSet(names, vf.createLiteral(longString(70000))));
+        rows.add(new ListBindingSet(names, vf.createLiteral("\u00e9t\u00e9")));
+        rows.add(new ListBindingSet(names, vf.createLiteral(longString(100000), "ja")));
+        try (TupleQueryResult result = parse(vf, write(names, rows), null)) {
+            for (BindingSet expected : rows) {
+                Assert.assertEquals(expected.getValue("o"), result.next().getValue("o"));
+            }
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.handler.AGTQRColumnarHandler;
+import com.franz.agraph.repository.AGColumn;
+import com.franz.agraph.repository.AGColumnarResult;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+
+/**
+ * Reading TSV query results into columns, without a server.
+ */
+public class ColumnarTests {
+
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    private static AGColumnarResult columns(AGValueFactory vf, String tsv) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(tsv, ContentType.create("text/tab-separated-values", "UTF-8")));
+        response.setHeader("Content-Type", "text/tab-separated-values; charset=UTF-8");
+        AGTQRColumnarHandler handler = new AGTQRColumnarHandler(vf);
+        handler.handleResponse(response, null);
+        return handler.getResult();
+    }
+
+    @Test
+    public void typedColumns() throws Exception {
+        String tsv = "?s\t?n\t?d\t?t\t?f\n"
+                + "<http://ex.org/a>\t1\t1.5\t\"2020-01-02T03:04:05Z\"^^<" + XSD + "dateTime>\t1e3\n"
+                + "<http://ex.org/b>\t-42\t0.001\t\"2020-01-02T03:04:05.25+01:30\"^^<" + XSD + "dateTime>\t\n"
+                + "<http://ex.org/a>\t\t-7\t\t\"2.5\"^^<" + XSD + "double>\n";
+        AGColumnarResult result = columns(vf, tsv);
+        Assert.assertEquals(Arrays.asList("s", "n", "d", "t", "f"), result.getBindingNames());
+        Assert.assertEquals(3, result.getRowCount());
+
+        AGColumn.IRIColumn s = (AGColumn.IRIColumn) result.getColumn("s");
+        Assert.assertArrayEquals(new int[] {0, 1, 0}, s.getIds());
+        Assert.assertEquals(2, s.getDictionary().length);
+        Assert.assertEquals(vf.createIRI("http://ex.org/b"), s.getIRI(1));
+
+        AGColumn.LongColumn n = (AGColumn.LongColumn) result.getColumn("n");
+        Assert.assertEquals(XMLSchema.INTEGER, n.getDatatype());
+        Assert.assertEquals(1, n.getLong(0));
+        Assert.assertEquals(-42, n.getLong(1));
+        Assert.assertFalse(n.isBound(2));
+        Assert.assertNull(n.getValue(2));
+        Assert.assertEquals(vf.createLiteral("-42", XMLSchema.INTEGER), n.getValue(1));
+
+        // -7 is an integer, which does not fit a column of decimals.
+        AGColumn d = result.getColumn("d");
+        Assert.assertEquals(AGColumn.Type.VALUE, d.getType());
+        Assert.assertEquals(XMLSchema.DECIMAL, ((Literal) d.getValue(0)).getDatatype());
+        Assert.assertEquals(vf.createLiteral("-7", XMLSchema.INTEGER), d.getValue(2));
+
+        AGColumn.DateTimeColumn t = (AGColumn.DateTimeColumn) result.getColumn("t");
+        Assert.assertEquals(OffsetDateTime.parse("2020-01-02T03:04:05Z").toInstant().toEpochMilli(),
+                t.getEpochMilli(0));
+        Assert.assertEquals(OffsetDateTime.parse("2020-01-02T03:04:05.25+01:30").toInstant().toEpochMilli(),
+                t.getEpochMilli(1));
+        Assert.assertFalse(t.isBound(2));
+
+        // A bare double and a typed one share xsd:double.
+        AGColumn.DoubleColumn f = (AGColumn.DoubleColumn) result.getColumn("f");
+        Assert.assertEquals(XMLSchema.DOUBLE, f.getDatatype());
+        Assert.assertEquals(1000.0, f.getDouble(0), 0.0);
+        Assert.assertEquals(2.5, f.getDouble(2), 0.0);
+        Assert.assertFalse(f.isBound(1));
+    }
+
+    @Test
+    public void doublesAreExact() throws Exception {
+        String[] numbers = {"0.1", "123.456", "-0.000123", "9007199254740993.0", "1.7976931348623157e308",
+                "4.9e-324", "123456789012345678901234567890.5", "3.14159265358979323846"};
+        StringBuilder tsv = new StringBuilder("?d\n");
+        for (String number : numbers) {
+            tsv.append(number).append('\n');
+        }
+        AGColumn column = columns(vf, tsv.toString()).getColumn("d");
+        // Mixes decimals and doubles, so the values are kept as literals.
+        for (int i = 0; i < numbers.length; i++) {
+            Assert.assertEquals(numbers[i], Double.parseDouble(numbers[i]),
+                    Double.parseDouble(column.getValue(i).stringValue()), 0.0);
+        }
+
+        StringBuilder decimals = new StringBuilder("?d\n");
+        for (String number : numbers) {
+            if (number.indexOf('e') < 0) {
+                decimals.append(number).append('\n');
+            }
+        }
+        AGColumn.DoubleColumn d = (AGColumn.DoubleColumn) columns(vf, decimals.toString()).getColumn("d");
+        Assert.assertEquals(XMLSchema.DECIMAL, d.getDatatype());
+        int row = 0;
+        for (String number : numbers) {
+            if (number.indexOf('e') < 0) {
+                Assert.assertEquals(number, Double.parseDouble(number), d.getDouble(row++), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void promotesToValues() throws Exception {
+        String tsv = "?x\n"
+                + "1\n"
+                + "2\n"
+                + "\"two\"\n"
+                + "<http://ex.org/a>\n"
+                + "_:b1\n"
+                + "9223372036854775808\n";
+        AGColumn.ValueColumn x = (AGColumn.ValueColumn) columns(vf, tsv).getColumn("x");
+        Assert.assertEquals(6, x.size());
+        Assert.assertEquals(vf.createLiteral("1", XMLSchema.INTEGER), x.getValue(0));
+        Assert.assertEquals(vf.createLiteral("2", XMLSchema.INTEGER), x.getValue(1));
+        Assert.assertEquals(vf.createLiteral("two"), x.getValue(2));
+        Assert.assertEquals(vf.createIRI("http://ex.org/a"), x.getValue(3));
+        Assert.assertTrue(x.getValue(4) instanceof BNode);
+        Assert.assertEquals(vf.createLiteral("9223372036854775808", XMLSchema.INTEGER), x.getValue(5));
+    }
+
+    @Test
+    public void externalBlankNodes() throws Exception {
+        String tsv = "?x\n<" + vf.PREFIX_FOR_EXTERNAL_BNODES + "b1>\n";
+        AGColumn x = columns(vf, tsv).getColumn("x");
+        Assert.assertEquals(AGColumn.Type.VALUE, x.getType());
+        Assert.assertEquals(vf.createBNode("b1"), x.getValue(0));
+    }
+
+    @Test
+    public void emptyResult() throws Exception {
+        AGColumnarResult result = columns(vf, "?a\t?b\n");
+        Assert.assertEquals(Arrays.asList("a", "b"), result.getBindingNames());
+        Assert.assertEquals(0, result.getRowCount());
+        Assert.assertEquals(0, result.getColumn("a").size());
+        Assert.assertNull(result.getColumn("c"));
+    }
+
+    @Test
+    public void missingContentTypeIsTSV() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity("?n\n1\n2\n", "UTF-8"));
+        AGTQRColumnarHandler handler = new AGTQRColumnarHandler(vf);
+        handler.handleResponse(response, null);
+        AGColumn n = handler.getResult().getColumn("n");
+        Assert.assertEquals(2, n.size());
+        Assert.assertEquals(AGColumn.Type.LONG, n.getType());
+    }
+}
@@ -12,10 +12,14 @@ import com.franz.agraph.jena.AGQueryExecutionFactory;
 import com.franz.agraph.jena.AGQueryFactory;
 import com.franz.agraph.repository.AGTupleQuery;
 import junit.framework.Assert;
+import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.jupiter.api.Test;
 
+import java.util.Spliterator;
+import java.util.stream.Stream;
+
 public class QueryLimitOffsetTests extends AGAbstractTest {
 
     @Test
@@ -35,6 +39,24 @@ public class QueryLimitOffsetTests extends AGAbstractTest {
         Assert.assertEquals("expected 16 results", 16, tupleQuery.count());
     }
 
+    @Test
+    public void tupleQueryStream_tests() throws Exception {
+        Util.add(conn, "/tutorial/java-vcards.rdf", null, RDFFormat.RDFXML);
+        String queryString = "SELECT ?s ?p ?o  WHERE {?s ?p ?o .}";
+        AGTupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
+        try (Stream<BindingSet> stream = tupleQuery.evaluateStream()) {
+            Assert.assertEquals("expected 16 results", 16, stream.parallel().count());
+        }
+        tupleQuery.setLimit(5);
+        try (Stream<BindingSet> stream = tupleQuery.evaluateStream()) {
+            Spliterator<BindingSet> spliterator = stream.spliterator();
+            Assert.assertEquals("expected estimate 5", 5, spliterator.estimateSize());
+            Spliterator<BindingSet> batch = spliterator.trySplit();
+            Assert.assertEquals("expected batch of 5", 5, batch.getExactSizeIfKnown());
+            Assert.assertNull(spliterator.trySplit());
+        }
+    }
+
     @Test
     public void jenaQueryLimitOffset_tests() throws Exception {
         Util.add(conn, "/tutorial/java-vcards.rdf", null, RDFFormat.RDFXML);
@@ -0,0 +1,83 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.handler.AGRDFStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.Assert;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming graph results parsed on background threads, without a server.
+ */
+public class RDFStreamerTests {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    private GraphQueryResult parse(String ntriples) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(ntriples, ContentType.create("application/n-triples", "UTF-8")));
+        AGRDFStreamer streamer = new AGRDFStreamer(RDFFormat.NTRIPLES, vf, false);
+        streamer.handleResponse(response, new HttpGet("http://example.org/statements"));
+        return streamer.getResult();
+    }
+
+    private static String triples(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("<http://example.org/s").append(i).append("> <http://example.org/p> \"")
+                    .append(i).append("\" .\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void readsEverything() throws Exception {
+        try (GraphQueryResult result = parse(triples(3000))) {
+            int i = 0;
+            while (result.hasNext()) {
+                Statement st = result.next();
+                Assert.assertEquals("http://example.org/s" + i, st.getSubject().stringValue());
+                i++;
+            }
+            Assert.assertEquals(3000, i);
+        }
+    }
+
+    @Test
+    public void manyOpenResults() {
+        // Each result has more statements than are buffered, so its parser
+        // stays busy until it is closed.
+        String body = triples(3000);
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            List<GraphQueryResult> results = new ArrayList<>();
+            try {
+                for (int i = 0; i < 100; i++) {
+                    GraphQueryResult result = parse(body);
+                    results.add(result);
+                    Assert.assertEquals("http://example.org/s0", result.next().getSubject().stringValue());
+                }
+            } finally {
+                for (GraphQueryResult result : results) {
+                    result.close();
+                }
+            }
+        });
+    }
+}
@@ -5,6 +5,7 @@
 package test;
 
 import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGSessionHeartbeat;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.repository.AGAbstractRepository;
 import com.franz.agraph.repository.AGRepositoryConnection;
@@ -15,6 +16,8 @@ import org.junit.jupiter.api.Test;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static test.Util.logTimeStamped;
 
@@ -156,4 +159,38 @@ public class SessionTests extends AGAbstractTest {
         Thread.sleep(sleepTime);
         conn.size();   // should not fail
     }
+
+    @Test
+    public void sessionHeartbeat() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        try {
+            AGRepositoryConnection conn1 = repo.getConnection(executor);
+            AGRepositoryConnection conn2 = repo.getConnection(executor);
+            try {
+                conn1.setSessionLifetime(4);
+                conn2.setSessionLifetime(4);
+                conn1.begin();
+                conn2.begin();
+                AGSessionHeartbeat heartbeat = AGSessionHeartbeat.forExecutor(executor);
+                Assert.assertNotNull(heartbeat);
+                Assert.assertEquals("one heartbeat for both sessions", 2, heartbeat.getSessionCount());
+
+                // A session in use is not pinged.
+                for (int i = 0; i < 20; i++) {
+                    conn1.size();
+                    Thread.sleep(200);
+                }
+                // conn2 was idle for a full lifetime; it must have been pinged.
+                Assert.assertTrue("idle session should be pinged", heartbeat.getPingCount() >= 1);
+                conn2.size();
+                conn1.size();
+            } finally {
+                conn1.close();
+                conn2.close();
+            }
+            Assert.assertNull("heartbeat stops with its last session", AGSessionHeartbeat.forExecutor(executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,251 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of TSV query results, without a server.
+ */
+public class TSVStreamerTests {
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    static TupleQueryResult parse(AGValueFactory vf, String tsv) throws Exception {
+        return parse(vf, tsv, false);
+    }
+
+    static TupleQueryResult parse(AGValueFactory vf, String tsv, boolean lazy) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(tsv, ContentType.create("text/tab-separated-values", "UTF-8")));
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.setLazyDecoding(lazy);
+        streamer.handleResponse(response, null);
+        return streamer.getResult();
+    }
+
+    @Test
+    public void terms() throws Exception {
+        String tsv = "?s\t?o\t?x\n"
+                + "<http://ex.org/a>\t\"plain\"\t_:b1\n"
+                + "<http://ex.org/b>\t\"tab\\there \\\"q\\\" \\u00e9\\U0001F600\"@en\t\n"
+                + "<http://ex.org/c>\t\"5\"^^<http://www.w3.org/2001/XMLSchema#int>\tbare\n";
+        try (TupleQueryResult result = parse(vf, tsv)) {
+            Assert.assertEquals(Arrays.asList("s", "o", "x"), result.getBindingNames());
+
+            BindingSet row = result.next();
+            Assert.assertEquals(vf.createIRI("http://ex.org/a"), row.getValue("s"));
+            Assert.assertEquals(vf.createLiteral("plain"), row.getValue("o"));
+            Assert.assertTrue(row.getValue("x") instanceof BNode);
+            Assert.assertEquals("b1", ((BNode) row.getValue("x")).getID());
+
+            row = result.next();
+            Assert.assertEquals(vf.createLiteral("tab\there \"q\" é😀", "en"), row.getValue("o"));
+            Assert.assertNull(row.getValue("x"));
+
+            row = result.next();
+            Assert.assertEquals(vf.createLiteral("5", XMLSchema.INT), row.getValue("o"));
+            Assert.assertEquals(vf.createLiteral("bare"), row.getValue("x"));
+
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void numbers() throws Exception {
+        String[][] cases = {
+            {"42", XMLSchema.INTEGER.stringValue()},
+            {"+42", XMLSchema.INTEGER.stringValue()},
+            {"-0", XMLSchema.INTEGER.stringValue()},
+            {"-17", XMLSchema.NEGATIVE_INTEGER.stringValue()},
+            {"3.25", XMLSchema.DECIMAL.stringValue()},
+            {"-3.25", XMLSchema.DECIMAL.stringValue()},
+            {"1.5E10", XMLSchema.DOUBLE.stringValue()},
+            {"2e-3", XMLSchema.DOUBLE.stringValue()},
+            {"1.2.3", XMLSchema.STRING.stringValue()},
+            {"12abc", XMLSchema.STRING.stringValue()},
+            {"-", XMLSchema.STRING.stringValue()},
+        };
+        StringBuilder tsv = new StringBuilder("?n\n");
+        for (String[] c : cases) {
+            tsv.append(c[0]).append("\r\n");
+        }
+        try (TupleQueryResult result = parse(vf, tsv.toString())) {
+            for (String[] c : cases) {
+                Literal lit = (Literal) result.next().getValue("n");
+                Assert.assertEquals(c[0], lit.getLabel());
+                Assert.assertEquals(c[0], c[1], lit.getDatatype().stringValue());
+            }
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void lastLineWithoutNewline() throws Exception {
+        try (TupleQueryResult result = parse(vf, "?s\r\n<http://ex.org/a>\r\n<http://ex.org/b>")) {
+            Assert.assertEquals("http://ex.org/a", ((IRI) result.next().getValue("s")).stringValue());
+            Assert.assertEquals("http://ex.org/b", ((IRI) result.next().getValue("s")).stringValue());
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    @Test
+    public void longRows() throws Exception {
+        // Fields longer than the read buffer must be reassembled.
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            big.append((char) ('a' + i % 26));
+        }
+        String tsv = "?a\t?b\n\"" + big + "\"\t7\n";
+        try (TupleQueryResult result = parse(vf, tsv)) {
+            BindingSet row = result.next();
+            Assert.assertEquals(big.toString(), row.getValue("a").stringValue());
+            Assert.assertEquals(vf.createLiteral("7", XMLSchema.INTEGER), row.getValue("b"));
+            Assert.assertFalse(result.hasNext());
+        }
+    }
+
+    /**
+     * A response body that records whether it was released.
+     */
+    private static final class Body extends ByteArrayInputStream {
+        volatile boolean closed;
+
+        Body(String content) {
+            super(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private TupleQueryResult parse(Body body) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new InputStreamEntity(body, ContentType.create("text/tab-separated-values", "UTF-8")));
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.handleResponse(response, null);
+        return streamer.getResult();
+    }
+
+    @Test
+    public void releasedWhenExhausted() throws Exception {
+        Body body = new Body("?s\n<http://ex.org/a>\n");
+        TupleQueryResult result = parse(body);
+        result.next();
+        Assert.assertFalse(body.closed);
+        Assert.assertFalse(result.hasNext());
+        Assert.assertTrue(body.closed);
+        Assert.assertFalse(result.hasNext());
+    }
+
+    @Test
+    public void releasedWhenClosed() throws Exception {
+        Body body = new Body("?s\n<http://ex.org/a>\n<http://ex.org/b>\n");
+        TupleQueryResult result = parse(body);
+        result.next();
+        result.close();
+        Assert.assertTrue(body.closed);
+        Assert.assertFalse(result.hasNext());
+    }
+
+    @Test
+    public void releasedWhenAbandoned() throws Exception {
+        Body body = new Body("?s\n<http://ex.org/a>\n<http://ex.org/b>\n");
+        parse(body).next();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!body.closed && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        Assert.assertTrue("abandoned result not released", body.closed);
+    }
+
+    @Test
+    public void termsAreInterned() throws Exception {
+        AGValueFactory cached = new AGValueFactory(null);
+        cached.setValueCache(new AGValueCache(64));
+        String tsv = "?s\t?n\t?l\n<http://ex.org/a>\t1\t\"x\"\n<http://ex.org/a>\t1\t\"x\"\n";
+        TupleQueryResult result = parse(cached, tsv);
+        BindingSet first = result.next();
+        BindingSet second = result.next();
+        for (String name : Arrays.asList("s", "n", "l")) {
+            Assert.assertSame(first.getValue(name), second.getValue(name));
+        }
+        Assert.assertEquals(XMLSchema.INTEGER, ((Literal) second.getValue("n")).getDatatype());
+
+        AGValueFactory uncached = new AGValueFactory(null);
+        uncached.setValueCache(new AGValueCache(0));
+        result = parse(uncached, tsv);
+        first = result.next();
+        second = result.next();
+        Assert.assertNotSame(first.getValue("s"), second.getValue("s"));
+        Assert.assertEquals(first.getValue("s"), second.getValue("s"));
+    }
+
+    @Test
+    public void lazyDecoding() throws Exception {
+        String tsv = "?s\t?o\t?x\t?n\n"
+                + "<http://ex.org/a>\t\"plain\"\t_:b1\t-17\n"
+                + "<http://ex.org/b>\t\"tab\\there \\\"q\\\" \\u00e9\"@en\t\t\n"
+                + "\t\"5\"^^<http://www.w3.org/2001/XMLSchema#int>\tbare\t1.5E10\n";
+        try (TupleQueryResult eager = parse(vf, tsv, false);
+             TupleQueryResult lazy = parse(vf, tsv, true)) {
+            Assert.assertEquals(eager.getBindingNames(), lazy.getBindingNames());
+            while (eager.hasNext()) {
+                BindingSet expected = eager.next();
+                BindingSet row = lazy.next();
+                Assert.assertEquals(expected.getBindingNames(), row.getBindingNames());
+                Assert.assertEquals(expected.size(), row.size());
+                for (String name : eager.getBindingNames()) {
+                    Assert.assertEquals(expected.hasBinding(name), row.hasBinding(name));
+                    Assert.assertEquals(name, expected.getValue(name), row.getValue(name));
+                }
+                Assert.assertEquals(expected, row);
+                Assert.assertEquals(expected.hashCode(), row.hashCode());
+            }
+            Assert.assertFalse(lazy.hasNext());
+        }
+    }
+
+    @Test
+    public void lazyDecodingOnAccess() throws Exception {
+        // A malformed literal only fails when it is asked for.
+        String tsv = "?s\t?bad\n<http://ex.org/a>\t\"x\"@en^^<http://ex.org/t>\n";
+        try (TupleQueryResult result = parse(vf, tsv, true)) {
+            BindingSet row = result.next();
+            Assert.assertEquals(vf.createIRI("http://ex.org/a"), row.getValue("s"));
+            Assert.assertTrue(row.hasBinding("bad"));
+            try {
+                row.getValue("bad");
+                Assert.fail("malformed literal decoded");
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("both a language and a datatype"));
+            }
+        }
+    }
+}
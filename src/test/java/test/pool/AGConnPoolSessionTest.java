@@ -5,6 +5,7 @@
 package test.pool;
 
 import com.franz.agraph.pool.AGConnPool;
+import com.franz.agraph.pool.AGConnPoolStats;
 import com.franz.agraph.pool.AGConnProp;
 import com.franz.agraph.pool.AGPoolProp;
 import com.franz.agraph.repository.AGCatalog;
@@ -14,6 +15,7 @@ import com.franz.agraph.repository.AGServer;
 import com.franz.agraph.repository.AGValueFactory;
 import com.franz.util.Closer;
 import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.Assert;
@@ -24,15 +26,21 @@ import org.slf4j.LoggerFactory;
 import test.AGAbstractTest;
 import test.Util;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class AGConnPoolSessionTest {
@@ -126,6 +134,239 @@ public class AGConnPoolSessionTest {
         }
     }
 
+    @Test
+    public void testPoolSharesServer() throws Exception {
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testPoolSharesServer",
+                AGConnProp.session, AGConnProp.Session.DEDICATED,
+                AGConnProp.sessionLifetime, TimeUnit.MINUTES.toSeconds(1),
+                AGPoolProp.maxWait, TimeUnit.SECONDS.toMillis(30)
+        ));
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        AGCatalog catalog = server.getCatalog(AGAbstractTest.CATALOG_ID);
+        deleteLater(catalog.createRepository("pool.testPoolSharesServer"));
+        AGRepositoryConnection conn1 = pool.borrowObject();
+        AGRepositoryConnection conn2 = pool.borrowObject();
+        Assert.assertNotSame(conn1, conn2);
+        Assert.assertSame(conn1.getServer(), conn2.getServer());
+        Assert.assertSame(conn1.getRepository(), conn2.getRepository());
+        Assert.assertEquals(0, conn1.size());
+        Assert.assertEquals(0, conn2.size());
+        conn1.close();
+        conn2.close();
+    }
+
+    @Test
+    public void testInitialSizeParallel() throws Exception {
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testInitialSizeParallel",
+                AGConnProp.session, AGConnProp.Session.DEDICATED,
+                AGConnProp.sessionLifetime, TimeUnit.MINUTES.toSeconds(1),
+                AGPoolProp.initialSize, 8,
+                AGPoolProp.createThreads, 4,
+                AGPoolProp.minIdle, 2,
+                AGPoolProp.maxWait, TimeUnit.SECONDS.toMillis(30)
+        ));
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        deleteLater(server.getCatalog(AGAbstractTest.CATALOG_ID).openRepository("pool.testInitialSizeParallel"));
+        Assert.assertEquals(8, pool.getNumIdle());
+        List<AGRepositoryConnection> conns = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            conns.add(pool.borrowObject());
+        }
+        // The pool refills toward minIdle in the background.
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (pool.getNumIdle() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, pool.getNumIdle());
+        for (AGRepositoryConnection conn : conns) {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testStartupPolicy() throws Exception {
+        // Nothing listens on port 1.
+        Object[] props = {
+                AGConnProp.serverUrl, "http://localhost:1",
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.repository, "pool.testStartupPolicy",
+                AGPoolProp.initialSize, 2,
+                AGPoolProp.startupPolicy, AGPoolProp.StartupPolicy.PARTIAL
+        };
+        AGConnPool pool = closeLater(AGConnPool.create(props));
+        Assert.assertEquals(0, pool.getNumIdle());
+        props[props.length - 1] = AGPoolProp.StartupPolicy.FAIL_FAST;
+        try {
+            closeLater(AGConnPool.create(props));
+            Assert.fail("expected RepositoryException");
+        } catch (RepositoryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDirtyTracking() throws Exception {
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testDirtyTracking",
+                AGConnProp.session, AGConnProp.Session.TX,
+                AGConnProp.sessionLifetime, TimeUnit.MINUTES.toSeconds(1),
+                AGPoolProp.maxActive, 1,
+                AGPoolProp.testOnBorrow, true,
+                AGPoolProp.maxWait, TimeUnit.SECONDS.toMillis(30)
+        ));
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        deleteLater(server.getCatalog(AGAbstractTest.CATALOG_ID).createRepository("pool.testDirtyTracking"));
+        AGRepositoryConnection conn = pool.borrowObject();
+        Assert.assertFalse(conn.isDirty());
+        Assert.assertEquals(0, conn.size());
+        conn.prepareTupleQuery("select * { ?s ?p ?o }").evaluate().close();
+        Assert.assertFalse("reads leave the connection clean", conn.isDirty());
+        AGValueFactory vf = conn.getValueFactory();
+        conn.add(vf.createIRI(ns, "s"), vf.createIRI(ns, "p"), vf.createLiteral("o"));
+        Assert.assertTrue(conn.isDirty());
+        conn.close();
+        // The uncommitted statement is rolled back on borrow.
+        conn = pool.borrowObject();
+        Assert.assertFalse(conn.isDirty());
+        Assert.assertEquals(0, conn.size());
+        conn.close();
+    }
+
+    @Test
+    public void testRollbackAfterValidation() throws Exception {
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testRollbackAfterValidation",
+                AGConnProp.session, AGConnProp.Session.TX,
+                AGConnProp.sessionLifetime, TimeUnit.MINUTES.toSeconds(1),
+                // Validate every borrow, by pinging clean sessions.
+                AGConnProp.validationInterval, 0,
+                AGPoolProp.maxActive, 1,
+                AGPoolProp.testOnBorrow, true,
+                AGPoolProp.maxWait, TimeUnit.SECONDS.toMillis(30)
+        ));
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        AGRepository repo = server.getCatalog(AGAbstractTest.CATALOG_ID)
+                .createRepository("pool.testRollbackAfterValidation");
+        deleteLater(repo);
+        AGValueFactory vf = repo.getValueFactory();
+
+        // Uncommitted changes are gone after borrow and validation.
+        AGRepositoryConnection conn = pool.borrowObject();
+        conn.add(vf.createIRI(ns, "s"), vf.createIRI(ns, "p"), vf.createLiteral("uncommitted"));
+        Assert.assertEquals(1, conn.size());
+        conn.close();
+        conn = pool.borrowObject();
+        Assert.assertEquals(0, conn.size());
+        conn.close();
+
+        // A clean session is rolled back with its first request after the
+        // validating ping, so it sees what others committed meanwhile.
+        try (AGRepositoryConnection other = repo.getConnection()) {
+            other.add(vf.createIRI(ns, "s"), vf.createIRI(ns, "p"), vf.createLiteral("committed"));
+        }
+        conn = pool.borrowObject();
+        Assert.assertEquals(1, conn.size());
+        conn.close();
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testStats",
+                AGConnProp.session, AGConnProp.Session.DEDICATED,
+                AGConnProp.sessionLifetime, TimeUnit.MINUTES.toSeconds(1),
+                AGPoolProp.initialSize, 2,
+                AGPoolProp.jmxName, "testStats",
+                AGPoolProp.maxWait, TimeUnit.SECONDS.toMillis(30)
+        ));
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        deleteLater(server.getCatalog(AGAbstractTest.CATALOG_ID).openRepository("pool.testStats"));
+        for (int i = 0; i < 3; i++) {
+            try (AGRepositoryConnection conn = pool.borrowObject()) {
+                conn.size();
+            }
+        }
+        AGRepositoryConnection conn = pool.borrowObject();
+        pool.invalidateObject(conn);
+        AGConnPoolStats stats = pool.getStats();
+        Assert.assertEquals(stats.toString(), AGConnProp.Session.DEDICATED, stats.getSession());
+        Assert.assertEquals(stats.toString(), 2, stats.getCreated());
+        Assert.assertEquals(stats.toString(), 4, stats.getBorrowed());
+        Assert.assertEquals(stats.toString(), 1, stats.getDestroyed());
+        Assert.assertEquals(stats.toString(), 0, stats.getBorrowFailures());
+        Assert.assertEquals(stats.toString(), 1, stats.getNumIdle());
+        AGConnPoolStats.SessionStats dedicated = stats.getSessions().get(AGConnProp.Session.DEDICATED);
+        Assert.assertEquals(stats.toString(), 4, dedicated.getBorrowed());
+        Assert.assertTrue(stats.toString(), dedicated.getMeanLifetimeMillis() > 0);
+
+        ObjectName name = new ObjectName("com.franz.agraph:type=AGConnPool,name=\"testStats\"");
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals(1, mbeans.getAttribute(name, "NumIdle"));
+        Assert.assertNotNull(mbeans.getAttribute(name, "Stats"));
+        pool.close();
+        Assert.assertFalse(mbeans.isRegistered(name));
+    }
+
+    @Test
+    public void testBorrowAsync() throws Exception {
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testBorrowAsync",
+                AGConnProp.session, AGConnProp.Session.DEDICATED,
+                AGConnProp.sessionLifetime, TimeUnit.MINUTES.toSeconds(1),
+                AGPoolProp.maxActive, 1,
+                AGPoolProp.maxWait, TimeUnit.SECONDS.toMillis(30)
+        ));
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        deleteLater(server.getCatalog(AGAbstractTest.CATALOG_ID).createRepository("pool.testBorrowAsync"));
+        AGRepositoryConnection conn = pool.borrowObject();
+        CompletableFuture<AGRepositoryConnection> first = pool.borrowAsync(Duration.ofSeconds(30));
+        CompletableFuture<AGRepositoryConnection> expires = pool.borrowAsync(Duration.ofMillis(100));
+        CompletableFuture<AGRepositoryConnection> second = pool.borrowAsync(Duration.ofSeconds(30));
+        try {
+            expires.get(10, TimeUnit.SECONDS);
+            Assert.fail("expected a timeout");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.toString(), e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertFalse(first.isDone());
+        conn.close();
+        // Served in order.
+        conn = first.get(10, TimeUnit.SECONDS);
+        Assert.assertFalse(second.isDone());
+        Assert.assertEquals(0, conn.size());
+        conn.close();
+        conn = second.get(10, TimeUnit.SECONDS);
+        conn.close();
+        Assert.assertEquals(1, pool.getStats().getBorrowFailures());
+    }
+
     @Test
     public void testPoolTx() throws Exception {
         String oldOverride = System.setProperty("com.franz.agraph.http.overrideServerUseMainPortForSessions", "true");
@@ -0,0 +1,86 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.pool;
+
+import com.franz.agraph.pool.AGConnKey;
+import com.franz.agraph.pool.AGConnProp;
+import com.franz.agraph.pool.AGKeyedConnPool;
+import com.franz.agraph.pool.AGPoolProp;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import test.AGAbstractTest;
+
+import java.util.concurrent.TimeUnit;
+
+public class AGKeyedConnPoolTest {
+    private static final String REPO_A = "pool.keyedA";
+    private static final String REPO_B = "pool.keyedB";
+
+    @AfterAll
+    public static void tearDownClass() {
+        AGAbstractTest.deleteRepository(AGAbstractTest.CATALOG_ID, REPO_A);
+        AGAbstractTest.deleteRepository(AGAbstractTest.CATALOG_ID, REPO_B);
+    }
+
+    private static AGKeyedConnPool makePool(int maxActive, int maxActivePerKey) {
+        return AGKeyedConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.sessionLifetime, TimeUnit.MINUTES.toSeconds(1),
+                AGPoolProp.maxActive, maxActive,
+                AGPoolProp.maxActivePerKey, maxActivePerKey,
+                AGPoolProp.maxWait, TimeUnit.SECONDS.toMillis(1));
+    }
+
+    @Test
+    public void testKeys() throws Exception {
+        try (AGKeyedConnPool pool = makePool(4, 2)) {
+            AGConnKey a = new AGConnKey(AGAbstractTest.CATALOG_ID, REPO_A, AGConnProp.Session.DEDICATED);
+            AGConnKey b = new AGConnKey(AGAbstractTest.CATALOG_ID, REPO_B, AGConnProp.Session.TX);
+            AGRepositoryConnection connA = pool.borrowObject(a);
+            AGRepositoryConnection connB = pool.borrowObject(b);
+            Assert.assertEquals(REPO_A, ((AGRepository) connA.getRepository()).getRepositoryID());
+            Assert.assertEquals(REPO_B, ((AGRepository) connB.getRepository()).getRepositoryID());
+            Assert.assertTrue(connA.isAutoCommit());
+            Assert.assertFalse(connB.isAutoCommit());
+            // One transport for all repositories.
+            Assert.assertSame(connA.getServer(), connB.getServer());
+            Assert.assertEquals(1, pool.getNumActive(a));
+            connA.close();
+            connB.close();
+            Assert.assertEquals(0, pool.getNumActive());
+            Assert.assertEquals(1, pool.getNumIdle(a));
+            Assert.assertEquals(1, pool.getNumIdle(b));
+        }
+    }
+
+    @Test
+    public void testCaps() throws Exception {
+        try (AGKeyedConnPool pool = makePool(2, 1)) {
+            AGConnKey a = new AGConnKey(AGAbstractTest.CATALOG_ID, REPO_A, AGConnProp.Session.DEDICATED);
+            AGConnKey b = new AGConnKey(AGAbstractTest.CATALOG_ID, REPO_B, AGConnProp.Session.DEDICATED);
+            AGRepositoryConnection connA = pool.borrowObject(a);
+            try {
+                pool.borrowObject(a);
+                Assert.fail("per-key cap exceeded");
+            } catch (Exception e) {
+                // expected
+            }
+            connA.close();
+            AGRepositoryConnection connB = pool.borrowObject(b);
+            // The global cap of 2 is reached, so the idle connection
+            // of key a is closed to make room for key c.
+            AGConnKey c = new AGConnKey(AGAbstractTest.CATALOG_ID, REPO_A, AGConnProp.Session.TX);
+            AGRepositoryConnection connC = pool.borrowObject(c);
+            Assert.assertEquals(0, pool.getNumIdle(a));
+            connB.close();
+            connC.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.stress;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.datatypes.XMLDatatypeUtil;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares rows/sec of {@link AGTQRTSVStreamer} against the
+ * previous split/regex based TSV parser, and of eager against lazy
+ * decoding when only one column is read.  Needs no server.
+ */
+public class TSVParserBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int ROUNDS = 5;
+
+    private final AGValueFactory vf = new AGValueFactory(null);
+
+    private static byte[] generate() {
+        StringBuilder sb = new StringBuilder("?s\t?p\t?o\t?n\t?d\n");
+        for (int i = 0; i < ROWS; i++) {
+            sb.append("<http://example.org/subject/").append(i).append(">\t")
+                .append("<http://example.org/p").append(i % 20).append(">\t")
+                .append("\"some label ").append(i).append(" with \\\"quotes\\\"\"@en\t")
+                .append(i % 2 == 0 ? i : -i).append('\t')
+                .append(i).append('.').append(i % 100).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void compare() throws Exception {
+        byte[] data = generate();
+        for (int round = 0; round < ROUNDS; round++) {
+            long legacy = time(() -> legacyParse(data));
+            long current = time(() -> streamerParse(data, false, null));
+            long eager = time(() -> streamerParse(data, false, "o"));
+            long lazy = time(() -> streamerParse(data, true, "o"));
+            System.out.printf("round %d: legacy %,d rows/s, streamer %,d rows/s, "
+                              + "one column eager %,d rows/s, lazy %,d rows/s%n",
+                              round, rate(legacy), rate(current), rate(eager), rate(lazy));
+        }
+    }
+
+    private interface Run {
+        int run() throws Exception;
+    }
+
+    private static long time(Run r) throws Exception {
+        long start = System.nanoTime();
+        int rows = r.run();
+        if (rows != ROWS) {
+            throw new AssertionError("expected " + ROWS + " rows, got " + rows);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long rate(long nanos) {
+        return ROWS * 1000000000L / Math.max(1, nanos);
+    }
+
+    /**
+     * @param column if not null, the value of this column is read from each row
+     */
+    private int streamerParse(byte[] data, boolean lazy, String column) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(data));
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.setLazyDecoding(lazy);
+        streamer.handleResponse(response, null);
+        int rows = 0;
+        try (TupleQueryResult result = streamer.getResult()) {
+            while (result.hasNext()) {
+                BindingSet bs = result.next();
+                if (column != null && bs.getValue(column) == null) {
+                    throw new AssertionError("unbound " + column);
+                }
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * The parsing loop used before the hand-written scanner
+     * (literal escapes omitted, as the generated labels only use \").
+     */
+    private int legacyParse(byte[] data) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+        List<String> bindingNames = new ArrayList<>();
+        for (String name : reader.readLine().split("\t", -1)) {
+            bindingNames.add(name.substring(1));
+        }
+        int rows = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            List<Value> values = new ArrayList<>();
+            for (String valueString : line.split("\t", -1)) {
+                Value v = null;
+                if (valueString.startsWith("_:")) {
+                    v = vf.createBNode(valueString.substring(2));
+                } else if (valueString.startsWith("<") && valueString.endsWith(">")) {
+                    v = vf.createIRI(valueString.substring(1, valueString.length() - 1));
+                } else if (valueString.startsWith("\"")) {
+                    int end = valueString.lastIndexOf("\"");
+                    int lang = valueString.indexOf("@", end);
+                    String label = valueString.substring(1, end).replace("\\\"", "\"");
+                    v = lang == -1 ? vf.createLiteral(label) : vf.createLiteral(label, valueString.substring(lang + 1));
+                } else if (!"".equals(valueString)) {
+                    if (valueString.matches("^[+\\-]?[\\d.].*")) {
+                        IRI datatype = null;
+                        if (XMLDatatypeUtil.isValidInteger(valueString)) {
+                            if (XMLDatatypeUtil.isValidNegativeInteger(valueString)) {
+                                datatype = XMLSchema.NEGATIVE_INTEGER;
+                            } else {
+                                datatype = XMLSchema.INTEGER;
+                            }
+                        } else if (XMLDatatypeUtil.isValidDecimal(valueString)) {
+                            datatype = XMLSchema.DECIMAL;
+                        } else if (XMLDatatypeUtil.isValidDouble(valueString)) {
+                            datatype = XMLSchema.DOUBLE;
+                        }
+                        v = datatype != null ? vf.createLiteral(valueString, datatype) : vf.createLiteral(valueString);
+                    } else {
+                        v = vf.createLiteral(valueString);
+                    }
+                }
+                values.add(AGHttpRepoClient.getApplicationValue(v, vf));
+            }
+            BindingSet bs = new ListBindingSet(bindingNames, values.toArray(new Value[values.size()]));
+            if (bs.size() >= 0) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
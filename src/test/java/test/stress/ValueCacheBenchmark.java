@@ -0,0 +1,114 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.stress;
+
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares bytes allocated while parsing, and heap retained by the
+ * parsed rows, with and without {@link AGValueCache} on LUBM-like
+ * results, where a few departments, classes and courses repeat over
+ * many students.  Needs no server.
+ */
+public class ValueCacheBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int ROUNDS = 5;
+    private static final String UB = "http://swat.cse.lehigh.edu/onto/univ-bench.owl#";
+    private static final String[] TYPES = {
+        "GraduateStudent", "UndergraduateStudent", "ResearchAssistant", "TeachingAssistant"
+    };
+
+    private static byte[] generate() {
+        StringBuilder sb = new StringBuilder("?x\t?type\t?dept\t?course\t?age\t?name\n");
+        for (int i = 0; i < ROWS; i++) {
+            int univ = i % 5;
+            int dept = i % 15;
+            String domain = "http://www.Department" + dept + ".University" + univ + ".edu";
+            sb.append('<').append(domain).append("/GraduateStudent").append(i).append(">\t")
+                .append('<').append(UB).append(TYPES[i % TYPES.length]).append(">\t")
+                .append('<').append(domain).append(">\t")
+                .append('<').append(domain).append("/GraduateCourse").append(i % 40).append(">\t")
+                .append(20 + i % 15).append('\t')
+                .append("\"GraduateStudent").append(i % 100).append("\"\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void compare() throws Exception {
+        byte[] data = generate();
+        for (int round = 0; round < ROUNDS; round++) {
+            Measure uncached = measure(data, new AGValueCache(0));
+            Measure cached = measure(data, AGValueCache.getShared());
+            System.out.printf("round %d: uncached %,d bytes allocated, %,d retained; "
+                              + "cached %,d bytes allocated, %,d retained%n",
+                              round, uncached.allocated, uncached.retained,
+                              cached.allocated, cached.retained);
+        }
+    }
+
+    private static final class Measure {
+        long allocated;
+        long retained;
+    }
+
+    private static Measure measure(byte[] data, AGValueCache cache) throws Exception {
+        AGValueFactory vf = new AGValueFactory(null);
+        vf.setValueCache(cache);
+        Measure m = new Measure();
+        long heap = usedHeap();
+        long allocated = allocatedBytes();
+        List<BindingSet> rows = parse(vf, data);
+        m.allocated = allocatedBytes() - allocated;
+        m.retained = usedHeap() - heap;
+        if (rows.size() != ROWS) {
+            throw new AssertionError("expected " + ROWS + " rows, got " + rows.size());
+        }
+        return m;
+    }
+
+    private static List<BindingSet> parse(AGValueFactory vf, byte[] data) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(data));
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(vf);
+        streamer.handleResponse(response, null);
+        List<BindingSet> rows = new ArrayList<>(ROWS);
+        try (TupleQueryResult result = streamer.getResult()) {
+            while (result.hasNext()) {
+                rows.add(result.next());
+            }
+        }
+        return rows;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
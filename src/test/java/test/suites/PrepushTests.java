@@ -12,9 +12,14 @@ import org.junit.platform.suite.api.Suite;
 @ExcludeTags("Broken")
 @SelectClasses({
         test.pool.AGConnPoolWarmupTest.class,
+        test.pool.AGKeyedConnPoolTest.class,
         test.AGGraphQueryTests.class,
         test.AGHTTPClientTests.class,
+        test.AGLatencyHistogramTests.class,
         test.AGMaterializerTests.class,
+        test.AGPoolSizerTests.class,
+        test.AGPagingTupleQueryResultTests.class,
+        test.AGPrefetchingTupleQueryResultTests.class,
         test.AGQueryExecutionTest.class,
         test.AGRepositoryConnectionTests.class,
         test.AGRepositoryFactoryTest.class,
@@ -22,8 +27,11 @@ import org.junit.platform.suite.api.Suite;
         test.AGServerVersionTests.class,
         test.AGTripleAttributesTest.class,
         test.AGUtilTest.class,
+        test.BinaryRDFEntityTests.class,
+        test.BinaryStreamerTests.class,
         test.BlankNodeTests.class,
         test.BulkModeTests.class,
+        test.ColumnarTests.class,
         test.ContextsVarargsTest.class,
         test.DeleteDuplicatesTests.class,
         test.DownloadTest.class,
@@ -39,6 +47,7 @@ import org.junit.platform.suite.api.Suite;
         test.NQuadsTests.class,
         test.QueryLimitOffsetTests.class,
         test.QuickTests.class,
+        test.RDFStreamerTests.class,
         test.RDFTransactionTest.class,
         test.ReplHeaderTest.class,
         test.ServerCodeTests.class,
@@ -48,6 +57,7 @@ import org.junit.platform.suite.api.Suite;
         test.SparqlUpdateTests.class,
         test.SpinTest.class,
         test.SpogiTripleCacheTests.class,
+        test.TSVStreamerTests.class,
         test.TutorialTests.class,
         test.UntypedLiteralMatchingTest.class,
         test.UploadCommitPeriodTests.class,